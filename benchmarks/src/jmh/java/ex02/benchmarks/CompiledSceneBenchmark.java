@@ -0,0 +1,60 @@
+package ex02.benchmarks;
+
+import ex02.entities.Scene;
+import ex02.raytracer.CompiledScene;
+import ex02.raytracer.parser.ParseMode;
+import ex02.raytracer.parser.SceneParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long a render worker takes to get the scene of {@link LargeSceneParserBenchmark} ready to render, either by
+ * parsing it and building the hierarchy or by loading a {@link CompiledScene} written beforehand.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsPrepend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class CompiledSceneBenchmark {
+
+    private File file;
+    private Path compiled;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.file = File.createTempFile("large-scene", ".txt");
+        LargeSceneParserBenchmark.write(file);
+
+        this.compiled = Files.createTempFile("large-scene", ".bin");
+        CompiledScene.compile(parse()).write(compiled);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        file.delete();
+        Files.deleteIfExists(compiled);
+    }
+
+    @Benchmark
+    public CompiledScene parseAndBuild() throws Exception {
+        return CompiledScene.compile(parse());
+    }
+
+    @Benchmark
+    public CompiledScene load() throws IOException {
+        return CompiledScene.load(compiled);
+    }
+
+    private Scene parse() throws Exception {
+        final SceneParser parser = new SceneParser(file);
+        parser.setMode(ParseMode.STREAMING);
+        return parser.parse();
+    }
+}
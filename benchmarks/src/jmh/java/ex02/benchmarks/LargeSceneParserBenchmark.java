@@ -0,0 +1,110 @@
+package ex02.benchmarks;
+
+import ex02.entities.Scene;
+import ex02.raytracer.parser.ParseMode;
+import ex02.raytracer.parser.SceneParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing throughput in lines per second for a generated scene file of two million lines, which is read from disk
+ * as it would be for a real scene. The scene is mostly spheres with a few material parameters each, along with the
+ * blank lines and comments a generated scene usually has.
+ * <p>
+ * The target for {@link ParseMode#STREAMING} is at least 3,000,000 lines per second on a single core, around three
+ * times what {@link ParseMode#LINES} manages. Run with -prof gc to see that streaming allocates little more than the
+ * entities themselves.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(LargeSceneParserBenchmark.LINES)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsPrepend = "-Xmx1g")
+@State(Scope.Benchmark)
+public class LargeSceneParserBenchmark {
+
+    static final int LINES = 2_000_000;
+
+    @Param({"LINES", "STREAMING"})
+    public ParseMode mode;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.file = File.createTempFile("large-scene", ".txt");
+        write(file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Scene parse() throws Exception {
+        final SceneParser parser = new SceneParser(file);
+        parser.setMode(mode);
+        return parser.parse();
+    }
+
+    // Writes exactly LINES lines
+    static void write(final File file) throws IOException {
+        final Random random = new Random(1);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath())) {
+            int lines = 0;
+
+            final String[] header = {
+                    "# generated scene for " + LargeSceneParserBenchmark.class.getSimpleName(),
+                    "scene:",
+                    "    background-col=0.1 0.1 0.2",
+                    "    ambient-light=0.1 0.1 0.1",
+                    "camera:",
+                    "    eye=0 0 -50",
+                    "    look-at=0 0 0",
+                    "    screen-dist=1",
+                    "    up-direction=0 1 0",
+                    "light-point:",
+                    "    pos=0 50 -50",
+                    "    color=1 1 1",
+                    ""
+            };
+            for (final String line : header) {
+                writer.write(line);
+                writer.newLine();
+                lines++;
+            }
+
+            // eight lines a sphere
+            for (; lines + 8 <= LINES; lines += 8) {
+                writer.write(String.format(Locale.ROOT,
+                        "sphere:%n" +
+                        "    center=%.4f %.4f %.4f%n" +
+                        "    radius=%.3f%n" +
+                        "    mtl-type=flat%n" +
+                        "    mtl-diffuse=%.3f %.3f %.3f%n" +
+                        "    mtl-specular=0.5 0.5 0.5%n" +
+                        "    mtl-shininess=%d%n" +
+                        "%n",
+                        random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50, random.nextDouble() * 100,
+                        0.05 + random.nextDouble() * 0.5,
+                        random.nextDouble(), random.nextDouble(), random.nextDouble(),
+                        10 + random.nextInt(90)));
+            }
+
+            for (; lines < LINES; lines++) {
+                writer.write("# padding");
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ex02.benchmarks;
+
+import ex02.blas.MathUtils;
+import ex02.blas.RootFinder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The vector kernels in MathUtils, both the allocating versions and the ones writing into a destination, and the
+ * polynomial solvers used by the cylinder and torus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MathBenchmark {
+
+    private final double[] a = {0.267, -0.534, 0.802};
+    private final double[] b = {-1.5, 2.25, 0.75};
+    private final double[] normal = {0, 1, 0};
+    private final double[] dest = new double[3];
+    private final double[] toNormalize = new double[3];
+
+    private double[] quarticCoefficients;
+
+    @Setup
+    public void setUp() {
+        // Coefficients Torus.intersect gives for a ray from (0.9, 0.2, -10) along z hitting a torus with radii 1 and 0.3
+        final double[] p = {0.9, 0.2, -10};
+        final double[] d = {0, 0, 1};
+        final double centralRadiusSquare = 1;
+        final double tubeRadiusSquare = 0.09;
+
+        final double alpha = MathUtils.dotProduct(d, d);
+        final double beta = 2 * MathUtils.dotProduct(p, d);
+        final double gamma = MathUtils.dotProduct(p, p) - tubeRadiusSquare - centralRadiusSquare;
+
+        this.quarticCoefficients = new double[] {
+                MathUtils.sqr(gamma) + (4 * centralRadiusSquare * MathUtils.sqr(p[2])) - (4 * centralRadiusSquare * tubeRadiusSquare),
+                (2 * beta * gamma) + (8 * centralRadiusSquare * p[2] * d[2]),
+                MathUtils.sqr(beta) + (2 * alpha * gamma) + (4 * centralRadiusSquare * MathUtils.sqr(d[2])),
+                2 * alpha * beta,
+                MathUtils.sqr(alpha)
+        };
+    }
+
+    @Benchmark
+    public double dotProduct() {
+        return MathUtils.dotProduct(a, b);
+    }
+
+    @Benchmark
+    public double[] crossProduct() {
+        return MathUtils.crossProduct(a, b);
+    }
+
+    @Benchmark
+    public double[] crossProductInto() {
+        return MathUtils.crossProduct(a, b, dest);
+    }
+
+    @Benchmark
+    public double[] calcPointsDiff() {
+        return MathUtils.calcPointsDiff(a, b);
+    }
+
+    @Benchmark
+    public double[] calcPointsDiffInto() {
+        return MathUtils.calcPointsDiff(a, b, dest);
+    }
+
+    @Benchmark
+    public double[] reflectVector() {
+        return MathUtils.reflectVector(a, normal);
+    }
+
+    @Benchmark
+    public double[] reflectVectorInto() {
+        return MathUtils.reflectVector(a, normal, dest);
+    }
+
+    @Benchmark
+    public double[] normalize() {
+        System.arraycopy(b, 0, toNormalize, 0, 3);
+        MathUtils.normalize(toNormalize);
+        return toNormalize;
+    }
+
+    @Benchmark
+    public double distance() {
+        return MathUtils.distance(a, b);
+    }
+
+    @Benchmark
+    public double[] solveQuadraticEquation() {
+        return MathUtils.solveQuadraticEquation(1, -3.5, 1.25);
+    }
+
+    @Benchmark
+    public double[] solveQuartic() {
+        return RootFinder.SolveQuartic(quarticCoefficients);
+    }
+}
@@ -0,0 +1,97 @@
+package ex02.benchmarks;
+
+import ex02.entities.Ray;
+import ex02.entities.primitives.Mesh;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of Mesh.intersect for spheres made of more and more triangles, which should grow with the logarithm of the
+ * number of triangles rather than the number itself. The rays start around the sphere and point at random places
+ * near it, so that about half of them hit it. The same as PrimitiveBenchmark, each sphere has a radius of 1.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MeshBenchmark {
+
+    private static final int RAYS = 1024;
+
+    // 2 * rings * (rings * 2) triangles
+    @Param({"16", "160", "1000"})
+    public int rings;
+
+    private Mesh mesh;
+    private Ray[] rays;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        final Path file = Files.createTempFile("sphere", ".obj");
+        try {
+            writeSphere(file, rings);
+            mesh = new Mesh();
+            mesh.setParameter("file", new String[] { file.toString() });
+            mesh.postInit(null);
+        } finally {
+            Files.delete(file);
+        }
+
+        final Random random = new Random(1);
+        rays = new Ray[RAYS];
+        for (int i = 0; i < RAYS; i++) {
+            final double[] position = randomDirection(random, 5);
+            final double[] target = randomDirection(random, 1.4 * Math.cbrt(random.nextDouble()));
+            rays[i] = new Ray(position, new double[] { target[0] - position[0], target[1] - position[1], target[2] - position[2] }, 1);
+            rays[i].normalize();
+        }
+    }
+
+    @Benchmark
+    public double intersect() {
+        next = (next + 1) & (RAYS - 1);
+        return mesh.intersect(rays[next]);
+    }
+
+    private static double[] randomDirection(final Random random, final double length) {
+        final double z = random.nextDouble() * 2 - 1;
+        final double angle = random.nextDouble() * 2 * Math.PI;
+        final double r = Math.sqrt(1 - z * z) * length;
+        return new double[] { r * Math.cos(angle), r * Math.sin(angle), z * length };
+    }
+
+    // A sphere of rings stacked from pole to pole, each of twice as many quads around, with a vertex normal at each corner
+    private static void writeSphere(final Path file, final int rings) throws IOException {
+        final int segments = rings * 2;
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i <= rings; i++) {
+                final double polar = Math.PI * i / rings;
+                for (int j = 0; j < segments; j++) {
+                    final double azimuth = 2 * Math.PI * j / segments;
+                    final String vertex = (float) (Math.sin(polar) * Math.cos(azimuth)) + " " + (float) Math.cos(polar)
+                            + " " + (float) (Math.sin(polar) * Math.sin(azimuth)) + "\n";
+                    writer.write("v " + vertex);
+                    writer.write("vn " + vertex);
+                }
+            }
+            for (int i = 0; i < rings; i++) {
+                for (int j = 0; j < segments; j++) {
+                    final int a = i * segments + j + 1;
+                    final int b = i * segments + (j + 1) % segments + 1;
+                    writer.write("f " + a + "//" + a + " " + b + "//" + b + " " + (b + segments) + "//" + (b + segments)
+                            + " " + (a + segments) + "//" + (a + segments) + "\n");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ex02.benchmarks;
+
+import ex02.entities.Ray;
+import ex02.entities.primitives.Box;
+import ex02.entities.primitives.Cylinder;
+import ex02.entities.primitives.Disc;
+import ex02.entities.primitives.Primitive;
+import ex02.entities.primitives.Rectangle;
+import ex02.entities.primitives.Sphere;
+import ex02.entities.primitives.Torus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single Primitive.intersect call for every kind of primitive, for a ray that hits it and one that misses.
+ * Each primitive is about 2 units across and centred on the origin, the rays travel along the z axis.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrimitiveBenchmark {
+
+    @Param({"sphere", "rectangle", "disc", "box", "cylinder", "torus"})
+    public String primitive;
+
+    @Param({"hit", "miss"})
+    public String ray;
+
+    private Primitive target;
+    private Ray testRay;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.target = create(primitive);
+
+        // (0.9, 0.2) is inside every primitive when seen along the z axis, including the tube of the torus
+        final double[] position = "hit".equals(ray) ? new double[] {0.9, 0.2, -10} : new double[] {3, 3, -10};
+        this.testRay = new Ray(position, new double[] {0, 0, 1}, 1);
+
+        final boolean hit = target.intersect(testRay) < Double.POSITIVE_INFINITY;
+        if (hit != "hit".equals(ray)) {
+            throw new IllegalStateException("The " + ray + " ray doesn't give a " + ray + " for the " + primitive);
+        }
+    }
+
+    @Benchmark
+    public double intersect() {
+        return target.intersect(testRay);
+    }
+
+    private static Primitive create(final String name) throws Exception {
+        final Primitive primitive;
+
+        switch (name) {
+            case "sphere":
+                primitive = new Sphere();
+                primitive.setParameter("center", vector(0, 0, 0));
+                primitive.setParameter("radius", value(1));
+                break;
+            case "rectangle":
+                primitive = new Rectangle();
+                primitive.setParameter("p0", vector(-1, -1, 0));
+                primitive.setParameter("p1", vector(1, -1, 0));
+                primitive.setParameter("p2", vector(-1, 1, 0));
+                break;
+            case "disc":
+                primitive = new Disc();
+                primitive.setParameter("center", vector(0, 0, 0));
+                primitive.setParameter("normal", vector(0, 0, 1));
+                primitive.setParameter("radius", value(1));
+                break;
+            case "box":
+                primitive = new Box();
+                primitive.setParameter("p0", vector(-1, -1, -1));
+                primitive.setParameter("p1", vector(1, -1, -1));
+                primitive.setParameter("p2", vector(-1, 1, -1));
+                primitive.setParameter("p3", vector(-1, -1, 1));
+                break;
+            case "cylinder":
+                primitive = new Cylinder();
+                primitive.setParameter("start", vector(-1, 0, 0));
+                primitive.setParameter("direction", vector(1, 0, 0));
+                primitive.setParameter("length", value(2));
+                primitive.setParameter("radius", value(1));
+                break;
+            case "torus":
+                primitive = new Torus();
+                primitive.setParameter("center", vector(0, 0, 0));
+                primitive.setParameter("normal", vector(0, 0, 1));
+                primitive.setParameter("central-radius", value(1));
+                primitive.setParameter("tube-radius", value(0.3));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown primitive: " + name);
+        }
+
+        primitive.postInit(null);
+        return primitive;
+    }
+
+    private static String[] vector(double x, double y, double z) {
+        return new String[] { String.valueOf(x), String.valueOf(y), String.valueOf(z) };
+    }
+
+    private static String[] value(double value) {
+        return new String[] { String.valueOf(value) };
+    }
+}
@@ -0,0 +1,49 @@
+package ex02.benchmarks;
+
+import ex02.raytracer.FrameBuffer;
+import ex02.raytracer.RayTracer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full renders of scene files covering each kind of primitive, textures, area lights and deep reflections.
+ * The scene is parsed and the tracer (with its bounding volume hierarchy) created once, so only rendering is timed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    @Param({
+            "spheres_1.txt",
+            "spheres_1_super_samp.txt",
+            "molecule_1.txt",
+            "box_1.txt",
+            "cylinder_1.txt",
+            "torus.txt",
+            "usphere_tex_1.txt",
+            "ref_scenes_3/columns_7_multi_reflect.txt",
+            "ref_scenes_4/area_poles_fast.txt",
+            "ref_scenes_5/reflect_2.txt"
+    })
+    public String scene;
+
+    @Param({"200"})
+    public int size;
+
+    private RayTracer rayTracer;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.rayTracer = RayTracer.create(Scenes.parse(scene));
+    }
+
+    @Benchmark
+    public FrameBuffer render() throws Exception {
+        return rayTracer.render(size, size);
+    }
+}
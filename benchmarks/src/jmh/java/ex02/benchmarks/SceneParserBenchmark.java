@@ -0,0 +1,48 @@
+package ex02.benchmarks;
+
+import ex02.entities.Scene;
+import ex02.raytracer.parser.ParseMode;
+import ex02.raytracer.parser.SceneParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing throughput for scene files that are already in memory, so reading the file isn't measured.
+ * Parsing includes postInit of every entity, eg: the bounds and other values primitives precompute.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SceneParserBenchmark {
+
+    @Param({
+            "spheres_1.txt",
+            "molecule_1.txt",
+            "ref_scenes_3/columns_7_multi_reflect.txt",
+            "ref_scenes_4/area_poles_multi_slow.txt"
+    })
+    public String scene;
+
+    @Param({"LINES", "STREAMING"})
+    public ParseMode mode;
+
+    private String directory;
+    private String sceneData;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.directory = Scenes.file(scene).getParent();
+        this.sceneData = Scenes.read(scene);
+    }
+
+    @Benchmark
+    public Scene parse() throws Exception {
+        final SceneParser parser = new SceneParser(directory, sceneData);
+        parser.setMode(mode);
+        return parser.parse();
+    }
+}
@@ -0,0 +1,38 @@
+package ex02.benchmarks;
+
+import ex02.entities.Scene;
+import ex02.raytracer.parser.ParserException;
+import ex02.raytracer.parser.SceneParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Finds the scene files in the scenes directory of the project, which the Gradle build passes to the
+ * benchmark JVMs as the ex02.scenes system property.
+ */
+final class Scenes {
+
+    private Scenes() {
+    }
+
+    static File file(final String name) {
+        final File file = new File(System.getProperty("ex02.scenes", "scenes"), name);
+
+        if (!file.canRead()) {
+            throw new IllegalStateException("Cannot read scene " + file.getAbsolutePath()
+                    + ", set -Dex02.scenes to the scenes directory of the project");
+        }
+        return file;
+    }
+
+    static String read(final String name) throws IOException {
+        return new String(Files.readAllBytes(file(name).toPath()), StandardCharsets.UTF_8);
+    }
+
+    static Scene parse(final String name) throws IOException, ParserException {
+        return new SceneParser(file(name)).parse();
+    }
+}
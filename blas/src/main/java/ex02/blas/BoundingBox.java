@@ -0,0 +1,146 @@
+package ex02.blas;
+
+import java.util.Arrays;
+
+/**
+ * Axis-aligned bounding box described by its minimum and maximum corners
+ */
+public class BoundingBox {
+
+    private final double[] min;
+    private final double[] max;
+
+    public BoundingBox(double[] min, double[] max) {
+        if (min.length != 3 || max.length != 3) {
+            throw new IllegalArgumentException("min and max vectors must be of length 3.");
+        }
+
+        this.min = min.clone();
+        this.max = max.clone();
+    }
+
+    /**
+     * @return a box containing nothing, which can be grown with {@link #extend(double[])} and {@link #union(BoundingBox)}
+     */
+    public static BoundingBox empty() {
+        return new BoundingBox(
+                new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY },
+                new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY });
+    }
+
+    /**
+     * @param points one or more points in 3D
+     * @return the smallest box containing all of the given points
+     */
+    public static BoundingBox of(double[]... points) {
+        final BoundingBox box = empty();
+        for (final double[] point : points) {
+            box.extend(point);
+        }
+        return box;
+    }
+
+    // Grows the box so that it contains the given point
+    public BoundingBox extend(double[] point) {
+        for (int i = 0; i < 3; i++) {
+            min[i] = Math.min(min[i], point[i]);
+            max[i] = Math.max(max[i], point[i]);
+        }
+        return this;
+    }
+
+    // Grows the box so that it contains the other box
+    public BoundingBox union(BoundingBox other) {
+        for (int i = 0; i < 3; i++) {
+            min[i] = Math.min(min[i], other.min[i]);
+            max[i] = Math.max(max[i], other.max[i]);
+        }
+        return this;
+    }
+
+    // Grows the box by the given amount in every direction
+    public BoundingBox pad(double amount) {
+        for (int i = 0; i < 3; i++) {
+            min[i] -= amount;
+            max[i] += amount;
+        }
+        return this;
+    }
+
+    /**
+     * Slab test: checks whether a ray passes through the box before reaching the given distance.
+     * Comparisons are arranged so that a NaN (0 * infinity, for rays parallel to a face) leaves the interval unchanged.
+     * @param position origin of the ray
+     * @param direction direction of the ray
+     * @param maxDistance how far along the ray to look
+     * @return true if some part of the ray between 0 and maxDistance is inside the box
+     */
+    public boolean intersects(double[] position, double[] direction, double maxDistance) {
+        if (isEmpty()) {
+            return false;
+        }
+
+        double tNear = 0;
+        double tFar = maxDistance;
+
+        for (int i = 0; i < 3; i++) {
+            final double inverse = 1 / direction[i];
+            double t0 = (min[i] - position[i]) * inverse;
+            double t1 = (max[i] - position[i]) * inverse;
+
+            if (t0 > t1) {
+                final double swap = t0;
+                t0 = t1;
+                t1 = swap;
+            }
+
+            tNear = t0 > tNear ? t0 : tNear;
+            tFar = t1 < tFar ? t1 : tFar;
+
+            if (tNear > tFar) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return min[0] > max[0] || min[1] > max[1] || min[2] > max[2];
+    }
+
+    public double[] getCentroid() {
+        return new double[] { (min[0] + max[0]) / 2, (min[1] + max[1]) / 2, (min[2] + max[2]) / 2 };
+    }
+
+    /**
+     * @return the total area of the six faces of the box, or 0 for an empty box
+     */
+    public double surfaceArea() {
+        if (isEmpty()) {
+            return 0;
+        }
+
+        double dx = max[0] - min[0];
+        double dy = max[1] - min[1];
+        double dz = max[2] - min[2];
+
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    public double[] getMin() {
+        return min;
+    }
+
+    public double[] getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("BoundingBox{");
+        sb.append("min=").append(Arrays.toString(min));
+        sb.append(", max=").append(Arrays.toString(max));
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -26,6 +26,44 @@ public class MathUtils {
         return result;
     }
 
+    /**
+     * Returns the values as a vector without copying them.
+     * @param values must hold exactly 3 values
+     * @return the values
+     */
+    public static double[] toVector(final double[] values) {
+        if (values == null || values.length != 3) {
+            throw new IllegalArgumentException("Invalid vector");
+        }
+        return values;
+    }
+
+    /**
+     * @param elems a String array of double values
+     * @return the values
+     * @throws NumberFormatException if any of the strings isn't a number
+     */
+    public static double[] parseValues(final String[] elems) {
+        final double[] result = new double[elems.length];
+
+        for (int i = 0; i < elems.length; i++) {
+            result[i] = Double.parseDouble(elems[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a value that counts something as an int, rather than truncating a fraction that was written by mistake.
+     * @throws IllegalArgumentException if the value isn't a whole number that fits in an int
+     */
+    public static int toInt(final double value) {
+        if (value != Math.rint(value) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Expected a whole number, not " + value);
+        }
+        return (int) value;
+    }
+
 	// Returns the square of a
 	public static double sqr(double a) {
 		return a * a;
@@ -257,6 +295,89 @@ public class MathUtils {
 		return c;
 	}
 
+    /*
+     * Allocation-free companions of the operations above, for use in the render loop. Each one writes its result
+     * into the given destination, which may also be one of the arguments, and returns it. For speed these skip the
+     * size checks, so the arrays must hold (at least) 3 values.
+     */
+
+    // dest = p2 - p1, see calcPointsDiff(double[], double[])
+    public static double[] calcPointsDiff(double[] p1, double[] p2, double[] dest) {
+        dest[0] = p2[0] - p1[0];
+        dest[1] = p2[1] - p1[1];
+        dest[2] = p2[2] - p1[2];
+        return dest;
+    }
+
+    // dest = a + b
+    public static double[] addPoints(double[] a, double[] b, double[] dest) {
+        dest[0] = a[0] + b[0];
+        dest[1] = a[1] + b[1];
+        dest[2] = a[2] + b[2];
+        return dest;
+    }
+
+    // dest = a - b
+    public static double[] subtractPoints(double[] a, double[] b, double[] dest) {
+        dest[0] = a[0] - b[0];
+        dest[1] = a[1] - b[1];
+        dest[2] = a[2] - b[2];
+        return dest;
+    }
+
+    // dest = vec * t
+    public static double[] multiplyScalar(double[] vec, double t, double[] dest) {
+        dest[0] = vec[0] * t;
+        dest[1] = vec[1] * t;
+        dest[2] = vec[2] * t;
+        return dest;
+    }
+
+    // dest = -vec
+    public static double[] oppositeVector(double[] vec, double[] dest) {
+        dest[0] = -vec[0];
+        dest[1] = -vec[1];
+        dest[2] = -vec[2];
+        return dest;
+    }
+
+    // dest = d1 x d2
+    public static double[] crossProduct(double[] d1, double[] d2, double[] dest) {
+        final double x = (d1[1] * d2[2]) - (d1[2] * d2[1]);
+        final double y = (d1[2] * d2[0]) - (d1[0] * d2[2]);
+        final double z = (d1[0] * d2[1]) - (d1[1] * d2[0]);
+
+        dest[0] = x;
+        dest[1] = y;
+        dest[2] = z;
+        return dest;
+    }
+
+    // Reflects vec around the normal into dest, see reflectVector(double[], double[])
+    public static double[] reflectVector(double[] vec, double[] normal, double[] dest) {
+        final double dotProduct = vec[0] * normal[0] + vec[1] * normal[1] + vec[2] * normal[2];
+
+        dest[0] = -vec[0] + 2 * normal[0] * dotProduct;
+        dest[1] = -vec[1] + 2 * normal[1] * dotProduct;
+        dest[2] = -vec[2] + 2 * normal[2] * dotProduct;
+        return dest;
+    }
+
+    // Dot product of two vectors given as x, y, z values
+    public static double dotProduct(double x1, double y1, double z1, double x2, double y2, double z2) {
+        return x1 * x2 + y1 * y2 + z1 * z2;
+    }
+
+    // Length of the vector given as x, y, z values
+    public static double norm(double x, double y, double z) {
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+
+    // Distance between two points, the same as norm(calcPointsDiff(p1, p2)) without the intermediate array
+    public static double distance(double[] p1, double[] p2) {
+        return norm(p2[0] - p1[0], p2[1] - p1[1], p2[2] - p1[2]);
+    }
+
     private static void checkSize(double[] vec) {
         if(vec == null || vec.length != 3) {
             throw new IllegalArgumentException("vector should have 3 values to prevent ArrayIndexOutOfBoundsException");
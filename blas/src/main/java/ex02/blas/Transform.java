@@ -0,0 +1,243 @@
+package ex02.blas;
+
+import java.util.Arrays;
+
+/**
+ * An affine transform of 3D space, as a 4x4 matrix that points are multiplied by as column vectors. Only the top
+ * three rows are held, as the bottom row of an affine transform is always 0 0 0 1.
+ * <p>
+ * Transforms are immutable, and are combined with {@link #then(Transform)}. The inverse is worked out the first
+ * time it's needed and kept, as it is for transforming normals.
+ */
+public final class Transform {
+
+    public static final Transform IDENTITY = new Transform(new double[] {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0 });
+
+    // row major: m[0..3] is the first row, the last of each row is the translation
+    private final double[] m;
+
+    private Transform inverse;
+
+    private Transform(double[] m) {
+        this.m = m;
+    }
+
+    /**
+     * @param values the rows of the matrix, either the top three (12 values) or all four (16 values), in which
+     *               case the last row must be 0 0 0 1
+     * @throws IllegalArgumentException if there are the wrong number of values or the transform isn't affine
+     */
+    public static Transform of(double... values) {
+        if (values.length != 12 && values.length != 16) {
+            throw new IllegalArgumentException("A transform needs 12 or 16 values, not " + values.length);
+        }
+        if (values.length == 16 && (values[12] != 0 || values[13] != 0 || values[14] != 0 || values[15] != 1)) {
+            throw new IllegalArgumentException("The last row of an affine transform must be 0 0 0 1");
+        }
+        return new Transform(Arrays.copyOf(values, 12));
+    }
+
+    public static Transform translation(double x, double y, double z) {
+        return new Transform(new double[] {
+                1, 0, 0, x,
+                0, 1, 0, y,
+                0, 0, 1, z });
+    }
+
+    public static Transform scaling(double x, double y, double z) {
+        return new Transform(new double[] {
+                x, 0, 0, 0,
+                0, y, 0, 0,
+                0, 0, z, 0 });
+    }
+
+    /**
+     * A rotation about an axis through the origin, anticlockwise when looking from the end of the axis towards
+     * the origin.
+     * @param axis direction of the axis, which needn't be normalized
+     * @param degrees angle of the rotation
+     * @throws IllegalArgumentException if the axis has no length
+     */
+    public static Transform rotation(double[] axis, double degrees) {
+        final double length = MathUtils.norm(axis);
+        if (!(length > 0)) {
+            throw new IllegalArgumentException("The axis of a rotation must have a length");
+        }
+
+        final double x = axis[0] / length, y = axis[1] / length, z = axis[2] / length;
+        final double radians = Math.toRadians(degrees);
+        final double cos = Math.cos(radians);
+        final double sin = Math.sin(radians);
+        final double c = 1 - cos;
+
+        // Rodrigues' rotation formula
+        return new Transform(new double[] {
+                cos + x * x * c,     x * y * c - z * sin, x * z * c + y * sin, 0,
+                y * x * c + z * sin, cos + y * y * c,     y * z * c - x * sin, 0,
+                z * x * c - y * sin, z * y * c + x * sin, cos + z * z * c,     0 });
+    }
+
+    /**
+     * @return the transform that applies this one and then the next
+     */
+    public Transform then(Transform next) {
+        final double[] a = next.m;
+        final double[] b = m;
+        final double[] result = new double[12];
+
+        for (int row = 0; row < 3; row++) {
+            final int r = row * 4;
+            for (int column = 0; column < 4; column++) {
+                result[r + column] = a[r] * b[column] + a[r + 1] * b[4 + column] + a[r + 2] * b[8 + column];
+            }
+            result[r + 3] += a[r + 3];
+        }
+        return new Transform(result);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the transform can't be inverted, because it flattens space onto a plane,
+     *                                  line or point
+     */
+    public Transform inverse() {
+        Transform result = inverse;
+        if (result == null) {
+            result = invert();
+            result.inverse = this;
+            inverse = result;
+        }
+        return result;
+    }
+
+    private Transform invert() {
+        final double determinant = getDeterminant();
+        if (determinant == 0 || !Double.isFinite(determinant)) {
+            throw new IllegalArgumentException("The transform can't be inverted: " + this);
+        }
+
+        // the inverse of the 3x3 part is its adjugate over the determinant, and the translation is undone by it
+        final double[] r = new double[12];
+        r[0] = (m[5] * m[10] - m[6] * m[9]) / determinant;
+        r[1] = (m[2] * m[9] - m[1] * m[10]) / determinant;
+        r[2] = (m[1] * m[6] - m[2] * m[5]) / determinant;
+        r[4] = (m[6] * m[8] - m[4] * m[10]) / determinant;
+        r[5] = (m[0] * m[10] - m[2] * m[8]) / determinant;
+        r[6] = (m[2] * m[4] - m[0] * m[6]) / determinant;
+        r[8] = (m[4] * m[9] - m[5] * m[8]) / determinant;
+        r[9] = (m[1] * m[8] - m[0] * m[9]) / determinant;
+        r[10] = (m[0] * m[5] - m[1] * m[4]) / determinant;
+
+        for (int row = 0; row < 3; row++) {
+            final int i = row * 4;
+            r[i + 3] = -(r[i] * m[3] + r[i + 1] * m[7] + r[i + 2] * m[11]);
+        }
+        return new Transform(r);
+    }
+
+    /**
+     * @return the determinant of the 3x3 part, which is how much the transform scales volumes by (negative if it
+     *         mirrors space)
+     */
+    public double getDeterminant() {
+        return m[0] * (m[5] * m[10] - m[6] * m[9])
+                - m[1] * (m[4] * m[10] - m[6] * m[8])
+                + m[2] * (m[4] * m[9] - m[5] * m[8]);
+    }
+
+    /**
+     * @return the factor that lengths are scaled by, on average over every direction if the scale isn't uniform
+     */
+    public double getScale() {
+        return Math.cbrt(Math.abs(getDeterminant()));
+    }
+
+    public double[] transformPoint(double[] point) {
+        return transformPoint(point, new double[3]);
+    }
+
+    // As transformPoint(point), writing the result into dest, which may be the point itself
+    public double[] transformPoint(double[] point, double[] dest) {
+        final double x = point[0], y = point[1], z = point[2];
+        dest[0] = m[0] * x + m[1] * y + m[2] * z + m[3];
+        dest[1] = m[4] * x + m[5] * y + m[6] * z + m[7];
+        dest[2] = m[8] * x + m[9] * y + m[10] * z + m[11];
+        return dest;
+    }
+
+    /**
+     * Transforms a direction or the difference between two points, which the translation doesn't change.
+     */
+    public double[] transformVector(double[] vector) {
+        return transformVector(vector, new double[3]);
+    }
+
+    // As transformVector(vector), writing the result into dest, which may be the vector itself
+    public double[] transformVector(double[] vector, double[] dest) {
+        final double x = vector[0], y = vector[1], z = vector[2];
+        dest[0] = m[0] * x + m[1] * y + m[2] * z;
+        dest[1] = m[4] * x + m[5] * y + m[6] * z;
+        dest[2] = m[8] * x + m[9] * y + m[10] * z;
+        return dest;
+    }
+
+    /**
+     * Transforms the normal of a surface so that it stays perpendicular to the transformed surface, by multiplying
+     * it by the transpose of the inverse. The result isn't normalized.
+     * @throws IllegalArgumentException if the transform can't be inverted
+     */
+    public double[] transformNormal(double[] normal) {
+        final double[] r = inverse().m;
+        final double x = normal[0], y = normal[1], z = normal[2];
+        return new double[] {
+                r[0] * x + r[4] * y + r[8] * z,
+                r[1] * x + r[5] * y + r[9] * z,
+                r[2] * x + r[6] * y + r[10] * z };
+    }
+
+    /**
+     * @return the smallest axis-aligned box that contains the transformed box, which is empty if the box is
+     */
+    public BoundingBox transformBox(BoundingBox box) {
+        if (box.isEmpty()) {
+            return BoundingBox.empty();
+        }
+
+        final double[] min = box.getMin();
+        final double[] max = box.getMax();
+        final BoundingBox result = BoundingBox.empty();
+        final double[] corner = new double[3];
+
+        for (int i = 0; i < 8; i++) {
+            corner[0] = (i & 1) == 0 ? min[0] : max[0];
+            corner[1] = (i & 2) == 0 ? min[1] : max[1];
+            corner[2] = (i & 4) == 0 ? min[2] : max[2];
+            result.extend(transformPoint(corner, corner));
+        }
+        return result;
+    }
+
+    /**
+     * @return the top three rows of the matrix, which {@link #of(double...)} takes back
+     */
+    public double[] toArray() {
+        return m.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof Transform && Arrays.equals(m, ((Transform) o).m);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(m);
+    }
+
+    @Override
+    public String toString() {
+        return "Transform" + Arrays.toString(m);
+    }
+}
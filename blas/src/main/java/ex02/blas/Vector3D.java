@@ -67,6 +67,33 @@ public class Vector3D {
 		return endPoint;
 	}
 	
+	// Returns the point at the given distance along the vector, without changing its magnitude
+	public double[] getPointAt(double distance) {
+		return new double[] { position[0] + distance * direction[0],
+							  position[1] + distance * direction[1],
+							  position[2] + distance * direction[2] };
+	}
+
+	// As getEndPoint(), writing the point into dest rather than a new array
+	public double[] getEndPoint(double[] dest) {
+		return getPointAt(magnitude, dest);
+	}
+
+	// As getPointAt(double), writing the point into dest rather than a new array
+	public double[] getPointAt(double distance, double[] dest) {
+		dest[0] = position[0] + distance * direction[0];
+		dest[1] = position[1] + distance * direction[1];
+		dest[2] = position[2] + distance * direction[2];
+		return dest;
+	}
+
+	// Moves and points the vector somewhere else by copying the values into its own arrays, so it can be reused
+	public void set(double[] position, double[] direction, double magnitude) {
+		System.arraycopy(position, 0, this.position, 0, 3);
+		System.arraycopy(direction, 0, this.direction, 0, 3);
+		this.magnitude = magnitude;
+	}
+
 	public double[] getPosition() {
 		return position;
 	}
@@ -0,0 +1,40 @@
+package ex02.blas;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundingBoxTest {
+
+    @Test
+    void union() {
+        final BoundingBox box = BoundingBox.empty();
+        assertTrue(box.isEmpty());
+
+        box.union(BoundingBox.of(new double[] {0, 0, 0}, new double[] {1, 1, 1}));
+        box.union(BoundingBox.of(new double[] {-1, 2, 0.5}));
+
+        assertFalse(box.isEmpty());
+        assertArrayEquals(new double[] {-1, 0, 0}, box.getMin(), 0);
+        assertArrayEquals(new double[] {1, 2, 1}, box.getMax(), 0);
+    }
+
+    @Test
+    void intersects() {
+        final BoundingBox box = BoundingBox.of(new double[] {-1, -1, -1}, new double[] {1, 1, 1});
+
+        assertTrue(box.intersects(new double[] {0, 0, -5}, new double[] {0, 0, 1}, Double.POSITIVE_INFINITY));
+        assertTrue(box.intersects(new double[] {0, 0, 0}, new double[] {1, 0, 0}, Double.POSITIVE_INFINITY), "ray starting inside");
+        assertFalse(box.intersects(new double[] {0, 0, -5}, new double[] {0, 0, -1}, Double.POSITIVE_INFINITY), "box is behind the ray");
+        assertFalse(box.intersects(new double[] {0, 2, -5}, new double[] {0, 0, 1}, Double.POSITIVE_INFINITY), "ray passes above");
+        assertFalse(box.intersects(new double[] {0, 0, -5}, new double[] {0, 0, 1}, 3), "box is further than the max distance");
+    }
+
+    @Test
+    void intersectsFlatBox() {
+        final BoundingBox rectangle = BoundingBox.of(new double[] {-1, 0, -1}, new double[] {1, 0, 1});
+
+        assertTrue(rectangle.intersects(new double[] {0.5, 3, 0.5}, new double[] {0, -1, 0}, Double.POSITIVE_INFINITY));
+        assertFalse(BoundingBox.empty().intersects(new double[] {0, 0, 0}, new double[] {0, 1, 0}, Double.POSITIVE_INFINITY));
+    }
+}
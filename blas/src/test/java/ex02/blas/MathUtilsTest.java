@@ -53,4 +53,40 @@ class MathUtilsTest {
         assertEquals(-7.0, crossProduct2[2], 0);
     }
 
-}
\ No newline at end of file
+    @Test
+    void crossProductIntoDestination() {
+        final double[] d1 = {1, 2, 3};
+
+        final double[] result = MathUtils.crossProduct(d1, new double[]{8, 9, 10}, d1);
+
+        assertSame(d1, result, "the destination may also be an argument");
+        assertArrayEquals(new double[]{-7, 14, -7}, result, 0);
+    }
+
+    @Test
+    void reflectVectorIntoDestination() {
+        final double[] vec = {0.3, -0.8, 0.52};
+        final double[] normal = {0, 1, 0};
+
+        assertArrayEquals(MathUtils.reflectVector(vec, normal), MathUtils.reflectVector(vec, normal, new double[3]), 0);
+    }
+
+    @Test
+    void distance() {
+        final double[] p1 = {1, 2, 3};
+        final double[] p2 = {-2.5, 0.25, 7};
+
+        assertEquals(MathUtils.norm(MathUtils.calcPointsDiff(p1, p2)), MathUtils.distance(p1, p2), 0);
+        assertEquals(MathUtils.norm(new double[] {2.0, 2.0, 2.0}), MathUtils.norm(2.0, 2.0, 2.0), 0);
+    }
+
+    @Test
+    void toInt() {
+        assertEquals(4, MathUtils.toInt(4.0));
+        assertEquals(-2, MathUtils.toInt(-2));
+        assertThrows(IllegalArgumentException.class, () -> MathUtils.toInt(4.5));
+        assertThrows(IllegalArgumentException.class, () -> MathUtils.toInt(Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> MathUtils.toInt(1e10));
+    }
+
+}
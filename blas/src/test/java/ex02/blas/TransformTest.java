@@ -0,0 +1,73 @@
+package ex02.blas;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransformTest {
+
+    @Test
+    void appliedInOrder() {
+        final Transform transform = Transform.scaling(2, 2, 2)
+                .then(Transform.rotation(new double[] {0, 0, 1}, 90))
+                .then(Transform.translation(1, 2, 3));
+
+        // (1, 0, 0) is scaled to (2, 0, 0), turned to (0, 2, 0) then moved
+        assertArrayEquals(new double[] {1, 4, 3}, transform.transformPoint(new double[] {1, 0, 0}), 1e-12);
+        assertArrayEquals(new double[] {0, 2, 0}, transform.transformVector(new double[] {1, 0, 0}), 1e-12, "vectors aren't moved");
+        assertEquals(8, transform.getDeterminant(), 1e-12);
+        assertEquals(2, transform.getScale(), 1e-12);
+    }
+
+    @Test
+    void inverse() {
+        final Transform transform = Transform.of(
+                1, 2, 0, 4,
+                0, 3, 1, -1,
+                2, 0, 1, 0.5);
+        final Transform inverse = transform.inverse();
+
+        final double[] point = {0.3, -2, 7};
+        assertArrayEquals(point, inverse.transformPoint(transform.transformPoint(point)), 1e-12);
+        assertArrayEquals(point, transform.transformPoint(inverse.transformPoint(point)), 1e-12);
+        assertSame(transform, inverse.inverse());
+
+        assertThrows(IllegalArgumentException.class, () -> Transform.scaling(1, 0, 1).inverse());
+    }
+
+    @Test
+    void normalsStayPerpendicular() {
+        final Transform transform = Transform.scaling(4, 1, 1).then(Transform.rotation(new double[] {1, 1, 0}, 30));
+
+        // the plane x + y = 0, which the normal (1, 1, 0) is perpendicular to
+        final double[] along = transform.transformVector(new double[] {1, -1, 0});
+        final double[] across = transform.transformVector(new double[] {0, 0, 1});
+        final double[] normal = transform.transformNormal(new double[] {1, 1, 0});
+
+        assertEquals(0, MathUtils.dotProduct(along, normal), 1e-12);
+        assertEquals(0, MathUtils.dotProduct(across, normal), 1e-12);
+    }
+
+    @Test
+    void transformBox() {
+        final BoundingBox box = BoundingBox.of(new double[] {-1, -1, -1}, new double[] {1, 1, 1});
+        final BoundingBox turned = Transform.rotation(new double[] {0, 1, 0}, 45).then(Transform.translation(0, 1, 0))
+                .transformBox(box);
+
+        final double half = Math.sqrt(2);
+        assertArrayEquals(new double[] {-half, 0, -half}, turned.getMin(), 1e-12);
+        assertArrayEquals(new double[] {half, 2, half}, turned.getMax(), 1e-12);
+        assertTrue(Transform.IDENTITY.transformBox(BoundingBox.empty()).isEmpty());
+    }
+
+    @Test
+    void of() {
+        final Transform transform = Transform.translation(1, 2, 3);
+
+        assertEquals(transform, Transform.of(transform.toArray()));
+        assertEquals(transform, Transform.of(1, 0, 0, 1, 0, 1, 0, 2, 0, 0, 1, 3, 0, 0, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> Transform.of(1, 0, 0, 1, 0, 1, 0, 2, 0, 0, 1, 3, 0, 0, 1, 1), "not affine");
+        assertThrows(IllegalArgumentException.class, () -> Transform.of(1, 2, 3));
+        assertThrows(IllegalArgumentException.class, () -> Transform.rotation(new double[] {0, 0, 0}, 10));
+    }
+}
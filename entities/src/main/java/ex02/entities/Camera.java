@@ -1,5 +1,8 @@
 package ex02.entities;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import ex02.blas.MathUtils;
@@ -17,16 +20,18 @@ public class Camera implements IEntity {
 
     // Read parameters into members
     @Override
-    public void setParameter(String name, String[] args) throws Exception {
-        if ("eye".equals(name)) eye = MathUtils.parseVector(args);
-        if ("look-at".equals(name)) lookAt = MathUtils.parseVector(args);
-        if ("direction".equals(name)) {
-            direction = MathUtils.parseVector(args);
+    public boolean setParameter(String name, double[] values) throws Exception {
+        if ("eye".equals(name)) eye = MathUtils.toVector(values);
+        else if ("look-at".equals(name)) lookAt = MathUtils.toVector(values);
+        else if ("direction".equals(name)) {
+            direction = MathUtils.toVector(values);
             MathUtils.normalize(direction);
         }
-        if ("up-direction".equals(name)) upDirection = MathUtils.parseVector(args);
-        if ("screen-dist".equals(name)) screenDist = Double.parseDouble(args[0]);
-        if ("screen-width".equals(name)) screenWidth = Double.parseDouble(args[0]);
+        else if ("up-direction".equals(name)) upDirection = MathUtils.toVector(values);
+        else if ("screen-dist".equals(name)) screenDist = values[0];
+        else if ("screen-width".equals(name)) screenWidth = values[0];
+        else return false;
+        return true;
     }
 
 
@@ -96,6 +101,30 @@ public class Camera implements IEntity {
         MathUtils.normalize(viewplaneUp);
     }
 
+    @Override
+    public void write(DataOutput out) throws IOException {
+        EntityData.writeVector(out, eye);
+        EntityData.writeVector(out, lookAt);
+        EntityData.writeVector(out, direction);
+        EntityData.writeVector(out, upDirection);
+        EntityData.writeVector(out, rightDirection);
+        EntityData.writeVector(out, viewplaneUp);
+        out.writeDouble(screenDist);
+        out.writeDouble(screenWidth);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        eye = EntityData.readVector(in);
+        lookAt = EntityData.readVector(in);
+        direction = EntityData.readVector(in);
+        upDirection = EntityData.readVector(in);
+        rightDirection = EntityData.readVector(in);
+        viewplaneUp = EntityData.readVector(in);
+        screenDist = in.getDouble();
+        screenWidth = in.getDouble();
+    }
+
     public double[] getDirection() {
         return direction;
     }
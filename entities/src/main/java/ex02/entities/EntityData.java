@@ -0,0 +1,108 @@
+package ex02.entities;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes and reads the values entities hold, for {@link IEntity#write(DataOutput)} and
+ * {@link IEntity#read(ByteBuffer)}. Arrays and strings are written with their length first, or -1 for null.
+ */
+public final class EntityData {
+
+    private EntityData() {
+    }
+
+    public static void writeVector(final DataOutput out, final double[] vector) throws IOException {
+        if (vector == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(vector.length);
+        for (final double value : vector) {
+            out.writeDouble(value);
+        }
+    }
+
+    public static double[] readVector(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        final double[] vector = new double[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = in.getDouble();
+        }
+        return vector;
+    }
+
+    public static void writeString(final DataOutput out, final String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(string.length());
+        out.writeChars(string);
+    }
+
+    public static String readString(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.getChar();
+        }
+        return new String(chars);
+    }
+
+    public static void writeFloats(final DataOutput out, final float[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (final float value : values) {
+            out.writeFloat(value);
+        }
+    }
+
+    // Copies the values in bulk, which is much quicker than a value at a time for the big arrays of a mesh
+    public static float[] readFloats(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        final float[] values = new float[length];
+        in.asFloatBuffer().get(values);
+        in.position(in.position() + length * Float.BYTES);
+        return values;
+    }
+
+    public static void writeInts(final DataOutput out, final int[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (final int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    public static int[] readInts(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        final int[] values = new int[length];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + length * Integer.BYTES);
+        return values;
+    }
+}
@@ -6,6 +6,8 @@ import ex02.entities.lights.LightPoint;
 import ex02.entities.primitives.Box;
 import ex02.entities.primitives.Cylinder;
 import ex02.entities.primitives.Disc;
+import ex02.entities.primitives.Instance;
+import ex02.entities.primitives.Mesh;
 import ex02.entities.primitives.Rectangle;
 import ex02.entities.primitives.Sphere;
 import ex02.entities.primitives.Torus;
@@ -26,6 +28,8 @@ public class EntityFactory {
         if ("cylinder".equals(entityName)) return new Cylinder();
         if ("box".equals(entityName)) return new Box();
         if ("torus".equals(entityName)) return new Torus();
+        if ("mesh".equals(entityName)) return new Mesh();
+        if ("instance".equals(entityName)) return new Instance();
         if ("light-point".equals(entityName)) return new LightPoint();
         if ("light-directed".equals(entityName)) return new LightDirected();
         if ("light-area".equals(entityName)) return new LightArea();
@@ -33,4 +37,23 @@ public class EntityFactory {
         return null;
     }
 
+    // Returns the name createEntity takes for the entity's type, or null if it doesn't create that type
+    public static String getEntityName(IEntity entity) {
+        if (entity instanceof Scene) return "scene";
+        if (entity instanceof Camera) return "camera";
+        if (entity instanceof Rectangle) return "rectangle";
+        if (entity instanceof Disc) return "disc";
+        if (entity instanceof Sphere) return "sphere";
+        if (entity instanceof Cylinder) return "cylinder";
+        if (entity instanceof Box) return "box";
+        if (entity instanceof Torus) return "torus";
+        if (entity instanceof Mesh) return "mesh";
+        if (entity instanceof Instance) return "instance";
+        if (entity instanceof LightPoint) return "light-point";
+        if (entity instanceof LightDirected) return "light-directed";
+        if (entity instanceof LightArea) return "light-area";
+
+        return null;
+    }
+
 }
@@ -1,5 +1,10 @@
 package ex02.entities;
 
+import ex02.blas.MathUtils;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 
@@ -8,7 +13,34 @@ import java.util.List;
  */
 public interface IEntity {
 
-    void setParameter(String name, String[] args) throws Exception;
+    /**
+     * Sets a parameter as it was written in the scene file. By default the values are read as numbers, so only
+     * entities that have parameters which aren't numbers need to override this.
+     * @return false if the entity doesn't have a parameter of that name
+     * @throws NumberFormatException if a value isn't a number
+     */
+    default boolean setParameter(String name, String[] args) throws Exception {
+        return setParameter(name, MathUtils.parseValues(args));
+    }
+
+    /**
+     * Sets a parameter whose values are all numbers, which parsers that read the numbers themselves call directly.
+     * The array belongs to the entity afterwards, so vectors can be kept without copying them.
+     * @return false if the entity doesn't have a parameter of that name
+     */
+    boolean setParameter(String name, double[] values) throws Exception;
 
     void postInit(List<IEntity> entities) throws Exception;
+
+    /**
+     * Writes everything the entity holds once postInit has been called, including the values postInit calculated,
+     * so that a compiled scene can be loaded without parsing or calling postInit again.
+     */
+    void write(DataOutput out) throws IOException;
+
+    /**
+     * Reads back what {@link #write(DataOutput)} wrote, which leaves the entity as it was when it was written.
+     * postInit isn't called afterwards, as calling it twice can change some values by rounding.
+     */
+    void read(ByteBuffer in);
 }
@@ -3,16 +3,31 @@ package ex02.entities;
 import ex02.entities.primitives.Primitive;
 
 /**
- * Helper class representing an intersection
+ * Helper class representing an intersection. It is an immutable hit record so it can be
+ * passed around freely between render threads.
  */
 public class Intersection {
 
-    private Primitive primitive;
-    private double distance;
+    // Shared result for rays that don't hit anything
+    public static final Intersection MISS = new Intersection(Double.POSITIVE_INFINITY, null);
+
+    private final Primitive primitive;
+    private final double distance;
+    private final int face;
 
     public Intersection(double distance, Primitive primitive) {
+        this(distance, primitive, 0);
+    }
+
+    /**
+     * @param distance distance along the ray to the point of intersection
+     * @param primitive the primitive that was hit, or null for a miss
+     * @param face index of the part of the primitive that was hit, for primitives made up of several faces (eg: Box)
+     */
+    public Intersection(double distance, Primitive primitive, int face) {
         this.primitive = primitive;
         this.distance = distance;
+        this.face = face;
     }
 
     public Primitive getPrimitive() {
@@ -23,11 +38,36 @@ public class Intersection {
         return distance;
     }
 
+    public int getFace() {
+        return face;
+    }
+
+    // Return the normal of the intersected face at the given point
+    public double[] getNormal(double[] point) {
+        return primitive.getNormal(this, point);
+    }
+
+    // Return texture coordinates of the intersected face at the given point
+    public double[] getTextureCoords(double[] point) {
+        return primitive.getTextureCoords(this, point);
+    }
+
+    // Return the color of the intersected face at the given point
+    public double[] getColorAt(double[] point) {
+        return primitive.getColorAt(this, point);
+    }
+
+    // Return the color at the given point, with textures filtered over a footprint as wide as the given distance
+    public double[] getColorAt(double[] point, double footprint, double[] dest) {
+        return primitive.getColorAt(this, point, footprint, dest);
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("Intersection{");
         sb.append("primitive=").append(primitive);
         sb.append(", distance=").append(distance);
+        sb.append(", face=").append(face);
         sb.append('}');
         return sb.toString();
     }
@@ -1,8 +1,14 @@
 package ex02.entities;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import ex02.blas.BoundingBox;
 import ex02.blas.MathUtils;
 import ex02.entities.lights.Light;
 import ex02.entities.primitives.Primitive;
@@ -17,8 +23,10 @@ public class Scene implements IEntity {
 
     private String name;
     private final List<Primitive> primitives = new ArrayList<>();
+    private final List<Primitive> inactivePrimitives = new ArrayList<>();
     private final List<Light> lights = new ArrayList<>();
     private Camera camera;
+    private BoundingBox bounds = BoundingBox.empty();
 
     private double[] backgroundColor = {0, 0, 0};
     private double[] ambientLight = {0, 0, 0};
@@ -41,6 +49,34 @@ public class Scene implements IEntity {
 
     @Override
     public void postInit(List<IEntity> entities) throws Exception {
+        updateBounds();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        EntityData.writeString(out, name);
+        EntityData.writeVector(out, backgroundColor);
+        EntityData.writeVector(out, ambientLight);
+        out.writeInt(superSampleWidth);
+    }
+
+    // The primitives, lights and camera are read separately and passed to setEntities
+    @Override
+    public void read(ByteBuffer in) {
+        name = EntityData.readString(in);
+        backgroundColor = EntityData.readVector(in);
+        ambientLight = EntityData.readVector(in);
+        superSampleWidth = in.getInt();
+    }
+
+    // Recalculates the union of the bounds of every primitive in the scene
+    private void updateBounds() {
+        final BoundingBox sceneBounds = BoundingBox.empty();
+
+        for (final Primitive primitive : primitives) {
+            sceneBounds.union(primitive.getBounds());
+        }
+        this.bounds = sceneBounds;
     }
 
     // Returns the color of the background (or texture) at the given coordinates
@@ -58,11 +94,18 @@ public class Scene implements IEntity {
 
     // Accepts a list of entities and puts each one in its list or member
     public void setEntities(final List<IEntity> entities) throws Exception {
+        final Set<String> names = new HashSet<>();
+
         for (IEntity entity : entities) {
 
-            // Test to see if it's a primitive
+            // Test to see if it's a primitive, which instances may refer to by its name
             if (entity instanceof Primitive) {
-                primitives.add((Primitive) entity);
+                final Primitive primitive = (Primitive) entity;
+
+                if (primitive.getName() != null && !names.add(primitive.getName())) {
+                    throw new Exception("More than one primitive is named " + primitive.getName());
+                }
+                (primitive.isActive() ? primitives : inactivePrimitives).add(primitive);
                 continue;
             }
 
@@ -87,6 +130,8 @@ public class Scene implements IEntity {
             // We've reached some unknown entity, through an exception
             throw new Exception("Unknown entity type found: " + entity.getClass().getCanonicalName());
         }
+
+        updateBounds();
     }
 
     public void setCanvasSize(int height, int width) {
@@ -100,6 +145,20 @@ public class Scene implements IEntity {
         return primitives;
     }
 
+    /**
+     * @return the primitives that aren't rendered, which are usually shapes that are only rendered through instances
+     */
+    public List<Primitive> getInactivePrimitives() {
+        return inactivePrimitives;
+    }
+
+    /**
+     * @return a box containing every primitive in the scene, empty if there are none
+     */
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
     public double[] getBackgroundColor() {
         return backgroundColor;
     }
@@ -128,22 +187,31 @@ public class Scene implements IEntity {
         return superSampleWidth;
     }
 
+    @Override
+    public boolean setParameter(String name, String[] args) throws Exception {
+        // background textures aren't supported yet, see below, but scenes that name one are still drawn
+        if ("background-tex".equals(name)) return true;
+        return IEntity.super.setParameter(name, args);
+    }
+
     /**
      * Read parameters into members
      * @param name parameter name
-     * @param args parameter value
+     * @param values parameter values
      * @throws Exception
      */
     @Override
-    public void setParameter(String name, String[] args) throws Exception {
-        if ("background-col".equals(name)) backgroundColor = MathUtils.parseVector(args);
+    public boolean setParameter(String name, double[] values) throws Exception {
+        if ("background-col".equals(name)) backgroundColor = MathUtils.toVector(values);
 //        if ("background-tex".equals(name)) {
 //            backgroundTexture = Utils.loadTexture(args[0]);
 //            textureWidth = backgroundTexture.length;
 //            textureHeight = backgroundTexture[0].length;
 //        }
-        if ("ambient-light".equals(name)) ambientLight = MathUtils.parseVector(args);
-        if ("super-samp-width".equals(name)) superSampleWidth = Integer.parseInt(args[0]);
+        else if ("ambient-light".equals(name)) ambientLight = MathUtils.toVector(values);
+        else if ("super-samp-width".equals(name)) superSampleWidth = MathUtils.toInt(values[0]);
+        else return false;
+        return true;
     }
 
     public List<Light> getLights() {
@@ -2,11 +2,10 @@ package ex02.entities;
 
 import ex02.blas.MathUtils;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.awt.image.Raster;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
 import java.util.Arrays;
 
@@ -28,33 +27,26 @@ public class Surface {
     private double[] checkersDiffuse2 = {0.1F, 0.1F, 0.1F};
     private double reflectance = 0.0F;
     private String textureFileName;
-    private Raster texture;
+    private Texture texture;
 
     // Returns the texture color for a given 2D point in [0, 1] coordinates
     public double[] getTextureColor(double[] point2D) {
+        return getTextureColor(point2D, 0, new double[3]);
+    }
+
+    /**
+     * Returns the texture color filtered over the area a sample covers, written into dest so nothing is allocated.
+     * @param point2D texture coordinates, usually in [0, 1]
+     * @param footprint width of the area the sample covers in texture coordinates, or 0 for a single point
+     * @param dest where the color is written, unless there is no texture and the diffuse color is returned instead
+     */
+    public double[] getTextureColor(double[] point2D, double footprint, double[] dest) {
         if(texture == null) {
             // fallback to using the diffuse colour if texture missing
             return getDiffuse();
         }
 
-        final int textureWidth = texture.getWidth();
-        final int textureHeight = texture.getHeight();
-
-        int textureX = textureWidth > 0 ?
-                Math.abs((int) Math.round(point2D[0] * textureWidth)) % textureWidth :
-                Math.abs((int) Math.round(point2D[0] * 0));
-
-        int textureY = textureHeight > 0 ?
-                Math.abs((int) Math.round(point2D[1] * textureHeight)) % textureHeight :
-                Math.abs((int) Math.round(point2D[1] * 0));
-
-        final double[] rgb = this.texture.getPixel(textureX, textureY, new double[]{0, 0, 0});
-
-        rgb[0] = rgb[0] / 255.0f;
-        rgb[1] = rgb[1] / 255.0f;
-        rgb[2] = rgb[2] / 255.0f;
-
-        return rgb;
+        return texture.sample(point2D[0], point2D[1], footprint, dest);
     }
 
     // Returns the checkers color for a given 2D point in [0, 1] coordinates
@@ -74,7 +66,39 @@ public class Surface {
 
     }
 
-    // Read parameters into members
+    // Writes the material, but not the texture which is written once by the scene for all the surfaces using it
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(typeId);
+        EntityData.writeString(out, type);
+        EntityData.writeVector(out, diffuse);
+        EntityData.writeVector(out, specular);
+        EntityData.writeVector(out, ambient);
+        EntityData.writeVector(out, emission);
+        out.writeDouble(shininess);
+        out.writeDouble(checkersSize);
+        EntityData.writeVector(out, checkersDiffuse1);
+        EntityData.writeVector(out, checkersDiffuse2);
+        out.writeDouble(reflectance);
+        EntityData.writeString(out, textureFileName);
+    }
+
+    // Reads what write wrote, leaving the texture to be set separately
+    public void read(ByteBuffer in) {
+        typeId = in.getInt();
+        type = EntityData.readString(in);
+        diffuse = EntityData.readVector(in);
+        specular = EntityData.readVector(in);
+        ambient = EntityData.readVector(in);
+        emission = EntityData.readVector(in);
+        shininess = in.getDouble();
+        checkersSize = in.getDouble();
+        checkersDiffuse1 = EntityData.readVector(in);
+        checkersDiffuse2 = EntityData.readVector(in);
+        reflectance = in.getDouble();
+        textureFileName = EntityData.readString(in);
+    }
+
+    // Reads the parameters that aren't numbers into members, returning false for any other parameter
     public boolean parseParameter(String name, String[] args) throws Exception {
         boolean parsed = false;
 
@@ -86,56 +110,63 @@ public class Surface {
             if ("checkers".equals(args[0])) typeId = TYPE_CHECKERS;
             if ("texture".equals(args[0])) typeId = TYPE_TEXTURE;
         }
+        if ("texture".equals(name)) {
+            textureFileName = args[0];
+            parsed = true;
+
+            try {
+                final File textureFile = Paths.get(textureFileName).toFile();
+
+                // surfaces that name the same file share one texture
+                if(textureFile.canRead()) {
+                    this.texture = TextureCache.getShared().get(textureFile.toPath());
+                }
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return parsed;
+    }
+
+    // Reads the parameters that are numbers into members
+    public boolean parseParameter(String name, double[] values) throws Exception {
+        boolean parsed = false;
 
         if ("mtl-diffuse".equals(name)) {
-            diffuse = MathUtils.parseVector(args);
+            diffuse = MathUtils.toVector(values);
             parsed = true;
         }
         if ("mtl-specular".equals(name)) {
-            specular = MathUtils.parseVector(args);
+            specular = MathUtils.toVector(values);
             parsed = true;
         }
         if ("mtl-ambient".equals(name)) {
-            ambient = MathUtils.parseVector(args);
+            ambient = MathUtils.toVector(values);
             parsed = true;
         }
         if ("mtl-emission".equals(name)) {
-            emission = MathUtils.parseVector(args);
+            emission = MathUtils.toVector(values);
             parsed = true;
         }
         if ("mtl-shininess".equals(name)) {
-            shininess = Double.parseDouble(args[0]);
+            shininess = values[0];
             parsed = true;
         }
         if ("checkers-size".equals(name)) {
-            checkersSize = Double.parseDouble(args[0]);
+            checkersSize = values[0];
             parsed = true;
         }
         if ("checkers-diffuse1".equals(name)) {
-            checkersDiffuse1 = MathUtils.parseVector(args);
+            checkersDiffuse1 = MathUtils.toVector(values);
             parsed = true;
         }
         if ("checkers-diffuse2".equals(name)) {
-            checkersDiffuse2 = MathUtils.parseVector(args);
+            checkersDiffuse2 = MathUtils.toVector(values);
             parsed = true;
         }
-        if ("texture".equals(name)) {
-            textureFileName = args[0];
-            parsed = true;
-
-            try {
-                final File textureFile = Paths.get(textureFileName).toFile();
-
-                if(textureFile.canRead()) {
-                    final BufferedImage image = ImageIO.read(textureFile);
-                    this.texture = image.getData();
-                }
-            } catch (final IOException e) {
-                e.printStackTrace();
-            }
-        }
         if ("reflectance".equals(name)) {
-            reflectance = Double.parseDouble(args[0]);
+            reflectance = values[0];
             parsed = true;
         }
 
@@ -222,6 +253,14 @@ public class Surface {
         this.reflectance = reflectance;
     }
 
+    public Texture getTexture() {
+        return texture;
+    }
+
+    public void setTexture(Texture texture) {
+        this.texture = texture;
+    }
+
     public int getTypeId() {
         return typeId;
     }
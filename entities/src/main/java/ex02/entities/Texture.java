@@ -0,0 +1,414 @@
+package ex02.entities;
+
+import java.awt.image.BufferedImage;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An image decoded into RGB floats from 0 to 1, along with a mipmap pyramid of copies each half the size of the
+ * one before, down to a single texel. Samples are filtered bilinearly, and when the area a sample covers is bigger
+ * than a texel they blend the two levels whose texels are nearest its size (trilinear filtering), so that a texture
+ * seen from far away is averaged rather than aliased.
+ * <p>
+ * Every level is split into square tiles. Textures created from an image or an array keep all of their tiles, while
+ * those loaded through a {@link TextureCache} only hold the tiles that have been sampled recently, so that big
+ * textures don't have to fit on the heap.
+ * <p>
+ * Texture coordinates repeat outside [0, 1). Texel i of a row is centred on u = i / width, as it was with the
+ * nearest neighbour sampling that came before, so filtering doesn't shift the image.
+ * Sampling doesn't allocate, other than to load a tile, and is safe from several threads at once.
+ */
+public final class Texture {
+
+    static final int TILE_SHIFT = 6;
+    static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    private static final double LOG_2 = Math.log(2);
+
+    private final int[] widths;
+    private final int[] heights;
+    private final int[] tilesAcross;    // number of tiles in each row of a level
+    private final double[] offsets;     // how far the centre of texel 0 of each level is from that of the full size one
+    private final AtomicReferenceArray<Tile>[] tiles;   // row by row, null where the cache doesn't hold the tile
+
+    private final TileSource source;    // only kept when tiles are loaded on demand
+    private final TextureCache cache;   // null when every tile is kept
+
+    public Texture(final BufferedImage image) {
+        this(image.getWidth(), image.getHeight(), decode(image));
+    }
+
+    /**
+     * @param rgb width * height texels, row by row, each three values from 0 to 1
+     */
+    public Texture(final int width, final int height, final float[] rgb) {
+        this(width, height, arraySource(width, height, rgb), null);
+    }
+
+    // Tiles are loaded through the cache when it's given, or all of them are created now when it isn't
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Texture(final int width, final int height, final TileSource source, final TextureCache cache) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("A texture needs at least one texel");
+        }
+
+        final int count = 1 + log2(Math.max(width, height));
+        this.widths = new int[count];
+        this.heights = new int[count];
+        this.tilesAcross = new int[count];
+        this.offsets = new double[count];
+        this.tiles = new AtomicReferenceArray[count];
+        this.source = cache != null ? source : null;
+        this.cache = cache;
+
+        for (int level = 0; level < count; level++) {
+            widths[level] = level == 0 ? width : Math.max(1, widths[level - 1] / 2);
+            heights[level] = level == 0 ? height : Math.max(1, heights[level - 1] / 2);
+            offsets[level] = 0.5 - 0.5 / (1 << level);
+            tilesAcross[level] = tileCount(widths[level]);
+            tiles[level] = new AtomicReferenceArray<>(tilesAcross[level] * tileCount(heights[level]));
+        }
+
+        if (cache == null) {
+            // levels are built in order, as each is made from the one before
+            for (int level = 0; level < count; level++) {
+                for (int tileY = 0; tileY < tileCount(heights[level]); tileY++) {
+                    for (int tileX = 0; tileX < tilesAcross[level]; tileX++) {
+                        tiles[level].set(tileY * tilesAcross[level] + tileX, createTile(level, tileX, tileY, source));
+                    }
+                }
+            }
+        }
+    }
+
+    public int getWidth() {
+        return widths[0];
+    }
+
+    public int getHeight() {
+        return heights[0];
+    }
+
+    /**
+     * @return number of mipmap levels, including the full size image
+     */
+    public int getLevelCount() {
+        return widths.length;
+    }
+
+    /**
+     * Writes the width, the height and then the texels of the full size image as 8 bit RGB values, a tile at a time
+     * in the layout of {@link TextureFile}, so that {@link TextureCache#read(java.nio.ByteBuffer)} can load tiles straight
+     * from them. The smaller levels aren't written as they are built again when needed.
+     * @throws UncheckedIOException if a tile had to be loaded and couldn't be read
+     */
+    public void write(final DataOutput out) throws IOException {
+        out.writeInt(widths[0]);
+        out.writeInt(heights[0]);
+
+        for (int tileY = 0; tileY < tileCount(heights[0]); tileY++) {
+            for (int tileX = 0; tileX < tilesAcross[0]; tileX++) {
+                final float[] texels = storedTile(0, tileX, tileY).texels;
+                final byte[] bytes = new byte[texels.length];
+
+                for (int i = 0; i < texels.length; i++) {
+                    bytes[i] = (byte) Math.round(texels[i] * 255);
+                }
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Filters the texture over the area a sample covers.
+     * @param u horizontal texture coordinate
+     * @param v vertical texture coordinate
+     * @param footprint width of the area the sample covers, in texture coordinates (eg: 0.01 is a hundredth of the
+     *                  texture), or 0 for a single point
+     * @param dest where the RGB color is written
+     * @return dest
+     * @throws UncheckedIOException if a tile had to be loaded and couldn't be read
+     */
+    public double[] sample(final double u, final double v, final double footprint, final double[] dest) {
+        final double texels = footprint * Math.max(widths[0], heights[0]);
+        final int last = widths.length - 1;
+
+        // magnified, or no bigger than a texel of the full size image
+        if (!(texels > 1)) {
+            return bilinear(0, u, v, dest, 1);
+        }
+
+        final double level = Math.log(texels) / LOG_2;
+        if (level >= last) {
+            return bilinear(last, u, v, dest, 1);
+        }
+
+        final int lower = (int) level;
+        final double blend = level - lower;
+
+        bilinear(lower, u, v, dest, 1 - blend);
+        return addBilinear(lower + 1, u, v, dest, blend);
+    }
+
+    // writes the bilinear sample of the level, scaled by weight, into dest
+    private double[] bilinear(final int level, final double u, final double v, final double[] dest, final double weight) {
+        dest[0] = 0;
+        dest[1] = 0;
+        dest[2] = 0;
+        return addBilinear(level, u, v, dest, weight);
+    }
+
+    private double[] addBilinear(final int level, final double u, final double v, final double[] dest, final double weight) {
+        final int width = widths[level];
+        final int height = heights[level];
+
+        // texel j of a smaller level averages the texels of the full size image centred around its own centre
+        final double x = u * width - offsets[level];
+        final double y = v * height - offsets[level];
+        final double left = Math.floor(x);
+        final double top = Math.floor(y);
+        final double fx = x - left;
+        final double fy = y - top;
+
+        final int x0 = wrap((long) left, width);
+        final int y0 = wrap((long) top, height);
+        final int x1 = x0 + 1 == width ? 0 : x0 + 1;
+        final int y1 = y0 + 1 == height ? 0 : y0 + 1;
+
+        // the four texels are nearly always in the same tile
+        final boolean sameColumn = x0 >> TILE_SHIFT == x1 >> TILE_SHIFT;
+        final boolean sameRow = y0 >> TILE_SHIFT == y1 >> TILE_SHIFT;
+
+        final Tile topLeft = tile(level, x0 >> TILE_SHIFT, y0 >> TILE_SHIFT);
+        final Tile topRight = sameColumn ? topLeft : tile(level, x1 >> TILE_SHIFT, y0 >> TILE_SHIFT);
+        final Tile bottomLeft = sameRow ? topLeft : tile(level, x0 >> TILE_SHIFT, y1 >> TILE_SHIFT);
+        final Tile bottomRight = sameRow ? topRight : sameColumn ? bottomLeft : tile(level, x1 >> TILE_SHIFT, y1 >> TILE_SHIFT);
+
+        final float[] t00 = topLeft.texels;
+        final float[] t10 = topRight.texels;
+        final float[] t01 = bottomLeft.texels;
+        final float[] t11 = bottomRight.texels;
+        final int i00 = topLeft.offset(x0, y0);
+        final int i10 = topRight.offset(x1, y0);
+        final int i01 = bottomLeft.offset(x0, y1);
+        final int i11 = bottomRight.offset(x1, y1);
+
+        for (int c = 0; c < 3; c++) {
+            final double upper = t00[i00 + c] + (t10[i10 + c] - t00[i00 + c]) * fx;
+            final double lower = t01[i01 + c] + (t11[i11 + c] - t01[i01 + c]) * fx;
+            dest[c] += weight * (upper + (lower - upper) * fy);
+        }
+        return dest;
+    }
+
+    private Tile tile(final int level, final int tileX, final int tileY) {
+        final Tile tile = tiles[level].get(tileY * tilesAcross[level] + tileX);
+
+        if (cache == null) {
+            return tile;
+        }
+        if (tile != null) {
+            tile.markUsed();
+            cache.recordHit();
+            return tile;
+        }
+
+        final Tile loaded = cache.load(this, level, tileX, tileY);
+        loaded.markUsed();
+        return loaded;
+    }
+
+    // Called by the cache, without its lock, to read or build a tile it doesn't have
+    Tile createTile(final int level, final int tileX, final int tileY) {
+        return createTile(level, tileX, tileY, source);
+    }
+
+    private Tile createTile(final int level, final int tileX, final int tileY, final TileSource source) {
+        final int x = tileX << TILE_SHIFT;
+        final int y = tileY << TILE_SHIFT;
+        final int width = Math.min(TILE_SIZE, widths[level] - x);
+        final int height = Math.min(TILE_SIZE, heights[level] - y);
+        final float[] texels = new float[width * height * 3];
+
+        if (level == 0) {
+            try {
+                source.readTile(tileX, tileY, width, height, texels);
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Failed to read a tile of the texture", e);
+            }
+        } else {
+            downsample(level, x, y, width, height, texels);
+        }
+        return new Tile(this, level, tileY * tilesAcross[level] + tileX, width, texels);
+    }
+
+    // Box filter, each texel averaging the 2x2 texels under it (or fewer along an edge that is down to 1 texel)
+    private void downsample(final int level, final int x, final int y, final int width, final int height,
+                            final float[] texels) {
+        final int stepX = widths[level - 1] > 1 ? 2 : 1;
+        final int stepY = heights[level - 1] > 1 ? 2 : 1;
+
+        // the tiles below are fetched once and held, as the cache may evict them while the others are loaded
+        final int firstTileX = (x * stepX) >> TILE_SHIFT;
+        final int firstTileY = (y * stepY) >> TILE_SHIFT;
+        final int lastTileX = ((x + width) * stepX - 1) >> TILE_SHIFT;
+        final int lastTileY = ((y + height) * stepY - 1) >> TILE_SHIFT;
+        final Tile[][] below = new Tile[lastTileY - firstTileY + 1][lastTileX - firstTileX + 1];
+
+        for (int tileY = firstTileY; tileY <= lastTileY; tileY++) {
+            for (int tileX = firstTileX; tileX <= lastTileX; tileX++) {
+                below[tileY - firstTileY][tileX - firstTileX] = storedTile(level - 1, tileX, tileY);
+            }
+        }
+
+        final float[] sums = new float[3];
+
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                final int sourceX = (x + column) * stepX;
+                final int sourceY = (y + row) * stepY;
+                sums[0] = 0;
+                sums[1] = 0;
+                sums[2] = 0;
+
+                for (int dy = 0; dy < stepY; dy++) {
+                    for (int dx = 0; dx < stepX; dx++) {
+                        final Tile tile = below[((sourceY + dy) >> TILE_SHIFT) - firstTileY][((sourceX + dx) >> TILE_SHIFT) - firstTileX];
+                        final int offset = tile.offset(sourceX + dx, sourceY + dy);
+                        sums[0] += tile.texels[offset];
+                        sums[1] += tile.texels[offset + 1];
+                        sums[2] += tile.texels[offset + 2];
+                    }
+                }
+
+                for (int c = 0; c < 3; c++) {
+                    texels[(row * width + column) * 3 + c] = sums[c] / (stepX * stepY);
+                }
+            }
+        }
+    }
+
+    // As tile(), but building a tile from the level below isn't counted as sampling it, and tiles that are only
+    // loaded to build another are the first to be evicted
+    private Tile storedTile(final int level, final int tileX, final int tileY) {
+        final Tile tile = tiles[level].get(tileY * tilesAcross[level] + tileX);
+        return tile != null ? tile : cache.load(this, level, tileX, tileY);
+    }
+
+    // Called by the cache with its lock held
+    Tile getStored(final int level, final int tileX, final int tileY) {
+        return tiles[level].get(tileY * tilesAcross[level] + tileX);
+    }
+
+    // Called by the cache with its lock held
+    void store(final Tile tile) {
+        tiles[tile.level].set(tile.index, tile);
+    }
+
+    // Called by the cache with its lock held, threads that are still using the tile can carry on
+    void evict(final Tile tile) {
+        tiles[tile.level].compareAndSet(tile.index, tile, null);
+    }
+
+    // Coordinates are nearly always in [0, 1) already, so the division is only needed for the few that aren't
+    private static int wrap(final long texel, final int size) {
+        return texel >= 0 && texel < size ? (int) texel : Math.floorMod(texel, size);
+    }
+
+    private static int tileCount(final int texels) {
+        return (texels + TILE_SIZE - 1) >> TILE_SHIFT;
+    }
+
+    private static float[] decode(final BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+        final float[] rgb = new float[argb.length * 3];
+
+        for (int i = 0; i < argb.length; i++) {
+            rgb[i * 3] = ((argb[i] >> 16) & 0xff) / 255f;
+            rgb[i * 3 + 1] = ((argb[i] >> 8) & 0xff) / 255f;
+            rgb[i * 3 + 2] = (argb[i] & 0xff) / 255f;
+        }
+        return rgb;
+    }
+
+    private static TileSource arraySource(final int width, final int height, final float[] rgb) {
+        if (rgb.length != width * height * 3) {
+            throw new IllegalArgumentException("Expected " + width * height * 3 + " values for a " + width + "x" + height + " texture");
+        }
+
+        return (tileX, tileY, tileWidth, tileHeight, dest) -> {
+            for (int row = 0; row < tileHeight; row++) {
+                final int from = (((tileY << TILE_SHIFT) + row) * width + (tileX << TILE_SHIFT)) * 3;
+                System.arraycopy(rgb, from, dest, row * tileWidth * 3, tileWidth * 3);
+            }
+        };
+    }
+
+    private static int log2(final int value) {
+        return 31 - Integer.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Where the texels of the full size image come from, a tile at a time.
+     */
+    interface TileSource {
+
+        /**
+         * Writes the tile's texels into dest row by row, three values from 0 to 1 for each.
+         * The tile starts at texel (tileX * TILE_SIZE, tileY * TILE_SIZE) and is only smaller than TILE_SIZE
+         * along the right and bottom edges of the image.
+         */
+        void readTile(int tileX, int tileY, int width, int height, float[] dest) throws IOException;
+    }
+
+    /**
+     * A square of texels from one level, in packed RGB rows.
+     */
+    static final class Tile {
+
+        final Texture texture;
+        final int level;
+        final int index;
+        final int width;
+        final float[] texels;
+
+        // set when the tile is sampled and cleared as the cache looks for one to evict
+        private volatile boolean used;
+
+        Tile(final Texture texture, final int level, final int index, final int width, final float[] texels) {
+            this.texture = texture;
+            this.level = level;
+            this.index = index;
+            this.width = width;
+            this.texels = texels;
+        }
+
+        // index of the first value of the texel, given the coordinates of the texel in the level
+        int offset(final int x, final int y) {
+            return ((y & TILE_MASK) * width + (x & TILE_MASK)) * 3;
+        }
+
+        long getBytes() {
+            return texels.length * (long) Float.BYTES;
+        }
+
+        void markUsed() {
+            // skip the write when it's already set so that threads sampling the same tile don't share a dirty line
+            if (!used) {
+                used = true;
+            }
+        }
+
+        // Clears the flag, returning whether it was set
+        boolean clearUsed() {
+            final boolean wasUsed = used;
+            used = false;
+            return wasUsed;
+        }
+    }
+}
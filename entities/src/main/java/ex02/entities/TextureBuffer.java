@@ -0,0 +1,31 @@
+package ex02.entities;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The texels of an image held in a buffer, usually part of a memory mapped compiled scene, in the same layout of
+ * 8 bit RGB tiles as a {@link TextureFile}. Tiles are read with absolute gets, so any number of threads can read
+ * them at once.
+ */
+final class TextureBuffer implements Texture.TileSource {
+
+    private final int width;
+    private final int height;
+    private final ByteBuffer buffer;
+
+    TextureBuffer(final int width, final int height, final ByteBuffer buffer) {
+        this.width = width;
+        this.height = height;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void readTile(final int tileX, final int tileY, final int tileWidth, final int tileHeight,
+                         final float[] dest) {
+        final int position = (int) TextureFile.position(width, height, tileX, tileY);
+
+        for (int i = 0; i < dest.length; i++) {
+            dest[i] = (buffer.get(position + i) & 0xff) / 255f;
+        }
+    }
+}
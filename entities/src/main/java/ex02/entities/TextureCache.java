@@ -0,0 +1,320 @@
+package ex02.entities;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads each texture file once, however many surfaces use it, and holds the tiles of texels that have been sampled
+ * recently up to a memory budget. When the budget is full, loading a tile evicts one that hasn't been used lately,
+ * which is chosen with the clock algorithm: an approximation of least recently used that only needs a flag to be
+ * set when a tile is sampled, so that hits don't take a lock.
+ * <p>
+ * Images are decoded when first requested into a temporary file of tiles, from which evicted tiles are read back
+ * quickly. Tiles of the smaller mipmap levels are built from the level below as they are needed. The file is
+ * deleted once its texture can no longer be reached, which is after the image has changed and been decoded again
+ * and nothing samples the old texture any more, or when the cache is closed.
+ * <p>
+ * The shared cache, used when scenes are parsed, lasts for the life of the process and has a budget of a quarter
+ * of the maximum heap size unless it is changed.
+ */
+public final class TextureCache implements Closeable {
+
+    private static final TextureCache SHARED = new TextureCache(Runtime.getRuntime().maxMemory() / 4);
+
+    // deletes the file of a texture that has been replaced once the surfaces that had it are gone
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                SHARED.close();
+            } catch (final IOException e) {
+                // the temporary files are left behind, which is all that can be done while exiting
+            }
+        }, "texture-cache-shutdown"));
+    }
+
+    private final ConcurrentMap<Path, Entry> textures = new ConcurrentHashMap<>();
+
+    // tiles held by the cache, which the hand sweeps round looking for one that hasn't been used since it last passed
+    private final List<Texture.Tile> tiles = new ArrayList<>();
+    private int hand;
+
+    private long memoryBudget;
+    private long residentBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param memoryBudget the number of bytes of texels to hold before tiles are evicted
+     */
+    public TextureCache(final long memoryBudget) {
+        setMemoryBudget(memoryBudget);
+    }
+
+    /**
+     * @return the cache that scenes load their textures through
+     */
+    public static TextureCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the texture for an image file, only decoding it the first time it is requested or when the file has
+     * changed since. Different paths to the same file share a texture. A texture that is replaced because the file
+     * changed keeps working for the surfaces that already have it.
+     * <p>
+     * The image is decoded without holding up requests for other files, so two threads that ask for the same new
+     * image at once may both decode it, in which case the texture of the first is kept.
+     * @throws IOException if the file can't be read or isn't an image
+     */
+    public Texture get(final Path path) throws IOException {
+        final Path canonicalPath = path.toRealPath();
+        final FileTime modified = Files.getLastModifiedTime(canonicalPath);
+
+        final Entry cached = textures.get(canonicalPath);
+        if (cached != null && cached.modified.equals(modified)) {
+            return cached.texture;
+        }
+
+        final TextureFile file = TextureFile.decode(canonicalPath, decodeBudget());
+        final Texture texture = file.createTexture(this);
+        CLEANER.register(texture, () -> closeQuietly(file));
+        final Entry decoded = new Entry(modified, file, texture);
+
+        // an entry for the same or a later version of the file that another thread put in meanwhile is kept
+        final Entry loaded = textures.merge(canonicalPath, decoded,
+                (current, fresh) -> current.modified.compareTo(fresh.modified) >= 0 ? current : fresh);
+        if (loaded != decoded) {
+            file.close();
+        }
+        return loaded.texture;
+    }
+
+    private static void closeQuietly(final TextureFile file) {
+        try {
+            file.close();
+        } catch (final IOException e) {
+            // the temporary file is left behind, as there's no one to tell
+        }
+    }
+
+    /**
+     * Reads a texture written by {@link Texture#write(java.io.DataOutput)} from the buffer's position, which is
+     * moved past it. The texels aren't copied: tiles are loaded from the buffer through the cache as they are
+     * sampled, so the buffer must not be changed while the texture is in use.
+     * @throws IllegalArgumentException if the buffer doesn't hold all of the texels
+     */
+    public Texture read(final ByteBuffer buffer) {
+        final int width = buffer.getInt();
+        final int height = buffer.getInt();
+        final long size = (long) width * height * 3;
+
+        if (width < 1 || height < 1 || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid texture of " + width + "x" + height + " texels");
+        }
+
+        final ByteBuffer texels = buffer.slice();
+        texels.limit((int) size);
+        buffer.position(buffer.position() + (int) size);
+
+        return new Texture(width, height, new TextureBuffer(width, height, texels), this);
+    }
+
+    /**
+     * @return the number of texture files that have been loaded
+     */
+    public int getTextureCount() {
+        return textures.size();
+    }
+
+    // The file the image was decoded into, or null if it hasn't been loaded
+    Path getFile(final Path path) throws IOException {
+        final Entry entry = textures.get(path.toRealPath());
+        return entry != null ? entry.file.getFile() : null;
+    }
+
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Evicts tiles straight away if the cache holds more than the new budget.
+     */
+    public synchronized void setMemoryBudget(final long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("The memory budget can't be negative");
+        }
+        this.memoryBudget = memoryBudget;
+        evict(null);
+    }
+
+    /**
+     * @return the number of bytes of texels held in tiles
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * @return the number of times a tile was sampled while the cache held it
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of tiles that had to be read or built because the cache didn't hold them
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of tiles evicted to stay within the memory budget
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // Called by Texture for every sample of a tile the cache holds
+    void recordHit() {
+        hits.increment();
+    }
+
+    // Called by Texture for a tile it doesn't have. The tile is read or built without the lock, so that a miss
+    // doesn't hold up the other threads, and if two threads load the same tile the first to store it wins.
+    Texture.Tile load(final Texture texture, final int level, final int tileX, final int tileY) {
+        synchronized (this) {
+            // another thread may have loaded it while this one waited
+            final Texture.Tile stored = texture.getStored(level, tileX, tileY);
+            if (stored != null) {
+                return stored;
+            }
+        }
+
+        final Texture.Tile tile = texture.createTile(level, tileX, tileY);
+
+        synchronized (this) {
+            final Texture.Tile stored = texture.getStored(level, tileX, tileY);
+            if (stored != null) {
+                return stored;
+            }
+
+            texture.store(tile);
+            tiles.add(tile);
+            residentBytes += tile.getBytes();
+            misses++;
+
+            evict(tile);
+            return tile;
+        }
+    }
+
+    // Evicts tiles until the cache is within its budget, other than the one given
+    private void evict(final Texture.Tile keep) {
+        while (residentBytes > memoryBudget && tiles.size() > (keep != null ? 1 : 0)) {
+            if (hand >= tiles.size()) {
+                hand = 0;
+            }
+
+            final Texture.Tile tile = tiles.get(hand);
+
+            // tiles used since the hand last passed get another chance
+            if (tile == keep || tile.clearUsed()) {
+                hand++;
+                continue;
+            }
+
+            // the last tile takes its place so the list doesn't have to shift
+            tiles.set(hand, tiles.get(tiles.size() - 1));
+            tiles.remove(tiles.size() - 1);
+
+            tile.texture.evict(tile);
+            residentBytes -= tile.getBytes();
+            evictions++;
+        }
+    }
+
+    // Images are decoded a band of rows at a time, taking up to a quarter of the budget
+    private synchronized long decodeBudget() {
+        return memoryBudget / 4;
+    }
+
+    /**
+     * Drops every tile and deletes the files that the textures of the images that are cached were decoded into,
+     * after which those textures can no longer load tiles. Textures read from a buffer can still load theirs, but
+     * the cache no longer keeps them or their buffers. Closing the shared cache is left to the shutdown of the
+     * process.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            for (final Texture.Tile tile : tiles) {
+                tile.texture.evict(tile);
+            }
+            tiles.clear();
+            hand = 0;
+            residentBytes = 0;
+        }
+
+        IOException failure = null;
+        for (final Path path : textures.keySet()) {
+            final Entry entry = textures.remove(path);
+            if (entry == null) {
+                continue;
+            }
+            try {
+                entry.file.close();
+            } catch (final IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("TextureCache{");
+        sb.append("textures=").append(getTextureCount());
+        sb.append(", memoryBudget=").append(getMemoryBudget());
+        sb.append(", residentBytes=").append(getResidentBytes());
+        sb.append(", hits=").append(getHits());
+        sb.append(", misses=").append(getMisses());
+        sb.append(", evictions=").append(getEvictions());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static final class Entry {
+
+        final FileTime modified;
+        final TextureFile file;
+        final Texture texture;
+
+        Entry(final FileTime modified, final TextureFile file, final Texture texture) {
+            this.modified = modified;
+            this.file = file;
+            this.texture = texture;
+        }
+    }
+}
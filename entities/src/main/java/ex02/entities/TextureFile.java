@@ -0,0 +1,176 @@
+package ex02.entities;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import static ex02.entities.Texture.TILE_SHIFT;
+import static ex02.entities.Texture.TILE_SIZE;
+
+/**
+ * The texels of an image, decoded once into a temporary file of 8 bit RGB values laid out a tile at a time, so
+ * that the cache can read any tile back with a single read rather than decoding the image again.
+ * The file is deleted when this is closed.
+ */
+final class TextureFile implements Texture.TileSource, Closeable {
+
+    private final int width;
+    private final int height;
+    private final Path file;
+    private final FileChannel channel;
+
+    private TextureFile(final int width, final int height, final Path file, final FileChannel channel) {
+        this.width = width;
+        this.height = height;
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Decodes the image a band of rows at a time, so that an image bigger than the heap can still be loaded.
+     * @param bandBytes roughly how much memory a band may take, although a band is always at least a tile high
+     */
+    static TextureFile decode(final Path image, final long bandBytes) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(image.toFile())) {
+            final Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unable to read " + image + " as an image");
+            }
+
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                return decode(reader, bandBytes);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static TextureFile decode(final ImageReader reader, final long bandBytes) throws IOException {
+        final int width = reader.getWidth(0);
+        final int height = reader.getHeight(0);
+
+        final Path file = Files.createTempFile("texture", ".rgb");
+        FileChannel channel = null;
+
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            // a whole number of rows of tiles at 4 bytes a pixel, which is as much as a decoded image usually takes
+            final long tileRowBytes = (long) width * TILE_SIZE * 4;
+            final int bandHeight = (int) Math.min(height, Math.max(1, bandBytes / tileRowBytes) * TILE_SIZE);
+            final int[] argb = new int[width * TILE_SIZE];
+
+            for (int bandY = 0; bandY < height; bandY += bandHeight) {
+                final ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(0, bandY, width, Math.min(bandHeight, height - bandY)));
+                final BufferedImage band = reader.read(0, param);
+
+                for (int y = 0; y < band.getHeight(); y += TILE_SIZE) {
+                    final int rows = Math.min(TILE_SIZE, band.getHeight() - y);
+                    band.getRGB(0, y, width, rows, argb, 0, width);
+                    writeTileRow(channel, width, height, (bandY + y) >> TILE_SHIFT, rows, argb);
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                Files.deleteIfExists(file);
+            } catch (final IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        return new TextureFile(width, height, file, channel);
+    }
+
+    private static void writeTileRow(final FileChannel channel, final int width, final int height, final int tileY,
+                                     final int rows, final int[] argb) throws IOException {
+        for (int tileX = 0; tileX << TILE_SHIFT < width; tileX++) {
+            final int x = tileX << TILE_SHIFT;
+            final int columns = Math.min(TILE_SIZE, width - x);
+            final ByteBuffer buffer = ByteBuffer.allocate(columns * rows * 3);
+
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    final int pixel = argb[row * width + x + column];
+                    buffer.put((byte) (pixel >> 16));
+                    buffer.put((byte) (pixel >> 8));
+                    buffer.put((byte) pixel);
+                }
+            }
+
+            buffer.flip();
+            write(channel, buffer, position(width, height, tileX, tileY));
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    Texture createTexture(final TextureCache cache) {
+        return new Texture(width, height, this, cache);
+    }
+
+    @Override
+    public void readTile(final int tileX, final int tileY, final int tileWidth, final int tileHeight,
+                         final float[] dest) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(tileWidth * tileHeight * 3);
+        long position = position(width, height, tileX, tileY);
+
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("The texture file ended early");
+            }
+            position += read;
+        }
+
+        for (int i = 0; i < dest.length; i++) {
+            dest[i] = (buffer.get(i) & 0xff) / 255f;
+        }
+    }
+
+    /**
+     * Closes and deletes the file, which can be done more than once. Textures created from it can no longer load
+     * tiles that aren't in the cache.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Tiles are stored row by row, every row of tiles but the last being a full tile high
+    static long position(final int width, final int height, final int tileX, final int tileY) {
+        final int y = tileY << TILE_SHIFT;
+        final int rows = Math.min(TILE_SIZE, height - y);
+        return ((long) y * width + (long) (tileX << TILE_SHIFT) * rows) * 3;
+    }
+
+    private static void write(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
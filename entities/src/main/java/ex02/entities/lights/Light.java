@@ -1,5 +1,10 @@
 package ex02.entities.lights;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
 
 public abstract class Light implements IEntity {	
@@ -10,6 +15,18 @@ public abstract class Light implements IEntity {
 	public abstract double[] getAmountOfLight(double[] point);
 
 	public abstract double[] getVectorToLight(double[] pointOfIntersection);
+
+	// As getAmountOfLight(double[]) but writes the result into dest, lights used while rendering avoid allocating
+	public double[] getAmountOfLight(double[] point, double[] dest) {
+		System.arraycopy(getAmountOfLight(point), 0, dest, 0, 3);
+		return dest;
+	}
+
+	// As getVectorToLight(double[]) but writes the result into dest, lights used while rendering avoid allocating
+	public double[] getVectorToLight(double[] pointOfIntersection, double[] dest) {
+		System.arraycopy(getVectorToLight(pointOfIntersection), 0, dest, 0, 3);
+		return dest;
+	}
 	
 	public double[] getPosition() {
 		return position;
@@ -30,4 +47,16 @@ public abstract class Light implements IEntity {
 	public void setColor(double red, double green, double blue) {
 		this.color = new double[] {red, green, blue};
 	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		EntityData.writeVector(out, position);
+		EntityData.writeVector(out, color);
+	}
+
+	@Override
+	public void read(ByteBuffer in) {
+		position = EntityData.readVector(in);
+		color = EntityData.readVector(in);
+	}
 }
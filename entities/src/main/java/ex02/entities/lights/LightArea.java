@@ -1,69 +1,135 @@
 package ex02.entities.lights;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import ex02.blas.MathUtils;
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
 
-// Note: LightArea instances are only alive during parse-time. As soon as a LightArea has been fully parsed,
-// it replaces itself with a grid of point-lights and ceases to exist.
+// A parallelogram of light with corners p0, p1 and p2. The ray tracer samples points on it for every shading point,
+// grid-width being the number of samples along each edge unless the render options set a budget for shadow rays.
 public class LightArea extends Light {
 
 	private double[] p0, p1, p2;
     private double[] attenuation = {1, 0, 0};
     private int gridWidth = 1;
 
+	// the edges from p0, precomputed for getPointAt()
+	private double[] p1Offset, p2Offset;
+
 	@Override
-	public void setParameter(String name, String[] args) throws Exception {
-		if ("p0".equals(name)) p0 = MathUtils.parseVector(args);
-		if ("p1".equals(name)) p1 = MathUtils.parseVector(args);
-		if ("p2".equals(name)) p2 = MathUtils.parseVector(args);
-		if ("grid-width".equals(name)) gridWidth = Integer.parseInt(args[0]);		
-		if ("attenuation".equals(name)) attenuation = MathUtils.parseVector(args);
-		if ("color".equals(name)) setColor(MathUtils.parseVector(args));
+	public boolean setParameter(String name, double[] values) throws Exception {
+		if ("p0".equals(name)) p0 = MathUtils.toVector(values);
+		else if ("p1".equals(name)) p1 = MathUtils.toVector(values);
+		else if ("p2".equals(name)) p2 = MathUtils.toVector(values);
+		else if ("grid-width".equals(name)) gridWidth = MathUtils.toInt(values[0]);
+		else if ("attenuation".equals(name)) attenuation = MathUtils.toVector(values);
+		else if ("color".equals(name)) setColor(MathUtils.toVector(values));
+		else return false;
+		return true;
 	}
-	
-	// This method will be never called (see class notes).
+
+	// The light arriving from the whole area as if it were all at its center
     @Override
 	public double[] getAmountOfLight(double[] point) {
-		return null;
+		return getAmountOfLight(point, getPosition(), 1, new double[3]);
+	}
+
+	/**
+	 * The light arriving at a point from one of several samples on the area, each sample carrying an equal share
+	 * of the light.
+	 * @param point the point being lit
+	 * @param lightPoint the sample on the area, see {@link #getPointAt(double, double, double[])}
+	 * @param samples the number of samples the area is split into
+	 * @param dest where to write the color of the light
+	 * @return dest
+	 */
+	public double[] getAmountOfLight(double[] point, double[] lightPoint, int samples, double[] dest) {
+		double d = MathUtils.distance(lightPoint, point);
+
+		double totalAttenuation = 1 / (samples * (attenuation[2] * d * d + attenuation[1] * d + attenuation[0]));
+
+		return MathUtils.multiplyScalar(this.getColor(), totalAttenuation, dest);
+	}
+
+	/**
+	 * @param u position along the edge from p0 to p1, from 0 to 1
+	 * @param v position along the edge from p0 to p2, from 0 to 1
+	 * @param dest where to write the point
+	 * @return dest
+	 */
+	public double[] getPointAt(double u, double v, double[] dest) {
+		dest[0] = p0[0] + u * p1Offset[0] + v * p2Offset[0];
+		dest[1] = p0[1] + u * p1Offset[1] + v * p2Offset[1];
+		dest[2] = p0[2] + u * p1Offset[2] + v * p2Offset[2];
+		return dest;
+	}
+
+	public int getGridWidth() {
+		return gridWidth;
 	}
 
 	@Override
 	public void postInit(List<IEntity> entities) throws Exception {
-		// Replace the LightArea with a grid of point-light objects.
-		double[] effectiveAttenuation = MathUtils.multiplyScalar(attenuation, MathUtils.sqr(gridWidth));
-		
-		double[] p1Offset = MathUtils.calcPointsDiff(p0, p1);
-		double[] p2Offset = MathUtils.calcPointsDiff(p0, p2);
-		
-		MathUtils.multiplyVectorByScalar(p1Offset, 1F / gridWidth);
-		MathUtils.multiplyVectorByScalar(p2Offset, 1F / gridWidth);				
-		
-		for (int i = 0; i < gridWidth; i++) {
-			for (int j = 0; j < gridWidth; j++) {
-				
-				double[] pos = { p0[0] + i * p1Offset[0] + j * p2Offset[0],
-								p0[1] + i * p1Offset[1] + j * p2Offset[1],
-								p0[2] + i * p1Offset[2] + j * p2Offset[2] };
-								
-				entities.add(new LightPoint(pos, effectiveAttenuation, getColor()));
-			}
+		if (p0 == null || p1 == null || p2 == null) {
+			throw new IllegalArgumentException("An area light needs p0, p1 and p2");
+		}
+		if (gridWidth < 1) {
+			throw new IllegalArgumentException("The grid-width of an area light must be at least 1");
 		}
-				
-		
-		// Look for our instance in the list and remove it
-		for (int i = 0; i < entities.size(); i++) {
-			if (entities.get(i) == this) {
-				entities.remove(i);
-			}
+
+		p1Offset = MathUtils.calcPointsDiff(p0, p1);
+		p2Offset = MathUtils.calcPointsDiff(p0, p2);
+
+		super.setPosition(getPointAt(0.5, 0.5, new double[3]));
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		EntityData.writeVector(out, p0);
+		EntityData.writeVector(out, p1);
+		EntityData.writeVector(out, p2);
+		EntityData.writeVector(out, attenuation);
+		out.writeInt(gridWidth);
+		EntityData.writeVector(out, p1Offset);
+		EntityData.writeVector(out, p2Offset);
+	}
+
+	@Override
+	public void read(ByteBuffer in) {
+		super.read(in);
+		p0 = EntityData.readVector(in);
+		p1 = EntityData.readVector(in);
+		p2 = EntityData.readVector(in);
+		attenuation = EntityData.readVector(in);
+		gridWidth = in.getInt();
+		p1Offset = EntityData.readVector(in);
+		p2Offset = EntityData.readVector(in);
+	}
+
+	// Moves the whole area so that its center is at the given position
+	@Override
+	public void setPosition(double[] position) {
+		final double[] center = getPosition();
+
+		if (center != null) {
+			final double[] offset = MathUtils.calcPointsDiff(center, position);
+			p0 = MathUtils.addPoints(p0, offset);
+			p1 = MathUtils.addPoints(p1, offset);
+			p2 = MathUtils.addPoints(p2, offset);
 		}
-		
+		super.setPosition(position);
 	}
 
 	@Override
 	public double[] getVectorToLight(double[] pointOfIntersection) {
-		return null;
+		double[] vec = MathUtils.calcPointsDiff(pointOfIntersection, getPosition());
+		MathUtils.normalize(vec);
+		return vec;
 	}
 	
 }
@@ -1,8 +1,12 @@
 package ex02.entities.lights;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import ex02.blas.MathUtils;
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
 
 public class LightDirected extends Light {
@@ -15,18 +19,20 @@ public class LightDirected extends Light {
 	}
 
 	@Override
-	public void setParameter(String name, String[] args) throws Exception {
+	public boolean setParameter(String name, double[] values) throws Exception {
 		if ("color".equals(name)) {
-            super.setColor(MathUtils.parseVector(args));
-            return;
+            super.setColor(MathUtils.toVector(values));
+            return true;
         }
 
 		if ("direction".equals(name)) {
-			direction = MathUtils.parseVector(args);
+			direction = MathUtils.toVector(values);
 			MathUtils.normalize(direction);
 			
 			oppositeDirection = MathUtils.oppositeVector(direction);
+			return true;
 		}
+		return false;
 	}
 
 	@Override
@@ -39,9 +45,29 @@ public class LightDirected extends Light {
 		super.setPosition(new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY });
 	}
 
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		EntityData.writeVector(out, direction);
+		EntityData.writeVector(out, oppositeDirection);
+	}
+
+	@Override
+	public void read(ByteBuffer in) {
+		super.read(in);
+		direction = EntityData.readVector(in);
+		oppositeDirection = EntityData.readVector(in);
+	}
+
 	@Override
 	public double[] getVectorToLight(double[] pointOfIntersection) {
 		return oppositeDirection;
 	}
 
+	@Override
+	public double[] getVectorToLight(double[] pointOfIntersection, double[] dest) {
+		System.arraycopy(oppositeDirection, 0, dest, 0, 3);
+		return dest;
+	}
+
 }
@@ -1,8 +1,12 @@
 package ex02.entities.lights;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import ex02.blas.MathUtils;
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
 
 public class LightPoint extends Light {
@@ -12,7 +16,6 @@ public class LightPoint extends Light {
 	public LightPoint() {
 	}
 	
-	// This constructor is called by LightArea
 	public LightPoint(double[] pos, double[] attenuation, double[] color) {
 		this.setPosition(pos);
 		this.setColor(color);
@@ -20,10 +23,12 @@ public class LightPoint extends Light {
 	}
 
 	@Override
-	public void setParameter(String name, String[] args) throws Exception {
-		if ("pos".equals(name)) setPosition(MathUtils.parseVector(args));
-		if ("attenuation".equals(name)) attenuation = MathUtils.parseVector(args);
-		if ("color".equals(name)) setColor(MathUtils.parseVector(args));
+	public boolean setParameter(String name, double[] values) throws Exception {
+		if ("pos".equals(name)) setPosition(MathUtils.toVector(values));
+		else if ("attenuation".equals(name)) attenuation = MathUtils.toVector(values);
+		else if ("color".equals(name)) setColor(MathUtils.toVector(values));
+		else return false;
+		return true;
 	}
 
 	@Override
@@ -37,15 +42,43 @@ public class LightPoint extends Light {
 		return new double[]{ color[0] * totalAttenuation, color[1] * totalAttenuation, color[2] * totalAttenuation };
 	}
 
+	@Override
+	public double[] getAmountOfLight(double[] point, double[] dest) {
+		double d = MathUtils.distance(getPosition(), point);
+
+		double totalAttenuation = 1 / (attenuation[2] * d * d + attenuation[1] * d + attenuation[0]);
+
+		return MathUtils.multiplyScalar(this.getColor(), totalAttenuation, dest);
+	}
+
 	@Override
 	public void postInit(List<IEntity> entities) throws Exception {
 	}
 
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		EntityData.writeVector(out, attenuation);
+	}
+
+	@Override
+	public void read(ByteBuffer in) {
+		super.read(in);
+		attenuation = EntityData.readVector(in);
+	}
+
 	@Override
 	public double[] getVectorToLight(double[] pointOfIntersection) {
 		double[] vec = MathUtils.calcPointsDiff(pointOfIntersection, getPosition());
 		MathUtils.normalize(vec);
 		return vec;
 	}
+
+	@Override
+	public double[] getVectorToLight(double[] pointOfIntersection, double[] dest) {
+		MathUtils.calcPointsDiff(pointOfIntersection, getPosition(), dest);
+		MathUtils.normalize(dest);
+		return dest;
+	}
 	
 }
@@ -1,25 +1,37 @@
 package ex02.entities.primitives;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
+import ex02.blas.BoundingBox;
 import ex02.blas.MathUtils;
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
+import ex02.entities.Intersection;
 import ex02.entities.Ray;
 
 public class Box extends Primitive {
 
     private double[] p0, p1, p2, p3;
     private Rectangle[] rectangles = new Rectangle[6];
-    private Rectangle currentIntersectingRectangle = null;
-    private int intersectingRectangleIndex = 0;
 
 
     /**
-     * Get the normal of the rectangle which is currently intersected.
+     * Get the normal of the rectangle the point lies on.
      */
     @Override
     public double[] getNormal(double[] point) {
-        return currentIntersectingRectangle.getNormal(point);
+        return rectangles[findFace(point)].getNormal(point);
+    }
+
+    /**
+     * Get the normal of the rectangle which was intersected.
+     */
+    @Override
+    public double[] getNormal(Intersection intersection, double[] point) {
+        return rectangles[intersection.getFace()].getNormal(point);
     }
 
     @Override
@@ -31,17 +43,55 @@ public class Box extends Primitive {
         for (int i = 0; i < rectangles.length; i++) {
             double t = rectangles[i].intersect(ray);
 
-            // If we found a closer intersecting rectangle, keep a reference to and it
+            // If we found a closer intersecting rectangle, keep its distance
             if (t < minDistance) {
                 minDistance = t;
-                currentIntersectingRectangle = rectangles[i];
-                intersectingRectangleIndex = i;
             }
         }
 
         return minDistance;
     }
 
+    /**
+     * Records which of the six rectangles gave the distance found by intersect()
+     */
+    @Override
+    public Intersection getIntersection(Ray ray, double distance) {
+        for (int i = 0; i < rectangles.length; i++) {
+            if (rectangles[i].intersect(ray) == distance) {
+                return new Intersection(distance, this, i);
+            }
+        }
+
+        return new Intersection(distance, this);
+    }
+
+    // Find the rectangle whose plane is closest to the given point
+    private int findFace(double[] point) {
+        int face = 0;
+        double minDistance = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < rectangles.length; i++) {
+            double distance = Math.abs(rectangles[i].distanceFromPlane(point));
+
+            if (distance < minDistance) {
+                minDistance = distance;
+                face = i;
+            }
+        }
+
+        return face;
+    }
+
+    @Override
+    protected BoundingBox calculateBounds() {
+        final BoundingBox bounds = BoundingBox.empty();
+        for (final Rectangle rectangle : rectangles) {
+            bounds.union(rectangle.getBounds());
+        }
+        return bounds;
+    }
+
     @Override
     public void postInit(List<IEntity> entities) {
         super.postInit(entities);
@@ -57,20 +107,68 @@ public class Box extends Primitive {
         rectangles[3] = new Rectangle(p1, MathUtils.addPoints(p3, p0_p1), MathUtils.addPoints(p2, p0_p1));        // Right facing rectangle
         rectangles[4] = new Rectangle(p2, MathUtils.addPoints(p2, p0_p1), MathUtils.addPoints(p2, p0_p3));        // Top facing rectangle
         rectangles[5] = new Rectangle(p3, MathUtils.addPoints(p2, p0_p3), MathUtils.addPoints(p3, p0_p1));        // Back facing rectangle
+
+        updateBounds();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        EntityData.writeVector(out, p0);
+        EntityData.writeVector(out, p1);
+        EntityData.writeVector(out, p2);
+        EntityData.writeVector(out, p3);
+        for (final Rectangle rectangle : rectangles) {
+            rectangle.write(out);
+        }
     }
 
-    public void setParameter(String name, String[] args) throws Exception {
-        if (getSurface().parseParameter(name, args)) return;
-        if ("p0".equals(name)) p0 = MathUtils.parseVector(args);
-        if ("p1".equals(name)) p1 = MathUtils.parseVector(args);
-        if ("p2".equals(name)) p2 = MathUtils.parseVector(args);
-        if ("p3".equals(name)) p3 = MathUtils.parseVector(args);
+    @Override
+    public void read(ByteBuffer in) {
+        super.read(in);
+        p0 = EntityData.readVector(in);
+        p1 = EntityData.readVector(in);
+        p2 = EntityData.readVector(in);
+        p3 = EntityData.readVector(in);
+        for (int i = 0; i < rectangles.length; i++) {
+            rectangles[i] = new Rectangle();
+            rectangles[i].read(in);
+        }
+    }
+
+    public boolean setParameter(String name, double[] values) throws Exception {
+        if (getSurface().parseParameter(name, values)) return true;
+        if ("p0".equals(name)) p0 = MathUtils.toVector(values);
+        else if ("p1".equals(name)) p1 = MathUtils.toVector(values);
+        else if ("p2".equals(name)) p2 = MathUtils.toVector(values);
+        else if ("p3".equals(name)) p3 = MathUtils.toVector(values);
+        else return false;
+        return true;
     }
 
 
     @Override
     public double[] getTextureCoords(double[] point) {
-        return rectangles[intersectingRectangleIndex].getTextureCoords(point);
+        return rectangles[findFace(point)].getTextureCoords(point);
+    }
+
+    @Override
+    public double[] getTextureCoords(Intersection intersection, double[] point) {
+        return rectangles[intersection.getFace()].getTextureCoords(point);
+    }
+
+    @Override
+    public double getTextureScale() {
+        double scale = 0;
+        for (final Rectangle rectangle : rectangles) {
+            scale = Math.max(scale, rectangle.getTextureScale());
+        }
+        return scale;
+    }
+
+    @Override
+    public double getTextureScale(Intersection intersection) {
+        return rectangles[intersection.getFace()].getTextureScale();
     }
 
 }
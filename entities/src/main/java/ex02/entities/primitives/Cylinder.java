@@ -1,9 +1,14 @@
 package ex02.entities.primitives;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
+import ex02.blas.BoundingBox;
 import ex02.blas.MathUtils;
 import ex02.blas.Vector3D;
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
 import ex02.entities.Ray;
 
@@ -56,42 +61,75 @@ public class Cylinder extends Primitive {
     @Override
     public double intersect(Ray ray) {
 
-        double[] AO, AOxAB, VxAB;    // Vectors to work with
+        // Vectors are kept as x, y, z values as this is called for every cylinder a ray might hit
+        final double[] P = ray.getPosition();
+        final double[] V = ray.getDirection();
+        final double[] D = direction;
+
+        // AO = P - start
+        final double AOx = P[0] - start[0];
+        final double AOy = P[1] - start[1];
+        final double AOz = P[2] - start[2];
+
+        // AOxAB = AO x direction
+        final double AOxABx = (AOy * D[2]) - (AOz * D[1]);
+        final double AOxABy = (AOz * D[0]) - (AOx * D[2]);
+        final double AOxABz = (AOx * D[1]) - (AOy * D[0]);
+
+        // VxAB = V x direction
+        final double VxABx = (V[1] * D[2]) - (V[2] * D[1]);
+        final double VxABy = (V[2] * D[0]) - (V[0] * D[2]);
+        final double VxABz = (V[0] * D[1]) - (V[1] * D[0]);
+
         double a, b, c;        // Quadratic equation coefficients
 
-        AO = MathUtils.calcPointsDiff(start, ray.getPosition());
-        AOxAB = MathUtils.crossProduct(AO, direction);
-        VxAB = MathUtils.crossProduct(ray.getDirection(), direction);
+        a = MathUtils.dotProduct(VxABx, VxABy, VxABz, VxABx, VxABy, VxABz);
+        b = 2 * MathUtils.dotProduct(VxABx, VxABy, VxABz, AOxABx, AOxABy, AOxABz);
+        c = MathUtils.dotProduct(AOxABx, AOxABy, AOxABz, AOxABx, AOxABy, AOxABz) - radiusSquare;
 
+        // Solve equation for at^2 + bt + c = 0 the way MathUtils.solveQuadraticEquation does, without the array
+        double root0;
+        double root1 = 0;
 
-        a = MathUtils.dotProduct(VxAB, VxAB);
-        b = 2 * MathUtils.dotProduct(VxAB, AOxAB);
-        c = MathUtils.dotProduct(AOxAB, AOxAB) - radiusSquare;
+        if (a == 0) {
+            root0 = -c / b;
+        } else {
+            double discriminant = MathUtils.sqr(b) - 4 * a * c;
+
+            if (discriminant < 0) {
+                root0 = Double.POSITIVE_INFINITY;
+            } else if (discriminant == 0) {
+                root0 = (-b) / (2 * a);
+            } else {
+                discriminant = Math.sqrt(discriminant);
+                double denominator = 2 * a;
+                root0 = (-b + discriminant) / (denominator);
+                root1 = (-b - discriminant) / (denominator);
+            }
+        }
 
-        // Solve equation for at^2 + bt + c = 0
-        double[] roots = MathUtils.solveQuadraticEquation(a, b, c);
         double distance;
 
-        if (roots[0] == Double.POSITIVE_INFINITY) {
+        if (root0 == Double.POSITIVE_INFINITY) {
             distance = Double.POSITIVE_INFINITY;
-        } else if (roots[0] <= 0 && roots[1] <= 0) {
+        } else if (root0 <= 0 && root1 <= 0) {
             distance = Double.POSITIVE_INFINITY;
         }
         // We need to choose the closest intersection point which is within the cylinder length
-        else if (roots[0] >= 0 && roots[1] >= 0) {
-            if (isPointOnCylinder(roots[0], ray)) {
-                if (isPointOnCylinder(roots[1], ray)) {
-                    distance = Math.min(roots[0], roots[1]);
+        else if (root0 >= 0 && root1 >= 0) {
+            if (isPointOnCylinder(root0, ray)) {
+                if (isPointOnCylinder(root1, ray)) {
+                    distance = Math.min(root0, root1);
                 } else {
-                    distance = roots[0];
+                    distance = root0;
                 }
-            } else if (isPointOnCylinder(roots[1], ray)) {
-                distance = roots[1];
+            } else if (isPointOnCylinder(root1, ray)) {
+                distance = root1;
             } else {
                 distance = Double.POSITIVE_INFINITY;
             }
         } else {
-            distance = Math.max(roots[0], roots[1]);
+            distance = Math.max(root0, root1);
         }
 
         return distance;
@@ -101,23 +139,35 @@ public class Cylinder extends Primitive {
     private boolean isPointOnCylinder(double root, Ray ray) {
 
         // Formulas according to http://answers.yahoo.com/question/index?qid=20080218071458AAYz1s1
-        double[] AP;
-//		double[] intersectPoint = ray.getPosition();
-//		MathUtils.addVectorAndMultiply(intersectPoint, ray.getDirection(), root);
-
-        ray.setMagnitude(root);
+        final double[] P = ray.getPosition();
+        final double[] V = ray.getDirection();
 
         // Calculate the projection of the intersection point onto the direction vector of the cylinder
-        AP = MathUtils.calcPointsDiff(start, ray.getEndPoint());
-        double t = MathUtils.dotProduct(direction, AP);
+        final double APx = (P[0] + root * V[0]) - start[0];
+        final double APy = (P[1] + root * V[1]) - start[1];
+        final double APz = (P[2] + root * V[2]) - start[2];
+        double t = MathUtils.dotProduct(direction[0], direction[1], direction[2], APx, APy, APz);
 
         if (t > length || t < 0)
             return false;
 
-        ray.setMagnitude(1);
         return true;
     }
 
+    /**
+     * The bounds of the two end discs (see Disc#calculateBounds()) also contain the body of the cylinder
+     */
+    @Override
+    protected BoundingBox calculateBounds() {
+        final double[] extent = new double[3];
+        for (int i = 0; i < 3; i++) {
+            extent[i] = radius * Math.sqrt(Math.max(0, 1 - MathUtils.sqr(direction[i])));
+        }
+        return BoundingBox.of(
+                MathUtils.subtractPoints(start, extent), MathUtils.addPoints(start, extent),
+                MathUtils.subtractPoints(end, extent), MathUtils.addPoints(end, extent));
+    }
+
     @Override
     public void postInit(List<IEntity> entities) {
         super.postInit(entities);
@@ -139,6 +189,37 @@ public class Cylinder extends Primitive {
         AB = MathUtils.calcPointsDiff(start, end);
         ABdotAB = MathUtils.dotProduct(AB, AB);
 
+        updateBounds();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        EntityData.writeVector(out, start);
+        EntityData.writeVector(out, end);
+        EntityData.writeVector(out, direction);
+        out.writeDouble(length);
+        out.writeDouble(radius);
+        out.writeDouble(radiusSquare);
+        EntityData.writeVector(out, AB);
+        out.writeDouble(ABdotAB);
+        EntityData.writeVector(out, referenceVector);
+        EntityData.writeVector(out, pivotVector);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        super.read(in);
+        start = EntityData.readVector(in);
+        end = EntityData.readVector(in);
+        direction = EntityData.readVector(in);
+        length = in.getDouble();
+        radius = in.getDouble();
+        radiusSquare = in.getDouble();
+        AB = EntityData.readVector(in);
+        ABdotAB = in.getDouble();
+        referenceVector = EntityData.readVector(in);
+        pivotVector = EntityData.readVector(in);
     }
 
     private void initializeReferenceVector() {
@@ -153,12 +234,20 @@ public class Cylinder extends Primitive {
     }
 
     @Override
-    public void setParameter(String name, String[] args) throws Exception {
-        if (getSurface().parseParameter(name, args)) return;
-        if ("start".equals(name)) start = MathUtils.parseVector(args);
-        if ("direction".equals(name)) direction = MathUtils.parseVector(args);
-        if ("length".equals(name)) length = Double.parseDouble(args[0]);
-        if ("radius".equals(name)) radius = Double.parseDouble(args[0]);
+    public boolean setParameter(String name, double[] values) throws Exception {
+        if (getSurface().parseParameter(name, values)) return true;
+        if ("start".equals(name)) start = MathUtils.toVector(values);
+        else if ("direction".equals(name)) direction = MathUtils.toVector(values);
+        else if ("length".equals(name)) length = values[0];
+        else if ("radius".equals(name)) radius = values[0];
+        else return false;
+        return true;
+    }
+
+    @Override
+    public double getTextureScale() {
+        // u runs from 0 to 1 along the length, v around the circumference
+        return Math.max(1 / length, 1 / (2 * Math.PI * radius));
     }
 
     @Override
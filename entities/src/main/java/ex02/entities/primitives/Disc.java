@@ -1,7 +1,12 @@
 package ex02.entities.primitives;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import ex02.blas.BoundingBox;
 import ex02.blas.MathUtils;
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
 import ex02.entities.Ray;
 
@@ -10,7 +15,6 @@ public class Disc extends Primitive implements Center {
     private double[] center = null;
     private double[] normal = null;
     private double radius;
-    private double[] intersectionPoint = null;
     private double d;
     private double[] referenceVector = new double[3];
     private double[] pivotVector;
@@ -61,13 +65,15 @@ public class Disc extends Primitive implements Center {
      * @return
      */
     private double intersectWithinRadius(Ray ray, double distance) {
-        // Get the intersection point with the rectangle's plane
-        ray.setMagnitude(distance);
-        intersectionPoint = ray.getEndPoint();
-        ray.setMagnitude(1);
+        // Get the intersection point with the disc's plane, as x, y, z values to avoid allocating
+        final double[] position = ray.getPosition();
+        final double[] direction = ray.getDirection();
+        final double x = position[0] + distance * direction[0];
+        final double y = position[1] + distance * direction[1];
+        final double z = position[2] + distance * direction[2];
 
         // Caclulate the distance between from the intersection point on the plane to the center of the disc
-        double distanceFromCenter = MathUtils.norm(MathUtils.calcPointsDiff(center, intersectionPoint));
+        double distanceFromCenter = MathUtils.norm(x - center[0], y - center[1], z - center[2]);
 
 
         // If this distance in less than the radius length, we've intersected the disc
@@ -79,14 +85,16 @@ public class Disc extends Primitive implements Center {
     }
 
     @Override
-    public void setParameter(String name, String[] args) throws Exception {
-        if (getSurface().parseParameter(name, args)) return;
-        if ("center".equals(name)) center = MathUtils.parseVector(args);
-        if ("normal".equals(name)) {
-            normal = MathUtils.parseVector(args);
+    public boolean setParameter(String name, double[] values) throws Exception {
+        if (getSurface().parseParameter(name, values)) return true;
+        if ("center".equals(name)) center = MathUtils.toVector(values);
+        else if ("normal".equals(name)) {
+            normal = MathUtils.toVector(values);
             MathUtils.normalize(normal);
         }
-        if ("radius".equals(name)) radius = Double.parseDouble(args[0]);
+        else if ("radius".equals(name)) radius = values[0];
+        else return false;
+        return true;
     }
 
     @Override
@@ -94,6 +102,18 @@ public class Disc extends Primitive implements Center {
         return normal;
     }
 
+    /**
+     * The extent of a disc along each axis is radius * sin(angle between the axis and the normal)
+     */
+    @Override
+    protected BoundingBox calculateBounds() {
+        final double[] extent = new double[3];
+        for (int i = 0; i < 3; i++) {
+            extent[i] = radius * Math.sqrt(Math.max(0, 1 - MathUtils.sqr(normal[i])));
+        }
+        return new BoundingBox(MathUtils.subtractPoints(center, extent), MathUtils.addPoints(center, extent));
+    }
+
     @Override
     public void postInit(List<IEntity> entities) {
         super.postInit(entities);
@@ -111,6 +131,30 @@ public class Disc extends Primitive implements Center {
         pivotVector = MathUtils.crossProduct(normal, referenceVector);
 
         MathUtils.normalize(pivotVector);
+
+        updateBounds();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        EntityData.writeVector(out, center);
+        EntityData.writeVector(out, normal);
+        out.writeDouble(radius);
+        out.writeDouble(d);
+        EntityData.writeVector(out, referenceVector);
+        EntityData.writeVector(out, pivotVector);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        super.read(in);
+        center = EntityData.readVector(in);
+        normal = EntityData.readVector(in);
+        radius = in.getDouble();
+        d = in.getDouble();
+        referenceVector = EntityData.readVector(in);
+        pivotVector = EntityData.readVector(in);
     }
 
     @Override
@@ -121,6 +165,10 @@ public class Disc extends Primitive implements Center {
     @Override
     public void setCenter(double[] center) {
         this.center = center;
+
+        // keep the plane coefficient in step with the new center
+        d = -(MathUtils.dotProduct(normal, center));
+        updateBounds();
     }
 
     private void initializeReferenceVector() {
@@ -139,6 +187,12 @@ public class Disc extends Primitive implements Center {
         }
     }
 
+    @Override
+    public double getTextureScale() {
+        // u runs from 0 to 1 from the center to the rim
+        return 1 / radius;
+    }
+
     @Override
     public double[] getTextureCoords(double[] point) {
 
@@ -0,0 +1,230 @@
+package ex02.entities.primitives;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import ex02.blas.BoundingBox;
+import ex02.blas.MathUtils;
+import ex02.blas.Transform;
+import ex02.entities.EntityData;
+import ex02.entities.IEntity;
+import ex02.entities.Intersection;
+import ex02.entities.Ray;
+import ex02.entities.Surface;
+
+/**
+ * A copy of another primitive, its shape, moved by an affine transform. The shape is found by its name among the
+ * primitives before the instance, and is usually made inactive so that it's only rendered through its instances.
+ * <p>
+ * An instance holds nothing but the shape and the transform, and uses the shape's surface, so however many copies
+ * there are of a shape its geometry is only held once. Rays are transformed into the shape's space to be
+ * intersected with it, and normals are transformed back.
+ * <p>
+ * The transform is built up from the translate, scale, rotate-x, rotate-y, rotate-z, rotate (an axis then an angle
+ * in degrees) and matrix (12 or 16 values, row by row) parameters, each applied after those before it in the file.
+ */
+public class Instance extends Primitive {
+
+    private String shapeName;
+    private Primitive shape;
+
+    private Transform toWorld = Transform.IDENTITY;
+    private Transform toObject = Transform.IDENTITY;
+    private double scale = 1;
+
+    public Instance() {
+        super(null);
+    }
+
+    @Override
+    public double intersect(Ray ray) {
+        final Ray objectRay = toObject(ray);
+        return shape.intersect(objectRay) / objectRay.getMagnitude();
+    }
+
+    /**
+     * Records the face of the shape that the ray hit. The shape is given the distance it found itself rather than
+     * the scaled one, as rounding would keep shapes that match faces by distance, such as Box, from finding the face.
+     */
+    @Override
+    public Intersection getIntersection(Ray ray, double distance) {
+        final Ray objectRay = toObject(ray);
+        final Intersection intersection = shape.getIntersection(objectRay, shape.intersect(objectRay));
+        return new Intersection(distance, this, intersection.getFace());
+    }
+
+    // The ray in the shape's space with a direction of unit length, and the length it had as its magnitude
+    private Ray toObject(Ray ray) {
+        final double[] direction = toObject.transformVector(ray.getDirection());
+        final double length = MathUtils.norm(direction);
+        MathUtils.multiplyScalar(direction, 1 / length, direction);
+
+        return new Ray(toObject.transformPoint(ray.getPosition()), direction, length);
+    }
+
+    @Override
+    public boolean setParameter(String name, String[] args) throws Exception {
+        if ("shape".equals(name)) {
+            shapeName = args[0];
+        } else if ("name".equals(name)) {
+            setName(args[0]);
+        } else if ("active".equals(name)) {
+            setActive(Boolean.parseBoolean(args[0]));
+        } else {
+            return setParameter(name, MathUtils.parseValues(args));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean setParameter(String name, double[] values) throws Exception {
+        if ("translate".equals(name)) transform(Transform.translation(values[0], values[1], values[2]));
+        else if ("scale".equals(name)) transform(values.length == 1
+                ? Transform.scaling(values[0], values[0], values[0])
+                : Transform.scaling(values[0], values[1], values[2]));
+        else if ("rotate-x".equals(name)) transform(Transform.rotation(new double[] { 1, 0, 0 }, values[0]));
+        else if ("rotate-y".equals(name)) transform(Transform.rotation(new double[] { 0, 1, 0 }, values[0]));
+        else if ("rotate-z".equals(name)) transform(Transform.rotation(new double[] { 0, 0, 1 }, values[0]));
+        else if ("rotate".equals(name)) transform(Transform.rotation(new double[] { values[0], values[1], values[2] }, values[3]));
+        else if ("matrix".equals(name)) transform(Transform.of(values));
+        else return false;
+        return true;
+    }
+
+    private void transform(Transform next) {
+        this.toWorld = toWorld.then(next);
+    }
+
+    /**
+     * Finds the shape, which must come before the instance. The surface is the shape's, which has already been
+     * initialised along with it.
+     */
+    @Override
+    public void postInit(List<IEntity> entities) {
+        if (shapeName == null) {
+            throw new IllegalArgumentException("An instance needs the name of its shape");
+        }
+
+        Primitive found = null;
+        if (entities != null) {
+            for (final IEntity entity : entities) {
+                if (entity != this && entity instanceof Primitive && shapeName.equals(((Primitive) entity).getName())) {
+                    found = (Primitive) entity;
+                }
+            }
+        }
+        if (found == null) {
+            throw new IllegalArgumentException("No shape named " + shapeName + " before the instance");
+        }
+
+        setShape(found);
+    }
+
+    /**
+     * Sets the shape that the instance is a copy of, which must have the instance's shape name.
+     * @throws IllegalArgumentException if the transform can't be inverted
+     */
+    public void setShape(Primitive shape) {
+        this.shape = shape;
+        this.toObject = toWorld.inverse();
+        this.scale = toWorld.getScale();
+        updateBounds();
+    }
+
+    /**
+     * Writes the name of the shape rather than the shape itself, so whatever reads the instance must find the shape
+     * and pass it to {@link #setShape(Primitive)}. The surface is the shape's, so it isn't written either.
+     */
+    @Override
+    public void write(DataOutput out) throws IOException {
+        EntityData.writeString(out, getName());
+        out.writeBoolean(isActive());
+        EntityData.writeString(out, shapeName);
+        EntityData.writeVector(out, toWorld.toArray());
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        setName(EntityData.readString(in));
+        setActive(in.get() != 0);
+        shapeName = EntityData.readString(in);
+        toWorld = Transform.of(EntityData.readVector(in));
+    }
+
+    @Override
+    public Surface getSurface() {
+        return shape.getSurface();
+    }
+
+    @Override
+    protected BoundingBox calculateBounds() {
+        return toWorld.transformBox(shape.getBounds());
+    }
+
+    @Override
+    public double[] getNormal(double[] point) {
+        return toWorld(shape.getNormal(toObject.transformPoint(point)));
+    }
+
+    @Override
+    public double[] getNormal(Intersection intersection, double[] point) {
+        return toWorld(shape.getNormal(toShape(intersection), toObject.transformPoint(point)));
+    }
+
+    private double[] toWorld(double[] normal) {
+        final double[] worldNormal = toWorld.transformNormal(normal);
+        MathUtils.normalize(worldNormal);
+        return worldNormal;
+    }
+
+    // The intersection as the shape recorded it, although the distance is still in the instance's space
+    private Intersection toShape(Intersection intersection) {
+        return new Intersection(intersection.getDistance(), shape, intersection.getFace());
+    }
+
+    @Override
+    public double[] getTextureCoords(double[] point) {
+        return shape.getTextureCoords(toObject.transformPoint(point));
+    }
+
+    @Override
+    public double[] getTextureCoords(Intersection intersection, double[] point) {
+        return shape.getTextureCoords(toShape(intersection), toObject.transformPoint(point));
+    }
+
+    @Override
+    public double getTextureScale() {
+        return shape.getTextureScale() / scale;
+    }
+
+    @Override
+    public double getTextureScale(Intersection intersection) {
+        return shape.getTextureScale(toShape(intersection)) / scale;
+    }
+
+    /**
+     * The shape's color at the point, with the footprint scaled into the shape's space
+     */
+    @Override
+    public double[] getColorAt(Intersection intersection, double[] point, double footprint, double[] dest) {
+        return shape.getColorAt(intersection != null ? toShape(intersection) : null, toObject.transformPoint(point),
+                footprint / scale, dest);
+    }
+
+    public String getShapeName() {
+        return shapeName;
+    }
+
+    public Primitive getShape() {
+        return shape;
+    }
+
+    /**
+     * @return the transform from the shape's space into the scene's
+     */
+    public Transform getTransform() {
+        return toWorld;
+    }
+}
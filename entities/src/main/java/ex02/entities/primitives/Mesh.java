@@ -0,0 +1,330 @@
+package ex02.entities.primitives;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.List;
+
+import ex02.blas.BoundingBox;
+import ex02.entities.EntityData;
+import ex02.entities.IEntity;
+import ex02.entities.Intersection;
+import ex02.entities.Ray;
+
+/**
+ * A triangle mesh loaded from a Wavefront OBJ or Stanford PLY file, given by the file parameter relative to the
+ * scene. The whole mesh is a single primitive with one surface, and its triangles are held in packed arrays: a
+ * float each for the coordinates of every vertex and three ints for every triangle. Rays find the triangles they
+ * hit through a hierarchy over the mesh, which the scene's hierarchy only sees as one box, so meshes of millions
+ * of triangles can be rendered.
+ * <p>
+ * Normals are interpolated across each triangle if the file gives a normal for every vertex, and are otherwise
+ * those of the triangles themselves, pointing the way that their corners go round anticlockwise. Texture
+ * coordinates are interpolated too, or run from 0 to 1 across every triangle if the file doesn't have them.
+ */
+public class Mesh extends Primitive {
+
+    private String fileName;
+    private float[] vertices;
+    private float[] normals;
+    private float[] textureCoords;
+    private int[] triangles;
+    private MeshHierarchy hierarchy;
+    private double textureScale;
+
+    @Override
+    public double intersect(Ray ray) {
+        return hierarchy.intersect(ray);
+    }
+
+    /**
+     * Records which triangle gave the distance found by intersect(), which the hierarchy kept from traversing it
+     * @throws IllegalStateException if the ray doesn't hit the mesh
+     */
+    @Override
+    public Intersection getIntersection(Ray ray, double distance) {
+        final int triangle = hierarchy.findTriangle(ray);
+        if (triangle < 0) {
+            throw new IllegalStateException("The ray doesn't hit the mesh at " + distance);
+        }
+        return new Intersection(distance, this, triangle);
+    }
+
+    @Override
+    public boolean setParameter(String name, String[] args) throws Exception {
+        if ("file".equals(name)) {
+            load(args[0]);
+            return true;
+        }
+        return super.setParameter(name, args);
+    }
+
+    @Override
+    public boolean setParameter(String name, double[] values) throws Exception {
+        return getSurface().parseParameter(name, values);
+    }
+
+    private void load(final String fileName) throws IOException {
+        final MeshFile file = MeshFile.read(Paths.get(fileName));
+
+        this.fileName = fileName;
+        this.vertices = file.vertices;
+        this.normals = file.normals;
+        this.textureCoords = file.textureCoords;
+        this.triangles = file.triangles;
+    }
+
+    @Override
+    public void postInit(List<IEntity> entities) {
+        super.postInit(entities);
+
+        if (triangles == null || triangles.length == 0) {
+            throw new IllegalArgumentException("A mesh needs a file of triangles: " + fileName);
+        }
+
+        this.hierarchy = new MeshHierarchy(vertices, triangles);
+        this.textureScale = calculateTextureScale();
+        updateBounds();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        EntityData.writeString(out, fileName);
+        EntityData.writeFloats(out, vertices);
+        EntityData.writeFloats(out, normals);
+        EntityData.writeFloats(out, textureCoords);
+        EntityData.writeInts(out, triangles);
+        out.writeDouble(textureScale);
+        hierarchy.write(out);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        super.read(in);
+        fileName = EntityData.readString(in);
+        vertices = EntityData.readFloats(in);
+        normals = EntityData.readFloats(in);
+        textureCoords = EntityData.readFloats(in);
+        triangles = EntityData.readInts(in);
+        textureScale = in.getDouble();
+        hierarchy = MeshHierarchy.read(vertices, triangles, in);
+    }
+
+    @Override
+    protected BoundingBox calculateBounds() {
+        final BoundingBox bounds = BoundingBox.empty();
+        final double[] vertex = new double[3];
+
+        for (int i = 0; i < vertices.length; i += 3) {
+            vertex[0] = vertices[i];
+            vertex[1] = vertices[i + 1];
+            vertex[2] = vertices[i + 2];
+            bounds.extend(vertex);
+        }
+        return bounds;
+    }
+
+    /**
+     * Finds the triangle the point is on by testing every triangle, which is slow for a big mesh. The ray tracer
+     * uses the triangle recorded in the intersection instead.
+     */
+    @Override
+    public double[] getNormal(double[] point) {
+        return getNormal(findTriangle(point), point);
+    }
+
+    @Override
+    public double[] getNormal(Intersection intersection, double[] point) {
+        return getNormal(intersection.getFace(), point);
+    }
+
+    private double[] getNormal(final int triangle, final double[] point) {
+        if (normals != null) {
+            final double[] weights = barycentric(triangle, point);
+            final double[] normal = new double[3];
+
+            for (int corner = 0; corner < 3; corner++) {
+                final int vertex = triangles[triangle * 3 + corner] * 3;
+                normal[0] += weights[corner] * normals[vertex];
+                normal[1] += weights[corner] * normals[vertex + 1];
+                normal[2] += weights[corner] * normals[vertex + 2];
+            }
+
+            // vertices the file didn't give a normal for leave it at zero
+            if (normalize(normal)) {
+                return normal;
+            }
+        }
+
+        final double[] normal = faceNormal(triangle);
+        normalize(normal);
+        return normal;
+    }
+
+    @Override
+    public double[] getTextureCoords(double[] point) {
+        return getTextureCoords(findTriangle(point), point);
+    }
+
+    @Override
+    public double[] getTextureCoords(Intersection intersection, double[] point) {
+        return getTextureCoords(intersection.getFace(), point);
+    }
+
+    private double[] getTextureCoords(final int triangle, final double[] point) {
+        final double[] weights = barycentric(triangle, point);
+
+        if (textureCoords == null) {
+            return new double[] { weights[1], weights[2] };
+        }
+
+        final double[] coords = new double[2];
+        for (int corner = 0; corner < 3; corner++) {
+            final int vertex = triangles[triangle * 3 + corner] * 2;
+            coords[0] += weights[corner] * textureCoords[vertex];
+            coords[1] += weights[corner] * textureCoords[vertex + 1];
+        }
+        return coords;
+    }
+
+    @Override
+    public double getTextureScale() {
+        return textureScale;
+    }
+
+    @Override
+    public double getTextureScale(Intersection intersection) {
+        final double area = length(faceNormal(intersection.getFace()));
+        return area > 0 ? Math.sqrt(textureArea(intersection.getFace()) / area) : textureScale;
+    }
+
+    // Texture coordinates per unit of length over the whole mesh, from the ratio of the areas in each
+    private double calculateTextureScale() {
+        double area = 0;
+        double textureArea = 0;
+
+        for (int triangle = 0; triangle < triangles.length / 3; triangle++) {
+            area += length(faceNormal(triangle));
+            textureArea += textureArea(triangle);
+        }
+        return area > 0 ? Math.sqrt(textureArea / area) : 1;
+    }
+
+    // Twice the area the triangle covers in texture coordinates
+    private double textureArea(final int triangle) {
+        if (textureCoords == null) {
+            return 1;
+        }
+
+        final int a = triangles[triangle * 3] * 2;
+        final int b = triangles[triangle * 3 + 1] * 2;
+        final int c = triangles[triangle * 3 + 2] * 2;
+        final double u1 = textureCoords[b] - textureCoords[a];
+        final double v1 = textureCoords[b + 1] - textureCoords[a + 1];
+        final double u2 = textureCoords[c] - textureCoords[a];
+        final double v2 = textureCoords[c + 1] - textureCoords[a + 1];
+        return Math.abs(u1 * v2 - u2 * v1);
+    }
+
+    // The cross product of the edges from the first corner, which is as long as twice the triangle's area
+    private double[] faceNormal(final int triangle) {
+        final int a = triangles[triangle * 3] * 3;
+        final int b = triangles[triangle * 3 + 1] * 3;
+        final int c = triangles[triangle * 3 + 2] * 3;
+
+        final double e1x = vertices[b] - vertices[a], e1y = vertices[b + 1] - vertices[a + 1], e1z = vertices[b + 2] - vertices[a + 2];
+        final double e2x = vertices[c] - vertices[a], e2y = vertices[c + 1] - vertices[a + 1], e2z = vertices[c + 2] - vertices[a + 2];
+
+        return new double[] { e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x };
+    }
+
+    // The weights of the three corners of the triangle that give the point nearest the given one in its plane
+    private double[] barycentric(final int triangle, final double[] point) {
+        final int a = triangles[triangle * 3] * 3;
+        final int b = triangles[triangle * 3 + 1] * 3;
+        final int c = triangles[triangle * 3 + 2] * 3;
+
+        final double e1x = vertices[b] - vertices[a], e1y = vertices[b + 1] - vertices[a + 1], e1z = vertices[b + 2] - vertices[a + 2];
+        final double e2x = vertices[c] - vertices[a], e2y = vertices[c + 1] - vertices[a + 1], e2z = vertices[c + 2] - vertices[a + 2];
+        final double px = point[0] - vertices[a], py = point[1] - vertices[a + 1], pz = point[2] - vertices[a + 2];
+
+        final double d11 = e1x * e1x + e1y * e1y + e1z * e1z;
+        final double d12 = e1x * e2x + e1y * e2y + e1z * e2z;
+        final double d22 = e2x * e2x + e2y * e2y + e2z * e2z;
+        final double p1 = px * e1x + py * e1y + pz * e1z;
+        final double p2 = px * e2x + py * e2y + pz * e2z;
+        final double denominator = d11 * d22 - d12 * d12;
+
+        if (denominator == 0) {
+            return new double[] { 1, 0, 0 };
+        }
+
+        final double v = (d22 * p1 - d12 * p2) / denominator;
+        final double w = (d11 * p2 - d12 * p1) / denominator;
+        return new double[] { 1 - v - w, v, w };
+    }
+
+    // The triangle nearest the point, judged by how far the point is from its plane and from its corners' weights
+    private int findTriangle(final double[] point) {
+        int nearest = 0;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+
+        for (int triangle = 0; triangle < triangles.length / 3; triangle++) {
+            final double[] normal = faceNormal(triangle);
+            final double length = length(normal);
+            if (length == 0) {
+                continue;
+            }
+
+            final int a = triangles[triangle * 3] * 3;
+            final double plane = Math.abs((point[0] - vertices[a]) * normal[0] + (point[1] - vertices[a + 1]) * normal[1]
+                    + (point[2] - vertices[a + 2]) * normal[2]) / length;
+
+            final double[] weights = barycentric(triangle, point);
+            final double outside = Math.max(0, -Math.min(weights[0], Math.min(weights[1], weights[2])));
+            final double distance = plane + outside;
+
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = triangle;
+            }
+        }
+        return nearest;
+    }
+
+    private static double length(final double[] vector) {
+        return Math.sqrt(vector[0] * vector[0] + vector[1] * vector[1] + vector[2] * vector[2]);
+    }
+
+    // Returns false, leaving the vector alone, if it has no length
+    private static boolean normalize(final double[] vector) {
+        final double length = length(vector);
+        if (length == 0) {
+            return false;
+        }
+        vector[0] /= length;
+        vector[1] /= length;
+        vector[2] /= length;
+        return true;
+    }
+
+    /**
+     * @return the number of triangles, once the file has been loaded
+     */
+    public int getTriangleCount() {
+        return triangles != null ? triangles.length / 3 : 0;
+    }
+
+    /**
+     * @return the number of vertices, once the file has been loaded
+     */
+    public int getVertexCount() {
+        return vertices != null ? vertices.length / 3 : 0;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+}
@@ -0,0 +1,591 @@
+package ex02.entities.primitives;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the triangles of a Wavefront OBJ or Stanford PLY file into packed arrays. Polygons with more than three
+ * corners are split into a fan of triangles, and anything other than vertices and faces (materials, groups, lines
+ * and so on) is skipped.
+ * <p>
+ * Texture coordinates are flipped vertically, as files put v = 0 at the bottom of the image and textures put it
+ * at the top.
+ */
+final class MeshFile {
+
+    float[] vertices;       // x, y, z of each vertex
+    float[] normals;        // x, y, z of each vertex, or null if the file doesn't have them
+    float[] textureCoords;  // u, v of each vertex, or null if the file doesn't have them
+    int[] triangles;        // three vertices for each triangle
+
+    private MeshFile() {
+    }
+
+    /**
+     * @throws IOException if the file can't be read or isn't a valid OBJ or PLY file
+     */
+    static MeshFile read(final Path path) throws IOException {
+        final String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+
+        if (name.endsWith(".obj")) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+                return readObj(reader);
+            }
+        }
+        if (name.endsWith(".ply")) {
+            try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+                return readPly(input);
+            }
+        }
+        throw new IOException("Meshes must be .obj or .ply files: " + path);
+    }
+
+    static MeshFile readObj(final BufferedReader reader) throws IOException {
+        final Floats positions = new Floats();
+        final Floats objTextureCoords = new Floats();
+        final Floats objNormals = new Floats();
+        final ObjVertices vertices = new ObjVertices();
+        final Ints triangles = new Ints();
+        final List<String> tokens = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            split(line, tokens);
+            if (tokens.isEmpty()) {
+                continue;
+            }
+
+            try {
+                switch (tokens.get(0)) {
+                    case "v":
+                        positions.add(parseFloat(tokens, 1), parseFloat(tokens, 2), parseFloat(tokens, 3));
+                        break;
+                    case "vt":
+                        // v is optional, and so is w
+                        objTextureCoords.add(parseFloat(tokens, 1), tokens.size() > 2 ? 1 - parseFloat(tokens, 2) : 1);
+                        break;
+                    case "vn":
+                        objNormals.add(parseFloat(tokens, 1), parseFloat(tokens, 2), parseFloat(tokens, 3));
+                        break;
+                    case "f":
+                        if (tokens.size() < 4) {
+                            throw new IOException("A face needs at least three vertices");
+                        }
+                        final int first = vertices.get(tokens.get(1), positions, objTextureCoords, objNormals);
+                        int previous = vertices.get(tokens.get(2), positions, objTextureCoords, objNormals);
+                        for (int i = 3; i < tokens.size(); i++) {
+                            final int next = vertices.get(tokens.get(i), positions, objTextureCoords, objNormals);
+                            triangles.add(first, previous, next);
+                            previous = next;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } catch (final NumberFormatException | IndexOutOfBoundsException e) {
+                throw new IOException("Invalid OBJ line " + lineNumber + ": " + line, e);
+            }
+        }
+
+        final MeshFile mesh = new MeshFile();
+        vertices.copyTo(mesh, positions, objTextureCoords, objNormals);
+        mesh.triangles = triangles.toArray();
+        return mesh;
+    }
+
+    // Splits a line on whitespace, without the comment if it has one
+    private static void split(final String line, final List<String> tokens) {
+        tokens.clear();
+        final int end = line.indexOf('#') >= 0 ? line.indexOf('#') : line.length();
+
+        int start = 0;
+        while (start < end) {
+            while (start < end && line.charAt(start) <= ' ') start++;
+            int tokenEnd = start;
+            while (tokenEnd < end && line.charAt(tokenEnd) > ' ') tokenEnd++;
+            if (tokenEnd > start) {
+                tokens.add(line.substring(start, tokenEnd));
+            }
+            start = tokenEnd;
+        }
+    }
+
+    private static float parseFloat(final List<String> tokens, final int index) {
+        return Float.parseFloat(tokens.get(index));
+    }
+
+    static MeshFile readPly(final InputStream input) throws IOException {
+        final PlyHeader header = PlyHeader.read(input);
+        final PlyReader reader = header.format.equals("ascii")
+                ? new AsciiPlyReader(input)
+                : new BinaryPlyReader(input, header.format.equals("binary_little_endian"));
+
+        final MeshFile mesh = new MeshFile();
+        final Ints triangles = new Ints();
+
+        for (final PlyElement element : header.elements) {
+            if (element.name.equals("vertex")) {
+                readPlyVertices(element, reader, mesh);
+            } else if (element.name.equals("face")) {
+                readPlyFaces(element, reader, triangles);
+            } else {
+                for (int i = 0; i < element.count; i++) {
+                    for (final PlyProperty property : element.properties) {
+                        reader.skip(property);
+                    }
+                }
+            }
+        }
+
+        if (mesh.vertices == null) {
+            throw new IOException("The PLY file has no vertices");
+        }
+        mesh.triangles = triangles.toArray();
+
+        final int vertexCount = mesh.vertices.length / 3;
+        for (final int vertex : mesh.triangles) {
+            if (vertex < 0 || vertex >= vertexCount) {
+                throw new IOException("A face refers to vertex " + vertex + " of " + vertexCount);
+            }
+        }
+        return mesh;
+    }
+
+    private static void readPlyVertices(final PlyElement element, final PlyReader reader, final MeshFile mesh) throws IOException {
+        final int count = element.count;
+        final int[] slots = new int[element.properties.size()];
+        boolean hasNormals = false;
+        boolean hasTextureCoords = false;
+
+        // where each property goes: 0 to 2 position, 3 to 5 normal, 6 and 7 texture coordinates, -1 nowhere
+        for (int i = 0; i < slots.length; i++) {
+            final PlyProperty property = element.properties.get(i);
+            final int slot = property.list ? -1 : vertexSlot(property.name);
+            slots[i] = slot;
+            hasNormals |= slot >= 3 && slot <= 5;
+            hasTextureCoords |= slot >= 6;
+        }
+
+        mesh.vertices = new float[count * 3];
+        mesh.normals = hasNormals ? new float[count * 3] : null;
+        mesh.textureCoords = hasTextureCoords ? new float[count * 2] : null;
+
+        for (int v = 0; v < count; v++) {
+            for (int i = 0; i < slots.length; i++) {
+                final int slot = slots[i];
+                final PlyProperty property = element.properties.get(i);
+
+                if (slot < 0) {
+                    reader.skip(property);
+                } else if (slot < 3) {
+                    mesh.vertices[v * 3 + slot] = (float) reader.read(property.type);
+                } else if (slot < 6) {
+                    mesh.normals[v * 3 + slot - 3] = (float) reader.read(property.type);
+                } else if (slot == 6) {
+                    mesh.textureCoords[v * 2] = (float) reader.read(property.type);
+                } else {
+                    mesh.textureCoords[v * 2 + 1] = 1 - (float) reader.read(property.type);
+                }
+            }
+        }
+    }
+
+    private static int vertexSlot(final String name) {
+        switch (name) {
+            case "x": return 0;
+            case "y": return 1;
+            case "z": return 2;
+            case "nx": return 3;
+            case "ny": return 4;
+            case "nz": return 5;
+            case "u": case "s": case "texture_u": case "texture_s": return 6;
+            case "v": case "t": case "texture_v": case "texture_t": return 7;
+            default: return -1;
+        }
+    }
+
+    private static void readPlyFaces(final PlyElement element, final PlyReader reader, final Ints triangles) throws IOException {
+        for (int f = 0; f < element.count; f++) {
+            for (final PlyProperty property : element.properties) {
+                if (!property.list || !(property.name.equals("vertex_indices") || property.name.equals("vertex_index"))) {
+                    reader.skip(property);
+                    continue;
+                }
+
+                final int corners = (int) reader.read(property.countType);
+                if (corners < 3) {
+                    throw new IOException("A face needs at least three vertices");
+                }
+                final int first = (int) reader.read(property.type);
+                int previous = (int) reader.read(property.type);
+                for (int i = 2; i < corners; i++) {
+                    final int next = (int) reader.read(property.type);
+                    triangles.add(first, previous, next);
+                    previous = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * OBJ faces give the position, texture coordinates and normal of each corner separately, so each different
+     * combination of them becomes a vertex of the mesh. Combinations are chained from their position, as each
+     * position usually only has a few.
+     */
+    private static final class ObjVertices {
+
+        private final Ints positionOf = new Ints();
+        private final Ints textureCoordOf = new Ints();
+        private final Ints normalOf = new Ints();
+        private final Ints next = new Ints();       // the next combination with the same position, or -1
+        private int[] first = new int[1024];        // the first combination of each position, or -1
+
+        ObjVertices() {
+            Arrays.fill(first, -1);
+        }
+
+        int get(final String corner, final Floats positions, final Floats textureCoords, final Floats normals) throws IOException {
+            final int firstSlash = corner.indexOf('/');
+            final int secondSlash = firstSlash < 0 ? -1 : corner.indexOf('/', firstSlash + 1);
+
+            final int textureCoordEnd = secondSlash < 0 ? corner.length() : secondSlash;
+
+            // v, v/vt, v//vn or v/vt/vn
+            final int position = index(firstSlash < 0 ? corner : corner.substring(0, firstSlash), positions.size() / 3);
+            final int textureCoord = firstSlash < 0 || firstSlash + 1 == textureCoordEnd
+                    ? -1 : index(corner.substring(firstSlash + 1, textureCoordEnd), textureCoords.size() / 2);
+            final int normal = secondSlash < 0 || secondSlash + 1 == corner.length()
+                    ? -1 : index(corner.substring(secondSlash + 1), normals.size() / 3);
+
+            if (position >= first.length) {
+                final int length = first.length;
+                first = Arrays.copyOf(first, Math.max(position + 1, length * 2));
+                Arrays.fill(first, length, first.length, -1);
+            }
+
+            for (int vertex = first[position]; vertex >= 0; vertex = next.get(vertex)) {
+                if (textureCoordOf.get(vertex) == textureCoord && normalOf.get(vertex) == normal) {
+                    return vertex;
+                }
+            }
+
+            final int vertex = positionOf.size();
+            positionOf.add(position);
+            textureCoordOf.add(textureCoord);
+            normalOf.add(normal);
+            next.add(first[position]);
+            first[position] = vertex;
+            return vertex;
+        }
+
+        // OBJ indices start at 1, or count back from the last one read when they're negative
+        private static int index(final String value, final int count) throws IOException {
+            final int index = Integer.parseInt(value);
+            final int resolved = index < 0 ? count + index : index - 1;
+
+            if (resolved < 0 || resolved >= count) {
+                throw new IOException("Index " + value + " is out of range");
+            }
+            return resolved;
+        }
+
+        void copyTo(final MeshFile mesh, final Floats positions, final Floats textureCoords, final Floats normals) {
+            final int count = positionOf.size();
+            boolean anyTextureCoords = false;
+            boolean anyNormals = false;
+            for (int i = 0; i < count; i++) {
+                anyTextureCoords |= textureCoordOf.get(i) >= 0;
+                anyNormals |= normalOf.get(i) >= 0;
+            }
+
+            mesh.vertices = new float[count * 3];
+            mesh.textureCoords = anyTextureCoords ? new float[count * 2] : null;
+            mesh.normals = anyNormals ? new float[count * 3] : null;
+
+            for (int i = 0; i < count; i++) {
+                System.arraycopy(positions.values, positionOf.get(i) * 3, mesh.vertices, i * 3, 3);
+
+                if (anyTextureCoords && textureCoordOf.get(i) >= 0) {
+                    System.arraycopy(textureCoords.values, textureCoordOf.get(i) * 2, mesh.textureCoords, i * 2, 2);
+                }
+                if (anyNormals && normalOf.get(i) >= 0) {
+                    System.arraycopy(normals.values, normalOf.get(i) * 3, mesh.normals, i * 3, 3);
+                }
+            }
+        }
+    }
+
+    private static final class PlyHeader {
+
+        String format;
+        final List<PlyElement> elements = new ArrayList<>();
+
+        // Reads the header a byte at a time, so that the stream is left at the start of the data
+        static PlyHeader read(final InputStream input) throws IOException {
+            final PlyHeader header = new PlyHeader();
+
+            if (!"ply".equals(readLine(input))) {
+                throw new IOException("Not a PLY file");
+            }
+
+            String line;
+            while (!"end_header".equals(line = readLine(input))) {
+                final String[] tokens = line.trim().split("\\s+");
+
+                switch (tokens[0]) {
+                    case "format":
+                        header.format = tokens[1];
+                        if (!tokens[1].equals("ascii") && !tokens[1].equals("binary_little_endian")
+                                && !tokens[1].equals("binary_big_endian")) {
+                            throw new IOException("Unsupported PLY format: " + tokens[1]);
+                        }
+                        break;
+                    case "element":
+                        header.elements.add(new PlyElement(tokens[1], Integer.parseInt(tokens[2])));
+                        break;
+                    case "property":
+                        if (header.elements.isEmpty()) {
+                            throw new IOException("PLY property before any element: " + line);
+                        }
+                        header.elements.get(header.elements.size() - 1).properties.add(tokens[1].equals("list")
+                                ? new PlyProperty(tokens[4], PlyType.of(tokens[3]), PlyType.of(tokens[2]))
+                                : new PlyProperty(tokens[2], PlyType.of(tokens[1]), null));
+                        break;
+                    default:
+                        break;  // comments and obj_info
+                }
+            }
+
+            if (header.format == null) {
+                throw new IOException("The PLY header has no format");
+            }
+            return header;
+        }
+
+        private static String readLine(final InputStream input) throws IOException {
+            final StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = input.read()) != '\n') {
+                if (c < 0) {
+                    throw new EOFException("The PLY header has no end");
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+    }
+
+    private static final class PlyElement {
+
+        final String name;
+        final int count;
+        final List<PlyProperty> properties = new ArrayList<>();
+
+        PlyElement(final String name, final int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    private static final class PlyProperty {
+
+        final String name;
+        final PlyType type;         // of the value, or of each item of a list
+        final PlyType countType;    // of the number of items, null if the property isn't a list
+        final boolean list;
+
+        PlyProperty(final String name, final PlyType type, final PlyType countType) {
+            this.name = name;
+            this.type = type;
+            this.countType = countType;
+            this.list = countType != null;
+        }
+    }
+
+    private enum PlyType {
+        INT8(1), UINT8(1), INT16(2), UINT16(2), INT32(4), UINT32(4), FLOAT32(4), FLOAT64(8);
+
+        final int size;
+
+        PlyType(final int size) {
+            this.size = size;
+        }
+
+        static PlyType of(final String name) throws IOException {
+            switch (name) {
+                case "char": case "int8": return INT8;
+                case "uchar": case "uint8": return UINT8;
+                case "short": case "int16": return INT16;
+                case "ushort": case "uint16": return UINT16;
+                case "int": case "int32": return INT32;
+                case "uint": case "uint32": return UINT32;
+                case "float": case "float32": return FLOAT32;
+                case "double": case "float64": return FLOAT64;
+                default: throw new IOException("Unknown PLY type: " + name);
+            }
+        }
+    }
+
+    private abstract static class PlyReader {
+
+        abstract double read(PlyType type) throws IOException;
+
+        void skip(final PlyProperty property) throws IOException {
+            final int count = property.list ? (int) read(property.countType) : 1;
+            for (int i = 0; i < count; i++) {
+                read(property.type);
+            }
+        }
+    }
+
+    private static final class AsciiPlyReader extends PlyReader {
+
+        private final InputStream input;
+        private final StringBuilder token = new StringBuilder();
+
+        AsciiPlyReader(final InputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        double read(final PlyType type) throws IOException {
+            token.setLength(0);
+
+            int c = input.read();
+            while (c >= 0 && c <= ' ') c = input.read();
+            while (c > ' ') {
+                token.append((char) c);
+                c = input.read();
+            }
+
+            if (token.length() == 0) {
+                throw new EOFException("The PLY file ended early");
+            }
+            try {
+                return Double.parseDouble(token.toString());
+            } catch (final NumberFormatException e) {
+                throw new IOException("Invalid PLY value: " + token, e);
+            }
+        }
+    }
+
+    private static final class BinaryPlyReader extends PlyReader {
+
+        private final DataInputStream input;
+        private final boolean littleEndian;
+        private final byte[] scratch = new byte[8];
+
+        BinaryPlyReader(final InputStream input, final boolean littleEndian) {
+            this.input = new DataInputStream(input);
+            this.littleEndian = littleEndian;
+        }
+
+        @Override
+        double read(final PlyType type) throws IOException {
+            switch (type) {
+                case INT8: return input.readByte();
+                case UINT8: return input.readUnsignedByte();
+                case INT16: return order(input.readShort());
+                case UINT16: return order(input.readShort()) & 0xffff;
+                case INT32: return order(input.readInt());
+                case UINT32: return order(input.readInt()) & 0xffffffffL;
+                case FLOAT32: return Float.intBitsToFloat(order(input.readInt()));
+                default: return Double.longBitsToDouble(littleEndian ? Long.reverseBytes(input.readLong()) : input.readLong());
+            }
+        }
+
+        @Override
+        void skip(final PlyProperty property) throws IOException {
+            if (property.list) {
+                super.skip(property);
+            } else {
+                input.readFully(scratch, 0, property.type.size);
+            }
+        }
+
+        private short order(final short value) {
+            return littleEndian ? Short.reverseBytes(value) : value;
+        }
+
+        private int order(final int value) {
+            return littleEndian ? Integer.reverseBytes(value) : value;
+        }
+    }
+
+    // A growing array of floats, added in twos or threes
+    private static final class Floats {
+
+        float[] values = new float[1024];
+        private int size;
+
+        void add(final float a, final float b) {
+            ensure(2);
+            values[size++] = a;
+            values[size++] = b;
+        }
+
+        void add(final float a, final float b, final float c) {
+            ensure(3);
+            values[size++] = a;
+            values[size++] = b;
+            values[size++] = c;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void ensure(final int more) {
+            if (size + more > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+        }
+    }
+
+    // A growing array of ints
+    private static final class Ints {
+
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = value;
+        }
+
+        void add(final int a, final int b, final int c) {
+            add(a);
+            add(b);
+            add(c);
+        }
+
+        int get(final int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
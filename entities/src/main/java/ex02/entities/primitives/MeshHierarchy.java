@@ -0,0 +1,443 @@
+package ex02.entities.primitives;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import ex02.entities.EntityData;
+import ex02.entities.Ray;
+
+/**
+ * A bounding volume hierarchy over the triangles of a mesh, built with the surface area heuristic in the same way as
+ * the one the ray tracer builds over a scene, so that a ray only tests the few triangles near its path. The
+ * triangles of the mesh are reordered so that each leaf refers to a run of them.
+ * <p>
+ * Unlike the scene's hierarchy, which has an array for each field of its nodes, every node here is packed into eight
+ * ints of a single array: its bounds as the bits of six floats, like the vertices they are taken from, then its
+ * offset, and its count and axis. A mesh can have millions of nodes, far more than fit in the CPU's caches, and this
+ * way each node a ray visits is one read from memory rather than one for every field.
+ */
+final class MeshHierarchy {
+
+    private static final int SAH_BINS = 16;
+    private static final double TRAVERSAL_COST = 0.5;
+    private static final int MAX_TRIANGLES_IN_LEAF = 4;
+
+    // Allows for rounding in the slab test, see Pharr, Jakob & Humphreys: Physically Based Rendering, 3.9.2
+    private static final double SLAB_TOLERANCE = 1 + 2 * (3 * Math.ulp(1.0) / 2);
+
+    // Hits closer than this are the triangle a ray has just left, so that the rest of the mesh can still be hit
+    static final double MIN_DISTANCE = 1e-8;
+
+    private final float[] vertices;
+    private final int[] triangles;
+
+    // min x, y, z then max x, y, z as float bits, then the first triangle for leaves or right child for interior
+    // nodes, then the number of triangles in leaves (0 for interior nodes) shifted left by two, or'd with the axis
+    private static final int NODE_SIZE = 8;
+    private static final int OFFSET = 6;
+    private static final int COUNT_AND_AXIS = 7;
+
+    private int[] nodeData;
+    private int nodes;
+    private int depth;
+
+    private final ThreadLocal<Traversal> traversals = ThreadLocal.withInitial(() -> new Traversal(depth));
+
+    /**
+     * Builds the hierarchy, reordering the triangles.
+     */
+    MeshHierarchy(final float[] vertices, final int[] triangles) {
+        this.vertices = vertices;
+        this.triangles = triangles;
+
+        final int count = triangles.length / 3;
+        final float[] bounds = new float[count * 6];
+        final float[] centroids = new float[count * 3];
+        final int[] order = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                final float a = vertices[triangles[i * 3] * 3 + axis];
+                final float b = vertices[triangles[i * 3 + 1] * 3 + axis];
+                final float c = vertices[triangles[i * 3 + 2] * 3 + axis];
+                bounds[i * 6 + axis] = Math.min(a, Math.min(b, c));
+                bounds[i * 6 + axis + 3] = Math.max(a, Math.max(b, c));
+                centroids[i * 3 + axis] = (bounds[i * 6 + axis] + bounds[i * 6 + axis + 3]) / 2;
+            }
+            order[i] = i;
+        }
+
+        final int maxNodes = Math.max(1, 2 * count - 1);
+        this.nodeData = new int[maxNodes * NODE_SIZE];
+
+        if (count > 0) {
+            build(bounds, centroids, order, 0, count, 1);
+        }
+
+        // the array is usually bigger than the tree, as leaves hold more than one triangle where that's cheaper
+        this.nodeData = Arrays.copyOf(nodeData, nodes * NODE_SIZE);
+
+        final int[] original = triangles.clone();
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(original, order[i] * 3, triangles, i * 3, 3);
+        }
+    }
+
+    // The hierarchy as it was written, over triangles that are already in its order
+    private MeshHierarchy(final float[] vertices, final int[] triangles, final ByteBuffer in) {
+        this.vertices = vertices;
+        this.triangles = triangles;
+        this.depth = in.getInt();
+        this.nodeData = EntityData.readInts(in);
+        this.nodes = nodeData.length / NODE_SIZE;
+    }
+
+    static MeshHierarchy read(final float[] vertices, final int[] triangles, final ByteBuffer in) {
+        return new MeshHierarchy(vertices, triangles, in);
+    }
+
+    void write(final DataOutput out) throws IOException {
+        out.writeInt(depth);
+        EntityData.writeInts(out, nodeData);
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    int getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * @return the distance to the closest triangle the ray hits, or infinity if it doesn't hit one
+     */
+    double intersect(final Ray ray) {
+        final Traversal traversal = traversals.get();
+        return findClosest(ray, traversal) >= 0 ? traversal.distance : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the triangle recorded by the last query on this thread if it was for the same ray, as it is when
+     * the hit that intersect() found is looked up straight away, and otherwise traverses the hierarchy again.
+     * @return the index of the closest triangle the ray hits, or -1 if it doesn't hit one
+     */
+    int findTriangle(final Ray ray) {
+        final Traversal traversal = traversals.get();
+        return traversal.isFor(ray) ? traversal.triangle : findClosest(ray, traversal);
+    }
+
+    private int findClosest(final Ray ray, final Traversal traversal) {
+        final double[] origin = ray.getPosition();
+        final double[] direction = ray.getDirection();
+        final double ox = origin[0], oy = origin[1], oz = origin[2];
+        final double dx = direction[0], dy = direction[1], dz = direction[2];
+        traversal.setRay(ox, oy, oz, dx, dy, dz);
+
+        if (nodes == 0) {
+            traversal.distance = Double.POSITIVE_INFINITY;
+            traversal.triangle = -1;
+            return -1;
+        }
+        final double invX = 1 / dx, invY = 1 / dy, invZ = 1 / dz;
+        final int nearX = invX < 0 ? 3 : 0, nearY = invY < 0 ? 3 : 0, nearZ = invZ < 0 ? 3 : 0;
+
+        final int[] data = nodeData;
+        final int[] stack = traversal.stack;
+        int stackSize = 0;
+        int node = 0;
+
+        double minDistance = Double.POSITIVE_INFINITY;
+        int minTriangle = -1;
+
+        while (true) {
+            final int n = node * NODE_SIZE;
+
+            if (intersectsBox(data, n, ox, oy, oz, invX, invY, invZ, nearX, nearY, nearZ, minDistance)) {
+                final int count = data[n + COUNT_AND_AXIS] >>> 2;
+
+                if (count > 0) {
+                    final int first = data[n + OFFSET];
+
+                    for (int i = first; i < first + count; i++) {
+                        final double t = intersectTriangle(i, ox, oy, oz, dx, dy, dz);
+
+                        if (t > MIN_DISTANCE && t < minDistance) {
+                            minDistance = t;
+                            minTriangle = i;
+                        }
+                    }
+                } else {
+                    // visit the child on the side the ray comes from first, so that the other is more likely culled
+                    final int right = data[n + OFFSET];
+                    final boolean negative = direction[data[n + COUNT_AND_AXIS] & 3] < 0;
+
+                    stack[stackSize++] = negative ? node + 1 : right;
+                    node = negative ? right : node + 1;
+                    continue;
+                }
+            }
+
+            if (stackSize == 0) {
+                break;
+            }
+            node = stack[--stackSize];
+        }
+
+        traversal.distance = minDistance;
+        traversal.triangle = minTriangle;
+        return minTriangle;
+    }
+
+    // Moller-Trumbore, returning the distance along the ray or infinity if it misses the triangle
+    private double intersectTriangle(final int triangle, final double ox, final double oy, final double oz,
+                                     final double dx, final double dy, final double dz) {
+        final int a = triangles[triangle * 3] * 3;
+        final int b = triangles[triangle * 3 + 1] * 3;
+        final int c = triangles[triangle * 3 + 2] * 3;
+
+        final double ax = vertices[a], ay = vertices[a + 1], az = vertices[a + 2];
+        final double e1x = vertices[b] - ax, e1y = vertices[b + 1] - ay, e1z = vertices[b + 2] - az;
+        final double e2x = vertices[c] - ax, e2y = vertices[c + 1] - ay, e2z = vertices[c + 2] - az;
+
+        final double px = dy * e2z - dz * e2y;
+        final double py = dz * e2x - dx * e2z;
+        final double pz = dx * e2y - dy * e2x;
+        final double determinant = e1x * px + e1y * py + e1z * pz;
+
+        // the ray is parallel to the triangle
+        if (determinant == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double inverse = 1 / determinant;
+
+        final double sx = ox - ax, sy = oy - ay, sz = oz - az;
+        final double u = (sx * px + sy * py + sz * pz) * inverse;
+        if (u < 0 || u > 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        final double qx = sy * e1z - sz * e1y;
+        final double qy = sz * e1x - sx * e1z;
+        final double qz = sx * e1y - sy * e1x;
+        final double v = (dx * qx + dy * qy + dz * qz) * inverse;
+        if (v < 0 || u + v > 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return (e2x * qx + e2y * qy + e2z * qz) * inverse;
+    }
+
+    // Slab test of the node, ignoring boxes further away than the closest hit so far. The near offsets are 0 or 3,
+    // picking whichever of the box's min and max the ray meets first on each axis so that no swap is needed
+    private static boolean intersectsBox(final int[] data, final int b, final double ox, final double oy,
+                                         final double oz, final double invX, final double invY, final double invZ,
+                                         final int nearX, final int nearY, final int nearZ, final double maxDistance) {
+        final double tNearX = (bound(data, b + nearX) - ox) * invX;
+        final double tFarX = (bound(data, b + 3 - nearX) - ox) * invX * SLAB_TOLERANCE;
+        final double tNearY = (bound(data, b + 1 + nearY) - oy) * invY;
+        final double tFarY = (bound(data, b + 4 - nearY) - oy) * invY * SLAB_TOLERANCE;
+        final double tNearZ = (bound(data, b + 2 + nearZ) - oz) * invZ;
+        final double tFarZ = (bound(data, b + 5 - nearZ) - oz) * invZ * SLAB_TOLERANCE;
+
+        // comparisons rather than Math.min and max, which also have to handle negative zero, and arranged so that
+        // a NaN (0 * infinity, for a ray in the plane of a side) leaves the interval unchanged
+        double tNear = tNearX > 0 ? tNearX : 0;
+        tNear = tNearY > tNear ? tNearY : tNear;
+        tNear = tNearZ > tNear ? tNearZ : tNear;
+        double tFar = tFarX < maxDistance ? tFarX : maxDistance;
+        tFar = tFarY < tFar ? tFarY : tFar;
+        tFar = tFarZ < tFar ? tFarZ : tFar;
+        return tNear <= tFar;
+    }
+
+    private static float bound(final int[] data, final int index) {
+        return Float.intBitsToFloat(data[index]);
+    }
+
+    // Recursively builds the subtree for order[start, end) and returns its index
+    private int build(final float[] bounds, final float[] centroids, final int[] order, final int start, final int end,
+                      final int level) {
+        final int node = nodes++;
+        depth = Math.max(depth, level);
+
+        final float[] nodeBox = emptyBounds();
+        final float[] centroidBox = emptyBounds();
+
+        for (int i = start; i < end; i++) {
+            include(nodeBox, bounds, order[i] * 6);
+            includePoint(centroidBox, centroids, order[i] * 3);
+        }
+        for (int i = 0; i < 6; i++) {
+            nodeData[node * NODE_SIZE + i] = Float.floatToRawIntBits(nodeBox[i]);
+        }
+
+        final int count = end - start;
+        if (count == 1) {
+            return makeLeaf(node, start, count);
+        }
+
+        int axis = 0;
+        for (int i = 1; i < 3; i++) {
+            if (centroidBox[i + 3] - centroidBox[i] > centroidBox[axis + 3] - centroidBox[axis]) {
+                axis = i;
+            }
+        }
+
+        final float axisMin = centroidBox[axis];
+        final float axisExtent = centroidBox[axis + 3] - axisMin;
+
+        if (!(axisExtent > 0)) {
+            // every centroid is in the same place, no split can separate them
+            return makeLeaf(node, start, count);
+        }
+
+        final int[] binCounts = new int[SAH_BINS];
+        final float[] binBounds = new float[SAH_BINS * 6];
+        for (int i = 0; i < SAH_BINS; i++) {
+            System.arraycopy(emptyBounds(), 0, binBounds, i * 6, 6);
+        }
+
+        for (int i = start; i < end; i++) {
+            final int bin = binFor(centroids[order[i] * 3 + axis], axisMin, axisExtent);
+            binCounts[bin]++;
+            include(binBounds, bin * 6, bounds, order[i] * 6);
+        }
+
+        // sweep from the right for the area and count on the right of every split plane
+        final double[] rightArea = new double[SAH_BINS];
+        final int[] rightCount = new int[SAH_BINS];
+        final float[] sweep = emptyBounds();
+        int sweepCount = 0;
+        for (int i = SAH_BINS - 1; i > 0; i--) {
+            include(sweep, binBounds, i * 6);
+            sweepCount += binCounts[i];
+            rightArea[i] = surfaceArea(sweep);
+            rightCount[i] = sweepCount;
+        }
+
+        // sweep from the left and evaluate the cost of splitting before each bin
+        final double parentArea = surfaceArea(nodeBox);
+        double bestCost = Double.POSITIVE_INFINITY;
+        int bestSplit = -1;
+
+        System.arraycopy(emptyBounds(), 0, sweep, 0, 6);
+        sweepCount = 0;
+        for (int i = 1; i < SAH_BINS; i++) {
+            include(sweep, binBounds, (i - 1) * 6);
+            sweepCount += binCounts[i - 1];
+
+            if (sweepCount == 0 || rightCount[i] == 0) {
+                continue;
+            }
+
+            final double cost = TRAVERSAL_COST
+                    + (surfaceArea(sweep) * sweepCount + rightArea[i] * rightCount[i]) / parentArea;
+
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestSplit = i;
+            }
+        }
+
+        if (bestSplit < 0 || (count <= MAX_TRIANGLES_IN_LEAF && bestCost >= count)) {
+            return makeLeaf(node, start, count);
+        }
+
+        int mid = start;
+        for (int i = start; i < end; i++) {
+            if (binFor(centroids[order[i] * 3 + axis], axisMin, axisExtent) < bestSplit) {
+                final int swap = order[i];
+                order[i] = order[mid];
+                order[mid] = swap;
+                mid++;
+            }
+        }
+
+        nodeData[node * NODE_SIZE + COUNT_AND_AXIS] = axis;
+
+        build(bounds, centroids, order, start, mid, level + 1);
+        nodeData[node * NODE_SIZE + OFFSET] = build(bounds, centroids, order, mid, end, level + 1);
+
+        return node;
+    }
+
+    private int makeLeaf(final int node, final int start, final int count) {
+        nodeData[node * NODE_SIZE + OFFSET] = start;
+        nodeData[node * NODE_SIZE + COUNT_AND_AXIS] = count << 2;
+        return node;
+    }
+
+    private static int binFor(final float centroid, final float axisMin, final float axisExtent) {
+        final int bin = (int) (SAH_BINS * (centroid - axisMin) / axisExtent);
+        return Math.min(bin, SAH_BINS - 1);
+    }
+
+    private static float[] emptyBounds() {
+        return new float[] {
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
+    }
+
+    private static void include(final float[] box, final float[] others, final int offset) {
+        include(box, 0, others, offset);
+    }
+
+    private static void include(final float[] boxes, final int box, final float[] others, final int offset) {
+        for (int i = 0; i < 3; i++) {
+            boxes[box + i] = Math.min(boxes[box + i], others[offset + i]);
+            boxes[box + i + 3] = Math.max(boxes[box + i + 3], others[offset + i + 3]);
+        }
+    }
+
+    private static void includePoint(final float[] box, final float[] points, final int offset) {
+        for (int i = 0; i < 3; i++) {
+            box[i] = Math.min(box[i], points[offset + i]);
+            box[i + 3] = Math.max(box[i + 3], points[offset + i]);
+        }
+    }
+
+    private static double surfaceArea(final float[] box) {
+        final double dx = box[3] - box[0];
+        final double dy = box[4] - box[1];
+        final double dz = box[5] - box[2];
+
+        if (dx < 0 || dy < 0 || dz < 0) {
+            return 0;
+        }
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static final class Traversal {
+        final int[] stack;
+        double distance;    // of the closest hit found by the last query
+        int triangle = -1;  // that was hit, or -1
+
+        // the ray of the last query
+        private double ox, oy, oz, dx, dy, dz = Double.NaN;
+
+        Traversal(final int depth) {
+            this.stack = new int[depth + 1];
+        }
+
+        void setRay(final double ox, final double oy, final double oz,
+                    final double dx, final double dy, final double dz) {
+            this.ox = ox;
+            this.oy = oy;
+            this.oz = oz;
+            this.dx = dx;
+            this.dy = dy;
+            this.dz = dz;
+        }
+
+        // Rays are often built afresh for each primitive, so they are compared by value
+        boolean isFor(final Ray ray) {
+            final double[] origin = ray.getPosition();
+            final double[] direction = ray.getDirection();
+            return origin[0] == ox && origin[1] == oy && origin[2] == oz
+                    && direction[0] == dx && direction[1] == dy && direction[2] == dz;
+        }
+    }
+}
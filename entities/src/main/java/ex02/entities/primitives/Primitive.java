@@ -1,8 +1,15 @@
 package ex02.entities.primitives;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
+import ex02.blas.BoundingBox;
+import ex02.blas.MathUtils;
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
+import ex02.entities.Intersection;
 import ex02.entities.Ray;
 import ex02.entities.Surface;
 
@@ -13,26 +20,82 @@ public abstract class Primitive implements IEntity {
 
     private final Surface surface;
 
+    private String name;
+
     private boolean active;
 
+    private BoundingBox bounds;
+
     public Primitive() {
-        this.surface = new Surface();
+        this(new Surface());
+    }
+
+    /**
+     * For primitives that use the surface of another primitive, which pass null and override every method that uses
+     * the surface: getSurface, setParameter, postInit, write, read and getColorAt.
+     */
+    protected Primitive(Surface surface) {
+        this.surface = surface;
         this.active = true;
     }
 
     /**
      * A generic intersection algorithm which returns the distance between the ray and the
      * implementing primitive.  Returns Double.POSITIVE_INFINITY if there is no intersection.
+     * Implementations must not modify the ray or any state of the primitive, as this is called
+     * concurrently from all of the render threads.
      *
      * @param ray
      * @return the distance between the ray and the implementing primitive or Double.POSITIVE_INFINITY
      */
     abstract public double intersect(Ray ray);
 
+    /**
+     * Creates the hit record for an intersection found by {@link #intersect(Ray)}. Primitives that are
+     * made up of several faces override this to record which face the ray hit.
+     *
+     * @param ray the ray that was intersected
+     * @param distance the distance returned by intersect for that ray
+     * @return a hit record for this primitive
+     */
+    public Intersection getIntersection(Ray ray, double distance) {
+        return new Intersection(distance, this);
+    }
+
     public Surface getSurface() {
         return surface;
     }
 
+    /**
+     * Reads the name and active flag, and the parameters of the surface that aren't numbers, such as the texture file,
+     * and passes every other parameter to {@link #setParameter(String, double[])}.
+     */
+    @Override
+    public boolean setParameter(String name, String[] args) throws Exception {
+        if ("name".equals(name)) {
+            this.name = args[0];
+        } else if ("active".equals(name)) {
+            this.active = Boolean.parseBoolean(args[0]);
+        } else if (!surface.parseParameter(name, args)) {
+            return setParameter(name, MathUtils.parseValues(args));
+        }
+        return true;
+    }
+
+    /**
+     * @return the name instances refer to the primitive by, or null if it hasn't got one
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Primitives that aren't active aren't rendered, but can still be the shape of an {@link Instance}.
+     */
     public boolean isActive() {
         return this.active;
     }
@@ -45,21 +108,104 @@ public abstract class Primitive implements IEntity {
         surface.postInit();
     }
 
+    @Override
+    public void write(DataOutput out) throws IOException {
+        surface.write(out);
+        EntityData.writeString(out, name);
+        out.writeBoolean(active);
+        EntityData.writeVector(out, bounds != null ? bounds.getMin() : null);
+        EntityData.writeVector(out, bounds != null ? bounds.getMax() : null);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        surface.read(in);
+        name = EntityData.readString(in);
+        active = in.get() != 0;
+        final double[] min = EntityData.readVector(in);
+        final double[] max = EntityData.readVector(in);
+        bounds = min != null ? new BoundingBox(min, max) : null;
+    }
+
+    /**
+     * The bounds are calculated once by postInit and cached, so callers must not modify the returned box.
+     *
+     * @return an axis-aligned box that fully contains the primitive, used to build acceleration structures
+     */
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    // Calculate an axis-aligned box that fully contains the primitive
+    protected abstract BoundingBox calculateBounds();
+
+    // Implementations call this at the end of postInit and whenever their geometry changes
+    protected void updateBounds() {
+        this.bounds = calculateBounds();
+    }
+
     // Return a normal vector for the given point
     public abstract double[] getNormal(double[] point);
 
+    // Return a normal vector for the given point on the face recorded in the intersection
+    public double[] getNormal(Intersection intersection, double[] point) {
+        return getNormal(point);
+    }
+
     // Return texture coordinates (2D parameterization) for the given point
     public abstract double[] getTextureCoords(double[] point);
 
+    // Return texture coordinates for the given point on the face recorded in the intersection
+    public double[] getTextureCoords(Intersection intersection, double[] point) {
+        return getTextureCoords(point);
+    }
+
+    /**
+     * How far the texture coordinates move for each unit travelled across the surface, so that a footprint on the
+     * surface can be turned into one on the texture. Where the rate differs by direction or place (eg: towards the
+     * poles of a sphere) this is a typical value for the larger of the two coordinates.
+     *
+     * @return texture coordinates per unit of length
+     */
+    public abstract double getTextureScale();
+
+    // Return the texture scale of the face recorded in the intersection
+    public double getTextureScale(Intersection intersection) {
+        return getTextureScale();
+    }
+
     // Return the color at the given point (could be flat, texture, checkers)
     public double[] getColorAt(double[] point) {
+        return getColorAt(null, point);
+    }
+
+    // Return the color at the given point on the face recorded in the intersection (may be null)
+    public double[] getColorAt(Intersection intersection, double[] point) {
+        return getColorAt(intersection, point, 0, new double[3]);
+    }
+
+    /**
+     * Return the color at the given point, with textures filtered over the area around the point that a sample covers.
+     *
+     * @param intersection the intersection the point is on, or null
+     * @param point a point on the primitive
+     * @param footprint width of the area the sample covers, in the same units as the scene, or 0 for a single point
+     * @param dest may receive the color, although flat and checkered surfaces return their own colors instead
+     * @return the color, which callers must not modify
+     */
+    public double[] getColorAt(Intersection intersection, double[] point, double footprint, double[] dest) {
         switch (surface.getTypeId()) {
             case Surface.TYPE_CHECKERS:
-                return surface.getCheckersColor(getTextureCoords(point));
+                return surface.getCheckersColor(textureCoords(intersection, point));
             case Surface.TYPE_TEXTURE:
-                return surface.getTextureColor(getTextureCoords(point));
+                final double textureScale = intersection != null ? getTextureScale(intersection) : getTextureScale();
+                return surface.getTextureColor(textureCoords(intersection, point), footprint * textureScale, dest);
         }
 
         return surface.getDiffuse();
     }
+
+    private double[] textureCoords(Intersection intersection, double[] point) {
+        return intersection != null ? getTextureCoords(intersection, point) : getTextureCoords(point);
+    }
 }
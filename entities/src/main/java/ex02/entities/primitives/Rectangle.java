@@ -1,8 +1,13 @@
 package ex02.entities.primitives;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
+import ex02.blas.BoundingBox;
 import ex02.blas.MathUtils;
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
 import ex02.entities.Ray;
 
@@ -10,10 +15,9 @@ public class Rectangle extends Primitive {
 
     private double[] p0, p1, p2, p3;
     private double[] normal = null;
-    private double[] intersectionPoint = null;
     private double d;
     private double[] AB, AC;
-    private double ABdotAB, ACdotAC;
+    private double ABdotAB, ACdotAC, ACdotAB;
     private double ABnorm;
     private double ACnorm;
 
@@ -94,8 +98,7 @@ public class Rectangle extends Primitive {
     private double intersectSameSide(Ray ray, double distance) {
 
         // Get the intersection point with the rectangle's plane
-        ray.setMagnitude(distance);
-        intersectionPoint = ray.getEndPoint();
+        final double[] intersectionPoint = ray.getPointAt(distance);
 
         //
         if (sameSide(p0, p1, p2, intersectionPoint) &&
@@ -157,25 +160,23 @@ public class Rectangle extends Primitive {
      */
     private double intersectBarycentric(Ray ray, double distance) {
 
-        double[] v0, v1, v2;
         double dot00, dot01, dot02, dot11, dot12;
         double denominator, u, v;
 
-        // Get the intersection point with the rectangle's plane
-        ray.setMagnitude(distance);
-        intersectionPoint = ray.getEndPoint();
-
-        // Compute vectors
-        v0 = MathUtils.calcPointsDiff(p0, p2);
-        v1 = MathUtils.calcPointsDiff(p0, p1);
-        v2 = MathUtils.calcPointsDiff(p0, intersectionPoint);
+        // The spanning vectors are v0 = AC and v1 = AB, so only the vector v2 from p0 to the intersection point
+        // with the rectangle's plane changes from ray to ray. It's kept as x, y, z values to avoid allocating.
+        final double[] position = ray.getPosition();
+        final double[] direction = ray.getDirection();
+        final double v2x = (position[0] + distance * direction[0]) - p0[0];
+        final double v2y = (position[1] + distance * direction[1]) - p0[1];
+        final double v2z = (position[2] + distance * direction[2]) - p0[2];
 
         // Compute dot products
-        dot00 = MathUtils.dotProduct(v0, v0);
-        dot01 = MathUtils.dotProduct(v0, v1);
-        dot02 = MathUtils.dotProduct(v0, v2);
-        dot11 = MathUtils.dotProduct(v1, v1);
-        dot12 = MathUtils.dotProduct(v1, v2);
+        dot00 = ACdotAC;
+        dot01 = ACdotAB;
+        dot02 = MathUtils.dotProduct(AC[0], AC[1], AC[2], v2x, v2y, v2z);
+        dot11 = ABdotAB;
+        dot12 = MathUtils.dotProduct(AB[0], AB[1], AB[2], v2x, v2y, v2z);
 
         // Compute barycentric coordinates
         denominator = 1 / (dot00 * dot11 - dot01 * dot01);
@@ -191,11 +192,13 @@ public class Rectangle extends Primitive {
     }
 
 
-    public void setParameter(String name, String[] args) throws Exception {
-        if (getSurface().parseParameter(name, args)) return;
-        if ("p0".equals(name)) p0 = MathUtils.parseVector(args);
-        if ("p1".equals(name)) p1 = MathUtils.parseVector(args);
-        if ("p2".equals(name)) p2 = MathUtils.parseVector(args);
+    public boolean setParameter(String name, double[] values) throws Exception {
+        if (getSurface().parseParameter(name, values)) return true;
+        if ("p0".equals(name)) p0 = MathUtils.toVector(values);
+        else if ("p1".equals(name)) p1 = MathUtils.toVector(values);
+        else if ("p2".equals(name)) p2 = MathUtils.toVector(values);
+        else return false;
+        return true;
     }
 
 
@@ -208,6 +211,16 @@ public class Rectangle extends Primitive {
         return normal;
     }
 
+    // Signed distance of the point from the plane containing the rectangle
+    double distanceFromPlane(double[] point) {
+        return MathUtils.dotProduct(normal, point) + d;
+    }
+
+    @Override
+    protected BoundingBox calculateBounds() {
+        return BoundingBox.of(p0, p1, p2, p3);
+    }
+
     @Override
     public void postInit(List<IEntity> entities) {
         super.postInit(entities);
@@ -230,9 +243,47 @@ public class Rectangle extends Primitive {
         ABdotAB = MathUtils.dotProduct(AB, AB);
         AC = MathUtils.calcPointsDiff(p0, p2);
         ACdotAC = MathUtils.dotProduct(AC, AC);
+        ACdotAB = MathUtils.dotProduct(AC, AB);
         ABnorm = MathUtils.norm(AB);
         ACnorm = MathUtils.norm(AC);
 
+        updateBounds();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        EntityData.writeVector(out, p0);
+        EntityData.writeVector(out, p1);
+        EntityData.writeVector(out, p2);
+        EntityData.writeVector(out, p3);
+        EntityData.writeVector(out, normal);
+        out.writeDouble(d);
+        EntityData.writeVector(out, AB);
+        EntityData.writeVector(out, AC);
+        out.writeDouble(ABdotAB);
+        out.writeDouble(ACdotAC);
+        out.writeDouble(ACdotAB);
+        out.writeDouble(ABnorm);
+        out.writeDouble(ACnorm);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        super.read(in);
+        p0 = EntityData.readVector(in);
+        p1 = EntityData.readVector(in);
+        p2 = EntityData.readVector(in);
+        p3 = EntityData.readVector(in);
+        normal = EntityData.readVector(in);
+        d = in.getDouble();
+        AB = EntityData.readVector(in);
+        AC = EntityData.readVector(in);
+        ABdotAB = in.getDouble();
+        ACdotAC = in.getDouble();
+        ACdotAB = in.getDouble();
+        ABnorm = in.getDouble();
+        ACnorm = in.getDouble();
     }
 
 
@@ -249,6 +300,12 @@ public class Rectangle extends Primitive {
         return p3;
     }
 
+    @Override
+    public double getTextureScale() {
+        // u runs from 0 to 1 along AB, and v is scaled by the same factor along AC
+        return Math.max(1 / ABnorm, ABnorm / ACdotAC);
+    }
+
     @Override
     public double[] getTextureCoords(double[] point) {
 
@@ -1,7 +1,12 @@
 package ex02.entities.primitives;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import ex02.blas.BoundingBox;
 import ex02.blas.MathUtils;
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
 import ex02.entities.Ray;
 
@@ -24,6 +29,11 @@ public class Sphere extends Primitive implements Center {
     @Override
     public void setCenter(double[] center) {
         this.center = center;
+        updateBounds();
+    }
+
+    public double getRadius() {
+        return radius;
     }
 
     /**
@@ -37,10 +47,14 @@ public class Sphere extends Primitive implements Center {
     private double intersectGeometric(Ray ray) {
 
         // Note that locals are named according to the equations in the lecture notes.
-        double[] L = MathUtils.calcPointsDiff(ray.getPosition(), center);
+        // L is kept as x, y, z values as this is called for every sphere a ray might hit.
+        double[] P = ray.getPosition();
         double[] V = ray.getDirection();
+        double Lx = center[0] - P[0];
+        double Ly = center[1] - P[1];
+        double Lz = center[2] - P[2];
 
-        double tCA = MathUtils.dotProduct(L, V);
+        double tCA = MathUtils.dotProduct(Lx, Ly, Lz, V[0], V[1], V[2]);
 
         if (tCA < 0) {
             // In this case the camera is inside the sphere or the sphere center lies
@@ -48,7 +62,7 @@ public class Sphere extends Primitive implements Center {
             return Double.POSITIVE_INFINITY;
         }
 
-        double LSquare = MathUtils.dotProduct(L, L);
+        double LSquare = MathUtils.dotProduct(Lx, Ly, Lz, Lx, Ly, Lz);
 
         double dSquare = LSquare - MathUtils.sqr(tCA);
         double radiusSquare = MathUtils.sqr(radius);
@@ -62,7 +76,7 @@ public class Sphere extends Primitive implements Center {
 
         // We now check where the ray originated:
         // Gur: CHECK. LSquare == MathUtils.dotProduct(L, L), can't be smaller
-        if (MathUtils.dotProduct(L, L) < LSquare) {
+        if (MathUtils.dotProduct(Lx, Ly, Lz, Lx, Ly, Lz) < LSquare) {
             // The ray originated in the sphere - the intersection is with the exit point
             return tCA + tHC;
         } else {
@@ -110,10 +124,12 @@ public class Sphere extends Primitive implements Center {
         return distance;
     }
 
-    public void setParameter(String name, String[] args) throws Exception {
-        if (getSurface().parseParameter(name, args)) return;
-        if ("center".equals(name)) center = MathUtils.parseVector(args);
-        if ("radius".equals(name)) radius = Double.parseDouble(args[0]);
+    public boolean setParameter(String name, double[] values) throws Exception {
+        if (getSurface().parseParameter(name, values)) return true;
+        if ("center".equals(name)) center = MathUtils.toVector(values);
+        else if ("radius".equals(name)) radius = values[0];
+        else return false;
+        return true;
     }
 
     @Override
@@ -124,9 +140,38 @@ public class Sphere extends Primitive implements Center {
         return normal;
     }
 
+    @Override
+    protected BoundingBox calculateBounds() {
+        return new BoundingBox(
+                new double[]{center[0] - radius, center[1] - radius, center[2] - radius},
+                new double[]{center[0] + radius, center[1] + radius, center[2] + radius});
+    }
+
     @Override
     public void postInit(List<IEntity> entities) {
         super.postInit(entities);
+
+        updateBounds();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        EntityData.writeVector(out, center);
+        out.writeDouble(radius);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        super.read(in);
+        center = EntityData.readVector(in);
+        radius = in.getDouble();
+    }
+
+    @Override
+    public double getTextureScale() {
+        // v runs from 0 to 1 over half a great circle, u over a full circle of latitude
+        return 1 / (Math.PI * radius);
     }
 
     @Override
@@ -1,14 +1,16 @@
 package ex02.entities.primitives;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
+import ex02.blas.BoundingBox;
 import ex02.blas.MathUtils;
 import ex02.blas.RootFinder;
+import ex02.entities.EntityData;
 import ex02.entities.IEntity;
 import ex02.entities.Ray;
-import org.apache.commons.math4.legacy.linear.BlockRealMatrix;
-import org.apache.commons.math4.legacy.linear.MatrixUtils;
-import org.apache.commons.math4.legacy.linear.RealMatrix;
 
 public class Torus extends Primitive implements Center {
 
@@ -17,45 +19,32 @@ public class Torus extends Primitive implements Center {
     private double tubeRadius;
     private double centralRadiusSquare;
     private double tubeRadiusSquare;
+    private double boundingRadiusSquare;
     private double[] normal;
 
-    // quatric polynomial coefficients
-    private double a4, a3, a2, a1, a0;
-    private double alpha, beta, gamma;
-
     @Override
     public double[] getNormal(double[] point) {
-        double[] normal = {0, 0, 0};
-
-        double innerComponent = MathUtils.sqr(point[0]) +
-                MathUtils.sqr(point[1]) +
-                MathUtils.sqr(point[2]) - tubeRadiusSquare - centralRadiusSquare;
-
-        normal[0] = 4 * point[0] * innerComponent;
-        normal[1] = 4 * point[1] * innerComponent;
-        normal[2] = 4 * point[2] * innerComponent + (8 * centralRadiusSquare * MathUtils.sqr(point[2]));
+        // The torus is defined around its center, so work with the point relative to it
+        final double x = point[0] - center[0];
+        final double y = point[1] - center[1];
+        final double z = point[2] - center[2];
 
-        // Create the normal in matrix form
-        final RealMatrix normalMatrix = new BlockRealMatrix(4, 1);
-        normalMatrix.setEntry(0, 0, normal[0]);
-        normalMatrix.setEntry(1, 0, normal[1]);
-        normalMatrix.setEntry(2, 0, normal[2]);
-        normalMatrix.setEntry(3, 0, 1);
+        final double innerComponent = (x * x) + (y * y) + (z * z) - tubeRadiusSquare - centralRadiusSquare;
 
-        // Create the translation matrix
-        final RealMatrix M = MatrixUtils.createRealIdentityMatrix(4);
-        M.setEntry(0, 3, center[0]);
-        M.setEntry(1, 3, center[1]);
-        M.setEntry(2, 3, center[2]);
+        final double[] normal = {
+                4 * x * innerComponent,
+                4 * y * innerComponent,
+                4 * z * innerComponent + (8 * centralRadiusSquare * MathUtils.sqr(z))
+        };
 
-        // Translate the normal
-        final RealMatrix Mnormal = M.multiply(normalMatrix);
-
-        // Extract it from the matrix form
-        double[] translatedNormal = {Mnormal.getEntry(0, 0), Mnormal.getEntry(1, 0), Mnormal.getEntry(2, 0)};
+        MathUtils.normalize(normal);
+        return normal;
+    }
 
-        MathUtils.normalize(translatedNormal);
-        return translatedNormal;
+    @Override
+    public double getTextureScale() {
+        // u runs from 0 to 1 around the central ring, v around the tube
+        return Math.max(1 / (2 * Math.PI * centralRadius), 1 / (2 * Math.PI * tubeRadius));
     }
 
     @Override
@@ -92,56 +81,43 @@ public class Torus extends Primitive implements Center {
 
     @Override
     public double intersect(Ray ray) {
+        final double[] position = ray.getPosition();
+        final double[] direction = ray.getDirection();
+
+        // Translate the ray so that the torus is at the origin, the caller's ray is left untouched
+        final double px = position[0] - center[0];
+        final double py = position[1] - center[1];
+        final double pz = position[2] - center[2];
+
+        final double norm = MathUtils.norm(direction[0], direction[1], direction[2]);
+        if (norm == 0) return Double.POSITIVE_INFINITY;
+
+        final double dx = direction[0] / norm;
+        final double dy = direction[1] / norm;
+        final double dz = direction[2] / norm;
+
+        // Reject rays that miss the sphere enclosing the torus, or only meet it behind their origin,
+        // before paying for the quartic
+        final double pDotD = MathUtils.dotProduct(px, py, pz, dx, dy, dz);
+        final double pDotP = MathUtils.dotProduct(px, py, pz, px, py, pz);
 
-        // Convert the ray position and direction to matrix style
-        final RealMatrix rayPosition = new BlockRealMatrix(4, 1);
-        final RealMatrix rayDirection = new BlockRealMatrix(4, 1);
-        rayPosition.setEntry(0, 0, ray.getPosition()[0]);
-        rayPosition.setEntry(1, 0, ray.getPosition()[1]);
-        rayPosition.setEntry(2, 0, ray.getPosition()[2]);
-        rayPosition.setEntry(3, 0, 1);
-        rayDirection.setEntry(0, 0, ray.getDirection()[0]);
-        rayDirection.setEntry(1, 0, ray.getDirection()[1]);
-        rayDirection.setEntry(2, 0, ray.getDirection()[2]);
-        rayDirection.setEntry(3, 0, 1);
-
-        // Create the translation matrix
-        final RealMatrix M = MatrixUtils.createRealIdentityMatrix(4);
-        M.setEntry(0, 3, -center[0]);
-        M.setEntry(1, 3, -center[1]);
-        M.setEntry(2, 3, -center[2]);
-
-        // Translate the position and direction vectors
-        final RealMatrix MPosition = M.multiply(rayPosition);
-        final RealMatrix MDirection = M.multiply(rayDirection);
-
-        // Extract them from the matrix form
-        double[] translatedPosition = {MPosition.getEntry(0, 0), MPosition.getEntry(1, 0), MPosition.getEntry(2, 0)};
-        double[] translatedDirection = {MDirection.getEntry(0, 0), MDirection.getEntry(1, 0), MDirection.getEntry(2, 0)};
-
-        MathUtils.normalize(translatedDirection);
-
-        // Reconstruct the ray after translation
-        ray.setPosition(translatedPosition);
-        ray.setDirection(translatedDirection);
+        if (pDotD > 0 && pDotP > boundingRadiusSquare) return Double.POSITIVE_INFINITY;
+        if (pDotP - (pDotD * pDotD) > boundingRadiusSquare) return Double.POSITIVE_INFINITY;
 
         // Prepare parameters to work with for solving the polynomial
-        double[] p = ray.getPosition();
-        double[] d = ray.getDirection();
-        alpha = MathUtils.dotProduct(d, d);
-        beta = 2 * MathUtils.dotProduct(p, d);
-        gamma = MathUtils.dotProduct(p, p) - tubeRadiusSquare - centralRadiusSquare;
+        final double alpha = MathUtils.dotProduct(dx, dy, dz, dx, dy, dz);
+        final double beta = 2 * pDotD;
+        final double gamma = pDotP - tubeRadiusSquare - centralRadiusSquare;
 
         // Quatric polynomial coefficients
-        a4 = MathUtils.sqr(alpha);
-        a3 = 2 * alpha * beta;
-        a2 = (MathUtils.sqr(beta)) + (2 * alpha * gamma) + (4 * centralRadiusSquare * MathUtils.sqr(d[2]));
-        a1 = (2 * beta * gamma) + (8 * centralRadiusSquare * p[2] * d[2]);
-        a0 = MathUtils.sqr(gamma) + (4 * centralRadiusSquare * MathUtils.sqr(p[2])) - (4 * centralRadiusSquare * tubeRadiusSquare);
+        final double a4 = MathUtils.sqr(alpha);
+        final double a3 = 2 * alpha * beta;
+        final double a2 = (MathUtils.sqr(beta)) + (2 * alpha * gamma) + (4 * centralRadiusSquare * MathUtils.sqr(dz));
+        final double a1 = (2 * beta * gamma) + (8 * centralRadiusSquare * pz * dz);
+        final double a0 = MathUtils.sqr(gamma) + (4 * centralRadiusSquare * MathUtils.sqr(pz)) - (4 * centralRadiusSquare * tubeRadiusSquare);
 
         // Solve quatric
-        double[] coefficients = {a0, a1, a2, a3, a4};
-        double[] roots = RootFinder.SolveQuartic(coefficients);
+        final double[] roots = RootFinder.SolveQuartic(new double[]{a0, a1, a2, a3, a4});
 
         if (roots == null || roots.length == 0) return Double.POSITIVE_INFINITY;
 
@@ -153,10 +129,21 @@ public class Torus extends Primitive implements Center {
             }
         }
 
-        return (min == Double.POSITIVE_INFINITY) ? Double.POSITIVE_INFINITY : min;
+        return min;
     }
 
 
+    /**
+     * The quartic solved in intersect() describes a torus around the z axis, so that is the extent we bound.
+     */
+    @Override
+    protected BoundingBox calculateBounds() {
+        final double outerRadius = centralRadius + tubeRadius;
+        return new BoundingBox(
+                new double[]{center[0] - outerRadius, center[1] - outerRadius, center[2] - tubeRadius},
+                new double[]{center[0] + outerRadius, center[1] + outerRadius, center[2] + tubeRadius});
+    }
+
     @Override
     public void postInit(List<IEntity> entities) {
         super.postInit(entities);
@@ -167,16 +154,45 @@ public class Torus extends Primitive implements Center {
         // Preprocess some stuff
         centralRadiusSquare = MathUtils.sqr(centralRadius);
         tubeRadiusSquare = MathUtils.sqr(tubeRadius);
+        boundingRadiusSquare = MathUtils.sqr(centralRadius + tubeRadius);
+
+        updateBounds();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        EntityData.writeVector(out, center);
+        out.writeDouble(centralRadius);
+        out.writeDouble(tubeRadius);
+        out.writeDouble(centralRadiusSquare);
+        out.writeDouble(tubeRadiusSquare);
+        out.writeDouble(boundingRadiusSquare);
+        EntityData.writeVector(out, normal);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        super.read(in);
+        center = EntityData.readVector(in);
+        centralRadius = in.getDouble();
+        tubeRadius = in.getDouble();
+        centralRadiusSquare = in.getDouble();
+        tubeRadiusSquare = in.getDouble();
+        boundingRadiusSquare = in.getDouble();
+        normal = EntityData.readVector(in);
     }
 
 
     @Override
-    public void setParameter(String name, String[] args) throws Exception {
-        if (getSurface().parseParameter(name, args)) return;
-        if ("center".equals(name)) center = MathUtils.parseVector(args);
-        if ("central-radius".equals(name)) centralRadius = Double.parseDouble(args[0]);
-        if ("tube-radius".equals(name)) tubeRadius = Double.parseDouble(args[0]);
-        if ("normal".equals(name)) normal = MathUtils.parseVector(args);
+    public boolean setParameter(String name, double[] values) throws Exception {
+        if (getSurface().parseParameter(name, values)) return true;
+        if ("center".equals(name)) center = MathUtils.toVector(values);
+        else if ("central-radius".equals(name)) centralRadius = values[0];
+        else if ("tube-radius".equals(name)) tubeRadius = values[0];
+        else if ("normal".equals(name)) normal = MathUtils.toVector(values);
+        else return false;
+        return true;
     }
 
     @Override
@@ -187,5 +203,6 @@ public class Torus extends Primitive implements Center {
     @Override
     public void setCenter(double[] center) {
         this.center = center;
+        updateBounds();
     }
 }
@@ -0,0 +1,185 @@
+package ex02.entities;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextureCacheTest {
+
+    // each full size tile of floats
+    private static final long TILE_BYTES = Texture.TILE_SIZE * Texture.TILE_SIZE * 3 * Float.BYTES;
+
+    private Path directory;
+    private Path imageFile;
+    private BufferedImage image;
+    private final List<TextureCache> caches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("textures");
+
+        // 200x150 isn't a whole number of tiles either way
+        image = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 7 % 256) << 16 | (y * 5 % 256) << 8 | ((x ^ y) & 0xff));
+            }
+        }
+        imageFile = directory.resolve("pattern.png");
+        ImageIO.write(image, "png", imageFile.toFile());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (final TextureCache cache : caches) {
+            cache.close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void sharesTextureBetweenPaths() throws IOException {
+        final TextureCache cache = cache(Long.MAX_VALUE);
+
+        final Texture texture = cache.get(imageFile);
+
+        assertSame(texture, cache.get(directory.resolve(".").resolve("pattern.png")));
+        assertEquals(1, cache.getTextureCount());
+        assertEquals(200, texture.getWidth());
+        assertEquals(150, texture.getHeight());
+    }
+
+    @Test
+    void matchesTextureDecodedInMemory() throws IOException {
+        final TextureCache cache = cache(Long.MAX_VALUE);
+
+        assertSamplesMatch(new Texture(image), cache.get(imageFile));
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    void decodesInBands() throws IOException {
+        // only enough memory to decode a row of tiles at a time
+        try (TextureFile file = TextureFile.decode(imageFile, 1)) {
+            assertSamplesMatch(new Texture(image), file.createTexture(cache(Long.MAX_VALUE)));
+        }
+    }
+
+    @Test
+    void staysWithinBudget() throws IOException {
+        final TextureCache cache = cache(6 * TILE_BYTES);
+        final Texture texture = cache.get(imageFile);
+
+        assertSamplesMatch(new Texture(image), texture);
+
+        assertTrue(cache.getResidentBytes() <= cache.getMemoryBudget());
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.getMisses() > cache.getEvictions());
+        assertTrue(cache.getHits() > 0);
+    }
+
+    @Test
+    void countsHitsAndMisses() throws IOException {
+        final TextureCache cache = cache(Long.MAX_VALUE);
+        final Texture texture = cache.get(imageFile);
+
+        // the middle of a texel only needs the tile it is in
+        texture.sample(10 / 200.0, 10 / 150.0, 0, new double[3]);
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getHits());
+
+        texture.sample(20 / 200.0, 20 / 150.0, 0, new double[3]);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void shrinkingBudgetEvicts() throws IOException {
+        final TextureCache cache = cache(Long.MAX_VALUE);
+        final Texture texture = cache.get(imageFile);
+        assertSamplesMatch(new Texture(image), texture);
+
+        cache.setMemoryBudget(TILE_BYTES);
+
+        assertTrue(cache.getResidentBytes() <= TILE_BYTES);
+        assertThrows(IllegalArgumentException.class, () -> cache.setMemoryBudget(-1));
+    }
+
+    @Test
+    void changedFileIsDecodedAgain() throws Exception {
+        final TextureCache cache = cache(6 * TILE_BYTES);
+        Texture texture = cache.get(imageFile);
+        final Path decoded = cache.getFile(imageFile);
+        final Texture original = new Texture(image);
+
+        image.setRGB(0, 0, 0xffffff);
+        ImageIO.write(image, "png", imageFile.toFile());
+        Files.setLastModifiedTime(imageFile, FileTime.fromMillis(Files.getLastModifiedTime(imageFile).toMillis() + 1000));
+
+        final Texture changed = cache.get(imageFile);
+        assertNotSame(texture, changed);
+        assertSamplesMatch(new Texture(image), changed);
+        assertEquals(1, cache.getTextureCount());
+
+        // a surface that still has the old texture can load its evicted tiles
+        assertSamplesMatch(original, texture);
+        assertTrue(Files.exists(decoded));
+
+        // and once nothing has it, its file is deleted
+        texture = null;
+        cache.setMemoryBudget(0);
+        for (int i = 0; i < 200 && Files.exists(decoded); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertFalse(Files.exists(decoded), "the file of the texture that was replaced is deleted");
+
+        final Path redecoded = cache.getFile(imageFile);
+        cache.close();
+        assertFalse(Files.exists(redecoded));
+        assertEquals(0, cache.getTextureCount());
+        assertEquals(0, cache.getResidentBytes());
+    }
+
+    @Test
+    void notAnImage() throws IOException {
+        final Path text = Files.write(directory.resolve("scene.txt"), "scene:".getBytes());
+
+        assertThrows(IOException.class, () -> cache(Long.MAX_VALUE).get(text));
+    }
+
+    private TextureCache cache(final long memoryBudget) {
+        final TextureCache cache = new TextureCache(memoryBudget);
+        caches.add(cache);
+        return cache;
+    }
+
+    // samples every level across the whole texture, including coordinates that wrap around
+    private static void assertSamplesMatch(final Texture expected, final Texture actual) {
+        assertEquals(expected.getLevelCount(), actual.getLevelCount());
+
+        for (double footprint = 0; footprint < 2; footprint = footprint * 2 + 0.001) {
+            for (double v = -0.1; v < 1.1; v += 0.013) {
+                for (double u = -0.1; u < 1.1; u += 0.011) {
+                    assertArrayEquals(expected.sample(u, v, footprint, new double[3]),
+                            actual.sample(u, v, footprint, new double[3]), 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ex02.entities;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextureTest {
+
+    // 4x2 texels, red increasing along each row and green along each column
+    private static Texture gradient() {
+        final float[] rgb = new float[4 * 2 * 3];
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 4; x++) {
+                rgb[(y * 4 + x) * 3] = x / 4f;
+                rgb[(y * 4 + x) * 3 + 1] = y / 2f;
+                rgb[(y * 4 + x) * 3 + 2] = 1;
+            }
+        }
+        return new Texture(4, 2, rgb);
+    }
+
+    @Test
+    void mipmapLevels() {
+        final Texture texture = gradient();
+
+        assertEquals(4, texture.getWidth());
+        assertEquals(2, texture.getHeight());
+        assertEquals(3, texture.getLevelCount());   // 4x2, 2x1, 1x1
+    }
+
+    @Test
+    void texelCentresMatchNearestSampling() {
+        final Texture texture = gradient();
+        final double[] color = new double[3];
+
+        // texel (x, y) is centred on (x / width, y / height)
+        texture.sample(0.25, 0.5, 0, color);
+
+        assertEquals(0.25, color[0], 1e-6);
+        assertEquals(0.5, color[1], 1e-6);
+        assertEquals(1, color[2], 1e-6);
+    }
+
+    @Test
+    void bilinearBetweenTexels() {
+        final Texture texture = gradient();
+        final double[] color = new double[3];
+
+        texture.sample(0.125, 0.25, 0, color);
+
+        assertEquals(0.125, color[0], 1e-6);
+        assertEquals(0.25, color[1], 1e-6);
+    }
+
+    @Test
+    void coordinatesRepeat() {
+        final Texture texture = gradient();
+        final double[] inside = texture.sample(0.3, 0.7, 0, new double[3]);
+        final double[] outside = texture.sample(-1.7, 2.7, 0, new double[3]);
+
+        assertArrayEquals(inside, outside, 1e-6);
+    }
+
+    @Test
+    void wideFootprintAveragesWholeTexture() {
+        final Texture texture = gradient();
+        final double[] color = texture.sample(0.1, 0.9, 10, new double[3]);
+
+        assertEquals((0 + 0.25 + 0.5 + 0.75) / 4, color[0], 1e-6);
+        assertEquals(0.25, color[1], 1e-6);
+        assertEquals(1, color[2], 1e-6);
+    }
+
+    @Test
+    void footprintBlendsLevels() {
+        final Texture texture = gradient();
+
+        // half way between the texels of the full size image and those twice the size
+        final double[] full = texture.sample(0.3, 0.3, 0.25, new double[3]);
+        final double[] half = texture.sample(0.3, 0.3, 0.5, new double[3]);
+        final double[] between = texture.sample(0.3, 0.3, 0.25 * Math.sqrt(2), new double[3]);
+
+        for (int c = 0; c < 3; c++) {
+            assertEquals((full[c] + half[c]) / 2, between[c], 1e-6);
+        }
+    }
+
+    @Test
+    void wrongSize() {
+        assertThrows(IllegalArgumentException.class, () -> new Texture(2, 2, new float[3]));
+        assertThrows(IllegalArgumentException.class, () -> new Texture(0, 1, new float[0]));
+    }
+}
@@ -0,0 +1,183 @@
+package ex02.entities.primitives;
+
+import ex02.entities.IEntity;
+import ex02.entities.Intersection;
+import ex02.entities.Ray;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstanceTest {
+
+    @Test
+    void movedAndScaledLikeTheShape() throws Exception {
+        final Sphere shape = sphere("ball", 0, 0, 0, 1);
+        final Instance instance = instance("ball", shape, "scale=2", "translate=3 1 -2");
+        final Sphere expected = sphere(null, 3, 1, -2, 2);
+
+        final Random random = new Random(7);
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            final Ray ray = randomRay(random, new double[] {3, 1, -2});
+            final double distance = expected.intersect(ray);
+            assertEquals(distance, instance.intersect(ray), 1e-9);
+
+            if (distance < Double.POSITIVE_INFINITY) {
+                hits++;
+                final double[] point = ray.getPointAt(distance);
+                final Intersection intersection = instance.getIntersection(ray, distance);
+                assertSame(instance, intersection.getPrimitive());
+                assertArrayEquals(expected.getNormal(point), instance.getNormal(intersection, point), 1e-9);
+                assertArrayEquals(expected.getTextureCoords(point), instance.getTextureCoords(intersection, point), 1e-9);
+            }
+        }
+        assertTrue(hits > 100);
+
+        assertEquals(expected.getTextureScale(), instance.getTextureScale(), 1e-12);
+        assertArrayEquals(expected.getBounds().getMin(), instance.getBounds().getMin(), 1e-12);
+        assertArrayEquals(expected.getBounds().getMax(), instance.getBounds().getMax(), 1e-12);
+        assertSame(shape.getSurface(), instance.getSurface(), "an instance shares the surface of its shape");
+    }
+
+    @Test
+    void turnedBoxRecordsFace() throws Exception {
+        final Box shape = new Box();
+        shape.setParameter("name", new String[] {"crate"});
+        shape.setParameter("p0", new String[] {"-1", "-1", "-1"});
+        shape.setParameter("p1", new String[] {"1", "-1", "-1"});
+        shape.setParameter("p2", new String[] {"-1", "1", "-1"});
+        shape.setParameter("p3", new String[] {"-1", "-1", "1"});
+        shape.postInit(null);
+
+        final Instance instance = instance("crate", shape, "rotate-y=90");
+
+        // the face at z = -1 is turned to x = -1, where (-1, 0.5, 0.25) was (-0.25, 0.5, -1)
+        final Ray ray = new Ray(new double[] {-5, 0.5, 0.25}, new double[] {1, 0, 0}, 1);
+        final double distance = instance.intersect(ray);
+        assertEquals(4, distance, 1e-9);
+
+        final Intersection intersection = instance.getIntersection(ray, distance);
+        final double[] normal = shape.getNormal(new double[] {-0.25, 0.5, -1});
+        assertEquals(1, Math.abs(normal[2]), 1e-9);
+        assertArrayEquals(new double[] {normal[2], normal[1], -normal[0]}, instance.getNormal(intersection, ray.getPointAt(distance)), 1e-9);
+    }
+
+    @Test
+    void scaledBoxRecordsFace() throws Exception {
+        final Box shape = box("crate", -1, 1, -1, 1, -1, 1);
+        final Instance instance = instance("crate", shape, "scale=0.7 1.3 2.9", "translate=3 1 -2");
+        final Box expected = box(null, 2.3, 3.7, -0.3, 2.3, -4.9, 0.9);
+
+        final Random random = new Random(11);
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            final Ray ray = randomRay(random, new double[] {3, 1, -2});
+            final double distance = instance.intersect(ray);
+
+            if (distance < Double.POSITIVE_INFINITY) {
+                hits++;
+                final double[] point = ray.getPointAt(distance);
+                final Intersection intersection = instance.getIntersection(ray, distance);
+                assertArrayEquals(expected.getNormal(point), instance.getNormal(intersection, point), 1e-9);
+            }
+        }
+        assertTrue(hits > 100);
+    }
+
+    @Test
+    void instanceOfInstance() throws Exception {
+        final Sphere shape = sphere("ball", 0, 0, 0, 1);
+        final Instance first = instance("ball", shape, "name=moved", "translate=1 0 0");
+        final Instance second = instance("moved", first, "translate=0 0 -1");
+
+        final Ray ray = new Ray(new double[] {1, 0, 5}, new double[] {0, 0, -1}, 1);
+        assertEquals(5, second.intersect(ray), 1e-9);
+        assertArrayEquals(new double[] {0, 0, 1}, second.getNormal(second.getIntersection(ray, 5), new double[] {1, 0, 0}), 1e-9);
+    }
+
+    @Test
+    void readsWhatItWrites() throws Exception {
+        final Sphere shape = sphere("ball", 0, 0, 0, 1);
+        final Instance instance = instance("ball", shape, "rotate=1 1 1 30", "scale=1 2 3", "active=false");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            instance.write(out);
+        }
+        final Instance read = new Instance();
+        read.read(ByteBuffer.wrap(bytes.toByteArray()));
+        read.setShape(shape);
+
+        assertEquals("ball", read.getShapeName());
+        assertFalse(read.isActive());
+        assertEquals(instance.getTransform(), read.getTransform());
+        assertArrayEquals(instance.getBounds().getMin(), read.getBounds().getMin(), 0);
+    }
+
+    @Test
+    void needsShape() throws Exception {
+        final Sphere shape = sphere("ball", 0, 0, 0, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> instance("other", shape));
+        assertThrows(IllegalArgumentException.class, () -> new Instance().postInit(null));
+        assertThrows(IllegalArgumentException.class, () -> instance("ball", shape, "scale=0"), "can't be inverted");
+    }
+
+    private static Sphere sphere(final String name, final double x, final double y, final double z, final double radius)
+            throws Exception {
+        final Sphere sphere = new Sphere();
+        if (name != null) {
+            sphere.setParameter("name", new String[] {name});
+        }
+        sphere.setParameter("center", new String[] {String.valueOf(x), String.valueOf(y), String.valueOf(z)});
+        sphere.setParameter("radius", new String[] {String.valueOf(radius)});
+        sphere.postInit(null);
+        return sphere;
+    }
+
+    private static Box box(final String name, final double minX, final double maxX, final double minY, final double maxY,
+                           final double minZ, final double maxZ) throws Exception {
+        final Box box = new Box();
+        if (name != null) {
+            box.setParameter("name", new String[] {name});
+        }
+        box.setParameter("p0", new double[] {minX, minY, minZ});
+        box.setParameter("p1", new double[] {maxX, minY, minZ});
+        box.setParameter("p2", new double[] {minX, maxY, minZ});
+        box.setParameter("p3", new double[] {minX, minY, maxZ});
+        box.postInit(null);
+        return box;
+    }
+
+    // An instance of the shape with the given parameters, each as name=values
+    private static Instance instance(final String shapeName, final Primitive shape, final String... parameters)
+            throws Exception {
+        final Instance instance = new Instance();
+        instance.setParameter("shape", new String[] {shapeName});
+        for (final String parameter : parameters) {
+            final String[] parts = parameter.split("=");
+            instance.setParameter(parts[0], parts[1].split(" "));
+        }
+
+        final List<IEntity> entities = new ArrayList<>(Arrays.asList(shape, instance));
+        instance.postInit(entities);
+        return instance;
+    }
+
+    // Rays towards random points near the given one, some of which miss a sphere of radius 2 around it
+    private static Ray randomRay(final Random random, final double[] centre) {
+        final double[] position = {centre[0] + random.nextDouble() * 20 - 10, centre[1] + 10, centre[2] + random.nextDouble() * 20 - 10};
+        final double[] target = {centre[0] + random.nextDouble() * 6 - 3, centre[1], centre[2] + random.nextDouble() * 6 - 3};
+        final Ray ray = new Ray(position, new double[] {target[0] - position[0], target[1] - position[1], target[2] - position[2]}, 1);
+        ray.normalize();
+        return ray;
+    }
+}
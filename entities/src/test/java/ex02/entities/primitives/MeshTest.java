@@ -0,0 +1,318 @@
+package ex02.entities.primitives;
+
+import ex02.entities.Intersection;
+import ex02.entities.Ray;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshTest {
+
+    // a unit square in the xz plane facing up, as one quad, with a normal and texture coordinates at each corner
+    private static final String QUAD = "# a square\n" +
+            "v 0 0 0\n" +
+            "v 1 0 0\n" +
+            "v 1 0 -1\n" +
+            "v 0 0 -1\n" +
+            "vt 0 0\n" +
+            "vt 1 0\n" +
+            "vt 1 1\n" +
+            "vt 0 1\n" +
+            "vn 0 1 0\n" +
+            "f 1/1/1 2/2/1 3/3/1 4/4/1\n";
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("meshes");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void polygonsAreSplitIntoTriangles() throws Exception {
+        final Mesh mesh = load("quad.obj", QUAD + "f -4 -3 -2 -1 1\n");
+
+        assertEquals(5, mesh.getTriangleCount(), "a quad and a pentagon");
+        assertEquals(8, mesh.getVertexCount(), "the pentagon's corners don't have the quad's normal or texture coordinates");
+    }
+
+    @Test
+    void intersectsQuad() throws Exception {
+        final Mesh mesh = load("quad.obj", QUAD);
+
+        final Ray ray = new Ray(new double[] { 0.25, 2, -0.75 }, new double[] { 0, -1, 0 }, 1);
+        final double distance = mesh.intersect(ray);
+        assertEquals(2, distance, 1e-9);
+
+        final Intersection intersection = mesh.getIntersection(ray, distance);
+        final double[] point = { 0.25, 0, -0.75 };
+        assertArrayEquals(new double[] { 0, 1, 0 }, mesh.getNormal(intersection, point), 1e-9);
+        // v is flipped, so the far edge of the square is at the top of the texture
+        assertArrayEquals(new double[] { 0.25, 0.25 }, mesh.getTextureCoords(intersection, point), 1e-6);
+        assertEquals(1, mesh.getTextureScale(intersection), 1e-6);
+
+        assertEquals(Double.POSITIVE_INFINITY, mesh.intersect(new Ray(new double[] { 1.5, 2, -0.5 }, new double[] { 0, -1, 0 }, 1)));
+        assertEquals(Double.POSITIVE_INFINITY, mesh.intersect(new Ray(new double[] { 0.5, 2, -0.5 }, new double[] { 0, 1, 0 }, 1)));
+    }
+
+    @Test
+    void intersectionOfAnotherRay() throws Exception {
+        final Mesh mesh = load("grid.obj", gridObj(10));
+
+        final Random random = new Random(3);
+        Ray first = randomRay(random);
+        while (mesh.intersect(first) == Double.POSITIVE_INFINITY) {
+            first = randomRay(random);
+        }
+        final double distance = mesh.intersect(first);
+        final int face = mesh.getIntersection(first, distance).getFace();
+
+        // another ray traced in between, as the lanes of a packet are, doesn't change the triangle that was hit
+        Ray second = randomRay(random);
+        while (mesh.intersect(second) == Double.POSITIVE_INFINITY || mesh.getIntersection(second, 0).getFace() == face) {
+            second = randomRay(random);
+        }
+        assertEquals(face, mesh.getIntersection(first, distance).getFace());
+
+        final Ray miss = new Ray(new double[] { 0.5, 2, 0.5 }, new double[] { 0, 1, 0 }, 1);
+        assertThrows(IllegalStateException.class, () -> mesh.getIntersection(miss, 1));
+    }
+
+    @Test
+    void flatNormalsWithoutVertexNormals() throws Exception {
+        final Mesh mesh = load("triangle.obj", "v 0 0 0\nv 0 1 0\nv 0 0 1\nf 1 2 3\n");
+
+        assertArrayEquals(new double[] { 1, 0, 0 }, mesh.getNormal(new double[] { 0, 0.2, 0.2 }), 1e-9);
+    }
+
+    @Test
+    void plyFormatsMatchObj() throws Exception {
+        final Mesh obj = load("grid.obj", gridObj(6));
+
+        final Mesh ascii = load("ascii.ply", new String(gridPly(6, "ascii"), StandardCharsets.US_ASCII));
+        final Mesh binary = new Mesh();
+        final Path file = directory.resolve("binary.ply");
+        Files.write(file, gridPly(6, "binary_little_endian"));
+        binary.setParameter("file", new String[] { file.toString() });
+        binary.postInit(null);
+
+        final Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            final Ray ray = randomRay(random);
+            assertEquals(obj.intersect(ray), ascii.intersect(ray), 1e-6);
+            assertEquals(obj.intersect(ray), binary.intersect(ray), 1e-6);
+        }
+    }
+
+    @Test
+    void matchesEveryTriangle() throws Exception {
+        final Mesh mesh = load("grid.obj", gridObj(40));
+        final MeshFile file = MeshFile.read(directory.resolve("grid.obj"));
+
+        final Random random = new Random(11);
+        int hits = 0;
+        for (int i = 0; i < 2000; i++) {
+            final Ray ray = randomRay(random);
+            final double expected = bruteForce(file, ray);
+            final double actual = mesh.intersect(ray);
+
+            if (expected == Double.POSITIVE_INFINITY) {
+                assertEquals(expected, actual);
+            } else {
+                assertEquals(expected, actual, 1e-6);
+                hits++;
+            }
+        }
+        assertTrue(hits > 500, "about half the rays should hit the grid");
+    }
+
+    @Test
+    void readsWhatItWrites() throws Exception {
+        final Mesh mesh = load("grid.obj", gridObj(20));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            mesh.write(out);
+        }
+        final Mesh read = new Mesh();
+        final ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.BIG_ENDIAN);
+        read.read(in);
+
+        assertFalse(in.hasRemaining());
+        assertEquals(mesh.getTriangleCount(), read.getTriangleCount());
+        assertEquals(mesh.getFileName(), read.getFileName());
+
+        final Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            final Ray ray = randomRay(random);
+            assertEquals(mesh.intersect(ray), read.intersect(ray));
+        }
+    }
+
+    @Test
+    void unsupportedFile() throws IOException {
+        final Path file = directory.resolve("mesh.stl");
+        Files.write(file, new byte[0]);
+
+        assertThrows(IOException.class, () -> new Mesh().setParameter("file", new String[] { file.toString() }));
+        assertThrows(IOException.class, () -> load("bad.obj", "v 0 0 0\nf 1 2 3\n"));
+    }
+
+    @Test
+    void noFile() {
+        assertThrows(IllegalArgumentException.class, () -> new Mesh().postInit(null));
+    }
+
+    private Mesh load(final String name, final String contents) throws Exception {
+        final Path file = directory.resolve(name);
+        Files.write(file, contents.getBytes(StandardCharsets.US_ASCII));
+
+        final Mesh mesh = new Mesh();
+        mesh.setParameter("file", new String[] { file.toString() });
+        mesh.postInit(null);
+        return mesh;
+    }
+
+    // Rays from above the grid pointing mostly down, some of which miss it
+    private static Ray randomRay(final Random random) {
+        final double[] position = { random.nextDouble() * 1.4 - 0.2, 2, random.nextDouble() * 1.4 - 0.2 };
+        final double[] direction = { random.nextDouble() * 0.4 - 0.2, -1, random.nextDouble() * 0.4 - 0.2 };
+        return new Ray(position, direction, 1);
+    }
+
+    // The height of the grid at each of its points
+    private static double height(final double x, final double z) {
+        return 0.2 * Math.sin(x * 7) * Math.cos(z * 5);
+    }
+
+    // A bumpy grid over the unit square with n squares along each side, each split in two
+    private static String gridObj(final int n) {
+        final StringBuilder obj = new StringBuilder();
+        for (int i = 0; i <= n; i++) {
+            for (int j = 0; j <= n; j++) {
+                final double x = (double) j / n, z = (double) i / n;
+                obj.append("v ").append(x).append(' ').append(height(x, z)).append(' ').append(z).append('\n');
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                final int a = i * (n + 1) + j + 1;
+                obj.append("f ").append(a).append(' ').append(a + n + 1).append(' ').append(a + 1).append('\n');
+                obj.append("f ").append(a + 1).append(' ').append(a + n + 1).append(' ').append(a + n + 2).append('\n');
+            }
+        }
+        return obj.toString();
+    }
+
+    // The same grid as gridObj, with the squares as quads split along the same diagonal and an extra element to skip
+    private static byte[] gridPly(final int n, final String format) throws IOException {
+        final String header = "ply\n" +
+                "format " + format + " 1.0\n" +
+                "comment made by MeshTest\n" +
+                "element vertex " + (n + 1) * (n + 1) + "\n" +
+                "property float x\n" +
+                "property float y\n" +
+                "property float z\n" +
+                "property uchar red\n" +
+                "element face " + n * n + "\n" +
+                "property list uchar int vertex_indices\n" +
+                "element edge 1\n" +
+                "property int vertex1\n" +
+                "property int vertex2\n" +
+                "end_header\n";
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(header.getBytes(StandardCharsets.US_ASCII));
+        final boolean ascii = "ascii".equals(format);
+        final ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        final StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i <= n; i++) {
+            for (int j = 0; j <= n; j++) {
+                final float x = (float) j / n, z = (float) i / n, y = (float) height((double) j / n, (double) i / n);
+                if (ascii) {
+                    text.append(x).append(' ').append(y).append(' ').append(z).append(" 255\n");
+                } else {
+                    buffer.clear();
+                    buffer.putFloat(x).putFloat(y).putFloat(z).put((byte) 255);
+                    bytes.write(buffer.array(), 0, buffer.position());
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                final int a = i * (n + 1) + j;
+                if (ascii) {
+                    text.append("4 ").append(a + 1).append(' ').append(a).append(' ').append(a + n + 1).append(' ').append(a + n + 2).append('\n');
+                } else {
+                    buffer.clear();
+                    buffer.put((byte) 4).putInt(a + 1).putInt(a).putInt(a + n + 1).putInt(a + n + 2);
+                    bytes.write(buffer.array(), 0, buffer.position());
+                }
+            }
+        }
+        if (ascii) {
+            text.append("0 1\n");
+            bytes.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+        } else {
+            buffer.clear();
+            buffer.putInt(0).putInt(1);
+            bytes.write(buffer.array(), 0, buffer.position());
+        }
+        return bytes.toByteArray();
+    }
+
+    // The nearest hit of the ray with any of the triangles, testing all of them
+    private static double bruteForce(final MeshFile file, final Ray ray) {
+        final double[] o = ray.getPosition();
+        final double[] d = ray.getDirection();
+        final float[] v = file.vertices;
+        double nearest = Double.POSITIVE_INFINITY;
+
+        for (int t = 0; t < file.triangles.length; t += 3) {
+            final int a = file.triangles[t] * 3, b = file.triangles[t + 1] * 3, c = file.triangles[t + 2] * 3;
+            final double[] e1 = { v[b] - v[a], v[b + 1] - v[a + 1], v[b + 2] - v[a + 2] };
+            final double[] e2 = { v[c] - v[a], v[c + 1] - v[a + 1], v[c + 2] - v[a + 2] };
+            final double[] s = { o[0] - v[a], o[1] - v[a + 1], o[2] - v[a + 2] };
+
+            // solve o + t d = a + u e1 + w e2 by Cramer's rule
+            final double det = determinant(new double[] { -d[0], -d[1], -d[2] }, e1, e2);
+            if (det == 0) {
+                continue;
+            }
+            final double distance = determinant(s, e1, e2) / det;
+            final double u = determinant(new double[] { -d[0], -d[1], -d[2] }, s, e2) / det;
+            final double w = determinant(new double[] { -d[0], -d[1], -d[2] }, e1, s) / det;
+
+            if (u >= 0 && w >= 0 && u + w <= 1 && distance > 1e-8 && distance < nearest) {
+                nearest = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private static double determinant(final double[] a, final double[] b, final double[] c) {
+        return a[0] * (b[1] * c[2] - b[2] * c[1]) - b[0] * (a[1] * c[2] - a[2] * c[1]) + c[0] * (a[1] * b[2] - a[2] * b[1]);
+    }
+}
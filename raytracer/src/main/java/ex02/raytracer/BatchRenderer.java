@@ -0,0 +1,331 @@
+package ex02.raytracer;
+
+import ex02.entities.Scene;
+import ex02.raytracer.parser.SceneParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Renders every scene file in a directory to a PNG next to it, all within one JVM and without a display, so it can
+ * be run on a server that has neither JavaFX nor SWT.
+ * <p>
+ * The tiles of every scene are rendered on one shared pool, while a few scenes are kept in flight at once so that
+ * parsing a scene and writing the image of another overlap with rendering. The time each scene took is printed
+ * as it finishes.
+ * <pre>
+ * java ex02.raytracer.BatchRenderer [--width 1024] [--height 720] [--scenes 2] [--threads n] directory
+ * </pre>
+ */
+public class BatchRenderer {
+
+    public static final int DEFAULT_WIDTH = 1024;
+    public static final int DEFAULT_HEIGHT = 720;
+    public static final int DEFAULT_SCENES_IN_FLIGHT = 2;
+
+    private int width = DEFAULT_WIDTH;
+    private int height = DEFAULT_HEIGHT;
+    private int scenesInFlight = DEFAULT_SCENES_IN_FLIGHT;
+    private RenderOptions options = new RenderOptions();
+    private PrintStream out = System.out;
+
+    /**
+     * Renders each scene in the directory, with a .txt extension, to a PNG of the same name.
+     * A scene that fails is reported and the rest are still rendered.
+     * @param directory directory holding the scene files
+     * @return the result of each scene, in the order of their file names
+     * @throws IOException if the directory can't be listed
+     */
+    public List<Result> renderDirectory(@NotNull final Path directory) throws IOException {
+        final List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing
+                    .filter(file -> file.getFileName().toString().endsWith(".txt") && Files.isRegularFile(file))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        return render(files);
+    }
+
+    /**
+     * Renders each scene to a PNG next to it, with the extension of the scene file replaced by .png
+     * @param files the scene files
+     * @return the result of each scene, in the same order as the files
+     */
+    public List<Result> render(@NotNull final List<Path> files) {
+        final ForkJoinPool sharedPool = options.getPool() != null ? options.getPool() : new ForkJoinPool(options.getParallelism());
+        final RenderOptions sceneOptions = new RenderOptions(options);
+        sceneOptions.setPool(sharedPool);
+
+        final ExecutorService scenes = Executors.newFixedThreadPool(Math.min(scenesInFlight, Math.max(files.size(), 1)));
+        try {
+            final List<Future<Result>> futures = new ArrayList<>(files.size());
+            for (final Path file : files) {
+                futures.add(scenes.submit(() -> renderScene(file, sceneOptions)));
+            }
+
+            final List<Result> results = new ArrayList<>(files.size());
+            for (final Future<Result> future : futures) {
+                results.add(waitFor(future));
+            }
+            return results;
+        } finally {
+            scenes.shutdown();
+            if (sharedPool != options.getPool()) {
+                sharedPool.shutdown();
+            }
+        }
+    }
+
+    private static Result waitFor(final Future<Result> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for scenes to render", e);
+        } catch (final ExecutionException e) {
+            // renderScene catches everything it expects, so this is a bug rather than a bad scene
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Result renderScene(final Path file, final RenderOptions sceneOptions) {
+        final Path image = imageFile(file);
+        long mark = System.nanoTime();
+        long parseTime = -1;
+        long renderTime = -1;
+        Result result;
+
+        try {
+            final Scene scene = new SceneParser(file.toFile()).parse();
+            parseTime = System.nanoTime() - mark;
+            mark += parseTime;
+
+            final FrameBuffer frame = RayTracer.create(scene, sceneOptions).render(width, height);
+            renderTime = System.nanoTime() - mark;
+            mark += renderTime;
+
+            writePng(frame, image);
+            result = new Result(file, image, parseTime, renderTime, System.nanoTime() - mark, null);
+        } catch (final Exception e) {
+            // the step that failed is charged with the time until it did
+            final long failedTime = System.nanoTime() - mark;
+            result = parseTime < 0 ? new Result(file, null, failedTime, 0, 0, e)
+                    : renderTime < 0 ? new Result(file, null, parseTime, failedTime, 0, e)
+                    : new Result(file, null, parseTime, renderTime, failedTime, e);
+        }
+        report(result);
+        return result;
+    }
+
+    private static Path imageFile(final Path file) {
+        final String name = file.getFileName().toString();
+        final int dot = name.lastIndexOf('.');
+        return file.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".png");
+    }
+
+    static void writePng(final FrameBuffer frame, final Path file) throws IOException {
+        final BufferedImage image = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, frame.getWidth(), frame.getHeight(), frame.toArgb(), 0, frame.getWidth());
+        if (!ImageIO.write(image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    private void report(final Result result) {
+        synchronized (out) {
+            out.println(result);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setSize(final int width, final int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Image size must be at least 1x1, not " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return the most scenes that are parsed, rendered or written at the same time
+     */
+    public int getScenesInFlight() {
+        return scenesInFlight;
+    }
+
+    public void setScenesInFlight(final int scenesInFlight) {
+        if (scenesInFlight < 1) {
+            throw new IllegalArgumentException("At least one scene must be in flight");
+        }
+        this.scenesInFlight = scenesInFlight;
+    }
+
+    public RenderOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @param options used for every scene. If they have no pool, one of {@link RenderOptions#getParallelism()}
+     *                threads is created for each batch and shared by its scenes
+     */
+    public void setOptions(@NotNull final RenderOptions options) {
+        this.options = new RenderOptions(options);
+    }
+
+    /**
+     * @param out where the time taken by each scene is printed
+     */
+    public void setOut(@NotNull final PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        // there's no display to open, and nothing here needs one
+        System.setProperty("java.awt.headless", "true");
+
+        final BatchRenderer renderer = new BatchRenderer();
+        final RenderOptions options = new RenderOptions();
+        Path directory = null;
+        int width = DEFAULT_WIDTH;
+        int height = DEFAULT_HEIGHT;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                if ("--width".equals(arg)) {
+                    width = Integer.parseInt(value(args, ++i));
+                } else if ("--height".equals(arg)) {
+                    height = Integer.parseInt(value(args, ++i));
+                } else if ("--scenes".equals(arg)) {
+                    renderer.setScenesInFlight(Integer.parseInt(value(args, ++i)));
+                } else if ("--threads".equals(arg)) {
+                    options.setParallelism(Integer.parseInt(value(args, ++i)));
+                } else if (arg.startsWith("--") || directory != null) {
+                    throw new IllegalArgumentException("Unexpected argument " + arg);
+                } else {
+                    directory = Paths.get(arg);
+                }
+            }
+            if (directory == null) {
+                throw new IllegalArgumentException("No directory given");
+            }
+            renderer.setSize(width, height);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BatchRenderer [--width " + DEFAULT_WIDTH + "] [--height " + DEFAULT_HEIGHT +
+                    "] [--scenes " + DEFAULT_SCENES_IN_FLIGHT + "] [--threads n] directory");
+            System.exit(2);
+            return;
+        }
+        renderer.setOptions(options);
+
+        final long start = System.nanoTime();
+        final List<Result> results = renderer.renderDirectory(directory);
+        final long failed = results.stream().filter(result -> !result.isSuccess()).count();
+
+        System.out.printf("%d scenes in %,.1f seconds, %d failed%n", results.size(), (System.nanoTime() - start) / 1e9, failed);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String value(final String[] args, final int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    /**
+     * What became of one scene, with the time spent on each step in nanoseconds. If the scene failed, the steps
+     * after the one that failed took no time.
+     */
+    public static final class Result {
+
+        private final Path sceneFile;
+        private final Path imageFile;
+        private final long parseTime;
+        private final long renderTime;
+        private final long writeTime;
+        private final Exception error;
+
+        Result(final Path sceneFile, @Nullable final Path imageFile, final long parseTime, final long renderTime,
+               final long writeTime, @Nullable final Exception error) {
+            this.sceneFile = sceneFile;
+            this.imageFile = imageFile;
+            this.parseTime = parseTime;
+            this.renderTime = renderTime;
+            this.writeTime = writeTime;
+            this.error = error;
+        }
+
+        public Path getSceneFile() {
+            return sceneFile;
+        }
+
+        /**
+         * @return the PNG that was written, or null if the scene failed
+         */
+        @Nullable
+        public Path getImageFile() {
+            return imageFile;
+        }
+
+        public long getParseTime() {
+            return parseTime;
+        }
+
+        public long getRenderTime() {
+            return renderTime;
+        }
+
+        public long getWriteTime() {
+            return writeTime;
+        }
+
+        public long getTotalTime() {
+            return parseTime + renderTime + writeTime;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        @Nullable
+        public Exception getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            final String times = String.format("parse %,9.1f ms  render %,10.1f ms  write %,8.1f ms  total %,10.1f ms",
+                    parseTime / 1e6, renderTime / 1e6, writeTime / 1e6, getTotalTime() / 1e6);
+            return String.format("%-32s %s%s", sceneFile.getFileName(), times,
+                    error != null ? "  FAILED: " + error : "");
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package ex02.raytracer;
+
+import ex02.entities.EntityData;
+import ex02.entities.EntityFactory;
+import ex02.entities.IEntity;
+import ex02.entities.Scene;
+import ex02.entities.Texture;
+import ex02.entities.TextureCache;
+import ex02.entities.primitives.Instance;
+import ex02.entities.primitives.Primitive;
+import ex02.raytracer.accel.BoundingVolumeHierarchy;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed scene along with its bounding volume hierarchy, which can be written to a binary file once and then
+ * loaded by every render worker without parsing the scene, calling postInit or building the hierarchy again.
+ * <p>
+ * The file is memory mapped when it's loaded. Entities are read from it into objects, as the ray tracer needs them
+ * to be, but the arrays of the hierarchy are copied in bulk and textures aren't copied at all: their tiles are read
+ * from the mapped file through a {@link TextureCache}, the shared one unless another is given, as they are sampled.
+ * <p>
+ * Textures are stored at 8 bits a channel, which is what they are decoded from, and each is stored once however
+ * many surfaces use it. The format is only meant to be read by the same version of the ray tracer that wrote it.
+ */
+public final class CompiledScene {
+
+    private static final Logger log = LoggerFactory.getLogger(CompiledScene.class);
+
+    private static final int MAGIC = 0x45583032; // "EX02"
+    private static final int VERSION = 2;
+
+    private final Scene scene;
+    private final BoundingVolumeHierarchy hierarchy;
+
+    private CompiledScene(final Scene scene, final BoundingVolumeHierarchy hierarchy) {
+        this.scene = scene;
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * Builds the hierarchy over a scene that has been parsed, so that both can be written.
+     */
+    public static CompiledScene compile(@NotNull final Scene scene) throws Exception {
+        scene.postInit(null);
+        return new CompiledScene(scene, new BoundingVolumeHierarchy(scene.getPrimitives()));
+    }
+
+    /**
+     * Loads a scene written by {@link #write(Path)}.
+     * @throws IOException if the file can't be read or isn't a compiled scene
+     */
+    public static CompiledScene load(@NotNull final Path file) throws IOException {
+        final long start = System.nanoTime();
+        final MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Compiled scenes over 2GB aren't supported: " + file);
+            }
+            // the mapping stays valid once the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        final CompiledScene compiled;
+        try {
+            compiled = read(buffer, TextureCache.getShared());
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException(file + " is not a valid compiled scene", e);
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Loaded {} with {} primitives in {} milliseconds", file, compiled.scene.getPrimitives().size(),
+                    String.format("%,.3f", (System.nanoTime() - start) / 1_000_000.0));
+        }
+        return compiled;
+    }
+
+    /**
+     * Loads a scene from a buffer holding what {@link #write(OutputStream)} wrote, such as one received from another
+     * process. Textures are read from the buffer as they are sampled, so it must not be changed afterwards.
+     * @throws IOException if the buffer doesn't hold a compiled scene
+     */
+    public static CompiledScene load(@NotNull final ByteBuffer buffer) throws IOException {
+        return load(buffer, TextureCache.getShared());
+    }
+
+    /**
+     * As {@link #load(ByteBuffer)}, with the tiles of the textures held by the given cache. The cache's tiles keep
+     * the buffer from being collected, so a scene that is only needed for a while should have a cache of its own.
+     * @throws IOException if the buffer doesn't hold a compiled scene
+     */
+    public static CompiledScene load(@NotNull final ByteBuffer buffer, @NotNull final TextureCache textureCache)
+            throws IOException {
+        try {
+            return read(buffer, textureCache);
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Not a valid compiled scene", e);
+        }
+    }
+
+    private static CompiledScene read(final ByteBuffer in, final TextureCache textureCache) throws IOException {
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException("Not a compiled scene");
+        }
+        final int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported compiled scene version: " + version);
+        }
+
+        final Texture[] textures = new Texture[in.getInt()];
+        for (int i = 0; i < textures.length; i++) {
+            textures[i] = textureCache.read(in);
+        }
+
+        final int count = in.getInt();
+        final List<IEntity> entities = new ArrayList<>(count);
+        final Map<String, Primitive> named = new HashMap<>();
+        final List<Instance> instances = new ArrayList<>();
+        Scene scene = null;
+
+        for (int i = 0; i < count; i++) {
+            final String name = EntityData.readString(in);
+            final IEntity entity = EntityFactory.createEntity(name);
+            if (entity == null) {
+                throw new IOException("Unknown entity in compiled scene: " + name);
+            }
+
+            final int texture = entity instanceof Primitive ? in.getInt() : -1;
+            entity.read(in);
+
+            if (texture >= 0) {
+                ((Primitive) entity).getSurface().setTexture(textures[texture]);
+            }
+            if (entity instanceof Primitive && ((Primitive) entity).getName() != null) {
+                named.put(((Primitive) entity).getName(), (Primitive) entity);
+            }
+            if (entity instanceof Instance) {
+                instances.add((Instance) entity);
+            }
+            if (entity instanceof Scene) {
+                scene = (Scene) entity;
+            }
+            entities.add(entity);
+        }
+
+        for (final Instance instance : instances) {
+            resolve(instance, named, 0);
+        }
+
+        if (scene == null) {
+            throw new IOException("Scene object not found.");
+        }
+        try {
+            scene.setEntities(entities);
+        } catch (final Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        return new CompiledScene(scene, BoundingVolumeHierarchy.read(in, scene.getPrimitives()));
+    }
+
+    // Gives the instance its shape, first giving the shape its own if it's an instance too, as its bounds are needed
+    private static void resolve(final Instance instance, final Map<String, Primitive> named, final int depth)
+            throws IOException {
+        if (instance.getShape() != null) {
+            return;
+        }
+
+        final Primitive shape = named.get(instance.getShapeName());
+        if (shape == null || depth > named.size()) {
+            throw new IOException("Missing shape in compiled scene: " + instance.getShapeName());
+        }
+        if (shape instanceof Instance) {
+            resolve((Instance) shape, named, depth + 1);
+        }
+        instance.setShape(shape);
+    }
+
+    /**
+     * Writes the scene and its hierarchy to a file, replacing it if it exists.
+     */
+    public void write(@NotNull final Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            write(out);
+        }
+    }
+
+    /**
+     * Writes the scene and its hierarchy to a stream, which is flushed but not closed.
+     */
+    public void write(@NotNull final OutputStream stream) throws IOException {
+        final List<IEntity> entities = new ArrayList<>();
+        entities.add(scene);
+        if (scene.getCamera() != null) {
+            entities.add(scene.getCamera());
+        }
+        entities.addAll(scene.getLights());
+        entities.addAll(scene.getInactivePrimitives());
+        entities.addAll(scene.getPrimitives());
+
+        // each texture is written once, however many surfaces use it
+        final Map<Texture, Integer> textures = new IdentityHashMap<>();
+        for (final IEntity entity : entities) {
+            final Texture texture = getTexture(entity);
+            if (texture != null) {
+                textures.putIfAbsent(texture, textures.size());
+            }
+        }
+
+        final DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        final Texture[] ordered = new Texture[textures.size()];
+        textures.forEach((texture, index) -> ordered[index] = texture);
+        out.writeInt(ordered.length);
+        for (final Texture texture : ordered) {
+            texture.write(out);
+        }
+
+        out.writeInt(entities.size());
+        for (final IEntity entity : entities) {
+            final String name = EntityFactory.getEntityName(entity);
+            if (name == null) {
+                throw new IOException("Unable to write entity: " + entity.getClass().getCanonicalName());
+            }
+            EntityData.writeString(out, name);
+
+            if (entity instanceof Primitive) {
+                final Texture texture = getTexture(entity);
+                out.writeInt(texture != null ? textures.get(texture) : -1);
+            }
+            entity.write(out);
+        }
+
+        hierarchy.write(out);
+        out.flush();
+    }
+
+    // An instance uses the surface of its shape, so only the shape's texture is written
+    private static Texture getTexture(final IEntity entity) {
+        if (entity instanceof Primitive && !(entity instanceof Instance)) {
+            return ((Primitive) entity).getSurface().getTexture();
+        }
+        return null;
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    // The hierarchy's package isn't exported, so only the ray tracer gets it
+    BoundingVolumeHierarchy getHierarchy() {
+        return hierarchy;
+    }
+}
@@ -0,0 +1,138 @@
+package ex02.raytracer;
+
+/**
+ * The rendered image held as a single contiguous array of floats. Pixels are stored row by row, top to bottom, with
+ * {@link #CHANNELS} values (red, green, blue in [0, 1]) per pixel, so the whole frame is one object no matter how
+ * large it is.
+ */
+public final class FrameBuffer {
+
+    public static final int CHANNELS = 3;
+
+    private final int width;
+    private final int height;
+    private final float[] data;
+
+    public FrameBuffer(final int width, final int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Frame buffer must be at least 1x1 pixels, was " + width + "x" + height);
+        }
+        if ((long) width * height * CHANNELS > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Frame buffer of " + width + "x" + height + " pixels is too large");
+        }
+        this.width = width;
+        this.height = height;
+        this.data = new float[width * height * CHANNELS];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the backing array, RGB values row by row. Changes to the array are changes to the frame.
+     */
+    public float[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the position of the red value of the pixel in {@link #getData()}
+     */
+    public int indexOf(final int x, final int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("Pixel " + x + "," + y + " is outside of " + width + "x" + height);
+        }
+        return (y * width + x) * CHANNELS;
+    }
+
+    public void setPixel(final int x, final int y, final double[] rgb) {
+        final int index = indexOf(x, y);
+        data[index] = (float) rgb[0];
+        data[index + 1] = (float) rgb[1];
+        data[index + 2] = (float) rgb[2];
+    }
+
+    /**
+     * @return a new array holding the RGB value of the pixel
+     */
+    public double[] getPixel(final int x, final int y) {
+        final int index = indexOf(x, y);
+        return new double[] { data[index], data[index + 1], data[index + 2] };
+    }
+
+    /**
+     * Copies another frame, such as a rendered tile, into this one.
+     * @param x horizontal position in this frame of the top left corner of the other frame
+     * @param y vertical position in this frame of the top left corner of the other frame
+     * @param source the pixels to copy, which must fit inside this frame at the given position
+     */
+    public void setRegion(final int x, final int y, final FrameBuffer source) {
+        if (x < 0 || y < 0 || x + source.width > width || y + source.height > height) {
+            throw new IndexOutOfBoundsException(source.width + "x" + source.height + " pixels at " + x + "," + y
+                    + " don't fit inside " + width + "x" + height);
+        }
+
+        final int rowLength = source.width * CHANNELS;
+        for (int row = 0; row < source.height; row++) {
+            System.arraycopy(source.data, row * rowLength, data, indexOf(x, y + row), rowLength);
+        }
+    }
+
+    /**
+     * Converts the frame to packed 8 bit per channel ARGB values with full opacity, as used by most image APIs.
+     * @param destination array to fill, row by row, which must hold at least width * height values
+     * @param offset position in the destination of the top left pixel
+     * @return the destination array
+     */
+    public int[] getArgb(final int[] destination, final int offset) {
+        for (int pixel = 0, index = 0; index < data.length; pixel++, index += CHANNELS) {
+            destination[offset + pixel] = 0xFF000000
+                    | toByte(data[index]) << 16
+                    | toByte(data[index + 1]) << 8
+                    | toByte(data[index + 2]);
+        }
+        return destination;
+    }
+
+    /**
+     * @return the frame as packed ARGB values, row by row
+     * @see #getArgb(int[], int)
+     */
+    public int[] toArgb() {
+        return getArgb(new int[width * height], 0);
+    }
+
+    /**
+     * Adapter for code written against the old pixel format, where the image was an array of RGB values indexed by
+     * [x][y]. This allocates an array per pixel so should not be used for large images.
+     * @return a copy of the frame as double[width][height][3]
+     */
+    public double[][][] toArray() {
+        final double[][][] pixels = new double[width][height][];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[x][y] = getPixel(x, y);
+            }
+        }
+        return pixels;
+    }
+
+    private static int toByte(final float value) {
+        return Math.max(0, Math.min(255, Math.round(value * 255)));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("FrameBuffer{");
+        sb.append("width=").append(width);
+        sb.append(", height=").append(height);
+        sb.append('}');
+        return sb.toString();
+    }
+}
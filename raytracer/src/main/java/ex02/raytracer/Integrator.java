@@ -0,0 +1,21 @@
+package ex02.raytracer;
+
+/**
+ * How the rays of a tile are traced and shaded, see {@link RenderOptions#setIntegrator(Integrator)}.
+ * Both light a scene the same way and give the same image, give or take rounding.
+ */
+public enum Integrator {
+
+    /**
+     * Each sample is traced to the end of its reflections before the next one is started, recursing once per
+     * reflection.
+     */
+    RECURSIVE,
+
+    /**
+     * All the rays of a tile go through one stage at a time: intersecting, shading, tracing shadow rays, then the
+     * reflection rays they spawned. Each stage loops over compact arrays of rays rather than following one ray
+     * through every stage. Adaptive supersampling isn't supported, every pixel gets the full supersampling grid.
+     */
+    WAVEFRONT
+}
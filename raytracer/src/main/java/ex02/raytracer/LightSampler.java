@@ -0,0 +1,95 @@
+package ex02.raytracer;
+
+import ex02.blas.MathUtils;
+import ex02.entities.lights.Light;
+import ex02.entities.lights.LightArea;
+
+/**
+ * Splits each light into the shadow rays a shading point needs: one for point and directed lights, and a square grid
+ * of cells with a random point in each for area lights. The random points are seeded from the shading point so they
+ * don't show up as banding, but renders still repeat whichever thread shades the point.
+ */
+final class LightSampler {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final int shadowRayBudget;
+
+    LightSampler(final RenderOptions options) {
+        this.shadowRayBudget = options.getShadowRayBudget();
+    }
+
+    /**
+     * @return the number of shadow rays traced towards the light from each shading point
+     */
+    int getSampleCount(final Light light) {
+        if (light instanceof LightArea) {
+            final int gridWidth = getGridWidth((LightArea) light);
+            return gridWidth * gridWidth;
+        }
+        return 1;
+    }
+
+    private int getGridWidth(final LightArea light) {
+        return shadowRayBudget > 0 ? (int) Math.sqrt(shadowRayBudget) : light.getGridWidth();
+    }
+
+    /**
+     * Finds one of the samples of a light as seen from a point.
+     * @param light the light to sample
+     * @param index which sample, from 0 to {@link #getSampleCount(Light)}
+     * @param point the point being shaded
+     * @param lightPoint working storage for the point sampled on an area light
+     * @param vectorToLight where to write the normalized direction from the point to the sample
+     * @param amountOfLight where to write the light arriving at the point if nothing blocks it
+     * @return the distance from the point to the sample
+     */
+    double sample(final Light light, final int index, final double[] point, final double[] lightPoint,
+                  final double[] vectorToLight, final double[] amountOfLight) {
+        if (!(light instanceof LightArea)) {
+            light.getVectorToLight(point, vectorToLight);
+            light.getAmountOfLight(point, amountOfLight);
+            return MathUtils.distance(point, light.getPosition());
+        }
+
+        final LightArea area = (LightArea) light;
+        final int gridWidth = getGridWidth(area);
+
+        final double u = ((index / gridWidth) + random(point, 2L * index + 1)) / gridWidth;
+        final double v = ((index % gridWidth) + random(point, 2L * index + 2)) / gridWidth;
+
+        area.getPointAt(u, v, lightPoint);
+        MathUtils.calcPointsDiff(point, lightPoint, vectorToLight);
+        final double distanceToLight = MathUtils.norm(vectorToLight[0], vectorToLight[1], vectorToLight[2]);
+        MathUtils.normalize(vectorToLight);
+
+        area.getAmountOfLight(point, lightPoint, gridWidth * gridWidth, amountOfLight);
+        return distanceToLight;
+    }
+
+    /**
+     * @param point the point being shaded, which the random numbers are seeded from
+     * @param index which number of the sequence for the point
+     * @return a random number from 0 up to 1, always the same for the same point and index
+     */
+    static double random(final double[] point, final long index) {
+        return toUnitInterval(mix(seed(point) + index * GOLDEN_GAMMA));
+    }
+
+    private static long seed(final double[] point) {
+        return mix(Double.doubleToLongBits(point[0])
+                ^ mix(Double.doubleToLongBits(point[1]) ^ mix(Double.doubleToLongBits(point[2]))));
+    }
+
+    // The finalizer of SplitMix64, which spreads every bit of the input over the output
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // from [0, 1) using the top 53 bits
+    private static double toUnitInterval(final long random) {
+        return (random >>> 11) * 0x1.0p-53;
+    }
+}
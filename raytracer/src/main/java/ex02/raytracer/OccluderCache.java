@@ -0,0 +1,67 @@
+package ex02.raytracer;
+
+import ex02.entities.Ray;
+import ex02.entities.primitives.Primitive;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Remembers the primitive that last blocked each light. Points shaded one after another are usually close together,
+ * so when one is in the shadow of a primitive the next one often is too, and testing that primitive first can save
+ * searching the hierarchy. Each tile has its own cache as it is rendered by a single thread.
+ * <p>
+ * A ray the cached primitive blocks is blocked whatever else is in the scene, so the cache never changes the image.
+ */
+final class OccluderCache {
+
+    private final Primitive[] occluders;
+
+    private long lookups;
+    private long hits;
+
+    OccluderCache(final int lights) {
+        this.occluders = new Primitive[lights];
+    }
+
+    /**
+     * @param light index of the light in the scene
+     * @return true if the primitive that last blocked the light blocks this ray as well
+     */
+    boolean isBlocked(final int light, final Ray rayToLight, final double distanceToLight) {
+        final Primitive occluder = occluders[light];
+
+        if (occluder == null) {
+            return false;
+        }
+
+        lookups++;
+        final double t = occluder.intersect(rayToLight);
+
+        if (t > RayTracer.EPSILON && t < distanceToLight) {
+            hits++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records what the search of the hierarchy found for a ray towards the light. Lights that weren't blocked are
+     * forgotten, as the points next to a lit one are most likely lit too.
+     */
+    void update(final int light, @Nullable final Primitive occluder) {
+        occluders[light] = occluder;
+    }
+
+    /**
+     * @return the number of shadow rays tested against a cached primitive
+     */
+    long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return the number of shadow rays the cached primitive blocked, which didn't need the hierarchy
+     */
+    long getHits() {
+        return hits;
+    }
+}
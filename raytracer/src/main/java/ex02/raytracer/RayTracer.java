@@ -3,20 +3,37 @@ package ex02.raytracer;
 import ex02.entities.Scene;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.Flow;
+
 public interface RayTracer {
 
     double EPSILON = 0.00000001F;
     int MAX_REFLECTION_RECURSION_DEPTH = 10;
 
     static RayTracer create(@NotNull final Scene scene) {
-        return new RayTracerImpl(scene, MAX_REFLECTION_RECURSION_DEPTH);
+        return new RayTracerImpl(scene, new RenderOptions());
     }
 
     static RayTracer create(@NotNull final Scene scene, int maxRecursionDepth) {
-        if(maxRecursionDepth < 1 || maxRecursionDepth > MAX_REFLECTION_RECURSION_DEPTH) {
-            throw new IllegalArgumentException("Max Recursion needs to be from 1 to "+MAX_REFLECTION_RECURSION_DEPTH);
-        }
-        return new RayTracerImpl(scene, maxRecursionDepth);
+        final RenderOptions options = new RenderOptions();
+        options.setMaxRecursionDepth(maxRecursionDepth);
+        return new RayTracerImpl(scene, options);
+    }
+
+    static RayTracer create(@NotNull final Scene scene, @NotNull final RenderOptions options) {
+        return new RayTracerImpl(scene, new RenderOptions(options));
+    }
+
+    /**
+     * Renders a scene loaded by {@link CompiledScene#load(java.nio.file.Path)}, using its hierarchy rather than
+     * building another.
+     */
+    static RayTracer create(@NotNull final CompiledScene scene) {
+        return create(scene, new RenderOptions());
+    }
+
+    static RayTracer create(@NotNull final CompiledScene scene, @NotNull final RenderOptions options) {
+        return new RayTracerImpl(scene.getScene(), new RenderOptions(options), scene.getHierarchy());
     }
 
     /**
@@ -24,9 +41,26 @@ public interface RayTracer {
      * todo: use a custom exception such as RenderException
      * @param width the width of the image to be rendered
      * @param height the height of the image to be rendered
-     * @return A 3 dimensional array which can also be thought of as a 2 dimensional array of RGB values.
+     * @return the RGB values of the image, see {@link FrameBuffer#toArray()} for the old double[][][] format.
      * @throws Exception in various parts of the render process.
      */
-    double[][][] render(final int width, final int height) throws Exception;
+    FrameBuffer render(final int width, final int height) throws Exception;
+
+    /**
+     * Renders the image tile by tile, publishing each tile as soon as it is finished so that consumers can start
+     * writing or displaying the image while the rest is still being traced. Nothing is rendered until a subscriber
+     * requests tiles, and only as many tiles are rendered ahead as have been requested. Tiles arrive in no
+     * particular order; each subscriber gets its own render of the frame.
+     * @param width the width of the image to be rendered
+     * @param height the height of the image to be rendered
+     * @return a publisher of the rendered tiles, which completes once every tile has been published
+     */
+    Flow.Publisher<RenderedTile> renderTiles(final int width, final int height);
+
+    /**
+     * @return counts of the work done by the most recent render, which only covers the tiles finished so far if
+     * tiles are still being published
+     */
+    RenderStatistics getStatistics();
 
 }
@@ -1,11 +1,18 @@
 package ex02.raytracer;
 
+import ex02.blas.BoundingBox;
 import ex02.blas.MathUtils;
 import ex02.entities.*;
 import ex02.entities.lights.Light;
 import ex02.entities.primitives.Primitive;
+import ex02.raytracer.accel.BoundingVolumeHierarchy;
+import ex02.raytracer.accel.RayPacket;
 
-import java.util.stream.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -17,26 +24,64 @@ public class RayTracerImpl implements RayTracer {
     private static final Logger log = LoggerFactory.getLogger(RayTracerImpl.class);
 
     private final Scene scene;
+    private final RenderOptions options;
     private final int maxRecursionDepth;
     private final Camera camera;
+    private final BoundingVolumeHierarchy bvh;
+    private final BoundingBox sceneBounds;
+    private final LightSampler lightSampler;
+    private final WavefrontIntegrator wavefront;
 
     private double pixelWidth;
     private double pixelHeight;
+    private double textureSpread;
+
+    private final LongAdder pixelCount = new LongAdder();
+    private final LongAdder sampleCount = new LongAdder();
+    private final LongAdder refinedPixelCount = new LongAdder();
+    private final LongAdder extraSampleCount = new LongAdder();
+    private final LongAdder shadowRayCount = new LongAdder();
+    private final LongAdder reflectionRayCount = new LongAdder();
+    private final LongAdder occluderCacheLookups = new LongAdder();
+    private final LongAdder occluderCacheHits = new LongAdder();
+
+    RayTracerImpl(final Scene scene, final RenderOptions options) {
+        this(scene, options, null);
+    }
 
-    RayTracerImpl(final Scene scene, int maxRecursionDepth) {
+    // The hierarchy is built over the scene's primitives unless one that was built already is given
+    RayTracerImpl(final Scene scene, final RenderOptions options, @Nullable final BoundingVolumeHierarchy hierarchy) {
         this.scene = scene;
-        this.maxRecursionDepth = maxRecursionDepth;
+        this.options = options;
+        this.maxRecursionDepth = options.getMaxRecursionDepth();
 
         try {
             scene.postInit(null);
         } catch (final Exception e) {}
 
         this.camera = scene.getCamera();
+        // padded like the boxes in the hierarchy so that rounding can't reject a ray grazing a flat primitive
+        this.sceneBounds = new BoundingBox(scene.getBounds().getMin(), scene.getBounds().getMax()).pad(1e-7);
+
+        final long start = System.nanoTime();
+        this.bvh = hierarchy != null ? hierarchy : new BoundingVolumeHierarchy(scene.getPrimitives());
+        this.lightSampler = new LightSampler(options);
+        this.wavefront = options.getIntegrator() == Integrator.WAVEFRONT ? new WavefrontIntegrator(this, scene, options) : null;
+
+        if(log.isInfoEnabled()) {
+            final long time = System.nanoTime() - start;
+            log.info("BVH over {} primitives {} in {} milliseconds with depth {} ({} nodes, {} sphere kernel, {} packet kernel)",
+                    scene.getPrimitives().size(), hierarchy != null ? "loaded" : "built",
+                    String.format("%,.3f", time / 1_000_000.0), bvh.getDepth(), bvh.getNodeCount(),
+                    bvh.getSpheres().getKernelName(), bvh.getPacketKernelName());
+        }
     }
 
-    private Ray constructRayThroughPixel(final int x, final int y, final double sampleXOffset, final double sampleYOffset) {
-        final Ray ray = camera.getRay();
-        final double[] endPoint = ray.getEndPoint();
+    // Points the ray from the eye through a sample of the pixel, using endPoint as working storage
+    Ray constructRayThroughPixel(final int x, final int y, final double sampleXOffset, final double sampleYOffset,
+                                 final Ray ray, final double[] endPoint) {
+        ray.set(camera.getEye(), camera.getDirection(), camera.getScreenDist());
+        ray.getEndPoint(endPoint);
 
         final double upOffset = -1 * (y - (scene.getCanvasHeight() / 2.0) - (sampleYOffset / scene.getSuperSampleWidth())) * pixelHeight;
         final double rightOffset = (x - (scene.getCanvasWidth() / 2.0) + (sampleXOffset / scene.getSuperSampleWidth())) * pixelWidth;
@@ -44,47 +89,79 @@ public class RayTracerImpl implements RayTracer {
         MathUtils.addVectorAndMultiply(endPoint, camera.getViewplaneUp(), upOffset);
         MathUtils.addVectorAndMultiply(endPoint, camera.getRightDirection(), rightOffset);
 
-        ray.setDirection(MathUtils.calcPointsDiff(camera.getEye(), endPoint));
+        MathUtils.calcPointsDiff(camera.getEye(), endPoint, ray.getDirection());
         ray.normalize();
         return ray;
     }
 
-    private void setRenderSize(final int width, final int height) {
+    // Sets the size of the image that tiles are rendered for, which mustn't change while tiles are being rendered
+    void setRenderSize(final int width, final int height) {
         this.scene.setCanvasSize(height, width);
         this.pixelWidth = this.camera.getScreenWidth() / this.scene.getCanvasWidth();
         this.pixelHeight = this.scene.getCanvasWidth() / this.scene.getCanvasHeight() * this.pixelWidth;
+        this.textureSpread = this.pixelWidth / this.camera.getScreenDist() / this.scene.getSuperSampleWidth();
+
+        pixelCount.reset();
+        sampleCount.reset();
+        refinedPixelCount.reset();
+        extraSampleCount.reset();
+        shadowRayCount.reset();
+        reflectionRayCount.reset();
+        occluderCacheLookups.reset();
+        occluderCacheHits.reset();
     }
 
-    // Finds an intersecting primitive. Will ignore the one specified by ignorePrimitive
-    private synchronized Intersection findIntersection(@NotNull final Ray ray, @Nullable final Primitive ignorePrimitive) {
+    // Finds an intersecting primitive. Will ignore the one specified by ignorePrimitive.
+    // Primitives don't keep any per-ray state so this is called concurrently by the render threads.
+    Intersection findIntersection(@NotNull final Ray ray, @Nullable final Primitive ignorePrimitive) {
         if(ray == null) {
             throw new IllegalArgumentException("Ray should not be null");
         }
 
-        // Start off with infinite distance and no intersecting primitive
-        double minDistance = Double.POSITIVE_INFINITY;
-        Primitive minPrimitive = null;
+        // Rays that miss the whole scene (eg: towards the sky) are rejected with a single slab test
+        if (!sceneBounds.intersects(ray.getPosition(), ray.getDirection(), Double.POSITIVE_INFINITY)) {
+            return Intersection.MISS;
+        }
 
-        for (final Primitive primitive : scene.getPrimitives()) {
-            // lazy method call: intersect will be called according to the
-            // implementing type of the primitive
-            final double t = primitive.intersect(ray);
+        // The hierarchy only tests primitives whose bounds the ray passes through, nearest first
+        return bvh.findIntersection(ray, ignorePrimitive, EPSILON);
+    }
 
-            // If we found a closer intersecting primitive, keep a reference to and it
-            if (t < minDistance && t > EPSILON && primitive != ignorePrimitive) {
-                minPrimitive = primitive;
-                minDistance = t;
-            }
+    // Finds something that blocks the ray before it has travelled maxDistance, stopping at the first blocker
+    @Nullable
+    Primitive findOccluder(@NotNull final Ray ray, final double maxDistance) {
+        if (!sceneBounds.intersects(ray.getPosition(), ray.getDirection(), maxDistance)) {
+            return null;
         }
 
-        // Return an intersection object with the closest intersecting primitive
-        return new Intersection(minDistance, minPrimitive);
+        return bvh.findOccluder(ray, maxDistance, EPSILON);
+    }
+
+    // As findIntersection for every ray of the packet, writing the intersection of each lane into intersections
+    void findIntersections(@NotNull final RayPacket packet, @NotNull final Intersection[] intersections) {
+        bvh.findIntersections(packet, null, EPSILON, intersections);
+    }
+
+    // As findOccluder for every ray of the packet, returning a bit set for each lane whose ray is blocked
+    int findOccluded(@NotNull final RayPacket packet, @NotNull final Primitive[] occluders) {
+        return bvh.findOccluded(packet, EPSILON, occluders);
+    }
+
+    // Width covered by a sample for each unit the ray has travelled from the eye, which textures are filtered over
+    double getTextureSpread() {
+        return textureSpread;
     }
 
-    private double[] getColor(Ray ray, Intersection intersection, int recursionDepth) {
+    // pathWeight is how much of this color reaches the pixel, the product of the reflectances along the way, and
+    // pathLength is how far the ray had already travelled from the eye when it set off
+    private double[] getColor(Ray ray, Intersection intersection, int recursionDepth, double pathWeight,
+                              double pathLength, Scratch scratch) {
+        final double[] color = scratch.colors[recursionDepth];
+        Arrays.fill(color, 0);
+
         // Avoid infinite loops and help performance by limiting the recursion depth
         if (recursionDepth > this.maxRecursionDepth) {
-            return new double[]{0, 0, 0};
+            return color;
         }
 
         final Primitive primitive = intersection.getPrimitive();
@@ -94,15 +171,15 @@ public class RayTracerImpl implements RayTracer {
         }
 
         final Surface surface = primitive.getSurface();
-        double[] color = new double[3];
-        double[] specular = surface.getSpecular();
 
         // Stretch the ray to the point of intersection
         ray.setMagnitude(intersection.getDistance());
 
-        double[] pointOfIntersection = ray.getEndPoint();
+        double[] pointOfIntersection = ray.getEndPoint(scratch.points[recursionDepth]);
 
-        double[] diffuse = primitive.getColorAt(pointOfIntersection);
+        // Samples spread apart the further they travel, so distant textures are averaged over a wider area
+        final double footprint = (pathLength + intersection.getDistance()) * textureSpread;
+        double[] diffuse = intersection.getColorAt(pointOfIntersection, footprint, scratch.textureColor);
         if (diffuse == null) {
             log.warn("NULL diffuse color");
         }
@@ -111,50 +188,22 @@ public class RayTracerImpl implements RayTracer {
         ray.setMagnitude(intersection.getDistance() - 1);
 
         // Obtain the normal at the point of intersection
-        double[] normal = primitive.getNormal(pointOfIntersection);
-
-        // Shoot rays towards each light source and see if it's visible
-        for (final Light light : scene.getLights()) {
-            final double[] vectorToLight = light.getVectorToLight(pointOfIntersection);
-
-            final Ray rayToLight = new Ray(pointOfIntersection, vectorToLight, 1);
-            rayToLight.normalize();
-
-            // Light is visible if there's no intersection with an object at least epsilon away
-            final double distanceToBlockingPrimitive = findIntersection(rayToLight, null).getDistance();
-            final double distanceToLight = MathUtils.norm(MathUtils.calcPointsDiff(pointOfIntersection, light.getPosition()));
-
-            final boolean lightVisible = distanceToBlockingPrimitive <= EPSILON
-                    || distanceToBlockingPrimitive >= distanceToLight;
-
-            if (lightVisible) {
-                // Measure the distance to the light and find the amount of light hitting the primitive
-                final double[] amountOfLightAtIntersection = light.getAmountOfLight(pointOfIntersection);
-
-                // The amount of light visible on the surface, determined by the angle to the light source
-                final double visibleDiffuseLight = MathUtils.dotProduct(vectorToLight, normal);
-                if (visibleDiffuseLight > 0 && diffuse != null) {
-
-                    // Diffuse
-                    color[0] += diffuse[0] * amountOfLightAtIntersection[0] * visibleDiffuseLight;
-                    color[1] += diffuse[1] * amountOfLightAtIntersection[1] * visibleDiffuseLight;
-                    color[2] += diffuse[2] * amountOfLightAtIntersection[2] * visibleDiffuseLight;
-                }
-
-                // Specular
-
-                // Find the reflection around the normal
-                double[] reflectedVectorToLight = MathUtils.reflectVector(vectorToLight, normal);
-                MathUtils.normalize(reflectedVectorToLight);
-
-                double visibleSpecularLight = MathUtils.dotProduct(reflectedVectorToLight, ray.getDirection());
-
-                if (visibleSpecularLight < 0) {
-                    visibleSpecularLight = Math.pow(Math.abs(visibleSpecularLight), surface.getShininess());
-
-                    color[0] += specular[0] * amountOfLightAtIntersection[0] * visibleSpecularLight;
-                    color[1] += specular[1] * amountOfLightAtIntersection[1] * visibleSpecularLight;
-                    color[2] += specular[2] * amountOfLightAtIntersection[2] * visibleSpecularLight;
+        double[] normal = intersection.getNormal(pointOfIntersection);
+
+        // Shoot rays towards each light source, or each sample of an area light, and see if it's visible
+        final List<Light> lights = scene.getLights();
+        for (int lightIndex = 0; lightIndex < lights.size(); lightIndex++) {
+            final Light light = lights.get(lightIndex);
+            final int samples = lightSampler.getSampleCount(light);
+
+            for (int i = 0; i < samples; i++) {
+                final double distanceToLight = lightSampler.sample(light, i, pointOfIntersection, scratch.lightPoint,
+                        scratch.vectorToLight, scratch.amountOfLight);
+
+                // Light is visible if there's no object at least epsilon away and closer than the light
+                if (isLightVisible(lightIndex, pointOfIntersection, scratch.vectorToLight, distanceToLight, scratch)) {
+                    addLight(color, scratch.amountOfLight, scratch.vectorToLight, ray.getDirection(), normal, diffuse,
+                            surface, scratch.reflectedVectorToLight);
                 }
             }
         }
@@ -174,92 +223,372 @@ public class RayTracerImpl implements RayTracer {
         color[1] += surfaceEmission[1];
         color[2] += surfaceEmission[2];
 
-        // Reflection Ray
-        final double[] reflectionDirection = MathUtils.reflectVector(MathUtils.oppositeVector(ray.getDirection()), normal);
-        final Ray reflectionRay = new Ray(pointOfIntersection, reflectionDirection, 1);
+        // Reflection Ray, which is only traced while it can still add a noticeable amount to the pixel
+        double reflectance = surface.getReflectance();
+        double reflectionWeight = pathWeight * reflectance;
+
+        if (reflectance == 0 || recursionDepth == this.maxRecursionDepth
+                || reflectionWeight < options.getPathWeightThreshold()) {
+            return color;
+        }
+
+        // Past the roulette depth the reflection survives with a probability of its weight, and survivors are scaled
+        // up to make up for the ones that were dropped, so the average is unchanged
+        final int rouletteDepth = options.getRussianRouletteDepth();
+        if (rouletteDepth > 0 && recursionDepth >= rouletteDepth && reflectionWeight < 1) {
+            if (LightSampler.random(pointOfIntersection, -recursionDepth) >= reflectionWeight) {
+                return color;
+            }
+            reflectance /= reflectionWeight;
+            reflectionWeight = 1;
+        }
+
+        final double[] reflectionDirection = MathUtils.reflectVector(
+                MathUtils.oppositeVector(ray.getDirection(), scratch.oppositeDirection), normal, scratch.reflectionDirection);
+        final Ray reflectionRay = scratch.reflectionRays[recursionDepth];
+        reflectionRay.set(pointOfIntersection, reflectionDirection, 1);
         reflectionRay.normalize();
+        scratch.reflectionRayCount++;
 
         final Intersection reflectionIntersection = findIntersection(reflectionRay, null);
-        final double[] reflectionColor = getColor(reflectionRay, reflectionIntersection, recursionDepth + 1);
+        final double[] reflectionColor = getColor(reflectionRay, reflectionIntersection, recursionDepth + 1, reflectionWeight,
+                pathLength + intersection.getDistance(), scratch);
 
-        MathUtils.addVectorAndMultiply(color, reflectionColor, surface.getReflectance());
+        MathUtils.addVectorAndMultiply(color, reflectionColor, reflectance);
 
         return color;
     }
 
+    private boolean isLightVisible(final int light, final double[] pointOfIntersection, final double[] vectorToLight,
+                                   final double distanceToLight, final Scratch scratch) {
+        final Ray rayToLight = scratch.rayToLight;
+        rayToLight.set(pointOfIntersection, vectorToLight, 1);
+        rayToLight.normalize();
+        scratch.shadowRays++;
+
+        // whatever blocked the light for the last point shaded is the most likely thing to block it here
+        if (scratch.occluders.isBlocked(light, rayToLight, distanceToLight)) {
+            return false;
+        }
+
+        final Primitive occluder = findOccluder(rayToLight, distanceToLight);
+        scratch.occluders.update(light, occluder);
+        return occluder == null;
+    }
+
+    // Adds the diffuse and specular light arriving from one light, or one sample of an area light, along vectorToLight
+    // for a ray travelling in viewDirection, using reflectedVectorToLight as working storage
+    static void addLight(final double[] color, final double[] amountOfLightAtIntersection, final double[] vectorToLight,
+                         final double[] viewDirection, final double[] normal, final double[] diffuse, final Surface surface,
+                         final double[] reflectedVectorToLight) {
+        // The amount of light visible on the surface, determined by the angle to the light source
+        final double visibleDiffuseLight = MathUtils.dotProduct(vectorToLight, normal);
+        if (visibleDiffuseLight > 0 && diffuse != null) {
+
+            // Diffuse
+            color[0] += diffuse[0] * amountOfLightAtIntersection[0] * visibleDiffuseLight;
+            color[1] += diffuse[1] * amountOfLightAtIntersection[1] * visibleDiffuseLight;
+            color[2] += diffuse[2] * amountOfLightAtIntersection[2] * visibleDiffuseLight;
+        }
+
+        // Specular
+        final double[] specular = surface.getSpecular();
+
+        // Find the reflection around the normal
+        MathUtils.reflectVector(vectorToLight, normal, reflectedVectorToLight);
+        MathUtils.normalize(reflectedVectorToLight);
+
+        double visibleSpecularLight = MathUtils.dotProduct(reflectedVectorToLight, viewDirection);
+
+        if (visibleSpecularLight < 0) {
+            visibleSpecularLight = Math.pow(Math.abs(visibleSpecularLight), surface.getShininess());
+
+            color[0] += specular[0] * amountOfLightAtIntersection[0] * visibleSpecularLight;
+            color[1] += specular[1] * amountOfLightAtIntersection[1] * visibleSpecularLight;
+            color[2] += specular[2] * amountOfLightAtIntersection[2] * visibleSpecularLight;
+        }
+    }
+
     /**
      * Creates the pixel data that can be used to draw an image to a GUI or file
      * todo: use a custom exception such as RenderException
      * @param width the width of the image to be rendered
      * @param height the height of the image to be rendered
-     * @return A 3 dimensional array which can also be thought of as a 2 dimensional array of RGB values.
+     * @return the RGB values of the image, see {@link FrameBuffer#toArray()} for the old double[][][] format.
      * @throws Exception in various parts of the render process.
      */
     @Override
-    public double[][][] render(final int width, final int height) throws Exception {
+    public FrameBuffer render(final int width, final int height) throws Exception {
         setRenderSize(width, height);
 
         final long start = System.nanoTime();
 
-        final double[][][] pixels = new double[width][height][3];
+        final FrameBuffer pixels = new FrameBuffer(width, height);
 
-        IntStream.range(0, height)
-                .parallel() // when testing the first loop was the best to do in parallel
-                .forEach((final int y) -> {
-            IntStream.range(0, width)
-                    //.parallel() // doing both loops in parallel actually slows it down
-                    .forEach((final int x) -> {
-                pixels[x][y] = calculatePixelColor(x, y);
-            });
-        });
+        // Tiles are spread over the pool with work stealing, so threads that finish cheap tiles help with the
+        // expensive ones instead of sitting idle at the end of the frame
+        final List<Tile> tiles = Tile.split(width, height, options.getTileSize());
+        final TileTask task = new TileTask(tiles, tile -> renderTile(tile, pixels));
+
+        final ForkJoinPool sharedPool = options.getPool();
+        if (sharedPool != null) {
+            sharedPool.invoke(task);
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(options.getParallelism());
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
 
 
         if(log.isDebugEnabled()) {
             final long time = System.nanoTime() - start;
-            log.debug("Render took {} milliseconds", String.format("%,d", time / 1_000_000));
+            log.debug("Render took {} milliseconds ({})", String.format("%,d", time / 1_000_000), getStatistics());
         }
 
         return pixels;
     }
 
-    private double[] calculatePixelColor(final int x, final int y) {
-        int hits = 0;
-        double[] color = new double[3];
+    @Override
+    public Flow.Publisher<RenderedTile> renderTiles(final int width, final int height) {
+        final List<Tile> tiles = Tile.split(width, height, options.getTileSize());
+
+        // the size is only applied when a subscriber starts rendering, so other renders in between don't change it
+        return new TilePublisher(tiles, () -> setRenderSize(width, height), this::renderTile,
+                options.getPool(), options.getParallelism());
+    }
+
+    @Override
+    public RenderStatistics getStatistics() {
+        return new RenderStatistics(pixelCount.sum(), sampleCount.sum(), refinedPixelCount.sum(), extraSampleCount.sum(),
+                shadowRayCount.sum(), reflectionRayCount.sum(), occluderCacheLookups.sum(), occluderCacheHits.sum());
+    }
+
+    // Renders one tile of an image of the size last given to setRenderSize
+    RenderedTile renderTile(final Tile tile) {
+        final FrameBuffer pixels = new FrameBuffer(tile.getWidth(), tile.getHeight());
+        renderTile(tile, pixels, tile.getX(), tile.getY());
+        return new RenderedTile(tile, pixels);
+    }
+
+    private void renderTile(final Tile tile, final FrameBuffer pixels) {
+        renderTile(tile, pixels, 0, 0);
+    }
+
+    // Renders the tile into pixels, whose top left corner is at originX, originY of the image
+    private void renderTile(final Tile tile, final FrameBuffer pixels, final int originX, final int originY) {
+        if (wavefront != null) {
+            wavefront.renderTile(tile, pixels, originX, originY);
+            return;
+        }
+
+        final Scratch scratch = newScratch();
+
+        for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++) {
+            for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+                pixels.setPixel(x - originX, y - originY, calculatePixelColor(x, y, scratch));
+            }
+        }
+        addStatistics((long) tile.getWidth() * tile.getHeight(), scratch.samples, scratch.refinedPixels,
+                scratch.extraSamples, scratch.shadowRays, scratch.reflectionRayCount, scratch.occluders);
+    }
+
+    private Scratch newScratch() {
+        final int superSampleWidth = options.isAdaptiveSupersampling() ? scene.getSuperSampleWidth() : 1;
+        return new Scratch(maxRecursionDepth, superSampleWidth, scene.getLights().size());
+    }
+
+    // Tiles count their own work so the render threads only touch the shared counters once per tile
+    void addStatistics(final long pixels, final long samples, final long refinedPixels, final long extraSamples,
+                       final long shadowRays, final long reflectionRays, final OccluderCache occluders) {
+        pixelCount.add(pixels);
+        sampleCount.add(samples);
+        refinedPixelCount.add(refinedPixels);
+        extraSampleCount.add(extraSamples);
+        shadowRayCount.add(shadowRays);
+        reflectionRayCount.add(reflectionRays);
+        occluderCacheLookups.add(occluders.getLookups());
+        occluderCacheHits.add(occluders.getHits());
+    }
+
+    // Traces a single sample of the pixel, copying its color to dest if it hits something
+    @Nullable
+    private Primitive traceSample(final int x, final int y, final int k, final int l, final Scratch scratch,
+                                  final double[] dest) {
+        final Ray ray = constructRayThroughPixel(x, y, k, l, scratch.cameraRay, scratch.endPoint);
+        final Intersection intersection = findIntersection(ray, null);
+        scratch.samples++;
+
+        if (intersection.getPrimitive() != null) {
+            System.arraycopy(getColor(ray, intersection, 1, 1, 0, scratch), 0, dest, 0, 3);
+        }
+        return intersection.getPrimitive();
+    }
 
+    // The returned color is only valid until the next call with the same scratch
+    private double[] calculatePixelColor(final int x, final int y, final Scratch scratch) {
         final int superSampleWidth = scene.getSuperSampleWidth();
 
+        if (superSampleWidth > 1 && options.isAdaptiveSupersampling()) {
+            return calculateAdaptivePixelColor(x, y, superSampleWidth, scratch);
+        }
+
+        int hits = 0;
+        final double[] color = scratch.pixelColor;
+        Arrays.fill(color, 0);
+
         // Supersampling loops
         for (int k = 0; k < superSampleWidth; k++) {
             for (int l = 0; l < superSampleWidth; l++) {
-                // Create the ray
-                final Ray ray = constructRayThroughPixel(x, y, k, l);
+                // If we hit something, add its color
+                if (traceSample(x, y, k, l, scratch, scratch.sampleColor) != null) {
+                    hits++;
+                    MathUtils.addVector(color, scratch.sampleColor);
+                }
+            }
+        }
 
-                // Find the intersecting primitive
-                final Intersection intersection = findIntersection(ray, null);
+        return finishPixelColor(x, y, color, hits);
+    }
 
-                // If we hit something, get its color
-                if (intersection.getPrimitive() != null) {
-                    hits++;
-                    final double[] sampleColor = getColor(ray, intersection, 1);
-                    MathUtils.addVector(color, sampleColor);
+    // Samples the corners of the supersampling grid first, and only traces the rest of it where they disagree
+    private double[] calculateAdaptivePixelColor(final int x, final int y, final int superSampleWidth, final Scratch scratch) {
+        final int[] coarseSamples = scratch.coarseSamples;
+        final double[][] coarseColors = scratch.coarseColors;
+        final Primitive[] coarsePrimitives = scratch.coarsePrimitives;
+        final double threshold = options.getSupersamplingThreshold();
+
+        boolean refine = false;
+        for (int i = 0; i < coarseSamples.length; i++) {
+            final int k = coarseSamples[i] / superSampleWidth;
+            final int l = coarseSamples[i] % superSampleWidth;
+            coarsePrimitives[i] = traceSample(x, y, k, l, scratch, coarseColors[i]);
+
+            if (i > 0 && !refine) {
+                refine = coarsePrimitives[i] != coarsePrimitives[0]
+                        || (coarsePrimitives[i] != null && maxDifference(coarseColors[i], coarseColors[0]) > threshold);
+            }
+        }
+
+        int hits = 0;
+        final double[] color = scratch.pixelColor;
+        Arrays.fill(color, 0);
+
+        for (int i = 0; i < coarseSamples.length; i++) {
+            if (coarsePrimitives[i] != null) {
+                hits++;
+                MathUtils.addVector(color, coarseColors[i]);
+            }
+        }
+
+        if (refine) {
+            scratch.refinedPixels++;
 
-                    ray.setMagnitude(intersection.getDistance());
+            for (int sample = 0; sample < superSampleWidth * superSampleWidth; sample++) {
+                if (Arrays.binarySearch(coarseSamples, sample) >= 0) {
+                    continue;
                 }
+
+                if (traceSample(x, y, sample / superSampleWidth, sample % superSampleWidth, scratch, scratch.sampleColor) != null) {
+                    hits++;
+                    MathUtils.addVector(color, scratch.sampleColor);
+                }
+                scratch.extraSamples++;
             }
         }
 
+        return finishPixelColor(x, y, color, hits);
+    }
+
+    private static double maxDifference(final double[] a, final double[] b) {
+        return Math.max(Math.abs(a[0] - b[0]), Math.max(Math.abs(a[1] - b[1]), Math.abs(a[2] - b[2])));
+    }
+
+    // Averages the samples that hit something, or uses the background if none did, and clamps the color
+    double[] finishPixelColor(final int x, final int y, final double[] color, final int hits) {
         // If we didn't anything in any of the samples, use the background color
         if (hits == 0) {
-            color = scene.getBackgroundAt(x, y);
+            System.arraycopy(scene.getBackgroundAt(x, y), 0, color, 0, 3);
         } else {
             // Average the cumulative color values
             MathUtils.multiplyVectorByScalar(color, 1F / hits);
         }
 
-        return new double[] {
-                Math.min(color[0], 1.0d),
-                Math.min(color[1], 1.0d),
-                Math.min(color[2], 1.0d)
-        };
+        color[0] = Math.min(color[0], 1.0d);
+        color[1] = Math.min(color[1], 1.0d);
+        color[2] = Math.min(color[2], 1.0d);
+        return color;
+    }
+
+    /**
+     * Working storage for tracing the pixels of one tile, so the rays and vectors every sample needs are reused
+     * rather than allocated. getColor() is still accumulating the color of a level while the reflection is traced
+     * at the next, so the arrays it needs across that call are indexed by recursion depth.
+     */
+    private static final class Scratch {
+
+        final Ray cameraRay = newRay();
+        final Ray rayToLight = newRay();
+        final Ray[] reflectionRays;
+        final OccluderCache occluders;
+
+        final double[][] colors;
+        final double[][] points;
+
+        final double[] endPoint = new double[3];
+        final double[] vectorToLight = new double[3];
+        final double[] amountOfLight = new double[3];
+        final double[] reflectedVectorToLight = new double[3];
+        final double[] oppositeDirection = new double[3];
+        final double[] reflectionDirection = new double[3];
+        final double[] pixelColor = new double[3];
+        final double[] sampleColor = new double[3];
+        final double[] lightPoint = new double[3];
+        final double[] textureColor = new double[3];
+
+        // sample indexes (k * width + l) traced before deciding whether a pixel needs the rest of its samples
+        final int[] coarseSamples;
+        final double[][] coarseColors;
+        final Primitive[] coarsePrimitives;
+
+        long samples;
+        long refinedPixels;
+        long extraSamples;
+        long shadowRays;
+        long reflectionRayCount;
+
+        Scratch(final int maxRecursionDepth, final int superSampleWidth, final int lights) {
+            // depths run from 1 to the maximum
+            this.reflectionRays = new Ray[maxRecursionDepth + 1];
+            this.colors = new double[maxRecursionDepth + 1][3];
+            this.points = new double[maxRecursionDepth + 1][3];
+
+            for (int i = 0; i < reflectionRays.length; i++) {
+                reflectionRays[i] = newRay();
+            }
+
+            this.coarseSamples = coarseSamples(superSampleWidth);
+            this.coarseColors = new double[coarseSamples.length][3];
+            this.coarsePrimitives = new Primitive[coarseSamples.length];
+            this.occluders = new OccluderCache(lights);
+        }
+
+        // The corners of the grid, or just its diagonal when that is all a 2x2 grid can save
+        private static int[] coarseSamples(final int width) {
+            final int last = width - 1;
+
+            if (width < 2) {
+                return new int[0];
+            } else if (width == 2) {
+                return new int[] {0, (last * width) + last};
+            }
+            return new int[] {0, last, last * width, (last * width) + last};
+        }
+
+        private static Ray newRay() {
+            return new Ray(new double[3], new double[3], 1);
+        }
     }
 }
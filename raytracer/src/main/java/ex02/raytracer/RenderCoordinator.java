@@ -0,0 +1,526 @@
+package ex02.raytracer;
+
+import ex02.raytracer.parser.SceneParser;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders frames on {@link RenderWorker}s in other processes, which may be on other hosts, by handing them tiles of
+ * the image and putting the pixels they send back together.
+ * <p>
+ * The scene is compiled once, and sent to each worker when it's first connected to, so however many frames are
+ * rendered a worker only loads the scene once. Workers are handed tiles as they finish others, so faster workers
+ * render more of the image, and each is kept {@value #TILES_PER_THREAD} tiles a thread ahead so that it never waits
+ * on the network for its next one.
+ * <p>
+ * The tiles held by a worker that disconnects, or that sends nothing back within the tile timeout, are handed to the
+ * others. Once every tile has been handed out, idle workers are given copies of the tiles that have been out
+ * longest, so that a slow worker can't hold up the end of the frame; whichever copy comes back first is used.
+ * Workers that have been lost are connected to again at the start of the next frame.
+ * <pre>
+ * java ex02.raytracer.RenderCoordinator --workers host:port,host:port [--width 1024] [--height 720] scene image.png
+ * </pre>
+ */
+public class RenderCoordinator implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RenderCoordinator.class);
+
+    public static final long DEFAULT_TILE_TIMEOUT = 60_000;
+
+    private static final int TILES_PER_THREAD = 2;
+    private static final int CONNECT_TIMEOUT = 10_000;
+
+    private enum State { CONNECTING, READY, LOST }
+
+    private final byte[] sceneData;
+    private final RenderOptions options;
+    private final List<InetSocketAddress> addresses;
+    private final Connection[] connections;
+    private final Object lock = new Object();
+    private long tileTimeout = DEFAULT_TILE_TIMEOUT;
+    private boolean closed;
+
+    // The frame being rendered, guarded by the lock. tiles is null between frames
+    private int frame;
+    private List<Tile> tiles;
+    private FrameBuffer pixels;
+    private final Deque<Tile> pending = new ArrayDeque<>();
+    private boolean[] done;
+    private int[] holders; // how many workers each tile is out with
+    private int[] sends;
+    private int remaining;
+    private int resentTiles;
+
+    /**
+     * @param scene the scene to render, a parsed one can be compiled with {@link CompiledScene#compile}
+     * @param options the options the workers render with, the tile size being the size of the tiles handed out.
+     *                Their pool and parallelism are ignored, as each worker has its own
+     * @param workers the addresses of the workers, which are connected to when the first frame is rendered
+     * @throws IOException if the scene can't be written
+     */
+    public RenderCoordinator(@NotNull final CompiledScene scene, @NotNull final RenderOptions options,
+                             @NotNull final List<InetSocketAddress> workers) throws IOException {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        scene.write(bytes);
+        this.sceneData = bytes.toByteArray();
+        this.options = new RenderOptions(options);
+        this.addresses = new ArrayList<>(workers);
+        this.connections = new Connection[workers.size()];
+    }
+
+    /**
+     * Renders a frame on the workers, returning once every tile has come back.
+     * @param width the width of the image to be rendered
+     * @param height the height of the image to be rendered
+     * @return the RGB values of the image, the same as rendering it in this process would give
+     * @throws IOException if every worker is lost before the frame is finished
+     */
+    public FrameBuffer render(final int width, final int height) throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("The coordinator has been closed");
+            }
+            if (tiles != null) {
+                throw new IllegalStateException("Only one frame can be rendered at a time");
+            }
+
+            final long start = System.nanoTime();
+            pixels = new FrameBuffer(width, height);
+            tiles = Tile.split(width, height, options.getTileSize());
+            frame++;
+            pending.clear();
+            pending.addAll(tiles);
+            done = new boolean[tiles.size()];
+            holders = new int[tiles.size()];
+            sends = new int[tiles.size()];
+            remaining = tiles.size();
+            resentTiles = 0;
+
+            for (int i = 0; i < connections.length; i++) {
+                if (connections[i] == null || connections[i].state == State.LOST) {
+                    connections[i] = new Connection(addresses.get(i));
+                    connections[i].start();
+                }
+            }
+            lock.notifyAll();
+
+            try {
+                while (remaining > 0) {
+                    if (closed) {
+                        throw new IOException("The coordinator was closed during the render");
+                    }
+                    if (getWorkerCount(State.CONNECTING) + getWorkerCount(State.READY) == 0) {
+                        throw new IOException("Every worker has been lost, with " + remaining + " of " + tiles.size()
+                                + " tiles left to render");
+                    }
+                    checkTimeouts();
+                    lock.wait(Math.max(1, Math.min(tileTimeout / 4, 1000)));
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for tiles");
+            } finally {
+                // tiles still out will be ignored when they come back
+                tiles = null;
+                for (final Connection connection : connections) {
+                    connection.outstanding.clear();
+                }
+            }
+
+            if (log.isInfoEnabled()) {
+                log.info("Rendered {}x{} on {} workers in {} milliseconds, {} of {} tiles resent", width, height,
+                        getWorkerCount(State.READY), String.format("%,.3f", (System.nanoTime() - start) / 1_000_000.0),
+                        resentTiles, done.length);
+            }
+            return pixels;
+        }
+    }
+
+    // The next tile for the connection to render, or null if it has enough to be going on with or there are none
+    private Tile nextTile(final Connection connection) {
+        if (closed || tiles == null || connection.state != State.READY || connection.outstanding.size() >= connection.window) {
+            return null;
+        }
+
+        Tile tile = pending.poll();
+        while (tile != null && done[tile.getIndex()]) {
+            tile = pending.poll();
+        }
+        if (tile == null && connection.outstanding.isEmpty()) {
+            tile = oldestOutstanding(connection);
+        }
+        if (tile == null) {
+            return null;
+        }
+
+        final int index = tile.getIndex();
+        final long now = System.nanoTime();
+        if (connection.outstanding.isEmpty()) {
+            connection.lastHeard = now;
+        }
+        connection.outstanding.put(index, now);
+        holders[index]++;
+        if (sends[index]++ > 0) {
+            resentTiles++;
+        }
+        return tile;
+    }
+
+    // The tile that has been out longest with another worker and hasn't been copied already
+    private Tile oldestOutstanding(final Connection connection) {
+        int oldest = -1;
+        long oldestSent = 0;
+
+        for (final Connection other : connections) {
+            if (other == connection) {
+                continue;
+            }
+            // tiles are in the order they were sent
+            for (final Map.Entry<Integer, Long> entry : other.outstanding.entrySet()) {
+                final int index = entry.getKey();
+                if (!done[index] && holders[index] == 1) {
+                    if (oldest < 0 || entry.getValue() - oldestSent < 0) {
+                        oldest = index;
+                        oldestSent = entry.getValue();
+                    }
+                    break;
+                }
+            }
+        }
+        return oldest >= 0 ? tiles.get(oldest) : null;
+    }
+
+    private void completed(final Connection connection, final int tileFrame, final int index,
+                           final FrameBuffer tilePixels) throws IOException {
+        synchronized (lock) {
+            connection.lastHeard = System.nanoTime();
+            if (tiles == null || tileFrame != frame || !connection.outstanding.containsKey(index)) {
+                return; // a tile of a frame that has already been finished
+            }
+
+            // checked while the tile is still out with the connection, so losing it hands the tile to another
+            final Tile tile = tiles.get(index);
+            if (tilePixels.getWidth() != tile.getWidth() || tilePixels.getHeight() != tile.getHeight()) {
+                throw new IOException("Tile " + index + " came back as " + tilePixels.getWidth() + "x"
+                        + tilePixels.getHeight() + " pixels rather than " + tile.getWidth() + "x" + tile.getHeight());
+            }
+
+            connection.outstanding.remove(index);
+            holders[index]--;
+            lock.notifyAll();
+            if (done[index]) {
+                return; // a copy of a tile another worker sent back first
+            }
+            pixels.setRegion(tile.getX(), tile.getY(), tilePixels);
+            done[index] = true;
+            remaining--;
+        }
+    }
+
+    // Gives up on workers that have had tiles for longer than the timeout without sending any back
+    private void checkTimeouts() {
+        final long now = System.nanoTime();
+        for (final Connection connection : connections) {
+            if (connection.state == State.READY && !connection.outstanding.isEmpty()
+                    && now - connection.lastHeard > tileTimeout * 1_000_000) {
+                lose(connection, new IOException("No tile sent back in " + tileTimeout + " milliseconds"));
+            }
+        }
+    }
+
+    // Drops the connection, handing its tiles to the other workers unless they already have copies
+    private void lose(final Connection connection, final Exception cause) {
+        synchronized (lock) {
+            if (connection.state == State.LOST) {
+                return;
+            }
+            connection.state = State.LOST;
+
+            int returned = 0;
+            if (tiles != null) {
+                for (final int index : connection.outstanding.keySet()) {
+                    if (--holders[index] == 0 && !done[index]) {
+                        pending.addFirst(tiles.get(index));
+                        returned++;
+                    }
+                }
+            }
+            connection.outstanding.clear();
+            if (!closed) {
+                log.warn("Lost worker {}, {} tiles to hand to the others: {}", connection.address, returned, cause.toString());
+            }
+            lock.notifyAll();
+        }
+        connection.closeQuietly();
+    }
+
+    private int getWorkerCount(final State state) {
+        int count = 0;
+        for (final Connection connection : connections) {
+            if (connection != null && connection.state == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of workers that are connected and have the scene
+     */
+    public int getWorkerCount() {
+        synchronized (lock) {
+            return getWorkerCount(State.READY);
+        }
+    }
+
+    /**
+     * @return the number of tiles in the last frame that were handed out again, because the worker that had them
+     * was lost or was slower than the others at the end of the frame
+     */
+    public int getResentTileCount() {
+        synchronized (lock) {
+            return resentTiles;
+        }
+    }
+
+    public long getTileTimeout() {
+        return tileTimeout;
+    }
+
+    /**
+     * @param tileTimeout milliseconds to wait for a worker that has tiles to send one back before its tiles are
+     *                    handed to the others
+     */
+    public void setTileTimeout(final long tileTimeout) {
+        if (tileTimeout < 1) {
+            throw new IllegalArgumentException("Tile timeout must be at least 1 millisecond");
+        }
+        synchronized (lock) {
+            this.tileTimeout = tileTimeout;
+        }
+    }
+
+    /**
+     * Disconnects from the workers, which drop the scene.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        for (final Connection connection : connections) {
+            if (connection != null) {
+                lose(connection, new IOException("Closed"));
+            }
+        }
+    }
+
+    // A worker, with a thread that sends it tiles and another that receives their pixels
+    private class Connection {
+
+        private final InetSocketAddress address;
+        // guarded by the lock
+        private State state = State.CONNECTING;
+        private final Map<Integer, Long> outstanding = new LinkedHashMap<>(); // tile index to when it was sent
+        private long lastHeard;
+        private int window;
+        private Socket socket;
+
+        Connection(final InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void start() {
+            final Thread thread = new Thread(this::send, "render-coordinator-" + address);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void send() {
+            try {
+                final DataOutputStream out = connect();
+                int frameSent = 0;
+
+                while (true) {
+                    final Tile tile;
+                    final int tileFrame;
+                    final int width;
+                    final int height;
+                    synchronized (lock) {
+                        Tile next;
+                        while ((next = nextTile(this)) == null) {
+                            if (closed || state == State.LOST) {
+                                return;
+                            }
+                            lock.wait();
+                        }
+                        tile = next;
+                        tileFrame = frame;
+                        width = pixels.getWidth();
+                        height = pixels.getHeight();
+                    }
+
+                    if (tileFrame != frameSent) {
+                        TileProtocol.writeFrame(out, tileFrame, width, height);
+                        frameSent = tileFrame;
+                    }
+                    TileProtocol.writeTile(out, tileFrame, tile);
+                    out.flush();
+                }
+            } catch (final IOException | RuntimeException e) {
+                lose(this, e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lose(this, e);
+            }
+        }
+
+        // Sends the scene and waits for the worker to load it, then starts receiving pixels
+        private DataOutputStream connect() throws IOException {
+            final long start = System.nanoTime();
+            final Socket connected = new Socket();
+            synchronized (lock) {
+                if (closed || state == State.LOST) {
+                    throw new IOException("Closed");
+                }
+                socket = connected;
+            }
+            connected.connect(address, CONNECT_TIMEOUT);
+            connected.setTcpNoDelay(true);
+            // a worker that doesn't answer once it has had the scene for a tile timeout is given up on
+            connected.setSoTimeout((int) Math.min(tileTimeout, Integer.MAX_VALUE));
+
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connected.getOutputStream()));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(connected.getInputStream()));
+            out.writeInt(TileProtocol.MAGIC);
+            out.writeInt(TileProtocol.VERSION);
+            TileProtocol.writeOptions(out, options);
+            out.writeInt(sceneData.length);
+            out.write(sceneData);
+            out.flush();
+
+            if (in.readInt() != TileProtocol.MAGIC) {
+                throw new IOException(address + " is not a render worker of the same version");
+            }
+            final int threads = in.readInt();
+            connected.setSoTimeout(0);
+
+            synchronized (lock) {
+                window = Math.max(1, threads) * TILES_PER_THREAD;
+                state = State.READY;
+                lock.notifyAll();
+            }
+            log.info("Sent the scene to {} with {} threads in {} milliseconds", address, threads,
+                    String.format("%,.3f", (System.nanoTime() - start) / 1_000_000.0));
+
+            final Thread receiver = new Thread(() -> receive(in), "render-coordinator-" + address + "-pixels");
+            receiver.setDaemon(true);
+            receiver.start();
+            return out;
+        }
+
+        private void receive(final DataInputStream in) {
+            try {
+                while (true) {
+                    TileProtocol.expect(in, TileProtocol.PIXELS);
+                    final int tileFrame = in.readInt();
+                    final int index = in.readInt();
+                    completed(this, tileFrame, index, TileProtocol.readPixels(in, options.getTileSize()));
+                }
+            } catch (final IOException | RuntimeException e) {
+                lose(this, e);
+            }
+        }
+
+        private void closeQuietly() {
+            final Socket toClose;
+            synchronized (lock) {
+                toClose = socket;
+            }
+            if (toClose != null) {
+                try {
+                    toClose.close();
+                } catch (final IOException e) {
+                    log.debug("Unable to close connection to {}", address, e);
+                }
+            }
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        final List<InetSocketAddress> workers = new ArrayList<>();
+        final List<Path> files = new ArrayList<>();
+        int width = BatchRenderer.DEFAULT_WIDTH;
+        int height = BatchRenderer.DEFAULT_HEIGHT;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("--workers".equals(args[i]) && i + 1 < args.length) {
+                    for (final String worker : args[++i].split(",")) {
+                        final int colon = worker.lastIndexOf(':');
+                        workers.add(colon > 0
+                                ? new InetSocketAddress(worker.substring(0, colon), Integer.parseInt(worker.substring(colon + 1)))
+                                : new InetSocketAddress(worker, RenderWorker.DEFAULT_PORT));
+                    }
+                } else if ("--width".equals(args[i]) && i + 1 < args.length) {
+                    width = Integer.parseInt(args[++i]);
+                } else if ("--height".equals(args[i]) && i + 1 < args.length) {
+                    height = Integer.parseInt(args[++i]);
+                } else if (args[i].startsWith("--")) {
+                    throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                } else {
+                    files.add(Paths.get(args[i]));
+                }
+            }
+            if (workers.isEmpty() || files.size() != 2) {
+                throw new IllegalArgumentException("Workers, a scene and an image file are needed");
+            }
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: RenderCoordinator --workers host:port,host:port [--width " + BatchRenderer.DEFAULT_WIDTH
+                    + "] [--height " + BatchRenderer.DEFAULT_HEIGHT + "] scene image.png");
+            System.exit(2);
+            return;
+        }
+
+        // scene files are parsed, anything else should be a compiled scene
+        final Path sceneFile = files.get(0);
+        final CompiledScene scene = sceneFile.toString().endsWith(".txt")
+                ? CompiledScene.compile(new SceneParser(sceneFile.toFile()).parse())
+                : CompiledScene.load(sceneFile);
+
+        try (RenderCoordinator coordinator = new RenderCoordinator(scene, new RenderOptions(), workers)) {
+            final long start = System.nanoTime();
+            final FrameBuffer frame = coordinator.render(width, height);
+            System.out.printf("Rendered %s at %dx%d on %d workers in %,.1f ms, %d tiles resent%n", sceneFile, width, height,
+                    coordinator.getWorkerCount(), (System.nanoTime() - start) / 1e6, coordinator.getResentTileCount());
+            BatchRenderer.writePng(frame, files.get(1));
+        }
+    }
+}
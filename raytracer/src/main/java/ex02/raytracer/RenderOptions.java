@@ -0,0 +1,217 @@
+package ex02.raytracer;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Settings that control how a scene is rendered, as opposed to what is in it. A RayTracer takes a copy of
+ * the options when it is created, so one instance can be reused and changed between renders.
+ */
+public class RenderOptions {
+
+    public static final int DEFAULT_TILE_SIZE = 32;
+    public static final double DEFAULT_SUPERSAMPLING_THRESHOLD = 0.1;
+    public static final double DEFAULT_PATH_WEIGHT_THRESHOLD = 0.001;
+
+    private int maxRecursionDepth = RayTracer.MAX_REFLECTION_RECURSION_DEPTH;
+    private int tileSize = DEFAULT_TILE_SIZE;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private ForkJoinPool pool;
+    private boolean adaptiveSupersampling;
+    private double supersamplingThreshold = DEFAULT_SUPERSAMPLING_THRESHOLD;
+    private int shadowRayBudget;
+    private double pathWeightThreshold = DEFAULT_PATH_WEIGHT_THRESHOLD;
+    private int russianRouletteDepth;
+    private Integrator integrator = Integrator.RECURSIVE;
+
+    public RenderOptions() {
+    }
+
+    public RenderOptions(final RenderOptions other) {
+        this.maxRecursionDepth = other.maxRecursionDepth;
+        this.tileSize = other.tileSize;
+        this.parallelism = other.parallelism;
+        this.pool = other.pool;
+        this.adaptiveSupersampling = other.adaptiveSupersampling;
+        this.supersamplingThreshold = other.supersamplingThreshold;
+        this.shadowRayBudget = other.shadowRayBudget;
+        this.pathWeightThreshold = other.pathWeightThreshold;
+        this.russianRouletteDepth = other.russianRouletteDepth;
+        this.integrator = other.integrator;
+    }
+
+    public int getMaxRecursionDepth() {
+        return maxRecursionDepth;
+    }
+
+    public void setMaxRecursionDepth(int maxRecursionDepth) {
+        if(maxRecursionDepth < 1 || maxRecursionDepth > RayTracer.MAX_REFLECTION_RECURSION_DEPTH) {
+            throw new IllegalArgumentException("Max Recursion needs to be from 1 to " + RayTracer.MAX_REFLECTION_RECURSION_DEPTH);
+        }
+        this.maxRecursionDepth = maxRecursionDepth;
+    }
+
+    /**
+     * @return the width and height in pixels of the square tiles the image is split into
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public void setTileSize(int tileSize) {
+        if(tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be at least 1 pixel");
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @return number of threads used when no pool has been set
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the pool tiles are rendered on, or null if each render should use its own pool of {@link #getParallelism()} threads
+     */
+    @Nullable
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Share a pool between several renders so that together they use a predictable number of threads on the host.
+     * The pool is not shut down by the ray tracer.
+     * @param pool the pool to render tiles on, or null to use a pool per render
+     */
+    public void setPool(@Nullable ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return true if only the pixels whose coarse samples disagree get the full super-samp-width of the scene
+     */
+    public boolean isAdaptiveSupersampling() {
+        return adaptiveSupersampling;
+    }
+
+    /**
+     * When adaptive, each pixel is first sampled at the corners of its supersampling grid. The rest of the grid is
+     * only traced if those samples hit different primitives or their colors differ by more than the threshold.
+     * Scenes with a super-samp-width of 1 are unaffected.
+     * @param adaptiveSupersampling whether to refine only the pixels that need it
+     */
+    public void setAdaptiveSupersampling(boolean adaptiveSupersampling) {
+        this.adaptiveSupersampling = adaptiveSupersampling;
+    }
+
+    /**
+     * @return the largest difference in any color channel between coarse samples that leaves a pixel unrefined
+     */
+    public double getSupersamplingThreshold() {
+        return supersamplingThreshold;
+    }
+
+    public void setSupersamplingThreshold(double supersamplingThreshold) {
+        if(supersamplingThreshold < 0 || Double.isNaN(supersamplingThreshold)) {
+            throw new IllegalArgumentException("Supersampling threshold must not be negative");
+        }
+        this.supersamplingThreshold = supersamplingThreshold;
+    }
+
+    /**
+     * @return the most shadow rays traced towards each area light from a point being shaded, or 0 to use the
+     * grid-width of each light from the scene
+     */
+    public int getShadowRayBudget() {
+        return shadowRayBudget;
+    }
+
+    /**
+     * Area lights are sampled on a square grid with a random point in each cell, so the largest square grid
+     * within the budget is used, eg: a budget of 10 gives 3x3 samples. Fewer samples give noisier soft shadows.
+     * @param shadowRayBudget rays per area light, or 0 to use the grid-width of each light
+     */
+    public void setShadowRayBudget(int shadowRayBudget) {
+        if(shadowRayBudget < 0) {
+            throw new IllegalArgumentException("Shadow ray budget must not be negative");
+        }
+        this.shadowRayBudget = shadowRayBudget;
+    }
+
+    /**
+     * @return the smallest share of a pixel a reflection can contribute and still be traced
+     */
+    public double getPathWeightThreshold() {
+        return pathWeightThreshold;
+    }
+
+    /**
+     * A reflection contributes the product of the reflectances along its path to the pixel, so after a few bounces
+     * off dull surfaces it can't change the pixel. Reflections of surfaces with no reflectance are never traced.
+     * @param pathWeightThreshold the weight below which reflections aren't traced, 0 traces every reflection
+     */
+    public void setPathWeightThreshold(double pathWeightThreshold) {
+        if(pathWeightThreshold < 0 || pathWeightThreshold >= 1 || Double.isNaN(pathWeightThreshold)) {
+            throw new IllegalArgumentException("Path weight threshold must be from 0 up to 1");
+        }
+        this.pathWeightThreshold = pathWeightThreshold;
+    }
+
+    /**
+     * @return the recursion depth from which reflections are randomly dropped, or 0 if they never are
+     */
+    public int getRussianRouletteDepth() {
+        return russianRouletteDepth;
+    }
+
+    /**
+     * From this depth each reflection is only traced with a probability of its path weight, and those that are
+     * traced count for more to make up for the rest. The image is as bright on average but noisier, and deep
+     * reflections between mirrors cost far less.
+     * @param russianRouletteDepth depth from 1 to the max recursion depth, or 0 to turn it off
+     */
+    public void setRussianRouletteDepth(int russianRouletteDepth) {
+        if(russianRouletteDepth < 0 || russianRouletteDepth > RayTracer.MAX_REFLECTION_RECURSION_DEPTH) {
+            throw new IllegalArgumentException("Russian roulette depth needs to be from 0 to " + RayTracer.MAX_REFLECTION_RECURSION_DEPTH);
+        }
+        this.russianRouletteDepth = russianRouletteDepth;
+    }
+
+    public Integrator getIntegrator() {
+        return integrator;
+    }
+
+    public void setIntegrator(Integrator integrator) {
+        if(integrator == null) {
+            throw new IllegalArgumentException("Integrator must not be null");
+        }
+        this.integrator = integrator;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("RenderOptions{");
+        sb.append("maxRecursionDepth=").append(maxRecursionDepth);
+        sb.append(", tileSize=").append(tileSize);
+        sb.append(", parallelism=").append(parallelism);
+        sb.append(", pool=").append(pool);
+        sb.append(", adaptiveSupersampling=").append(adaptiveSupersampling);
+        sb.append(", supersamplingThreshold=").append(supersamplingThreshold);
+        sb.append(", shadowRayBudget=").append(shadowRayBudget);
+        sb.append(", pathWeightThreshold=").append(pathWeightThreshold);
+        sb.append(", russianRouletteDepth=").append(russianRouletteDepth);
+        sb.append(", integrator=").append(integrator);
+        sb.append('}');
+        return sb.toString();
+    }
+}
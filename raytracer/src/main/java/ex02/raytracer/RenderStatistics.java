@@ -0,0 +1,105 @@
+package ex02.raytracer;
+
+/**
+ * Counts of the work done by the most recent render of a {@link RayTracer}.
+ */
+public final class RenderStatistics {
+
+    private final long pixels;
+    private final long samples;
+    private final long refinedPixels;
+    private final long extraSamples;
+    private final long shadowRays;
+    private final long reflectionRays;
+    private final long occluderCacheLookups;
+    private final long occluderCacheHits;
+
+    RenderStatistics(final long pixels, final long samples, final long refinedPixels, final long extraSamples,
+                     final long shadowRays, final long reflectionRays, final long occluderCacheLookups,
+                     final long occluderCacheHits) {
+        this.pixels = pixels;
+        this.samples = samples;
+        this.refinedPixels = refinedPixels;
+        this.extraSamples = extraSamples;
+        this.shadowRays = shadowRays;
+        this.reflectionRays = reflectionRays;
+        this.occluderCacheLookups = occluderCacheLookups;
+        this.occluderCacheHits = occluderCacheHits;
+    }
+
+    public long getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return the number of rays traced from the camera, not counting shadow or reflection rays
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the number of pixels that adaptive supersampling refined beyond the coarse samples
+     */
+    public long getRefinedPixels() {
+        return refinedPixels;
+    }
+
+    /**
+     * @return the number of samples adaptive supersampling spent refining pixels
+     */
+    public long getExtraSamples() {
+        return extraSamples;
+    }
+
+    /**
+     * @return the number of rays traced towards lights to find out whether they are blocked
+     */
+    public long getShadowRays() {
+        return shadowRays;
+    }
+
+    /**
+     * @return the number of reflection rays traced, at every depth of recursion
+     */
+    public long getReflectionRays() {
+        return reflectionRays;
+    }
+
+    /**
+     * @return the number of shadow rays first tested against the primitive that last blocked the same light
+     */
+    public long getOccluderCacheLookups() {
+        return occluderCacheLookups;
+    }
+
+    /**
+     * @return the number of shadow rays found to be blocked by the primitive that last blocked the same light,
+     * without searching the rest of the scene
+     */
+    public long getOccluderCacheHits() {
+        return occluderCacheHits;
+    }
+
+    /**
+     * @return the fraction of occluder cache lookups that were hits, or 0 if there were no lookups
+     */
+    public double getOccluderCacheHitRate() {
+        return occluderCacheLookups == 0 ? 0 : (double) occluderCacheHits / occluderCacheLookups;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("RenderStatistics{");
+        sb.append("pixels=").append(pixels);
+        sb.append(", samples=").append(samples);
+        sb.append(", refinedPixels=").append(refinedPixels);
+        sb.append(", extraSamples=").append(extraSamples);
+        sb.append(", shadowRays=").append(shadowRays);
+        sb.append(", reflectionRays=").append(reflectionRays);
+        sb.append(", occluderCacheLookups=").append(occluderCacheLookups);
+        sb.append(", occluderCacheHits=").append(occluderCacheHits);
+        sb.append('}');
+        return sb.toString();
+    }
+}
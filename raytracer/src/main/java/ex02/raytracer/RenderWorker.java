@@ -0,0 +1,282 @@
+package ex02.raytracer;
+
+import ex02.entities.TextureCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Renders tiles for {@link RenderCoordinator}s that connect to it over TCP. Each connection brings its own scene,
+ * which is loaded once and then used for every tile and frame the coordinator sends, until it disconnects. The
+ * tiles of every connection are rendered on one pool, while each has a texture cache of its own so that nothing
+ * keeps its scene once it has gone.
+ * <p>
+ * Coordinators aren't authenticated, so a worker only listens on the loopback address unless it is given another,
+ * which should be on a network where anything that can connect is trusted.
+ * <pre>
+ * java ex02.raytracer.RenderWorker [--bind 127.0.0.1] [--port 7070] [--threads n]
+ * </pre>
+ */
+public class RenderWorker implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RenderWorker.class);
+
+    public static final int DEFAULT_PORT = 7070;
+
+    // the largest array the JVM will allocate, which is also as large as a compiled scene can be
+    private static final int MAX_SCENE_BYTES = Integer.MAX_VALUE - 8;
+
+    private final ServerSocket server;
+    private final ForkJoinPool pool;
+    private final int threads;
+    private volatile Consumer<CompiledScene> sceneListener = scene -> {};
+
+    /**
+     * Listens on the loopback address, so only coordinators on the same host can connect.
+     * @param port the port to listen on, or 0 for any free port
+     * @param threads the number of tiles rendered at once
+     * @throws IOException if the port can't be listened on
+     */
+    public RenderWorker(final int port, final int threads) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, threads);
+    }
+
+    /**
+     * @param bindAddress the address to listen on, or null for every address of the host
+     * @param port the port to listen on, or 0 for any free port
+     * @param threads the number of tiles rendered at once
+     * @throws IOException if the port can't be listened on
+     */
+    public RenderWorker(final InetAddress bindAddress, final int port, final int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A worker needs at least one thread");
+        }
+        this.server = new ServerSocket(port, 0, bindAddress);
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts connections on a background thread, returning straight away.
+     */
+    public void start() {
+        final Thread thread = new Thread(this::serve, "render-worker-" + getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Accepts connections until the worker is closed, serving each one on a thread of its own.
+     */
+    public void serve() {
+        log.info("Rendering tiles on {} threads for coordinators connecting to {}", threads, server.getLocalSocketAddress());
+        while (!server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                final Thread thread = new Thread(new Session(socket), "render-session-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (final IOException e) {
+                if (!server.isClosed()) {
+                    log.warn("Unable to accept a connection", e);
+                }
+            }
+        }
+    }
+
+    // Called with each scene as it is loaded, for tests
+    void setSceneListener(final Consumer<CompiledScene> sceneListener) {
+        this.sceneListener = sceneListener;
+    }
+
+    /**
+     * Stops accepting connections and rendering. Connections that are open are dropped as their tiles fail.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        pool.shutdownNow();
+    }
+
+    // One coordinator's scene and the tiles it has sent that haven't been sent back yet
+    private class Session implements Runnable {
+
+        private final Socket socket;
+        private final TextureCache textureCache = new TextureCache(TextureCache.getShared().getMemoryBudget());
+        private DataOutputStream out;
+        private int rendering;
+
+        Session(final Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            final Object coordinator = socket.getRemoteSocketAddress();
+            try {
+                socket.setTcpNoDelay(true);
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                if (in.readInt() != TileProtocol.MAGIC || in.readInt() != TileProtocol.VERSION) {
+                    throw new IOException("Not a coordinator of the same version");
+                }
+                final RenderOptions options = TileProtocol.readOptions(in);
+                final byte[] sceneData = new byte[checkSceneLength(in.readInt())];
+                in.readFully(sceneData);
+
+                final long start = System.nanoTime();
+                final CompiledScene scene = CompiledScene.load(ByteBuffer.wrap(sceneData), textureCache);
+                sceneListener.accept(scene);
+                final RayTracerImpl tracer = new RayTracerImpl(scene.getScene(), options, scene.getHierarchy());
+                log.info("Loaded a scene of {} bytes from {} in {} milliseconds", String.format("%,d", sceneData.length),
+                        coordinator, String.format("%,.3f", (System.nanoTime() - start) / 1_000_000.0));
+
+                synchronized (this) {
+                    out.writeInt(TileProtocol.MAGIC);
+                    out.writeInt(threads);
+                    out.flush();
+                }
+
+                while (true) {
+                    final byte type = in.readByte();
+                    final int frame = in.readInt();
+                    if (type == TileProtocol.FRAME) {
+                        final int width = in.readInt();
+                        final int height = in.readInt();
+                        // tiles of the last frame that the coordinator gave up waiting for may still be rendering
+                        awaitIdle();
+                        tracer.setRenderSize(width, height);
+                    } else if (type == TileProtocol.TILE) {
+                        final Tile tile = TileProtocol.readTile(in);
+                        started();
+                        pool.execute(() -> render(tracer, frame, tile));
+                    } else {
+                        throw new IOException("Unexpected message " + type);
+                    }
+                }
+            } catch (final EOFException | SocketException e) {
+                log.info("Coordinator {} disconnected", coordinator);
+            } catch (final IOException | RuntimeException e) {
+                log.warn("Dropping coordinator {}", coordinator, e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeQuietly();
+                closeTextures();
+            }
+        }
+
+        // Drops the tiles of the scene's textures, which are read from the scene data that they would otherwise keep
+        private void closeTextures() {
+            try {
+                textureCache.close();
+            } catch (final IOException e) {
+                log.debug("Unable to close the texture cache", e);
+            }
+        }
+
+        // Checks the length before the scene is allocated, as it comes from whatever connected
+        private int checkSceneLength(final int length) throws IOException {
+            if (length < 0 || length > MAX_SCENE_BYTES) {
+                throw new IOException("Invalid scene length " + length);
+            }
+            final Runtime runtime = Runtime.getRuntime();
+            final long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+            if (length > available) {
+                throw new IOException(String.format("A scene of %,d bytes won't fit in the %,d bytes of heap left",
+                        length, available));
+            }
+            return length;
+        }
+
+        private void render(final RayTracerImpl tracer, final int frame, final Tile tile) {
+            try {
+                final RenderedTile rendered = tracer.renderTile(tile);
+                synchronized (this) {
+                    TileProtocol.writePixels(out, frame, tile.getIndex(), rendered.getPixels());
+                    out.flush();
+                }
+            } catch (final IOException | RuntimeException e) {
+                // the coordinator sends the tile to another worker once the connection is gone
+                if (!socket.isClosed()) {
+                    log.warn("Unable to render {}", tile, e);
+                    closeQuietly();
+                }
+            } finally {
+                finished();
+            }
+        }
+
+        private synchronized void started() {
+            rendering++;
+        }
+
+        private synchronized void finished() {
+            rendering--;
+            notifyAll();
+        }
+
+        private synchronized void awaitIdle() throws InterruptedException {
+            while (rendering > 0) {
+                wait();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                log.debug("Unable to close connection", e);
+            }
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("--bind".equals(args[i]) && i + 1 < args.length) {
+                    bindAddress = InetAddress.getByName(args[++i]);
+                } else if ("--port".equals(args[i]) && i + 1 < args.length) {
+                    port = Integer.parseInt(args[++i]);
+                } else if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                }
+            }
+        } catch (final IllegalArgumentException | UnknownHostException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: RenderWorker [--bind 127.0.0.1] [--port " + DEFAULT_PORT + "] [--threads n]");
+            System.exit(2);
+            return;
+        }
+
+        try (RenderWorker worker = new RenderWorker(bindAddress, port, threads)) {
+            worker.serve();
+        }
+    }
+}
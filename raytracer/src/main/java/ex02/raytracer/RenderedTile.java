@@ -0,0 +1,43 @@
+package ex02.raytracer;
+
+/**
+ * The pixels of one tile, as published by {@link RayTracer#renderTiles(int, int)}.
+ */
+public final class RenderedTile {
+
+    private final Tile tile;
+    private final FrameBuffer pixels;
+
+    RenderedTile(final Tile tile, final FrameBuffer pixels) {
+        this.tile = tile;
+        this.pixels = pixels;
+    }
+
+    public Tile getTile() {
+        return tile;
+    }
+
+    /**
+     * @return the pixels of the tile, with 0,0 being the top left corner of the tile
+     */
+    public FrameBuffer getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @param x horizontal position in the whole image
+     * @param y vertical position in the whole image
+     * @return the RGB value of the pixel
+     */
+    public double[] getPixel(int x, int y) {
+        return pixels.getPixel(x - tile.getX(), y - tile.getY());
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("RenderedTile{");
+        sb.append("tile=").append(tile);
+        sb.append('}');
+        return sb.toString();
+    }
+}
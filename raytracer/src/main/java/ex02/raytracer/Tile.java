@@ -0,0 +1,76 @@
+package ex02.raytracer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rectangular region of the rendered image, the unit of work handed to render threads.
+ */
+public final class Tile {
+
+    private final int index;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+
+    public Tile(int index, int x, int y, int width, int height) {
+        this.index = index;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Splits an image into tiles of tileSize x tileSize pixels, row by row. Tiles along the right and bottom
+     * edges are smaller when the image size isn't a multiple of the tile size.
+     * @param imageWidth width of the image in pixels
+     * @param imageHeight height of the image in pixels
+     * @param tileSize width and height of a tile in pixels
+     * @return the tiles which together cover the image
+     */
+    public static List<Tile> split(int imageWidth, int imageHeight, int tileSize) {
+        final List<Tile> tiles = new ArrayList<>();
+
+        for (int y = 0; y < imageHeight; y += tileSize) {
+            for (int x = 0; x < imageWidth; x += tileSize) {
+                tiles.add(new Tile(tiles.size(), x, y, Math.min(tileSize, imageWidth - x), Math.min(tileSize, imageHeight - y)));
+            }
+        }
+        return tiles;
+    }
+
+    // Position of the tile in the list returned by split()
+    public int getIndex() {
+        return index;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Tile{");
+        sb.append("index=").append(index);
+        sb.append(", x=").append(x);
+        sb.append(", y=").append(y);
+        sb.append(", width=").append(width);
+        sb.append(", height=").append(height);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package ex02.raytracer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The messages passed between a {@link RenderCoordinator} and its {@link RenderWorker}s over TCP.
+ * <p>
+ * The coordinator opens the connection with the magic number, the version, the render options and the compiled scene.
+ * The worker answers with the magic number and how many tiles it can render at once, after which the coordinator
+ * sends FRAME and TILE messages and the worker sends back a PIXELS message for each tile, in whatever order they
+ * finish. Each message starts with its type. Pixels are sent as floats so the image is the same as rendering it
+ * in one process.
+ */
+final class TileProtocol {
+
+    static final int MAGIC = 0x45583054; // "EX0T"
+    static final int VERSION = 1;
+
+    // coordinator to worker: frame number, width, height of the image the following tiles belong to
+    static final byte FRAME = 1;
+    // coordinator to worker: frame number, tile index, x, y, width, height
+    static final byte TILE = 2;
+    // worker to coordinator: frame number, tile index, width, height, then the RGB floats of the tile row by row
+    static final byte PIXELS = 3;
+
+    private TileProtocol() {}
+
+    /**
+     * Writes the options that change the image. The tile size, pool and parallelism are left to each side.
+     */
+    static void writeOptions(final DataOutput out, final RenderOptions options) throws IOException {
+        out.writeInt(options.getMaxRecursionDepth());
+        out.writeBoolean(options.isAdaptiveSupersampling());
+        out.writeDouble(options.getSupersamplingThreshold());
+        out.writeInt(options.getShadowRayBudget());
+        out.writeDouble(options.getPathWeightThreshold());
+        out.writeInt(options.getRussianRouletteDepth());
+        out.writeUTF(options.getIntegrator().name());
+    }
+
+    static RenderOptions readOptions(final DataInput in) throws IOException {
+        final RenderOptions options = new RenderOptions();
+        try {
+            options.setMaxRecursionDepth(in.readInt());
+            options.setAdaptiveSupersampling(in.readBoolean());
+            options.setSupersamplingThreshold(in.readDouble());
+            options.setShadowRayBudget(in.readInt());
+            options.setPathWeightThreshold(in.readDouble());
+            options.setRussianRouletteDepth(in.readInt());
+            options.setIntegrator(Integrator.valueOf(in.readUTF()));
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Invalid render options: " + e.getMessage(), e);
+        }
+        return options;
+    }
+
+    static void writeFrame(final DataOutput out, final int frame, final int width, final int height) throws IOException {
+        out.writeByte(FRAME);
+        out.writeInt(frame);
+        out.writeInt(width);
+        out.writeInt(height);
+    }
+
+    static void writeTile(final DataOutput out, final int frame, final Tile tile) throws IOException {
+        out.writeByte(TILE);
+        out.writeInt(frame);
+        out.writeInt(tile.getIndex());
+        out.writeInt(tile.getX());
+        out.writeInt(tile.getY());
+        out.writeInt(tile.getWidth());
+        out.writeInt(tile.getHeight());
+    }
+
+    // Reads the rest of a TILE message, after the type and frame number
+    static Tile readTile(final DataInput in) throws IOException {
+        return new Tile(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+
+    static void writePixels(final DataOutput out, final int frame, final int index, final FrameBuffer pixels)
+            throws IOException {
+        final float[] data = pixels.getData();
+        final ByteBuffer bytes = ByteBuffer.allocate(data.length * Float.BYTES);
+        bytes.asFloatBuffer().put(data);
+
+        out.writeByte(PIXELS);
+        out.writeInt(frame);
+        out.writeInt(index);
+        out.writeInt(pixels.getWidth());
+        out.writeInt(pixels.getHeight());
+        out.write(bytes.array());
+    }
+
+    // Reads the rest of a PIXELS message, after the type, frame number and tile index. The size is checked before
+    // the pixels are allocated, as no tile is bigger than the tile size either way.
+    static FrameBuffer readPixels(final DataInput in, final int tileSize) throws IOException {
+        final int width = in.readInt();
+        final int height = in.readInt();
+        if (width < 1 || height < 1 || width > tileSize || height > tileSize) {
+            throw new IOException("Invalid tile of " + width + "x" + height + " pixels");
+        }
+        final FrameBuffer pixels = new FrameBuffer(width, height);
+
+        final byte[] bytes = new byte[pixels.getData().length * Float.BYTES];
+        in.readFully(bytes);
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(pixels.getData());
+        return pixels;
+    }
+
+    static void expect(final DataInput in, final byte type) throws IOException {
+        final byte read = in.readByte();
+        if (read != type) {
+            throw new IOException("Expected message " + type + " but got " + read);
+        }
+    }
+}
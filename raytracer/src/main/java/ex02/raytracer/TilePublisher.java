@@ -0,0 +1,189 @@
+package ex02.raytracer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Publishes tiles as they finish rendering. Every subscriber gets its own render of the frame.
+ * <p>
+ * Backpressure is applied to the work itself rather than just to delivery: a tile is only started once the
+ * subscriber has requested it, so a slow consumer never has more finished tiles waiting than it asked for.
+ * Tiles are rendered in parallel up to the outstanding demand and may arrive in any order.
+ */
+class TilePublisher implements Flow.Publisher<RenderedTile> {
+
+    private final List<Tile> tiles;
+    private final Runnable setUp;
+    private final Function<Tile, RenderedTile> renderer;
+    private final ForkJoinPool sharedPool;
+    private final int parallelism;
+
+    /**
+     * @param tiles the tiles to render
+     * @param setUp run as each subscriber subscribes, before any of its tiles are started
+     * @param renderer renders a single tile, called concurrently from pool threads
+     * @param sharedPool pool to render on, or null to create one per subscriber with the given parallelism
+     * @param parallelism number of threads when no pool is given
+     */
+    TilePublisher(final List<Tile> tiles, final Runnable setUp, final Function<Tile, RenderedTile> renderer,
+                  @Nullable final ForkJoinPool sharedPool, final int parallelism) {
+        this.tiles = tiles;
+        this.setUp = setUp;
+        this.renderer = renderer;
+        this.sharedPool = sharedPool;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void subscribe(@NotNull final Flow.Subscriber<? super RenderedTile> subscriber) {
+        setUp.run();
+
+        final boolean ownPool = sharedPool == null;
+        final TileSubscription subscription = new TileSubscription(subscriber,
+                ownPool ? new ForkJoinPool(parallelism) : sharedPool, ownPool);
+
+        // onSubscribe may request tiles, which can finish before it returns, so it holds the drain guard to keep
+        // onNext from being called until it has
+        subscription.drainers.incrementAndGet();
+        subscriber.onSubscribe(subscription);
+        subscription.drainHeld();
+    }
+
+    private final class TileSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super RenderedTile> subscriber;
+        private final ForkJoinPool pool;
+        private final boolean ownPool;
+
+        private final AtomicLong requested = new AtomicLong();     // total demand, capped at Long.MAX_VALUE
+        private final AtomicInteger started = new AtomicInteger(); // tiles handed to the pool so far
+        private final Queue<RenderedTile> finished = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger drainers = new AtomicInteger();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Throwable error;
+        private int emitted; // only touched by the thread that is draining
+
+        TileSubscription(final Flow.Subscriber<? super RenderedTile> subscriber, final ForkJoinPool pool, final boolean ownPool) {
+            this.subscriber = subscriber;
+            this.pool = pool;
+            this.ownPool = ownPool;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Subscribers must request a positive number of tiles, not " + n));
+                return;
+            }
+
+            requested.accumulateAndGet(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            startTiles();
+        }
+
+        @Override
+        public void cancel() {
+            finish();
+        }
+
+        // Hand the pool as many tiles as have been requested but not yet started
+        private void startTiles() {
+            while (!done.get()) {
+                final int next = started.get();
+
+                if (next >= tiles.size() || next >= requested.get()) {
+                    return;
+                }
+
+                if (started.compareAndSet(next, next + 1)) {
+                    try {
+                        pool.execute(() -> renderTile(tiles.get(next)));
+                    } catch (final RejectedExecutionException e) {
+                        // unless the subscription finished and shut its own pool down while we were starting tiles,
+                        // the tile will never be rendered, eg: a shared pool that has been shut down
+                        if (!done.get()) {
+                            fail(e);
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void renderTile(final Tile tile) {
+            if (done.get()) {
+                return;
+            }
+
+            try {
+                finished.offer(renderer.apply(tile));
+            } catch (final Throwable e) {
+                fail(e);
+                return;
+            }
+            drain();
+        }
+
+        private void fail(final Throwable e) {
+            if (error == null) {
+                error = e;
+            }
+            drain();
+        }
+
+        // Delivers finished tiles one thread at a time, as onNext calls must not overlap
+        private void drain() {
+            if (drainers.getAndIncrement() != 0) {
+                return; // whoever is draining will loop round and pick up our work
+            }
+            drainHeld();
+        }
+
+        // Drains on behalf of a caller that has already taken the guard, releasing it once nothing is left
+        void drainHeld() {
+            int missed = 1;
+            do {
+                if (done.get()) {
+                    finished.clear();
+                } else if (error != null) {
+                    if (finish()) {
+                        subscriber.onError(error);
+                    }
+                } else {
+                    RenderedTile tile;
+                    while (!done.get() && (tile = finished.poll()) != null) {
+                        emitted++;
+                        subscriber.onNext(tile);
+                    }
+
+                    if (emitted == tiles.size() && finish()) {
+                        subscriber.onComplete();
+                    }
+                }
+
+                missed = drainers.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        // Stops the subscription, returning true for the call that actually stopped it
+        private boolean finish() {
+            if (done.compareAndSet(false, true)) {
+                if (ownPool) {
+                    pool.shutdown();
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ex02.raytracer;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Renders a range of tiles on a ForkJoinPool. The range is split in half until a single tile is left, so idle
+ * workers can steal the larger halves still queued by busy ones and expensive tiles don't hold up the frame.
+ */
+class TileTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Tile> tiles;
+    private final int start;
+    private final int end;
+    private final Consumer<Tile> renderer;
+
+    TileTask(final List<Tile> tiles, final Consumer<Tile> renderer) {
+        this(tiles, 0, tiles.size(), renderer);
+    }
+
+    private TileTask(final List<Tile> tiles, int start, int end, final Consumer<Tile> renderer) {
+        this.tiles = tiles;
+        this.start = start;
+        this.end = end;
+        this.renderer = renderer;
+    }
+
+    @Override
+    protected void compute() {
+        if (end - start == 1) {
+            renderer.accept(tiles.get(start));
+        } else if (end - start > 1) {
+            final int mid = (start + end) >>> 1;
+            invokeAll(new TileTask(tiles, start, mid, renderer), new TileTask(tiles, mid, end, renderer));
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package ex02.raytracer;
+
+import ex02.blas.MathUtils;
+import ex02.entities.Intersection;
+import ex02.entities.Ray;
+import ex02.entities.Scene;
+import ex02.entities.Surface;
+import ex02.entities.lights.Light;
+import ex02.entities.primitives.Primitive;
+import ex02.raytracer.accel.RayPacket;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Renders a tile breadth first rather than one sample at a time. Every camera ray of the tile is generated, then all
+ * of them are intersected, then all the hits are shaded, which queues the shadow rays and reflections. The shadow
+ * rays are traced together, and the reflections become the rays of the next pass. Each stage is a short loop over
+ * flat arrays, so the JIT compiles each one on its own and the rays it works on sit next to each other in memory.
+ * <p>
+ * Camera, reflection and shadow rays are traced through the hierarchy in packets of neighbouring rays, see
+ * {@link RayPacket}.
+ * <p>
+ * The color of a sample is the sum of what each hit along its path contributes, scaled by the reflectances
+ * before it, which gives the same image as {@link RayTracerImpl#getColor} without recursing.
+ */
+final class WavefrontIntegrator {
+
+    private final RayTracerImpl tracer;
+    private final Scene scene;
+    private final LightSampler lightSampler;
+    private final int maxRecursionDepth;
+    private final double pathWeightThreshold;
+    private final int rouletteDepth;
+
+    WavefrontIntegrator(final RayTracerImpl tracer, final Scene scene, final RenderOptions options) {
+        this.tracer = tracer;
+        this.scene = scene;
+        this.lightSampler = new LightSampler(options);
+        this.maxRecursionDepth = options.getMaxRecursionDepth();
+        this.pathWeightThreshold = options.getPathWeightThreshold();
+        this.rouletteDepth = options.getRussianRouletteDepth();
+    }
+
+    // Renders the tile into pixels, whose top left corner is at originX, originY of the image
+    void renderTile(final Tile tile, final FrameBuffer pixels, final int originX, final int originY) {
+        final int superSampleWidth = scene.getSuperSampleWidth();
+        final int samplesPerPixel = superSampleWidth * superSampleWidth;
+        final Wavefront wavefront = new Wavefront(tile.getWidth() * tile.getHeight() * samplesPerPixel,
+                scene.getLights().size());
+
+        generate(tile, superSampleWidth, wavefront);
+
+        long reflectionRays = 0;
+        for (int depth = 1; wavefront.rays.size > 0; depth++) {
+            intersect(wavefront);
+            shade(depth, wavefront);
+            traceShadowRays(wavefront);
+
+            wavefront.nextDepth();
+            reflectionRays += wavefront.rays.size;
+        }
+
+        resolve(tile, samplesPerPixel, pixels, originX, originY, wavefront);
+
+        tracer.addStatistics((long) tile.getWidth() * tile.getHeight(), wavefront.samples.length, 0, 0,
+                wavefront.shadowRayCount, reflectionRays, wavefront.occluders);
+    }
+
+    // Queues a camera ray for every sample of every pixel, sample s of the tile being at s * 3 of the color sums
+    private void generate(final Tile tile, final int superSampleWidth, final Wavefront wavefront) {
+        final Ray ray = wavefront.ray;
+        int sample = 0;
+
+        for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++) {
+            for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+                for (int k = 0; k < superSampleWidth; k++) {
+                    for (int l = 0; l < superSampleWidth; l++) {
+                        tracer.constructRayThroughPixel(x, y, k, l, ray, wavefront.point);
+                        wavefront.rays.add(ray.getPosition(), ray.getDirection(), 1, 1, 0, sample++);
+                    }
+                }
+            }
+        }
+    }
+
+    // Neighbouring rays of the queue come from the samples of one pixel or from neighbouring pixels, so they are
+    // traced as packets
+    private void intersect(final Wavefront wavefront) {
+        final RayQueue rays = wavefront.rays;
+        final RayPacket packet = wavefront.packet;
+        wavefront.ensureIntersectionCapacity(rays.size);
+
+        for (int first = 0; first < rays.size; first += RayPacket.WIDTH) {
+            final int count = Math.min(RayPacket.WIDTH, rays.size - first);
+
+            packet.clear();
+            for (int lane = 0; lane < count; lane++) {
+                rays.load(first + lane, wavefront.packetRays[lane]);
+                packet.add(wavefront.packetRays[lane]);
+            }
+
+            tracer.findIntersections(packet, wavefront.packetIntersections);
+            System.arraycopy(wavefront.packetIntersections, 0, wavefront.intersections, first, count);
+        }
+    }
+
+    // Adds what every hit contributes without shadows, queueing a shadow ray for each light that could add more
+    // and a ray for each reflection worth tracing
+    private void shade(final int depth, final Wavefront wavefront) {
+        final RayQueue rays = wavefront.rays;
+        final Ray ray = wavefront.ray;
+        final double[] point = wavefront.point;
+        final double[] colors = wavefront.colors;
+
+        for (int i = 0; i < rays.size; i++) {
+            final Intersection intersection = wavefront.intersections[i];
+            final Primitive primitive = intersection.getPrimitive();
+            final int sample = rays.samples[i];
+            final double weight = rays.weights[i];
+
+            if (primitive == null) {
+                // camera rays that miss are left out of the average, reflections that miss show the background
+                if (depth > 1) {
+                    addScaled(colors, sample, scene.getBackgroundColor(), weight);
+                }
+                continue;
+            }
+
+            if (depth == 1) {
+                wavefront.samples[sample] = true;
+            }
+
+            final Surface surface = primitive.getSurface();
+
+            rays.load(i, ray);
+            ray.getPointAt(intersection.getDistance(), point);
+
+            final double pathLength = rays.pathLengths[i] + intersection.getDistance();
+            final double[] diffuse = intersection.getColorAt(point, pathLength * tracer.getTextureSpread(),
+                    wavefront.textureColor);
+            final double[] normal = intersection.getNormal(point);
+
+            final List<Light> lights = scene.getLights();
+            for (int lightIndex = 0; lightIndex < lights.size(); lightIndex++) {
+                final Light light = lights.get(lightIndex);
+                final int lightSamples = lightSampler.getSampleCount(light);
+
+                for (int s = 0; s < lightSamples; s++) {
+                    final double distanceToLight = lightSampler.sample(light, s, point, wavefront.lightPoint,
+                            wavefront.vectorToLight, wavefront.amountOfLight);
+
+                    final double[] contribution = wavefront.contribution;
+                    Arrays.fill(contribution, 0);
+                    RayTracerImpl.addLight(contribution, wavefront.amountOfLight, wavefront.vectorToLight, ray.getDirection(),
+                            normal, diffuse, surface, wavefront.reflectedVectorToLight);
+
+                    // a light behind the surface and outside the highlight can't add anything, blocked or not
+                    if (contribution[0] != 0 || contribution[1] != 0 || contribution[2] != 0) {
+                        MathUtils.multiplyVectorByScalar(contribution, weight);
+                        wavefront.shadowRays.add(point, wavefront.vectorToLight, distanceToLight, contribution, sample,
+                                lightIndex);
+                    }
+                }
+            }
+
+            // Ambient and emission
+            final double[] sceneAmbient = scene.getAmbientLight();
+            final double[] surfaceAmbient = surface.getAmbient();
+            final double[] surfaceEmission = surface.getEmission();
+
+            colors[sample * 3] += weight * (sceneAmbient[0] * surfaceAmbient[0] + surfaceEmission[0]);
+            colors[sample * 3 + 1] += weight * (sceneAmbient[1] * surfaceAmbient[1] + surfaceEmission[1]);
+            colors[sample * 3 + 2] += weight * (sceneAmbient[2] * surfaceAmbient[2] + surfaceEmission[2]);
+
+            queueReflection(depth, ray, normal, surface, rays.pathWeights[i], weight, pathLength, sample, wavefront);
+        }
+    }
+
+    // Mirrors the checks of RayTracerImpl.getColor so that both integrators trace the same reflections
+    private void queueReflection(final int depth, final Ray ray, final double[] normal, final Surface surface,
+                                 final double pathWeight, final double weight, final double pathLength, final int sample,
+                                 final Wavefront wavefront) {
+        double reflectance = surface.getReflectance();
+        double reflectionWeight = pathWeight * reflectance;
+
+        if (reflectance == 0 || depth == maxRecursionDepth || reflectionWeight < pathWeightThreshold) {
+            return;
+        }
+
+        if (rouletteDepth > 0 && depth >= rouletteDepth && reflectionWeight < 1) {
+            if (LightSampler.random(wavefront.point, -depth) >= reflectionWeight) {
+                return;
+            }
+            reflectance /= reflectionWeight;
+            reflectionWeight = 1;
+        }
+
+        final double[] reflectionDirection = MathUtils.reflectVector(
+                MathUtils.oppositeVector(ray.getDirection(), wavefront.oppositeDirection), normal, wavefront.reflectionDirection);
+        MathUtils.normalize(reflectionDirection);
+
+        wavefront.reflections.add(wavefront.point, reflectionDirection, weight * reflectance, reflectionWeight, pathLength,
+                sample);
+    }
+
+    // Shadow rays are queued light by light for each hit, and neighbouring hits are close together, so they are
+    // traced as packets too. Rays blocked by whatever last blocked their light are left out of the packets.
+    private void traceShadowRays(final Wavefront wavefront) {
+        final ShadowRayQueue shadowRays = wavefront.shadowRays;
+        final RayPacket packet = wavefront.packet;
+        packet.clear();
+
+        for (int i = 0; i < shadowRays.size; i++) {
+            final Ray ray = wavefront.packetRays[packet.size()];
+            shadowRays.load(i, ray);
+            ray.normalize();
+
+            if (wavefront.occluders.isBlocked(shadowRays.lights[i], ray, shadowRays.distances[i])) {
+                continue;
+            }
+
+            wavefront.packetShadowRays[packet.add(ray, shadowRays.distances[i])] = i;
+            if (packet.isFull()) {
+                traceShadowPacket(wavefront);
+            }
+        }
+
+        if (packet.size() > 0) {
+            traceShadowPacket(wavefront);
+        }
+
+        wavefront.shadowRayCount += shadowRays.size;
+        shadowRays.size = 0;
+    }
+
+    private void traceShadowPacket(final Wavefront wavefront) {
+        final ShadowRayQueue shadowRays = wavefront.shadowRays;
+        final RayPacket packet = wavefront.packet;
+        final Primitive[] occluders = wavefront.packetOccluders;
+
+        tracer.findOccluded(packet, occluders);
+
+        for (int lane = 0; lane < packet.size(); lane++) {
+            final int i = wavefront.packetShadowRays[lane];
+            wavefront.occluders.update(shadowRays.lights[i], occluders[lane]);
+
+            if (occluders[lane] == null) {
+                final int sample = shadowRays.samples[i];
+                wavefront.colors[sample * 3] += shadowRays.contributions[i * 3];
+                wavefront.colors[sample * 3 + 1] += shadowRays.contributions[i * 3 + 1];
+                wavefront.colors[sample * 3 + 2] += shadowRays.contributions[i * 3 + 2];
+            }
+        }
+
+        packet.clear();
+    }
+
+    // Averages the samples of each pixel, as RayTracerImpl does for its samples
+    private void resolve(final Tile tile, final int samplesPerPixel, final FrameBuffer pixels, final int originX,
+                         final int originY, final Wavefront wavefront) {
+        final double[] color = new double[3];
+        int sample = 0;
+
+        for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++) {
+            for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+                int hits = 0;
+                Arrays.fill(color, 0);
+
+                for (int i = 0; i < samplesPerPixel; i++, sample++) {
+                    if (wavefront.samples[sample]) {
+                        hits++;
+                        color[0] += wavefront.colors[sample * 3];
+                        color[1] += wavefront.colors[sample * 3 + 1];
+                        color[2] += wavefront.colors[sample * 3 + 2];
+                    }
+                }
+
+                pixels.setPixel(x - originX, y - originY, tracer.finishPixelColor(x, y, color, hits));
+            }
+        }
+    }
+
+    private static void addScaled(final double[] colors, final int sample, final double[] color, final double scale) {
+        colors[sample * 3] += color[0] * scale;
+        colors[sample * 3 + 1] += color[1] * scale;
+        colors[sample * 3 + 2] += color[2] * scale;
+    }
+
+    /**
+     * Everything one tile needs while it is rendered: the color of each sample, the queues of rays and the working
+     * storage of the stages.
+     */
+    private static final class Wavefront {
+
+        final double[] colors;
+        // whether each sample's camera ray hit anything, samples that didn't aren't averaged
+        final boolean[] samples;
+
+        RayQueue rays;
+        RayQueue reflections;
+        final ShadowRayQueue shadowRays;
+        Intersection[] intersections;
+        long shadowRayCount;
+
+        final Ray ray = new Ray(new double[3], new double[3], 1);
+        final RayPacket packet = new RayPacket();
+        final Ray[] packetRays = new Ray[RayPacket.WIDTH];
+        final Intersection[] packetIntersections = new Intersection[RayPacket.WIDTH];
+        final Primitive[] packetOccluders = new Primitive[RayPacket.WIDTH];
+        // the shadow ray traced in each lane
+        final int[] packetShadowRays = new int[RayPacket.WIDTH];
+        final OccluderCache occluders;
+        final double[] point = new double[3];
+        final double[] lightPoint = new double[3];
+        final double[] vectorToLight = new double[3];
+        final double[] amountOfLight = new double[3];
+        final double[] contribution = new double[3];
+        final double[] reflectedVectorToLight = new double[3];
+        final double[] oppositeDirection = new double[3];
+        final double[] reflectionDirection = new double[3];
+        final double[] textureColor = new double[3];
+
+        Wavefront(final int sampleCount, final int lights) {
+            this.colors = new double[sampleCount * 3];
+            this.samples = new boolean[sampleCount];
+            this.rays = new RayQueue(sampleCount);
+            this.reflections = new RayQueue(sampleCount);
+            this.shadowRays = new ShadowRayQueue(sampleCount);
+            this.intersections = new Intersection[sampleCount];
+            this.occluders = new OccluderCache(lights);
+
+            for (int i = 0; i < packetRays.length; i++) {
+                packetRays[i] = new Ray(new double[3], new double[3], 1);
+            }
+        }
+
+        void ensureIntersectionCapacity(final int size) {
+            if (intersections.length < size) {
+                intersections = new Intersection[size];
+            }
+        }
+
+        // The reflections queued while shading are traced next
+        void nextDepth() {
+            final RayQueue traced = rays;
+            rays = reflections;
+            reflections = traced;
+            reflections.size = 0;
+        }
+    }
+
+    /**
+     * Rays packed into flat arrays, 3 values per ray for the vectors. Weight scales what the ray contributes to its
+     * sample, path weight is what the reflection checks compare, which differs once Russian roulette has scaled it.
+     * Path length is how far the ray had travelled from the eye when it set off, which textures are filtered by.
+     */
+    private static final class RayQueue {
+
+        double[] positions;
+        double[] directions;
+        double[] weights;
+        double[] pathWeights;
+        double[] pathLengths;
+        int[] samples;
+        int size;
+
+        RayQueue(final int capacity) {
+            this.positions = new double[capacity * 3];
+            this.directions = new double[capacity * 3];
+            this.weights = new double[capacity];
+            this.pathWeights = new double[capacity];
+            this.pathLengths = new double[capacity];
+            this.samples = new int[capacity];
+        }
+
+        void add(final double[] position, final double[] direction, final double weight, final double pathWeight,
+                 final double pathLength, final int sample) {
+            if (size == samples.length) {
+                final int capacity = Math.max(16, size * 2);
+                positions = Arrays.copyOf(positions, capacity * 3);
+                directions = Arrays.copyOf(directions, capacity * 3);
+                weights = Arrays.copyOf(weights, capacity);
+                pathWeights = Arrays.copyOf(pathWeights, capacity);
+                pathLengths = Arrays.copyOf(pathLengths, capacity);
+                samples = Arrays.copyOf(samples, capacity);
+            }
+
+            System.arraycopy(position, 0, positions, size * 3, 3);
+            System.arraycopy(direction, 0, directions, size * 3, 3);
+            weights[size] = weight;
+            pathWeights[size] = pathWeight;
+            pathLengths[size] = pathLength;
+            samples[size] = sample;
+            size++;
+        }
+
+        void load(final int index, final Ray ray) {
+            System.arraycopy(positions, index * 3, ray.getPosition(), 0, 3);
+            System.arraycopy(directions, index * 3, ray.getDirection(), 0, 3);
+            ray.setMagnitude(1);
+        }
+    }
+
+    /**
+     * Shadow rays packed into flat arrays, each with the color it adds to its sample if nothing blocks it and the
+     * index of the light it is traced towards.
+     */
+    private static final class ShadowRayQueue {
+
+        double[] positions;
+        double[] directions;
+        double[] distances;
+        double[] contributions;
+        int[] samples;
+        int[] lights;
+        int size;
+
+        ShadowRayQueue(final int capacity) {
+            this.positions = new double[capacity * 3];
+            this.directions = new double[capacity * 3];
+            this.distances = new double[capacity];
+            this.contributions = new double[capacity * 3];
+            this.samples = new int[capacity];
+            this.lights = new int[capacity];
+        }
+
+        void add(final double[] position, final double[] direction, final double distance, final double[] contribution,
+                 final int sample, final int light) {
+            if (size == samples.length) {
+                final int capacity = Math.max(16, size * 2);
+                positions = Arrays.copyOf(positions, capacity * 3);
+                directions = Arrays.copyOf(directions, capacity * 3);
+                distances = Arrays.copyOf(distances, capacity);
+                contributions = Arrays.copyOf(contributions, capacity * 3);
+                samples = Arrays.copyOf(samples, capacity);
+                lights = Arrays.copyOf(lights, capacity);
+            }
+
+            System.arraycopy(position, 0, positions, size * 3, 3);
+            System.arraycopy(direction, 0, directions, size * 3, 3);
+            distances[size] = distance;
+            System.arraycopy(contribution, 0, contributions, size * 3, 3);
+            samples[size] = sample;
+            lights[size] = light;
+            size++;
+        }
+
+        void load(final int index, final Ray ray) {
+            System.arraycopy(positions, index * 3, ray.getPosition(), 0, 3);
+            System.arraycopy(directions, index * 3, ray.getDirection(), 0, 3);
+            ray.setMagnitude(1);
+        }
+    }
+}
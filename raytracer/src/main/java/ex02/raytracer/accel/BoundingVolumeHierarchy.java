@@ -0,0 +1,767 @@
+package ex02.raytracer.accel;
+
+import ex02.blas.BoundingBox;
+import ex02.entities.Intersection;
+import ex02.entities.Ray;
+import ex02.entities.primitives.Primitive;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounding volume hierarchy over the primitives of a scene, built top-down using the surface area heuristic (SAH).
+ * The tree is flattened into primitive arrays in depth first order so the left child of an interior node is always
+ * the next node and only the index of the right child needs to be stored.
+ * <p>
+ * Closest-hit queries return exactly what a linear scan over the primitives would: the nearest intersection further
+ * than the given epsilon, with ties going to the primitive that comes first in the scene.
+ * <p>
+ * Spheres are also packed into a {@link SphereSet} in the same order, so the spheres in a leaf are tested together
+ * straight from primitive arrays.
+ * <p>
+ * Coherent rays can also be traced as a {@link RayPacket}, which tests each node and sphere against all of its rays at
+ * once. Rays that leave the rest of the packet behind, by being the only one to enter a subtree, carry on through
+ * that subtree on their own.
+ */
+public class BoundingVolumeHierarchy {
+
+    // Number of buckets the centroids are binned into when evaluating split candidates
+    private static final int SAH_BINS = 16;
+
+    // Relative cost of visiting a node compared with intersecting a primitive
+    private static final double TRAVERSAL_COST = 0.5;
+
+    private static final int MAX_PRIMITIVES_IN_LEAF = 4;
+
+    // Leaf boxes are grown slightly so that rounding can't make a ray miss a flat primitive such as a rectangle
+    private static final double BOUNDS_PADDING = 1e-7;
+
+    // Allows for rounding in the slab test, see Pharr, Jakob & Humphreys: Physically Based Rendering, 3.9.2
+    static final double SLAB_TOLERANCE = 1 + 2 * (3 * Math.ulp(1.0) / 2);
+
+    private final Primitive[] primitives;     // primitives in leaf order
+    private final int[] sceneIndex;           // position of each primitive in the scene, used to break ties
+    private final SphereSet spheres;          // spheres in leaf order
+    private final PacketKernel packetKernel;
+
+    private double[] nodeBounds;              // min x, y, z then max x, y, z for every node
+    private int[] nodeOffset;                 // first primitive for leaves, right child for interior nodes
+    private int[] nodeCount;                  // number of primitives for leaves, 0 for interior nodes
+    private int[] nodeAxis;                   // split axis for interior nodes
+    private int nodes;
+    private int depth;
+    private int maxLeafSize;
+
+    // Traversal stack and sphere distances, one set per thread so that queries don't allocate
+    private final ThreadLocal<Traversal> traversals = ThreadLocal.withInitial(() -> new Traversal(depth, maxLeafSize));
+
+    public BoundingVolumeHierarchy(@NotNull final List<Primitive> scenePrimitives) {
+        this(scenePrimitives, PacketKernel.create());
+    }
+
+    BoundingVolumeHierarchy(final List<Primitive> scenePrimitives, final PacketKernel packetKernel) {
+        final int count = scenePrimitives.size();
+        this.packetKernel = packetKernel;
+
+        this.primitives = new Primitive[count];
+        this.sceneIndex = new int[count];
+
+        final double[][] bounds = new double[count][];
+        final double[][] centroids = new double[count][];
+        final int[] order = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            final BoundingBox box = scenePrimitives.get(i).getBounds();
+            final double[] min = box.getMin();
+            final double[] max = box.getMax();
+
+            bounds[i] = new double[] {
+                    min[0] - BOUNDS_PADDING, min[1] - BOUNDS_PADDING, min[2] - BOUNDS_PADDING,
+                    max[0] + BOUNDS_PADDING, max[1] + BOUNDS_PADDING, max[2] + BOUNDS_PADDING };
+            centroids[i] = box.getCentroid();
+            order[i] = i;
+        }
+
+        final int maxNodes = Math.max(1, 2 * count - 1);
+        this.nodeBounds = new double[maxNodes * 6];
+        this.nodeOffset = new int[maxNodes];
+        this.nodeCount = new int[maxNodes];
+        this.nodeAxis = new int[maxNodes];
+
+        if (count > 0) {
+            build(bounds, centroids, order, 0, count, 1);
+
+            for (int i = 0; i < count; i++) {
+                primitives[i] = scenePrimitives.get(order[i]);
+                sceneIndex[i] = order[i];
+            }
+        }
+
+        this.spheres = new SphereSet(primitives);
+    }
+
+    // The tree as it was written, over the primitives of the scene it was built for
+    private BoundingVolumeHierarchy(final List<Primitive> scenePrimitives, final ByteBuffer in) {
+        this.packetKernel = PacketKernel.create();
+        this.nodes = in.getInt();
+        this.depth = in.getInt();
+        this.maxLeafSize = in.getInt();
+
+        final int count = in.getInt();
+        if (count != scenePrimitives.size()) {
+            throw new IllegalArgumentException("The hierarchy was built over " + count + " primitives, not " + scenePrimitives.size());
+        }
+
+        this.nodeBounds = new double[nodes * 6];
+        this.nodeOffset = new int[nodes];
+        this.nodeCount = new int[nodes];
+        this.nodeAxis = new int[nodes];
+        this.sceneIndex = new int[count];
+
+        in.asDoubleBuffer().get(nodeBounds);
+        in.position(in.position() + nodeBounds.length * Double.BYTES);
+        readInts(in, nodeOffset);
+        readInts(in, nodeCount);
+        readInts(in, nodeAxis);
+        readInts(in, sceneIndex);
+
+        this.primitives = new Primitive[count];
+        for (int i = 0; i < count; i++) {
+            primitives[i] = scenePrimitives.get(sceneIndex[i]);
+        }
+
+        this.spheres = new SphereSet(primitives);
+    }
+
+    /**
+     * Reads a hierarchy written by {@link #write(DataOutput)} from the buffer's position, which is moved past it,
+     * rather than building it again.
+     * @param scenePrimitives the primitives of the scene, in the same order as when the hierarchy was built
+     * @throws IllegalArgumentException if the hierarchy was built over a different number of primitives
+     */
+    public static BoundingVolumeHierarchy read(@NotNull final ByteBuffer in, @NotNull final List<Primitive> scenePrimitives) {
+        return new BoundingVolumeHierarchy(scenePrimitives, in);
+    }
+
+    /**
+     * Writes the flattened tree, which refers to the primitives by their position in the scene.
+     */
+    public void write(@NotNull final DataOutput out) throws IOException {
+        out.writeInt(nodes);
+        out.writeInt(depth);
+        out.writeInt(maxLeafSize);
+        out.writeInt(sceneIndex.length);
+
+        for (int i = 0; i < nodes * 6; i++) {
+            out.writeDouble(nodeBounds[i]);
+        }
+        writeInts(out, nodeOffset, nodes);
+        writeInts(out, nodeCount, nodes);
+        writeInts(out, nodeAxis, nodes);
+        writeInts(out, sceneIndex, sceneIndex.length);
+    }
+
+    private static void writeInts(final DataOutput out, final int[] values, final int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    private static void readInts(final ByteBuffer in, final int[] values) {
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+    }
+
+    /**
+     * @return number of levels in the tree, 0 if there are no primitives
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    public SphereSet getSpheres() {
+        return spheres;
+    }
+
+    /**
+     * @return "scalar" or a description of the vector shape used to trace packets
+     */
+    public String getPacketKernelName() {
+        return packetKernel.getName();
+    }
+
+    /**
+     * Finds the closest primitive intersected by the ray. Safe to call from several threads at once.
+     * @param ray the ray to trace, which is not modified
+     * @param ignorePrimitive a primitive to skip (may be null)
+     * @param epsilon intersections at this distance or closer are ignored
+     * @return the closest intersection, or one with an infinite distance and null primitive if nothing was hit
+     */
+    public Intersection findIntersection(@NotNull final Ray ray, @Nullable final Primitive ignorePrimitive, final double epsilon) {
+        if (nodes == 0) {
+            return Intersection.MISS;
+        }
+
+        final Traversal traversal = traversals.get();
+        traversal.minDistance = Double.POSITIVE_INFINITY;
+        traversal.minIndex = -1;
+
+        findClosest(ray, 0, ignorePrimitive, epsilon, traversal);
+
+        if (traversal.minIndex < 0) {
+            return Intersection.MISS;
+        }
+        return primitives[traversal.minIndex].getIntersection(ray, traversal.minDistance);
+    }
+
+    // Closest-hit search of the subtree under root, which carries on from the closest hit held in traversal
+    private void findClosest(final Ray ray, final int root, final Primitive ignorePrimitive, final double epsilon,
+                             final Traversal traversal) {
+        double minDistance = traversal.minDistance;
+        int minIndex = traversal.minIndex;
+
+        final double[] origin = ray.getPosition();
+        final double[] direction = ray.getDirection();
+        final double invX = 1 / direction[0];
+        final double invY = 1 / direction[1];
+        final double invZ = 1 / direction[2];
+        final boolean[] negative = { invX < 0, invY < 0, invZ < 0 };
+
+        final int[] stack = traversal.stack;
+        final double[] distances = traversal.distances;
+        int stackSize = 0;
+        int node = root;
+
+        while (true) {
+            if (intersectsBox(nodeBounds, node * 6, origin[0], origin[1], origin[2], invX, invY, invZ, minDistance)) {
+                final int count = nodeCount[node];
+
+                if (count > 0) {
+                    final int first = nodeOffset[node];
+                    final int last = first + count;
+
+                    if (spheres.countSpheres(first, last) > 0) {
+                        spheres.intersect(ray, first, last, distances);
+                    }
+
+                    for (int i = first; i < last; i++) {
+                        final Primitive primitive = primitives[i];
+                        final double t = spheres.isSphere(i) ? distances[i - first] : primitive.intersect(ray);
+
+                        if (t > epsilon && primitive != ignorePrimitive && isCloser(t, i, minDistance, minIndex)) {
+                            minDistance = t;
+                            minIndex = i;
+                        }
+                    }
+                } else if (negative[nodeAxis[node]]) {
+                    // visit the child nearer the ray origin first so that more of the far side can be skipped
+                    stack[stackSize++] = node + 1;
+                    node = nodeOffset[node];
+                    continue;
+                } else {
+                    stack[stackSize++] = nodeOffset[node];
+                    node = node + 1;
+                    continue;
+                }
+            }
+
+            if (stackSize == 0) {
+                break;
+            }
+            node = stack[--stackSize];
+        }
+
+        traversal.minDistance = minDistance;
+        traversal.minIndex = minIndex;
+    }
+
+    // Ties go to the primitive that comes first in the scene, so the order nodes are visited in doesn't matter
+    private boolean isCloser(final double t, final int index, final double minDistance, final int minIndex) {
+        return t < minDistance || (t == minDistance && minIndex >= 0 && sceneIndex[index] < sceneIndex[minIndex]);
+    }
+
+    /**
+     * Finds the closest primitive intersected by each ray of the packet, giving exactly what
+     * {@link #findIntersection} gives for the rays one at a time. Safe to call from several threads at once.
+     * @param packet the rays to trace, which are not modified
+     * @param ignorePrimitive a primitive to skip (may be null)
+     * @param epsilon intersections at this distance or closer are ignored
+     * @param intersections receives the closest intersection of the ray in each lane, as returned by findIntersection
+     */
+    public void findIntersections(@NotNull final RayPacket packet, @Nullable final Primitive ignorePrimitive,
+                                  final double epsilon, @NotNull final Intersection[] intersections) {
+        final int size = packet.size();
+
+        if (nodes == 0) {
+            Arrays.fill(intersections, 0, size, Intersection.MISS);
+            return;
+        }
+
+        final Traversal traversal = traversals.get();
+        final double[] minDistance = traversal.laneDistances;
+        final int[] minIndex = traversal.laneIndices;
+        final double[] distances = traversal.laneHits;
+        final int[] stack = traversal.packetStack;
+        final int[] stackLanes = traversal.packetStackLanes;
+
+        Arrays.fill(minDistance, Double.POSITIVE_INFINITY);
+        Arrays.fill(minIndex, -1);
+
+        int stackSize = 0;
+        int node = 0;
+        int active = packet.getLanes();
+
+        while (true) {
+            final int hit = packetKernel.intersectBox(nodeBounds, node * 6, packet, minDistance, active);
+
+            if (Integer.bitCount(hit) == 1) {
+                // the packet has split up, the one ray that enters this subtree is traced on its own
+                final int lane = Integer.numberOfTrailingZeros(hit);
+                traversal.minDistance = minDistance[lane];
+                traversal.minIndex = minIndex[lane];
+
+                findClosest(packet.getRay(lane), node, ignorePrimitive, epsilon, traversal);
+
+                minDistance[lane] = traversal.minDistance;
+                minIndex[lane] = traversal.minIndex;
+            } else if (hit != 0) {
+                final int count = nodeCount[node];
+
+                if (count > 0) {
+                    final int first = nodeOffset[node];
+
+                    for (int i = first; i < first + count; i++) {
+                        final Primitive primitive = primitives[i];
+                        if (primitive == ignorePrimitive) {
+                            continue;
+                        }
+
+                        final boolean sphere = spheres.isSphere(i);
+                        if (sphere) {
+                            spheres.intersect(packet, i, packetKernel, distances);
+                        }
+
+                        for (int lanes = hit; lanes != 0; lanes &= lanes - 1) {
+                            final int lane = Integer.numberOfTrailingZeros(lanes);
+                            final double t = sphere ? distances[lane] : primitive.intersect(packet.getRay(lane));
+
+                            if (t > epsilon && isCloser(t, i, minDistance[lane], minIndex[lane])) {
+                                minDistance[lane] = t;
+                                minIndex[lane] = i;
+                            }
+                        }
+                    }
+                } else {
+                    // children are ordered by the first ray, the others mostly point the same way
+                    final int near;
+                    final int far;
+                    if (packet.isNegative(Integer.numberOfTrailingZeros(hit), nodeAxis[node])) {
+                        near = nodeOffset[node];
+                        far = node + 1;
+                    } else {
+                        near = node + 1;
+                        far = nodeOffset[node];
+                    }
+
+                    stack[stackSize] = far;
+                    stackLanes[stackSize++] = hit;
+                    node = near;
+                    active = hit;
+                    continue;
+                }
+            }
+
+            if (stackSize == 0) {
+                break;
+            }
+            node = stack[--stackSize];
+            active = stackLanes[stackSize];
+        }
+
+        for (int lane = 0; lane < size; lane++) {
+            intersections[lane] = minIndex[lane] < 0
+                    ? Intersection.MISS
+                    : primitives[minIndex[lane]].getIntersection(packet.getRay(lane), minDistance[lane]);
+        }
+    }
+
+    /**
+     * Any-hit query used for shadow rays: checks whether any primitive blocks the ray before it reaches
+     * maxDistance, returning as soon as the first blocker is found. Safe to call from several threads at once.
+     * @param ray the ray to trace, which is not modified
+     * @param maxDistance only intersections closer than this count, eg: the distance to a light
+     * @param epsilon intersections at this distance or closer are ignored
+     * @return true if some primitive is intersected between epsilon and maxDistance
+     */
+    public boolean isOccluded(@NotNull final Ray ray, final double maxDistance, final double epsilon) {
+        return findOccluder(ray, maxDistance, epsilon) != null;
+    }
+
+    /**
+     * As {@link #isOccluded(Ray, double, double)}, returning the primitive that blocks the ray.
+     * @return the first primitive found between epsilon and maxDistance, or null if nothing blocks the ray
+     */
+    @Nullable
+    public Primitive findOccluder(@NotNull final Ray ray, final double maxDistance, final double epsilon) {
+        if (nodes == 0) {
+            return null;
+        }
+
+        final int index = findOccluder(ray, 0, maxDistance, epsilon, traversals.get());
+        return index < 0 ? null : primitives[index];
+    }
+
+    // Any-hit search of the subtree under root, returning the index of the blocker or -1
+    private int findOccluder(final Ray ray, final int root, final double maxDistance, final double epsilon,
+                             final Traversal traversal) {
+        final double[] origin = ray.getPosition();
+        final double[] direction = ray.getDirection();
+        final double invX = 1 / direction[0];
+        final double invY = 1 / direction[1];
+        final double invZ = 1 / direction[2];
+
+        final int[] stack = traversal.stack;
+        final double[] distances = traversal.distances;
+        int stackSize = 0;
+        int node = root;
+
+        while (true) {
+            if (intersectsBox(nodeBounds, node * 6, origin[0], origin[1], origin[2], invX, invY, invZ, maxDistance)) {
+                final int count = nodeCount[node];
+
+                if (count > 0) {
+                    final int first = nodeOffset[node];
+                    final int last = first + count;
+
+                    if (spheres.countSpheres(first, last) > 0) {
+                        spheres.intersect(ray, first, last, distances);
+                    }
+
+                    for (int i = first; i < last; i++) {
+                        final double t = spheres.isSphere(i) ? distances[i - first] : primitives[i].intersect(ray);
+
+                        if (t > epsilon && t < maxDistance) {
+                            return i;
+                        }
+                    }
+                } else {
+                    stack[stackSize++] = nodeOffset[node];
+                    node = node + 1;
+                    continue;
+                }
+            }
+
+            if (stackSize == 0) {
+                return -1;
+            }
+            node = stack[--stackSize];
+        }
+    }
+
+    /**
+     * Any-hit query for every ray of the packet, each only counting intersections closer than the max distance it
+     * was added with. Rays stop being traced once they're found to be blocked. Safe to call from several threads
+     * at once.
+     * @param packet the rays to trace, which are not modified
+     * @param epsilon intersections at this distance or closer are ignored
+     * @param occluders receives the primitive blocking the ray in each lane, or null where nothing blocks it
+     *                  (may be null if only the bits are wanted)
+     * @return a bit set for each lane whose ray is blocked, as {@link #isOccluded(Ray, double, double)} would find
+     */
+    public int findOccluded(@NotNull final RayPacket packet, final double epsilon, @Nullable final Primitive[] occluders) {
+        if (occluders != null) {
+            Arrays.fill(occluders, 0, packet.size(), null);
+        }
+
+        if (nodes == 0) {
+            return 0;
+        }
+
+        final Traversal traversal = traversals.get();
+        final double[] maxDistance = packet.maxDistance;
+        final double[] distances = traversal.laneHits;
+        final int[] stack = traversal.packetStack;
+        final int[] stackLanes = traversal.packetStackLanes;
+        final int lanes = packet.getLanes();
+
+        int occluded = 0;
+        int stackSize = 0;
+        int node = 0;
+        int active = lanes;
+
+        while (true) {
+            final int hit = packetKernel.intersectBox(nodeBounds, node * 6, packet, maxDistance, active & ~occluded);
+
+            if (Integer.bitCount(hit) == 1) {
+                // the packet has split up, the one ray that enters this subtree is traced on its own
+                final int lane = Integer.numberOfTrailingZeros(hit);
+
+                final int occluder = findOccluder(packet.getRay(lane), node, maxDistance[lane], epsilon, traversal);
+                if (occluder >= 0) {
+                    occluded |= hit;
+                    setOccluder(occluders, lane, occluder);
+                }
+            } else if (hit != 0) {
+                final int count = nodeCount[node];
+
+                if (count > 0) {
+                    final int first = nodeOffset[node];
+                    int open = hit;
+
+                    for (int i = first; i < first + count && open != 0; i++) {
+                        final boolean sphere = spheres.isSphere(i);
+                        if (sphere) {
+                            spheres.intersect(packet, i, packetKernel, distances);
+                        }
+
+                        for (int remaining = open; remaining != 0; remaining &= remaining - 1) {
+                            final int lane = Integer.numberOfTrailingZeros(remaining);
+                            final double t = sphere ? distances[lane] : primitives[i].intersect(packet.getRay(lane));
+
+                            if (t > epsilon && t < maxDistance[lane]) {
+                                open &= ~(1 << lane);
+                                setOccluder(occluders, lane, i);
+                            }
+                        }
+                    }
+                    occluded |= hit & ~open;
+                } else {
+                    stack[stackSize] = nodeOffset[node];
+                    stackLanes[stackSize++] = hit;
+                    node = node + 1;
+                    active = hit;
+                    continue;
+                }
+            }
+
+            if (stackSize == 0 || occluded == lanes) {
+                return occluded;
+            }
+            node = stack[--stackSize];
+            active = stackLanes[stackSize];
+        }
+    }
+
+    private void setOccluder(final Primitive[] occluders, final int lane, final int index) {
+        if (occluders != null) {
+            occluders[lane] = primitives[index];
+        }
+    }
+
+    // Slab test of the box at bounds[offset, offset + 6), min x, y, z then max. Comparisons are arranged so that a
+    // NaN (0 * infinity) leaves the interval unchanged.
+    static boolean intersectsBox(double[] bounds, int offset, double ox, double oy, double oz,
+                                 double invX, double invY, double invZ, double maxDistance) {
+        final int b = offset;
+
+        double tNear = 0;
+        double tFar = maxDistance;
+
+        double t0 = (bounds[b] - ox) * invX;
+        double t1 = (bounds[b + 3] - ox) * invX;
+        if (t0 > t1) { final double swap = t0; t0 = t1; t1 = swap; }
+        t1 *= SLAB_TOLERANCE;
+        tNear = t0 > tNear ? t0 : tNear;
+        tFar = t1 < tFar ? t1 : tFar;
+
+        t0 = (bounds[b + 1] - oy) * invY;
+        t1 = (bounds[b + 4] - oy) * invY;
+        if (t0 > t1) { final double swap = t0; t0 = t1; t1 = swap; }
+        t1 *= SLAB_TOLERANCE;
+        tNear = t0 > tNear ? t0 : tNear;
+        tFar = t1 < tFar ? t1 : tFar;
+
+        t0 = (bounds[b + 2] - oz) * invZ;
+        t1 = (bounds[b + 5] - oz) * invZ;
+        if (t0 > t1) { final double swap = t0; t0 = t1; t1 = swap; }
+        t1 *= SLAB_TOLERANCE;
+        tNear = t0 > tNear ? t0 : tNear;
+        tFar = t1 < tFar ? t1 : tFar;
+
+        return tNear <= tFar;
+    }
+
+    // Recursively builds the subtree for order[start, end) and returns its index
+    private int build(double[][] bounds, double[][] centroids, int[] order, int start, int end, int level) {
+        final int node = nodes++;
+        depth = Math.max(depth, level);
+
+        // Bounds of the primitives, and of their centroids which decide the split
+        final double[] nodeBox = emptyBounds();
+        final double[] centroidBox = emptyBounds();
+
+        for (int i = start; i < end; i++) {
+            include(nodeBox, bounds[order[i]]);
+            includePoint(centroidBox, centroids[order[i]]);
+        }
+        System.arraycopy(nodeBox, 0, nodeBounds, node * 6, 6);
+
+        final int count = end - start;
+        if (count == 1) {
+            return makeLeaf(node, start, count);
+        }
+
+        // Pick the axis along which the centroids are spread out the most
+        int axis = 0;
+        for (int i = 1; i < 3; i++) {
+            if (centroidBox[i + 3] - centroidBox[i] > centroidBox[axis + 3] - centroidBox[axis]) {
+                axis = i;
+            }
+        }
+
+        final double axisMin = centroidBox[axis];
+        final double axisExtent = centroidBox[axis + 3] - axisMin;
+
+        if (axisExtent <= 0) {
+            // every centroid is in the same place, no split can separate them
+            return makeLeaf(node, start, count);
+        }
+
+        // Bin the centroids
+        final int[] binCounts = new int[SAH_BINS];
+        final double[][] binBounds = new double[SAH_BINS][];
+        for (int i = 0; i < SAH_BINS; i++) {
+            binBounds[i] = emptyBounds();
+        }
+
+        for (int i = start; i < end; i++) {
+            final int bin = binFor(centroids[order[i]][axis], axisMin, axisExtent);
+            binCounts[bin]++;
+            include(binBounds[bin], bounds[order[i]]);
+        }
+
+        // Sweep from the right to get the area and count on the right of every split plane
+        final double[] rightArea = new double[SAH_BINS];
+        final int[] rightCount = new int[SAH_BINS];
+        final double[] sweep = emptyBounds();
+        int sweepCount = 0;
+        for (int i = SAH_BINS - 1; i > 0; i--) {
+            include(sweep, binBounds[i]);
+            sweepCount += binCounts[i];
+            rightArea[i] = surfaceArea(sweep);
+            rightCount[i] = sweepCount;
+        }
+
+        // Sweep from the left and evaluate the SAH cost of splitting before each bin
+        final double parentArea = surfaceArea(nodeBox);
+        double bestCost = Double.POSITIVE_INFINITY;
+        int bestSplit = -1;
+
+        System.arraycopy(emptyBounds(), 0, sweep, 0, 6);
+        sweepCount = 0;
+        for (int i = 1; i < SAH_BINS; i++) {
+            include(sweep, binBounds[i - 1]);
+            sweepCount += binCounts[i - 1];
+
+            if (sweepCount == 0 || rightCount[i] == 0) {
+                continue;
+            }
+
+            final double cost = TRAVERSAL_COST
+                    + (surfaceArea(sweep) * sweepCount + rightArea[i] * rightCount[i]) / parentArea;
+
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestSplit = i;
+            }
+        }
+
+        if (bestSplit < 0 || (count <= MAX_PRIMITIVES_IN_LEAF && bestCost >= count)) {
+            return makeLeaf(node, start, count);
+        }
+
+        // Partition the primitives around the chosen split plane
+        int mid = start;
+        for (int i = start; i < end; i++) {
+            if (binFor(centroids[order[i]][axis], axisMin, axisExtent) < bestSplit) {
+                final int swap = order[i];
+                order[i] = order[mid];
+                order[mid] = swap;
+                mid++;
+            }
+        }
+
+        nodeAxis[node] = axis;
+        nodeCount[node] = 0;
+
+        build(bounds, centroids, order, start, mid, level + 1);
+        nodeOffset[node] = build(bounds, centroids, order, mid, end, level + 1);
+
+        return node;
+    }
+
+    private int makeLeaf(int node, int start, int count) {
+        nodeOffset[node] = start;
+        nodeCount[node] = count;
+        maxLeafSize = Math.max(maxLeafSize, count);
+        return node;
+    }
+
+    private static int binFor(double centroid, double axisMin, double axisExtent) {
+        final int bin = (int) (SAH_BINS * (centroid - axisMin) / axisExtent);
+        return Math.min(bin, SAH_BINS - 1);
+    }
+
+    private static double[] emptyBounds() {
+        return new double[] {
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+    }
+
+    private static void include(double[] box, double[] other) {
+        for (int i = 0; i < 3; i++) {
+            box[i] = Math.min(box[i], other[i]);
+            box[i + 3] = Math.max(box[i + 3], other[i + 3]);
+        }
+    }
+
+    private static void includePoint(double[] box, double[] point) {
+        for (int i = 0; i < 3; i++) {
+            box[i] = Math.min(box[i], point[i]);
+            box[i + 3] = Math.max(box[i + 3], point[i]);
+        }
+    }
+
+    private static double surfaceArea(double[] box) {
+        final double dx = box[3] - box[0];
+        final double dy = box[4] - box[1];
+        final double dz = box[5] - box[2];
+
+        if (dx < 0 || dy < 0 || dz < 0) {
+            return 0;
+        }
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static final class Traversal {
+        final int[] stack;
+        final double[] distances;
+
+        // closest hit so far of a single ray
+        double minDistance;
+        int minIndex;
+
+        // the same for each lane of a packet, and the nodes still to visit with the lanes that entered them
+        final double[] laneDistances = new double[RayPacket.WIDTH];
+        final int[] laneIndices = new int[RayPacket.WIDTH];
+        final double[] laneHits = new double[RayPacket.WIDTH];
+        final int[] packetStack;
+        final int[] packetStackLanes;
+
+        Traversal(int depth, int maxLeafSize) {
+            this.stack = new int[depth + 1];
+            this.distances = new double[maxLeafSize];
+            this.packetStack = new int[depth + 1];
+            this.packetStackLanes = new int[depth + 1];
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ex02.raytracer.accel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * Chooses between the plain Java kernels and the ones in the vector source set, which use the incubating Vector API
+ * and can only be loaded when the jdk.incubator.vector module has been added to the JVM.
+ */
+final class Kernels {
+
+    static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private Kernels() {
+    }
+
+    /**
+     * @return an instance of the named Vector API kernel when the jdk.incubator.vector module has been added to the
+     * JVM (eg: with --add-modules jdk.incubator.vector), otherwise the scalar kernel
+     */
+    static <T> T load(final String vectorKernel, final Class<T> type, final T scalarKernel) {
+        final Optional<Module> vectorModule = ModuleLayer.boot().findModule(VECTOR_MODULE);
+
+        if (vectorModule.isPresent()) {
+            try {
+                // the module isn't required in module-info as it's optional, so read it explicitly
+                Kernels.class.getModule().addReads(vectorModule.get());
+
+                return type.cast(Class.forName(vectorKernel).getDeclaredConstructor().newInstance());
+            } catch (final ReflectiveOperationException | LinkageError e) {
+                final Logger log = LoggerFactory.getLogger(type);
+                log.warn("Unable to use the Vector API for {}, falling back to scalar code: {}", type.getSimpleName(), e.toString());
+            }
+        }
+        return scalarKernel;
+    }
+}
@@ -0,0 +1,36 @@
+package ex02.raytracer.accel;
+
+/**
+ * Tests every ray of a {@link RayPacket} against one node's bounds or one sphere.
+ * Implementations must give exactly the results of testing the rays one at a time, so that a packet finds the
+ * same intersections as its rays traced on their own.
+ */
+interface PacketKernel {
+
+    String VECTOR_KERNEL = "ex02.raytracer.accel.VectorPacketKernel";
+
+    /**
+     * Slab test of the lanes set in active against the box at bounds[offset, offset + 6), stored as the minimum x, y,
+     * z then the maximum, see {@link BoundingVolumeHierarchy#intersectsBox}.
+     * @param maxDistance how far along the ray in each lane the box counts
+     * @return the lanes of active whose ray passes through the box
+     */
+    int intersectBox(double[] bounds, int offset, RayPacket packet, double[] maxDistance, int active);
+
+    /**
+     * Writes the distance along the ray in each lane to the sphere into distances[lane], or positive infinity where
+     * the ray misses, see {@link ScalarSphereKernel#intersect}.
+     */
+    void intersectSphere(double centerX, double centerY, double centerZ, double radiusSquared,
+                         RayPacket packet, double[] distances);
+
+    String getName();
+
+    /**
+     * @return the kernel using the Vector API when the jdk.incubator.vector module has been added to the JVM
+     * (eg: with --add-modules jdk.incubator.vector), otherwise the scalar kernel
+     */
+    static PacketKernel create() {
+        return Kernels.load(VECTOR_KERNEL, PacketKernel.class, ScalarPacketKernel.INSTANCE);
+    }
+}
@@ -0,0 +1,100 @@
+package ex02.raytracer.accel;
+
+import ex02.entities.Ray;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Up to {@link #WIDTH} rays traced through a {@link BoundingVolumeHierarchy} together. Rays that start close together
+ * and point the same way, such as the samples of neighbouring pixels or shadow rays from nearby points towards one
+ * light, mostly visit the same nodes, so each node's bounds and each sphere are loaded once for the whole packet and
+ * tested against every ray at once.
+ * <p>
+ * The rays are held as a structure of arrays, with the lane of each ray being the order it was added in.
+ * A packet belongs to one thread and can be cleared and refilled for the next batch of rays.
+ */
+public final class RayPacket {
+
+    /**
+     * Number of rays in a full packet, which is the number of doubles in a 256 bit vector
+     */
+    public static final int WIDTH = 4;
+
+    final double[] originX = new double[WIDTH];
+    final double[] originY = new double[WIDTH];
+    final double[] originZ = new double[WIDTH];
+    final double[] directionX = new double[WIDTH];
+    final double[] directionY = new double[WIDTH];
+    final double[] directionZ = new double[WIDTH];
+    final double[] inverseX = new double[WIDTH];
+    final double[] inverseY = new double[WIDTH];
+    final double[] inverseZ = new double[WIDTH];
+    final double[] maxDistance = new double[WIDTH];
+
+    private final Ray[] rays = new Ray[WIDTH];
+    private int size;
+
+    /**
+     * Adds a ray for a closest-hit query, see {@link BoundingVolumeHierarchy#findIntersections}.
+     * @return the lane of the ray
+     */
+    public int add(@NotNull final Ray ray) {
+        return add(ray, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Adds a ray, which is referenced rather than copied so it mustn't change until the packet has been traced.
+     * @param maxDistance how far the ray goes, eg: the distance to a light for an occlusion query
+     * @return the lane of the ray
+     */
+    public int add(@NotNull final Ray ray, final double maxDistance) {
+        if (size == WIDTH) {
+            throw new IllegalStateException("A packet holds at most " + WIDTH + " rays");
+        }
+
+        final double[] origin = ray.getPosition();
+        final double[] direction = ray.getDirection();
+
+        originX[size] = origin[0];
+        originY[size] = origin[1];
+        originZ[size] = origin[2];
+        directionX[size] = direction[0];
+        directionY[size] = direction[1];
+        directionZ[size] = direction[2];
+        inverseX[size] = 1 / direction[0];
+        inverseY[size] = 1 / direction[1];
+        inverseZ[size] = 1 / direction[2];
+        this.maxDistance[size] = maxDistance;
+        rays[size] = ray;
+
+        return size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == WIDTH;
+    }
+
+    public Ray getRay(final int lane) {
+        return rays[lane];
+    }
+
+    // one bit for each lane that holds a ray
+    int getLanes() {
+        return (1 << size) - 1;
+    }
+
+    boolean isNegative(final int lane, final int axis) {
+        switch (axis) {
+            case 0: return inverseX[lane] < 0;
+            case 1: return inverseY[lane] < 0;
+            default: return inverseZ[lane] < 0;
+        }
+    }
+}
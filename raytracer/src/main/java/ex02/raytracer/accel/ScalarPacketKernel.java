@@ -0,0 +1,44 @@
+package ex02.raytracer.accel;
+
+/**
+ * Plain Java packet kernel, used when the Vector API isn't available. Loops over the rays with the same code that
+ * tests them one at a time.
+ */
+final class ScalarPacketKernel implements PacketKernel {
+
+    static final ScalarPacketKernel INSTANCE = new ScalarPacketKernel();
+
+    private ScalarPacketKernel() {
+    }
+
+    @Override
+    public int intersectBox(double[] bounds, int offset, RayPacket packet, double[] maxDistance, int active) {
+        int hit = 0;
+
+        for (int lanes = active; lanes != 0; lanes &= lanes - 1) {
+            final int lane = Integer.numberOfTrailingZeros(lanes);
+
+            if (BoundingVolumeHierarchy.intersectsBox(bounds, offset,
+                    packet.originX[lane], packet.originY[lane], packet.originZ[lane],
+                    packet.inverseX[lane], packet.inverseY[lane], packet.inverseZ[lane], maxDistance[lane])) {
+                hit |= 1 << lane;
+            }
+        }
+        return hit;
+    }
+
+    @Override
+    public void intersectSphere(double centerX, double centerY, double centerZ, double radiusSquared,
+                                RayPacket packet, double[] distances) {
+        for (int lane = 0; lane < packet.size(); lane++) {
+            distances[lane] = ScalarSphereKernel.intersect(centerX, centerY, centerZ, radiusSquared,
+                    packet.originX[lane], packet.originY[lane], packet.originZ[lane],
+                    packet.directionX[lane], packet.directionY[lane], packet.directionZ[lane]);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,52 @@
+package ex02.raytracer.accel;
+
+/**
+ * Plain Java sphere kernel, used when the Vector API isn't available.
+ */
+final class ScalarSphereKernel implements SphereKernel {
+
+    static final ScalarSphereKernel INSTANCE = new ScalarSphereKernel();
+
+    private ScalarSphereKernel() {
+    }
+
+    @Override
+    public void intersect(double[] centerX, double[] centerY, double[] centerZ, double[] radiusSquared,
+                          int from, int to,
+                          double ox, double oy, double oz, double dx, double dy, double dz,
+                          double[] distances) {
+        intersect(centerX, centerY, centerZ, radiusSquared, from, to, ox, oy, oz, dx, dy, dz, distances, 0);
+    }
+
+    // as above, writing the distance for slot i to distances[offset + i - from]
+    void intersect(double[] centerX, double[] centerY, double[] centerZ, double[] radiusSquared,
+                   int from, int to,
+                   double ox, double oy, double oz, double dx, double dy, double dz,
+                   double[] distances, int offset) {
+        for (int i = from; i < to; i++) {
+            distances[offset + i - from] = intersect(centerX[i], centerY[i], centerZ[i], radiusSquared[i],
+                    ox, oy, oz, dx, dy, dz);
+        }
+    }
+
+    // distance along the ray to one sphere, or positive infinity if it misses
+    static double intersect(double centerX, double centerY, double centerZ, double radiusSquared,
+                            double ox, double oy, double oz, double dx, double dy, double dz) {
+        final double lx = centerX - ox;
+        final double ly = centerY - oy;
+        final double lz = centerZ - oz;
+
+        final double tCA = lx * dx + ly * dy + lz * dz;
+        final double dSquare = (lx * lx + ly * ly + lz * lz) - tCA * tCA;
+
+        // behind the ray or missed, see Sphere.intersectGeometric
+        return tCA < 0 || dSquare > radiusSquared
+                ? Double.POSITIVE_INFINITY
+                : tCA - Math.sqrt(radiusSquared - dSquare);
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
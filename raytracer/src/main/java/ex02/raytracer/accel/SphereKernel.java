@@ -0,0 +1,29 @@
+package ex02.raytracer.accel;
+
+/**
+ * Intersects one ray with a run of spheres held as a structure of arrays, see {@link SphereSet}.
+ * Implementations must give exactly the distances {@link ex02.entities.primitives.Sphere#intersect} would.
+ */
+interface SphereKernel {
+
+    String VECTOR_KERNEL = "ex02.raytracer.accel.VectorSphereKernel";
+
+    /**
+     * Writes the distance along the ray to each sphere in [from, to) into distances[0, to - from), or positive
+     * infinity for spheres the ray misses.
+     */
+    void intersect(double[] centerX, double[] centerY, double[] centerZ, double[] radiusSquared,
+                   int from, int to,
+                   double ox, double oy, double oz, double dx, double dy, double dz,
+                   double[] distances);
+
+    String getName();
+
+    /**
+     * @return the kernel using the Vector API when the jdk.incubator.vector module has been added to the JVM
+     * (eg: with --add-modules jdk.incubator.vector), otherwise the scalar kernel
+     */
+    static SphereKernel create() {
+        return Kernels.load(VECTOR_KERNEL, SphereKernel.class, ScalarSphereKernel.INSTANCE);
+    }
+}
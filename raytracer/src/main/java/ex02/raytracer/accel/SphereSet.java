@@ -0,0 +1,106 @@
+package ex02.raytracer.accel;
+
+import ex02.entities.Ray;
+import ex02.entities.primitives.Primitive;
+import ex02.entities.primitives.Sphere;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The spheres among an array of primitives packed as a structure of arrays: one array each for the x, y and z of the
+ * centres and one for the squared radii. Testing a ray against a run of spheres then reads four contiguous arrays
+ * rather than following a pointer to every sphere and its centre, and can use the Vector API when it's available.
+ * <p>
+ * Slot i always describes primitives[i], so an index found here maps straight back to the primitive for shading.
+ * Slots of primitives that are not spheres never report a hit.
+ */
+public final class SphereSet {
+
+    private final Sphere[] spheres;           // null where the primitive isn't a sphere
+    private final double[] centerX;
+    private final double[] centerY;
+    private final double[] centerZ;
+    private final double[] radiusSquared;     // negative infinity where the primitive isn't a sphere
+    private final int[] spheresBefore;        // number of spheres in slots [0, i)
+    private final SphereKernel kernel;
+
+    public SphereSet(@NotNull final Primitive[] primitives) {
+        this(primitives, SphereKernel.create());
+    }
+
+    SphereSet(final Primitive[] primitives, final SphereKernel kernel) {
+        final int count = primitives.length;
+
+        this.spheres = new Sphere[count];
+        this.centerX = new double[count];
+        this.centerY = new double[count];
+        this.centerZ = new double[count];
+        this.radiusSquared = new double[count];
+        this.spheresBefore = new int[count + 1];
+        this.kernel = kernel;
+
+        for (int i = 0; i < count; i++) {
+            if (primitives[i] instanceof Sphere) {
+                final Sphere sphere = (Sphere) primitives[i];
+                final double[] center = sphere.getCenter();
+
+                spheres[i] = sphere;
+                centerX[i] = center[0];
+                centerY[i] = center[1];
+                centerZ[i] = center[2];
+                radiusSquared[i] = sphere.getRadius() * sphere.getRadius();
+            } else {
+                radiusSquared[i] = Double.NEGATIVE_INFINITY;
+            }
+            spheresBefore[i + 1] = spheresBefore[i] + (spheres[i] != null ? 1 : 0);
+        }
+    }
+
+    public int size() {
+        return spheres.length;
+    }
+
+    /**
+     * @return the sphere in the given slot, or null if the primitive in that slot isn't a sphere
+     */
+    public Sphere getSphere(final int index) {
+        return spheres[index];
+    }
+
+    public boolean isSphere(final int index) {
+        return spheres[index] != null;
+    }
+
+    /**
+     * @return the number of spheres in the slots [from, to)
+     */
+    public int countSpheres(final int from, final int to) {
+        return spheresBefore[to] - spheresBefore[from];
+    }
+
+    /**
+     * Intersects the ray with every slot in [from, to). Safe to call from several threads at once.
+     * @param ray the ray to trace, which is not modified
+     * @param distances receives the distance to the sphere in slot from + i at index i, which is the same value
+     *                  {@link Sphere#intersect(Ray)} would return, or positive infinity if the slot isn't a sphere
+     */
+    public void intersect(@NotNull final Ray ray, final int from, final int to, @NotNull final double[] distances) {
+        final double[] origin = ray.getPosition();
+        final double[] direction = ray.getDirection();
+
+        kernel.intersect(centerX, centerY, centerZ, radiusSquared, from, to,
+                origin[0], origin[1], origin[2], direction[0], direction[1], direction[2],
+                distances);
+    }
+
+    // Intersects every ray of the packet with the sphere in the given slot, writing the distance for each lane
+    void intersect(final RayPacket packet, final int index, final PacketKernel packetKernel, final double[] distances) {
+        packetKernel.intersectSphere(centerX[index], centerY[index], centerZ[index], radiusSquared[index], packet, distances);
+    }
+
+    /**
+     * @return "scalar" or a description of the vector shape being used
+     */
+    public String getKernelName() {
+        return kernel.getName();
+    }
+}
@@ -0,0 +1,21 @@
+package ex02.raytracer.parser;
+
+/**
+ * How a {@link SceneParser} reads a scene file, see {@link SceneParser#setMode(ParseMode)}.
+ * Both give the same scene from the same file.
+ */
+public enum ParseMode {
+
+    /**
+     * Each line is read into a string, lower cased and split into values with a regular expression, then the values
+     * are parsed by the entity they're set on.
+     */
+    LINES,
+
+    /**
+     * The file is tokenized in place within a fixed size buffer, without regular expressions or a string for every
+     * line, and values that are numbers are parsed straight into doubles. Memory use stays flat however long the
+     * file is, other than the entities it holds, so this suits scenes of millions of lines.
+     */
+    STREAMING
+}
@@ -14,6 +14,7 @@ import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -28,6 +29,8 @@ public class SceneParser implements Parser<Scene> {
     private final String _filePath; // dir path to location of the scene file being loaded
     private final String _fileName; // the file name will be used as the name of the scene
 
+    private ParseMode _mode = ParseMode.LINES;
+
     private IEntity _curEntity;
     private List<IEntity> _entities = new ArrayList<>();
     private Scene _scene;
@@ -70,50 +73,30 @@ public class SceneParser implements Parser<Scene> {
         _reader = new StringReader(sceneData);
     }
 
+    public ParseMode getMode() {
+        return _mode;
+    }
+
+    public void setMode(final ParseMode mode) {
+        if(mode == null) {
+            throw new IllegalArgumentException("Parse mode must not be null");
+        }
+        _mode = mode;
+    }
+
     @Override
     public Scene parse() throws ParserException {
         if(_reader == null) {
             throw new ParserException("Reader was null"); // fail fast if there's no Reader
         }
 
-        try(final BufferedReader buffer = new BufferedReader(_reader)) {
-            String line, curobj = null;
-            int lineNum = 0;
+        try(final Reader reader = _reader) {
             onStart();
 
-            while ((line = buffer.readLine()) != null) {
-                line = line.trim();
-                ++lineNum;
-
-                if (line.isEmpty() || (line.charAt(0) == '#')) {  // comment
-                    continue;
-                } else if (line.charAt(line.length() - 1) == ':') { // new object;
-                    if (curobj != null)
-                        commit();
-                    curobj = line.substring(0, line.length() - 1).trim().toLowerCase();
-                    if (!addObject(curobj))
-                        LOG.error(String.format("Did not recognize object: %s (line %d)", curobj, lineNum));
-                } else {
-                    int eqIndex = line.indexOf('=');
-                    if (eqIndex == -1) {
-                        LOG.error(String.format("Syntax error line %d: %s", lineNum, line));
-                        continue;
-                    }
-                    String name = line.substring(0, eqIndex).trim().toLowerCase();
-                    String[] args = line.substring(eqIndex + 1).trim().toLowerCase().split("\\s+");
-
-                    if (curobj == null) {
-                        LOG.error(String.format("parameter with no object %s (line %d)", name, lineNum));
-                        continue;
-                    }
-
-                    if (!setParameter(name, args))
-                        LOG.error(String.format("Did not recognize parameter: %s of object %s (line %d)", name, curobj, lineNum));
-                }
-            }
-
-            if (curobj != null) {
-                commit();
+            if (_mode == ParseMode.STREAMING) {
+                parseTokens(new SceneTokenizer(reader));
+            } else {
+                parseLines(new BufferedReader(reader));
             }
 
             onFinishing();
@@ -125,6 +108,83 @@ public class SceneParser implements Parser<Scene> {
         }
     }
 
+    private void parseLines(final BufferedReader buffer) throws IOException, ParserException {
+        String line, curobj = null;
+        int lineNum = 0;
+
+        while ((line = buffer.readLine()) != null) {
+            line = line.trim();
+            ++lineNum;
+
+            if (line.isEmpty() || (line.charAt(0) == '#')) {  // comment
+                continue;
+            } else if (line.charAt(line.length() - 1) == ':') { // new object;
+                if (curobj != null)
+                    commit();
+                curobj = line.substring(0, line.length() - 1).trim().toLowerCase();
+                if (!addObject(curobj))
+                    LOG.error(String.format("Did not recognize object: %s (line %d)", curobj, lineNum));
+            } else {
+                int eqIndex = line.indexOf('=');
+                if (eqIndex == -1) {
+                    LOG.error(String.format("Syntax error line %d: %s", lineNum, line));
+                    continue;
+                }
+                String name = line.substring(0, eqIndex).trim().toLowerCase();
+                String[] args = line.substring(eqIndex + 1).trim().toLowerCase().split("\\s+");
+
+                if (curobj == null) {
+                    LOG.error(String.format("parameter with no object %s (line %d)", name, lineNum));
+                    continue;
+                }
+
+                if (!setParameter(name, args))
+                    LOG.error(String.format("Did not recognize parameter: %s of object %s (line %d)", name, curobj, lineNum));
+            }
+        }
+
+        if (curobj != null) {
+            commit();
+        }
+    }
+
+    // The same as parseLines, but values that are all numbers are given to the entity as numbers
+    private void parseTokens(final SceneTokenizer tokenizer) throws IOException, ParserException {
+        String curobj = null;
+
+        while (tokenizer.nextLine()) {
+            if (tokenizer.isObject()) {
+                if (curobj != null) {
+                    commit();
+                }
+                curobj = tokenizer.getName();
+                if (!addObject(curobj)) {
+                    LOG.error("Did not recognize object: {} (line {})", curobj, tokenizer.getLineNumber());
+                }
+            } else if (!tokenizer.isParameter()) {
+                LOG.error("Syntax error line {}: {}", tokenizer.getLineNumber(), tokenizer.getLine());
+            } else if (curobj == null) {
+                LOG.error("parameter with no object {} (line {})", tokenizer.getName(), tokenizer.getLineNumber());
+            } else {
+                final String name = tokenizer.getName();
+
+                // a path or a name is never a number, even if it looks like one
+                final double[] values = isPath(name) || isName(name) ? null : tokenizer.getNumbers();
+                final boolean parsed = values != null
+                        ? setParameter(name, values)
+                        : setParameter(name, tokenizer.getValues());
+
+                if (!parsed) {
+                    LOG.error("Did not recognize parameter: {} of object {} (line {})", name, curobj, tokenizer.getLineNumber());
+                }
+            }
+        }
+
+        if (curobj != null) {
+            commit();
+        }
+    }
+
     private void onStart() {
         LOG.info("------ Parser started ---------");
     }
@@ -156,24 +216,47 @@ public class SceneParser implements Parser<Scene> {
         if (name.equals("scene")) {
             _scene = (Scene) _curEntity;
         }
-        LOG.debug("entity: " + name);
+        LOG.debug("entity: {}", name);
         return true;
     }
 
     // set a specific parameter for the current object
-    // return true if recognized
+    // return true if recognized, which a value the entity couldn't read still is as its error has been logged
     private boolean setParameter(final String name, final String[] args) {
         try {
-            if("texture".equalsIgnoreCase(name)) {
-                _curEntity.setParameter(name, new String[]{ Paths.get(_filePath, args).toString() });
-            } else {
-                _curEntity.setParameter(name, args);
+            final boolean recognized = isPath(name)
+                    ? _curEntity.setParameter(name, new String[]{ Paths.get(_filePath, args).toString() })
+                    : _curEntity.setParameter(name, args);
+            if (recognized) {
+                LOG.debug("\t{} = {}", name, args);
             }
-            LOG.debug("\t{} = {}", name, args);
+            return recognized;
+        } catch (final Exception e) {
+            LOG.error(e.getMessage(), e);
             return true;
+        }
+    }
+
+    // the parameters that name a file relative to the scene
+    private static boolean isPath(final String name) {
+        return "texture".equalsIgnoreCase(name) || "file".equalsIgnoreCase(name);
+    }
+
+    // the parameters that name a primitive, or the shape an instance copies
+    private static boolean isName(final String name) {
+        return "name".equalsIgnoreCase(name) || "shape".equalsIgnoreCase(name);
+    }
+
+    private boolean setParameter(final String name, final double[] values) {
+        try {
+            final boolean recognized = _curEntity.setParameter(name, values);
+            if (recognized && LOG.isDebugEnabled()) {
+                LOG.debug("\t{} = {}", name, Arrays.toString(values));
+            }
+            return recognized;
         } catch (final Exception e) {
             LOG.error(e.getMessage(), e);
-            return false;
+            return true;
         }
     }
 
@@ -0,0 +1,375 @@
+package ex02.raytracer.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits a scene file into lines, and lines into names and values, the same way {@link ParseMode#LINES} does but
+ * without a regular expression or a string for every line. The file is read through a buffer that only grows if a
+ * single line doesn't fit in it, and numbers are parsed from the buffer straight into doubles.
+ */
+final class SceneTokenizer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // names are looked up rather than being created for every line, up to half the table
+    private static final int NAME_TABLE_SIZE = 256;
+
+    // every power of ten that a double holds exactly
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+
+    private final Reader reader;
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int position;   // the start of the chars that haven't been read as a line yet
+    private int limit;      // the end of the chars that have been read into the buffer
+    private boolean skipLineFeed;
+
+    private final String[] names = new String[NAME_TABLE_SIZE];
+    private final char[][] nameChars = new char[NAME_TABLE_SIZE][];
+    private int nameCount;
+
+    private int lineNumber;
+
+    // the current line, trimmed
+    private int lineStart;
+    private int lineEnd;
+
+    // the name of the object or parameter, and the values of a parameter, all trimmed
+    private int nameEnd;
+    private int valuesStart;
+    private boolean object;
+
+    private double[] numbers = new double[4];
+
+    SceneTokenizer(final Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Moves to the next line that isn't blank or a comment.
+     * @return false at the end of the file
+     */
+    boolean nextLine() throws IOException {
+        while (readLine()) {
+            lineNumber++;
+
+            while (lineStart < lineEnd && buffer[lineStart] <= ' ') lineStart++;
+            while (lineEnd > lineStart && buffer[lineEnd - 1] <= ' ') lineEnd--;
+
+            if (lineStart < lineEnd && buffer[lineStart] != '#') {
+                split();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the whole of the current line, trimmed
+     */
+    String getLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart);
+    }
+
+    /**
+     * @return whether the line starts an object, which is a line ending in a colon
+     */
+    boolean isObject() {
+        return object;
+    }
+
+    /**
+     * @return whether the line sets a parameter, which is a line with an equals sign that doesn't start an object
+     */
+    boolean isParameter() {
+        return !object && valuesStart >= 0;
+    }
+
+    /**
+     * @return the name of the object or parameter, lower cased
+     */
+    String getName() {
+        return name(lineStart, nameEnd);
+    }
+
+    /**
+     * Parses the values of the parameter as numbers.
+     * @return a new array of the values, or null if there are none or any of them isn't a number
+     */
+    double[] getNumbers() {
+        int count = 0;
+        int start = valuesStart;
+
+        while (start < lineEnd) {
+            final int end = tokenEnd(start);
+
+            if (count == numbers.length) {
+                numbers = Arrays.copyOf(numbers, count * 2);
+            }
+            if (!parseNumber(start, end, count++)) {
+                return null;
+            }
+            start = skipSpaces(end);
+        }
+
+        return count > 0 ? Arrays.copyOf(numbers, count) : null;
+    }
+
+    /**
+     * @return the values of the parameter, lower cased, with a single empty value if there are none
+     */
+    String[] getValues() {
+        int count = 0;
+        for (int start = valuesStart; start < lineEnd; start = skipSpaces(tokenEnd(start))) {
+            count++;
+        }
+
+        final String[] values = new String[Math.max(count, 1)];
+        values[0] = "";
+
+        int index = 0;
+        for (int start = valuesStart; start < lineEnd; start = skipSpaces(tokenEnd(start))) {
+            values[index++] = lowerCase(start, tokenEnd(start));
+        }
+        return values;
+    }
+
+    // Finds the name and values of the line
+    private void split() {
+        object = buffer[lineEnd - 1] == ':';
+        valuesStart = -1;
+
+        if (object) {
+            nameEnd = lineEnd - 1;
+        } else {
+            nameEnd = lineStart;
+            while (nameEnd < lineEnd && buffer[nameEnd] != '=') nameEnd++;
+
+            if (nameEnd == lineEnd) {
+                return;
+            }
+            valuesStart = nameEnd + 1;
+            while (valuesStart < lineEnd && buffer[valuesStart] <= ' ') valuesStart++;
+        }
+
+        while (nameEnd > lineStart && buffer[nameEnd - 1] <= ' ') nameEnd--;
+    }
+
+    private int tokenEnd(int index) {
+        while (index < lineEnd && !isSpace(buffer[index])) index++;
+        return index;
+    }
+
+    private int skipSpaces(int index) {
+        while (index < lineEnd && isSpace(buffer[index])) index++;
+        return index;
+    }
+
+    // The whitespace that a regular expression matches with \s, other than line breaks as lines don't contain them
+    private static boolean isSpace(final char c) {
+        return c == ' ' || c == '\t' || c == '\f' || c == '\u000B';
+    }
+
+    /**
+     * Parses a decimal number such as -1.25e3 straight from the buffer. The result is exact whenever the digits fit in
+     * 53 bits and the power of ten is small enough to be a double itself, because then only one rounding is needed.
+     * Any other number is parsed by {@link Double#parseDouble(String)}.
+     * @return false if the token isn't a number
+     */
+    private boolean parseNumber(final int start, final int end, final int index) {
+        int i = start;
+        if (buffer[i] == '-' || buffer[i] == '+') i++;
+
+        if (i == end || !(isDigit(buffer[i]) || buffer[i] == '.')) {
+            return false;
+        }
+
+        long significand = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        boolean point = false;
+
+        for (; i < end; i++) {
+            final char c = buffer[i];
+
+            if (isDigit(c)) {
+                if (digits == 18) {
+                    return parseDouble(start, end, index);
+                }
+                significand = significand * 10 + (c - '0');
+                if (significand != 0) digits++;
+                if (point) exponent--;
+                anyDigits = true;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+
+        if (i < end && (buffer[i] == 'e' || buffer[i] == 'E') && anyDigits) {
+            i++;
+            final boolean negativeExponent = i < end && buffer[i] == '-';
+            if (i < end && (buffer[i] == '-' || buffer[i] == '+')) i++;
+
+            int value = 0;
+            final int exponentStart = i;
+            for (; i < end && isDigit(buffer[i]) && value < 1000; i++) {
+                value = value * 10 + (buffer[i] - '0');
+            }
+            if (i == exponentStart) {
+                return parseDouble(start, end, index);
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (i != end || !anyDigits || significand > MAX_EXACT_SIGNIFICAND
+                || exponent < -22 || exponent > 22) {
+            return parseDouble(start, end, index);
+        }
+
+        final double value = exponent < 0
+                ? significand / POWERS_OF_TEN[-exponent]
+                : significand * POWERS_OF_TEN[exponent];
+        numbers[index] = buffer[start] == '-' ? -value : value;
+        return true;
+    }
+
+    // The slow way, for numbers the fast way can't parse exactly and for tokens that might not be numbers at all
+    private boolean parseDouble(final int start, final int end, final int index) {
+        try {
+            numbers[index] = Double.parseDouble(lowerCase(start, end));
+            return true;
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Returns the lower cased chars as a string, looking the string up in the names that have been seen before
+    private String name(final int start, final int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            final char c = buffer[i];
+            if (c >= 0x80) {
+                return lowerCase(start, end);
+            }
+            hash = 31 * hash + toLowerCase(c);
+        }
+
+        // the same hash as the string, so it is spread the same way
+        final int mask = names.length - 1;
+        int slot = (hash ^ hash >>> 16) & mask;
+
+        for (char[] chars = nameChars[slot]; chars != null; chars = nameChars[slot]) {
+            if (matches(chars, start, end)) {
+                return names[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        final String name = lowerCase(start, end);
+        if (nameCount < names.length / 2) {
+            names[slot] = name;
+            nameChars[slot] = name.toCharArray();
+            nameCount++;
+        }
+        return name;
+    }
+
+    private boolean matches(final char[] name, final int start, final int end) {
+        if (name.length != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (name[i - start] != toLowerCase(buffer[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String lowerCase(final int start, final int end) {
+        return new String(buffer, start, end - start).toLowerCase();
+    }
+
+    private static char toLowerCase(final char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    // Reads up to the next line break, as BufferedReader.readLine() would, returning false at the end of the file
+    private boolean readLine() throws IOException {
+        if (skipLineFeed) {
+            if (position == limit && !fill()) {
+                return false;
+            }
+            if (buffer[position] == '\n') {
+                position++;
+            }
+            skipLineFeed = false;
+        }
+
+        int scan = position;
+        while (true) {
+            for (; scan < limit; scan++) {
+                final char c = buffer[scan];
+
+                if (c == '\n' || c == '\r') {
+                    lineStart = position;
+                    lineEnd = scan;
+                    position = scan + 1;
+                    skipLineFeed = c == '\r';
+                    return true;
+                }
+            }
+
+            final int scanned = scan - position;
+            if (!fill()) {
+                if (position == limit) {
+                    return false;
+                }
+                // the last line doesn't have a line break
+                lineStart = position;
+                lineEnd = limit;
+                position = limit;
+                return true;
+            }
+            scan = position + scanned;
+        }
+    }
+
+    // Moves the chars that haven't been read as a line yet to the start of the buffer and reads more after them,
+    // growing the buffer if a line fills it
+    private boolean fill() throws IOException {
+        final int kept = limit - position;
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, kept);
+        } else if (kept == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        position = 0;
+        limit = kept;
+
+        final int read = reader.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package ex02.raytracer;
+
+import ex02.raytracer.parser.SceneParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRendererTest {
+
+    private static final String SCENE = "scene:\n" +
+            "background-col=0.2 0.2 0.4\n" +
+            "camera:\n" +
+            "eye=0 1 5\n" +
+            "look-at=0 0 0\n" +
+            "screen-dist=1\n" +
+            "up-direction=0 1 0\n" +
+            "sphere:\n" +
+            "center=%s 0.5 0\n" +
+            "radius=0.8\n" +
+            "mtl-diffuse=0.8 0.3 0.2\n" +
+            "rectangle:\n" +
+            "p0=-3 0 3\n" +
+            "p1=3 0 3\n" +
+            "p2=-3 0 -3\n" +
+            "light-point:\n" +
+            "pos=0 4 3\n" +
+            "color=0.8 0.8 0.8\n";
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("batch");
+        for (int i = 0; i < 4; i++) {
+            Files.write(directory.resolve("scene_" + i + ".txt"), String.format(SCENE, i * 0.3 - 0.5).getBytes());
+        }
+        Files.write(directory.resolve("broken.txt"), "sphere:\nradius=one\n".getBytes());
+        Files.write(directory.resolve("notes.md"), "not a scene".getBytes());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void rendersEveryScene() throws Exception {
+        final ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        final BatchRenderer renderer = new BatchRenderer();
+        renderer.setSize(64, 48);
+        renderer.setScenesInFlight(3);
+        renderer.setOut(new PrintStream(printed, true));
+
+        final List<BatchRenderer.Result> results = renderer.renderDirectory(directory);
+        assertEquals(5, results.size(), "only the .txt files are scenes");
+
+        final BatchRenderer.Result broken = results.get(0);
+        assertEquals("broken.txt", broken.getSceneFile().getFileName().toString());
+        assertFalse(broken.isSuccess());
+        assertNotNull(broken.getError());
+        assertNull(broken.getImageFile());
+        assertFalse(Files.exists(directory.resolve("broken.png")));
+
+        for (int i = 0; i < 4; i++) {
+            final BatchRenderer.Result result = results.get(i + 1);
+            assertTrue(result.isSuccess(), String.valueOf(result.getError()));
+            assertEquals(directory.resolve("scene_" + i + ".png"), result.getImageFile());
+            assertTrue(result.getRenderTime() > 0);
+            assertEquals(result.getParseTime() + result.getRenderTime() + result.getWriteTime(), result.getTotalTime());
+
+            // the same pixels as rendering the scene on its own
+            final FrameBuffer expected = RayTracer.create(new SceneParser(result.getSceneFile().toFile()).parse())
+                    .render(64, 48);
+            final BufferedImage image = ImageIO.read(result.getImageFile().toFile());
+            assertEquals(64, image.getWidth());
+            assertEquals(48, image.getHeight());
+            assertArrayEquals(expected.toArgb(), image.getRGB(0, 0, 64, 48, null, 0, 64));
+        }
+
+        final String output = printed.toString();
+        for (final BatchRenderer.Result result : results) {
+            assertTrue(output.contains(result.getSceneFile().getFileName().toString()), output);
+        }
+        assertTrue(output.contains("FAILED"), output);
+    }
+
+    @Test
+    void usesTheGivenPool() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final RenderOptions options = new RenderOptions();
+            options.setPool(pool);
+
+            final BatchRenderer renderer = new BatchRenderer();
+            renderer.setSize(16, 16);
+            renderer.setOptions(options);
+            renderer.setOut(new PrintStream(new ByteArrayOutputStream()));
+
+            final List<BatchRenderer.Result> results = renderer.renderDirectory(directory);
+            assertEquals(4, results.stream().filter(BatchRenderer.Result::isSuccess).count());
+            assertFalse(pool.isShutdown(), "a pool that was given is left running");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void checksSettings() {
+        final BatchRenderer renderer = new BatchRenderer();
+
+        assertThrows(IllegalArgumentException.class, () -> renderer.setSize(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> renderer.setScenesInFlight(0));
+    }
+}
@@ -0,0 +1,178 @@
+package ex02.raytracer;
+
+import ex02.entities.Scene;
+import ex02.raytracer.parser.SceneParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledSceneTest {
+
+    // every kind of entity, with a texture that three surfaces share and a shape that's only rendered by instances
+    private static final String SCENE = "scene:\n" +
+            "background-col=0.2 0.2 0.4\n" +
+            "ambient-light=0.1 0.1 0.1\n" +
+            "super-samp-width=2\n" +
+            "camera:\n" +
+            "eye=1 2 5\n" +
+            "look-at=0 0 0\n" +
+            "screen-dist=1\n" +
+            "up-direction=0 1 0\n" +
+            "sphere:\n" +
+            "center=-1 0.5 0\n" +
+            "radius=0.5\n" +
+            "mtl-type=texture\n" +
+            "texture=pattern.png\n" +
+            "rectangle:\n" +
+            "p0=-3 0 3\n" +
+            "p1=3 0 3\n" +
+            "p2=-3 0 -3\n" +
+            "mtl-type=checkers\n" +
+            "reflectance=0.3\n" +
+            "box:\n" +
+            "p0=0.5 0 0\n" +
+            "p1=1.5 0 0\n" +
+            "p2=0.5 1 0\n" +
+            "p3=0.5 0 -1\n" +
+            "mtl-type=texture\n" +
+            "texture=pattern.png\n" +
+            "cylinder:\n" +
+            "start=-2 0 -1\n" +
+            "direction=0 1 0.2\n" +
+            "length=1.5\n" +
+            "radius=0.3\n" +
+            "disc:\n" +
+            "center=0 1.5 -1\n" +
+            "radius=0.4\n" +
+            "normal=0 1 1\n" +
+            "torus:\n" +
+            "center=0 0.3 1\n" +
+            "central-radius=0.5\n" +
+            "tube-radius=0.15\n" +
+            "normal=0 1 0.3\n" +
+            "mtl-specular=0.6 0.6 0.8\n" +
+            "mesh:\n" +
+            "file=pyramid.obj\n" +
+            "mtl-diffuse=0.8 0.5 0.2\n" +
+            "sphere:\n" +
+            "name=ball\n" +
+            "active=false\n" +
+            "center=0 0 0\n" +
+            "radius=0.2\n" +
+            "mtl-type=texture\n" +
+            "texture=pattern.png\n" +
+            "instance:\n" +
+            "shape=ball\n" +
+            "translate=1 1.2 0.5\n" +
+            "instance:\n" +
+            "shape=ball\n" +
+            "scale=0.5 1 0.5\n" +
+            "rotate-z=30\n" +
+            "translate=-1 1.2 0.5\n" +
+            "light-point:\n" +
+            "pos=0 4 3\n" +
+            "color=0.6 0.6 0.6\n" +
+            "light-directed:\n" +
+            "direction=0.3 -0.7 -1\n" +
+            "color=0.3 0.3 0.3\n" +
+            "light-area:\n" +
+            "p0=-1 4 -1\n" +
+            "p1=-0.5 4 -1\n" +
+            "p2=-1 4 -1.5\n" +
+            "grid-width=2\n" +
+            "color=0.3 0.2 0.2\n";
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("compiled");
+
+        final BufferedImage image = new BufferedImage(90, 70, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 7 % 256) << 16 | (y * 5 % 256) << 8 | ((x ^ y) & 0xff));
+            }
+        }
+        ImageIO.write(image, "png", directory.resolve("pattern.png").toFile());
+
+        final String pyramid = "v 1 0 -2\nv 2 0 -2\nv 2 0 -3\nv 1 0 -3\nv 1.5 1 -2.5\n" +
+                "f 1 2 5\nf 2 3 5\nf 3 4 5\nf 4 1 5\n";
+        Files.write(directory.resolve("pyramid.obj"), pyramid.getBytes());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void loadsTheSameScene() throws Exception {
+        final Path file = directory.resolve("scene.bin");
+        CompiledScene.compile(parse()).write(file);
+
+        final CompiledScene loaded = CompiledScene.load(file);
+        final Scene scene = loaded.getScene();
+
+        assertNotNull(scene.getCamera());
+        assertEquals(3, scene.getLights().size());
+        assertEquals(9, scene.getPrimitives().size());
+        assertEquals(1, scene.getInactivePrimitives().size());
+        assertEquals(2, scene.getSuperSampleWidth());
+        assertSame(scene.getPrimitives().get(0).getSurface().getTexture(),
+                scene.getPrimitives().get(2).getSurface().getTexture(), "the texture should only be stored once");
+        assertSame(scene.getInactivePrimitives().get(0).getSurface(), scene.getPrimitives().get(7).getSurface());
+        assertSame(scene.getInactivePrimitives().get(0).getSurface(), scene.getPrimitives().get(8).getSurface());
+
+        final FrameBuffer expected = RayTracer.create(parse()).render(60, 45);
+        final FrameBuffer actual = RayTracer.create(loaded).render(60, 45);
+        assertArrayEquals(expected.getData(), actual.getData());
+    }
+
+    @Test
+    void writesTheSameFileAgain() throws Exception {
+        final Path file = directory.resolve("scene.bin");
+        final Path again = directory.resolve("again.bin");
+
+        CompiledScene.compile(parse()).write(file);
+        CompiledScene.load(file).write(again);
+
+        assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(again));
+    }
+
+    @Test
+    void notACompiledScene() throws IOException {
+        final Path file = directory.resolve("scene.txt");
+        Files.write(file, SCENE.getBytes());
+
+        assertThrows(IOException.class, () -> CompiledScene.load(file));
+    }
+
+    @Test
+    void truncatedFile() throws Exception {
+        final Path file = directory.resolve("scene.bin");
+        CompiledScene.compile(parse()).write(file);
+
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThrows(IOException.class, () -> CompiledScene.load(file));
+    }
+
+    private Scene parse() throws Exception {
+        return new SceneParser(directory.toString(), SCENE).parse();
+    }
+}
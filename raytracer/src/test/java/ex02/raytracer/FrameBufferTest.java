@@ -0,0 +1,42 @@
+package ex02.raytracer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameBufferTest {
+
+    @Test
+    void setAndGetPixel() {
+        final FrameBuffer frame = new FrameBuffer(4, 3);
+
+        frame.setPixel(3, 2, new double[] { 0.25, 0.5, 1.0 });
+
+        assertArrayEquals(new double[] { 0.25, 0.5, 1.0 }, frame.getPixel(3, 2), 0);
+        assertEquals(frame.getData().length - 3, frame.indexOf(3, 2), "last pixel is at the end of the data");
+        assertThrows(IndexOutOfBoundsException.class, () -> frame.getPixel(4, 0));
+    }
+
+    @Test
+    void toArgb() {
+        final FrameBuffer frame = new FrameBuffer(2, 1);
+
+        frame.setPixel(0, 0, new double[] { 1.0, 0.5, 0.0 });
+        frame.setPixel(1, 0, new double[] { 2.0, -1.0, 0.2 });
+
+        assertArrayEquals(new int[] { 0xFFFF8000, 0xFFFF0033 }, frame.toArgb());
+    }
+
+    @Test
+    void setRegion() {
+        final FrameBuffer frame = new FrameBuffer(5, 5);
+        final FrameBuffer tile = new FrameBuffer(2, 3);
+        tile.setPixel(1, 2, new double[] { 0.1, 0.2, 0.3 });
+
+        frame.setRegion(3, 2, tile);
+
+        assertArrayEquals(tile.getPixel(1, 2), frame.getPixel(4, 4), 0);
+        assertArrayEquals(new double[] { 0, 0, 0 }, frame.getPixel(2, 4), 0);
+        assertThrows(IndexOutOfBoundsException.class, () -> frame.setRegion(4, 0, tile));
+    }
+}
@@ -1,13 +1,23 @@
 package ex02.raytracer;
 
 import ex02.entities.Scene;
+import ex02.entities.primitives.Primitive;
 import ex02.raytracer.parser.SceneParser;
 import org.junit.jupiter.api.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -31,16 +41,407 @@ class RayTracerTest {
     @Timeout(value = 280L, unit = TimeUnit.MILLISECONDS)
     @Tag("perf")
     void render() throws Exception {
-        final double[][][] pixels = RayTracer
+        final FrameBuffer pixels = RayTracer
                 .create(this.scene)
                 .render(200, 200);
 
-        assertEquals(200, pixels.length);
+        assertEquals(200, pixels.getWidth());
+        assertEquals(200, pixels.getHeight());
+        assertEquals(200 * 200 * 3, pixels.getData().length, "Each Pixel has RGB");
+    }
+
+    @Test
+    @DisplayName("The double[][][] adapter holds the same values as the frame buffer")
+    void renderToArray() throws Exception {
+        final FrameBuffer frame = RayTracer.create(this.scene).render(40, 30);
+        final double[][][] pixels = frame.toArray();
+
+        assertEquals(40, pixels.length);
+
+        for (int x = 0; x < pixels.length; x++) {
+            assertEquals(30, pixels[x].length);
+            for (int y = 0; y < pixels[x].length; y++) {
+                assertArrayEquals(frame.getPixel(x, y), pixels[x][y], 0, "Pixel " + x + "," + y + " differs");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Rendering the same scene twice gives identical pixels whichever threads traced them")
+    void renderIsDeterministic() throws Exception {
+        final FrameBuffer first = RayTracer.create(this.scene).render(100, 100);
+        final FrameBuffer second = RayTracer.create(this.scene).render(100, 100);
+
+        assertArrayEquals(first.getData(), second.getData(), 0);
+    }
+
+    @Test
+    @DisplayName("Tile size and pool don't change the rendered image")
+    void renderWithTilesOnSharedPool() throws Exception {
+        final FrameBuffer expected = RayTracer.create(this.scene).render(90, 70);
+
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            final RenderOptions options = new RenderOptions();
+            options.setTileSize(16); // doesn't divide the image so the edge tiles are smaller
+            options.setPool(pool);
+
+            final FrameBuffer pixels = RayTracer.create(this.scene, options).render(90, 70);
+
+            assertArrayEquals(expected.getData(), pixels.getData(), 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Tiles are published one at a time as they are requested and match a full render")
+    void renderTiles() throws Exception {
+        final FrameBuffer expected = RayTracer.create(this.scene).render(100, 60);
+
+        final RenderOptions options = new RenderOptions();
+        options.setTileSize(32);
+
+        final List<RenderedTile> received = new CopyOnWriteArrayList<>();
+        final AtomicInteger outstanding = new AtomicInteger();
+        final CompletableFuture<Void> completed = new CompletableFuture<>();
+
+        RayTracer.create(this.scene, options).renderTiles(100, 60).subscribe(new Flow.Subscriber<RenderedTile>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                outstanding.incrementAndGet();
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(RenderedTile tile) {
+                if (outstanding.decrementAndGet() < 0) {
+                    completed.completeExceptionally(new AssertionError("Received a tile that wasn't requested"));
+                }
+                received.add(tile);
+                outstanding.incrementAndGet();
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+
+        completed.get(10, TimeUnit.SECONDS);
+
+        assertEquals(8, received.size(), "100x60 pixels should be 4x2 tiles of 32 pixels");
+
+        final FrameBuffer assembled = new FrameBuffer(100, 60);
+        for (final RenderedTile tile : received) {
+            assembled.setRegion(tile.getTile().getX(), tile.getTile().getY(), tile.getPixels());
+        }
+
+        assertArrayEquals(expected.getData(), assembled.getData(), 0);
+    }
+
+    @Test
+    @DisplayName("Tiles are rendered at the publisher's size even if the tracer renders another size first")
+    void renderTilesAfterRenderOfAnotherSize() throws Exception {
+        final FrameBuffer expected = RayTracer.create(this.scene).render(100, 60);
+
+        final RayTracer tracer = RayTracer.create(this.scene);
+        final Flow.Publisher<RenderedTile> tiles = tracer.renderTiles(100, 60);
+        tracer.render(50, 30);
+
+        final FrameBuffer assembled = new FrameBuffer(100, 60);
+        final CompletableFuture<Void> completed = new CompletableFuture<>();
+
+        tiles.subscribe(new Flow.Subscriber<RenderedTile>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(RenderedTile tile) {
+                assembled.setRegion(tile.getTile().getX(), tile.getTile().getY(), tile.getPixels());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+
+        completed.get(10, TimeUnit.SECONDS);
+
+        assertArrayEquals(expected.getData(), assembled.getData(), 0);
+        assertEquals(100 * 60, tracer.getStatistics().getPixels());
+    }
+
+    @Test
+    @DisplayName("No tile is published until onSubscribe has returned, even if it requested tiles")
+    void renderTilesWaitsForOnSubscribe() throws Exception {
+        final RenderOptions options = new RenderOptions();
+        options.setTileSize(16);
+
+        final AtomicBoolean subscribing = new AtomicBoolean();
+        final CompletableFuture<Void> completed = new CompletableFuture<>();
+
+        RayTracer.create(this.scene, options).renderTiles(64, 32).subscribe(new Flow.Subscriber<RenderedTile>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscribing.set(true);
+                subscription.request(Long.MAX_VALUE);
+                try {
+                    // long enough for the pool to finish tiles while we are still in here
+                    Thread.sleep(200);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                subscribing.set(false);
+            }
+
+            @Override
+            public void onNext(RenderedTile tile) {
+                if (subscribing.get()) {
+                    completed.completeExceptionally(new AssertionError("Published a tile during onSubscribe"));
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+
+        completed.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    @DisplayName("Subscribers are told when tiles can't be started on a shared pool")
+    void renderTilesOnPoolThatIsShutDown() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        pool.shutdown();
+
+        final RenderOptions options = new RenderOptions();
+        options.setPool(pool);
+
+        final CompletableFuture<Void> completed = new CompletableFuture<>();
+        RayTracer.create(this.scene, options).renderTiles(100, 60).subscribe(new Flow.Subscriber<RenderedTile>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(RenderedTile tile) {
+                completed.completeExceptionally(new AssertionError("Rendered a tile on a pool that was shut down"));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+
+        final ExecutionException thrown = assertThrows(ExecutionException.class, () -> completed.get(10, TimeUnit.SECONDS));
+        assertTrue(thrown.getCause() instanceof RejectedExecutionException, String.valueOf(thrown.getCause()));
+    }
+
+    @Test
+    @DisplayName("Every pixel gets the full supersampling grid unless adaptive supersampling is enabled")
+    void supersamplingStatistics() throws Exception {
+        this.scene.setParameter("super-samp-width", new String[] {"4"});
+
+        final RayTracer uniform = RayTracer.create(this.scene);
+        uniform.render(60, 40);
+
+        assertEquals(60 * 40, uniform.getStatistics().getPixels());
+        assertEquals(60 * 40 * 16, uniform.getStatistics().getSamples());
+        assertEquals(0, uniform.getStatistics().getExtraSamples());
+
+        final RenderOptions options = new RenderOptions();
+        options.setAdaptiveSupersampling(true);
+
+        final RayTracer adaptive = RayTracer.create(this.scene, options);
+        adaptive.render(60, 40);
+        final RenderStatistics statistics = adaptive.getStatistics();
+
+        assertTrue(statistics.getRefinedPixels() > 0, "Edges of the spheres should be refined");
+        assertTrue(statistics.getRefinedPixels() < 60 * 40, "Background should not be refined");
+        assertEquals(statistics.getRefinedPixels() * 12, statistics.getExtraSamples(), "A refined 4x4 pixel traces 12 more samples");
+        assertEquals(60 * 40 * 4 + statistics.getExtraSamples(), statistics.getSamples());
+    }
+
+    @Test
+    @DisplayName("Adaptive supersampling stays close to the full supersampling grid")
+    void adaptiveSupersampling() throws Exception {
+        this.scene.setParameter("super-samp-width", new String[] {"4"});
+        final FrameBuffer expected = RayTracer.create(this.scene).render(80, 60);
+
+        final RenderOptions options = new RenderOptions();
+        options.setAdaptiveSupersampling(true);
+        options.setSupersamplingThreshold(0.05);
+        final FrameBuffer pixels = RayTracer.create(this.scene, options).render(80, 60);
+
+        final float[] expectedData = expected.getData();
+        final float[] data = pixels.getData();
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(expectedData[i], data[i], 0.1, "Channel " + i + " differs");
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> options.setSupersamplingThreshold(-1));
+    }
+
+    @Test
+    @DisplayName("Area lights are sampled grid-width squared times unless the options set a shadow ray budget")
+    void areaLightSamples() throws Exception {
+        final Scene areaLit = new SceneParser(String.join("\n",
+                "scene:", "background-col=0 0 0",
+                "camera:", "eye = 0 2 4", "look-at = 0 0 0", "screen-dist = 1", "up-direction = 0 1 0",
+                "rectangle:", "p0=-2 0 -2", "p1=-2 0 2", "p2=2 0 -2",
+                "sphere:", "center = 0 0.5 0", "radius = 0.5",
+                "light-area:", "p0=-1 3 -1", "p1=1 3 -1", "p2=-1 3 1", "grid-width=3", "color = 1 1 1"
+        )).parse();
+
+        final RayTracer gridWidth = RayTracer.create(areaLit);
+        final FrameBuffer first = gridWidth.render(40, 30);
+        final long shadowRays = gridWidth.getStatistics().getShadowRays();
+
+        // the random points on the light are seeded from the point being lit, so renders repeat
+        assertArrayEquals(first.getData(), RayTracer.create(areaLit).render(40, 30).getData(), 0);
+
+        final RenderOptions options = new RenderOptions();
+        options.setShadowRayBudget(5); // rounded down to a 2x2 grid
+        final RayTracer budget = RayTracer.create(areaLit, options);
+        budget.render(40, 30);
+
+        assertTrue(shadowRays > 0);
+        assertEquals(shadowRays * 4, budget.getStatistics().getShadowRays() * 9);
+    }
+
+    @Test
+    @DisplayName("Reflections are only traced while they can still change the pixel")
+    void reflectionPathWeight() throws Exception {
+        final RayTracer diffuse = RayTracer.create(this.scene);
+        diffuse.render(60, 40);
+        assertEquals(0, diffuse.getStatistics().getReflectionRays(), "Nothing in the scene is reflective");
+
+        for (final Primitive primitive : this.scene.getPrimitives()) {
+            primitive.getSurface().setReflectance(0.3);
+        }
+
+        final RenderOptions everyReflection = new RenderOptions();
+        everyReflection.setPathWeightThreshold(0);
+        final RayTracer all = RayTracer.create(this.scene, everyReflection);
+        final FrameBuffer expected = all.render(60, 40);
+
+        final RenderOptions options = new RenderOptions();
+        options.setPathWeightThreshold(0.01); // 0.3^4 is below it so at most 3 bounces
+        final RayTracer thresholded = RayTracer.create(this.scene, options);
+        final FrameBuffer pixels = thresholded.render(60, 40);
+
+        assertTrue(thresholded.getStatistics().getReflectionRays() < all.getStatistics().getReflectionRays());
+        assertArrayEquals(expected.getData(), pixels.getData(), 0.01f);
+    }
+
+    @Test
+    @DisplayName("Russian roulette drops deep reflections without changing the brightness much")
+    void russianRoulette() throws Exception {
+        for (final Primitive primitive : this.scene.getPrimitives()) {
+            primitive.getSurface().setReflectance(0.5);
+        }
+
+        final RayTracer all = RayTracer.create(this.scene);
+        final FrameBuffer expected = all.render(60, 40);
+
+        final RenderOptions options = new RenderOptions();
+        options.setRussianRouletteDepth(2);
+        final RayTracer roulette = RayTracer.create(this.scene, options);
+        final FrameBuffer pixels = roulette.render(60, 40);
+
+        assertTrue(roulette.getStatistics().getReflectionRays() < all.getStatistics().getReflectionRays());
+        assertEquals(average(expected), average(pixels), 0.01);
+        assertArrayEquals(pixels.getData(), RayTracer.create(this.scene, options).render(60, 40).getData(), 0);
+    }
+
+    @Test
+    @DisplayName("The wavefront integrator renders the same image as the recursive one")
+    void wavefrontIntegrator() throws Exception {
+        this.scene.setParameter("super-samp-width", new String[] {"2"});
+        for (final Primitive primitive : this.scene.getPrimitives()) {
+            primitive.getSurface().setReflectance(0.3);
+        }
+
+        final RayTracer recursive = RayTracer.create(this.scene);
+        final FrameBuffer expected = recursive.render(60, 40);
+
+        final RenderOptions options = new RenderOptions();
+        options.setIntegrator(Integrator.WAVEFRONT);
+        options.setTileSize(16);
+        final RayTracer wavefront = RayTracer.create(this.scene, options);
+        final FrameBuffer pixels = wavefront.render(60, 40);
+
+        // the contributions along each path are summed in a different order, so only rounding differs
+        assertArrayEquals(expected.getData(), pixels.getData(), 1e-5f);
+        assertEquals(recursive.getStatistics().getSamples(), wavefront.getStatistics().getSamples());
+        assertEquals(recursive.getStatistics().getReflectionRays(), wavefront.getStatistics().getReflectionRays());
+
+        assertThrows(IllegalArgumentException.class, () -> options.setIntegrator(null));
+    }
+
+    @Test
+    @DisplayName("Shadow rays are tested against whatever last blocked the same light first")
+    void occluderCache() throws Exception {
+        final Scene shadowed = new SceneParser(String.join("\n",
+                "scene:", "background-col=0 0 0",
+                "camera:", "eye = 0 2 4", "look-at = 0 0 0", "screen-dist = 1", "up-direction = 0 1 0",
+                "rectangle:", "p0=-10 0 -10", "p1=-10 0 10", "p2=10 0 -10",
+                "sphere:", "center = 0 1 0", "radius = 1",
+                "light-point:", "pos=0 4 -1", "color = 1 1 1"
+        )).parse();
+
+        for (final Integrator integrator : Integrator.values()) {
+            final RenderOptions options = new RenderOptions();
+            options.setIntegrator(integrator);
+            final RayTracer tracer = RayTracer.create(shadowed, options);
+            tracer.render(40, 30);
+            final RenderStatistics statistics = tracer.getStatistics();
+
+            // the shadow of the sphere covers neighbouring points of the floor, which the sphere blocks each time
+            assertTrue(statistics.getOccluderCacheHits() > 0, integrator + " should hit the cache");
+            assertTrue(statistics.getOccluderCacheHits() <= statistics.getOccluderCacheLookups());
+            assertTrue(statistics.getOccluderCacheHitRate() > 0.5, integrator + " hit rate " + statistics.getOccluderCacheHitRate());
+        }
+    }
 
-        for (int i = 0; i < pixels.length; i++) {
-            assertEquals(200, pixels[i].length);
-            assertEquals(3, pixels[i][0].length, "Each Pixel has RGB");
+    private static double average(final FrameBuffer frame) {
+        double total = 0;
+        for (final float value : frame.getData()) {
+            total += value;
         }
+        return total / frame.getData().length;
     }
 
     private Reader loadTestResource(final String resource) throws IOException {
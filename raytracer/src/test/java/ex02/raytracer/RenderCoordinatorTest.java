@@ -0,0 +1,345 @@
+package ex02.raytracer;
+
+import ex02.raytracer.parser.SceneParser;
+import ex02.entities.Texture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderCoordinatorTest {
+
+    private static final String SCENE = "scene:\n" +
+            "background-col=0.2 0.2 0.4\n" +
+            "ambient-light=0.1 0.1 0.1\n" +
+            "camera:\n" +
+            "eye=0 1.5 5\n" +
+            "look-at=0 0 0\n" +
+            "screen-dist=1\n" +
+            "up-direction=0 1 0\n" +
+            "sphere:\n" +
+            "center=-0.6 0.6 0\n" +
+            "radius=0.6\n" +
+            "mtl-diffuse=0.8 0.3 0.2\n" +
+            "reflectance=0.4\n" +
+            "box:\n" +
+            "p0=0.3 0 0\n" +
+            "p1=1.3 0 0\n" +
+            "p2=0.3 1 0\n" +
+            "p3=0.3 0 -1\n" +
+            "rectangle:\n" +
+            "p0=-3 0 3\n" +
+            "p1=3 0 3\n" +
+            "p2=-3 0 -3\n" +
+            "mtl-type=checkers\n" +
+            "light-point:\n" +
+            "pos=0 4 3\n" +
+            "color=0.6 0.6 0.6\n" +
+            "light-area:\n" +
+            "p0=-1 4 -1\n" +
+            "p1=-0.5 4 -1\n" +
+            "p2=-1 4 -1.5\n" +
+            "grid-width=3\n" +
+            "color=0.4 0.4 0.4\n";
+
+    private final List<RenderWorker> workers = new ArrayList<>();
+    private final List<ServerSocket> fakes = new ArrayList<>();
+    private RenderOptions options;
+
+    @BeforeEach
+    void setUp() {
+        options = new RenderOptions();
+        options.setTileSize(16);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (final RenderWorker worker : workers) {
+            worker.close();
+        }
+        for (final ServerSocket fake : fakes) {
+            fake.close();
+        }
+    }
+
+    @Test
+    void rendersTheSameImageAsOneProcess() throws Exception {
+        try (RenderCoordinator coordinator = new RenderCoordinator(compile(), options,
+                Arrays.asList(worker(1), worker(2), worker(1)))) {
+            assertFrame(coordinator.render(90, 70), 90, 70);
+            assertEquals(3, coordinator.getWorkerCount());
+
+            // the scene is kept by the workers for the next frame, which can be a different size
+            assertFrame(coordinator.render(50, 40), 50, 40);
+        }
+    }
+
+    @Test
+    void resendsTilesOfLostWorker() throws Exception {
+        try (RenderCoordinator coordinator = new RenderCoordinator(compile(), options,
+                Arrays.asList(fakeWorker(2), worker(1)))) {
+            assertFrame(coordinator.render(90, 70), 90, 70);
+            assertEquals(1, coordinator.getWorkerCount());
+            assertTrue(coordinator.getResentTileCount() > 0);
+        }
+    }
+
+    @Test
+    void copiesTilesOfSlowWorker() throws Exception {
+        try (RenderCoordinator coordinator = new RenderCoordinator(compile(), options,
+                Arrays.asList(fakeWorker(-1), worker(1)))) {
+            assertFrame(coordinator.render(90, 70), 90, 70);
+            assertEquals(2, coordinator.getWorkerCount(), "slow rather than lost");
+            assertTrue(coordinator.getResentTileCount() > 0);
+        }
+    }
+
+    @Test
+    void givesUpOnWorkersThatDontAnswer() throws Exception {
+        try (RenderCoordinator coordinator = new RenderCoordinator(compile(), options,
+                Arrays.asList(fakeWorker(-1)))) {
+            coordinator.setTileTimeout(200);
+            assertThrows(IOException.class, () -> coordinator.render(90, 70));
+            assertEquals(0, coordinator.getWorkerCount());
+        }
+
+        final InetSocketAddress unused;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            unused = new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+        try (RenderCoordinator coordinator = new RenderCoordinator(compile(), options, Arrays.asList(unused))) {
+            assertThrows(IOException.class, () -> coordinator.render(90, 70));
+        }
+    }
+
+    @Test
+    void resendsTilesOfWorkerThatSendsTheWrongSize() throws Exception {
+        // the real worker only gets the scene once the other has been dropped, so it can't have a copy of the tile
+        final CountDownLatch dropped = new CountDownLatch(1);
+        try (RenderCoordinator coordinator = new RenderCoordinator(compile(), options,
+                Arrays.asList(wrongSizeWorker(dropped), gate(worker(1), dropped)))) {
+            assertFrame(coordinator.render(90, 70), 90, 70);
+            assertEquals(1, coordinator.getWorkerCount());
+            assertTrue(coordinator.getResentTileCount() > 0);
+        }
+    }
+
+    @Test
+    void workerLetsGoOfScenesOnceDisconnected() throws Exception {
+        final Path directory = Files.createTempDirectory("worker");
+        try {
+            final BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.setRGB(x, y, (x * 4) << 16 | (y * 4) << 8);
+                }
+            }
+            ImageIO.write(image, "png", directory.resolve("pattern.png").toFile());
+            final String textured = SCENE + "sphere:\n" +
+                    "center=0.4 1.4 1\n" +
+                    "radius=0.4\n" +
+                    "mtl-type=texture\n" +
+                    "texture=pattern.png\n";
+            final CompiledScene compiled = CompiledScene.compile(new SceneParser(directory.toString(), textured).parse());
+
+            final List<WeakReference<Texture>> textures = new CopyOnWriteArrayList<>();
+            final InetSocketAddress address = worker(1);
+            workers.get(0).setSceneListener(scene -> textures.add(new WeakReference<>(scene.getScene().getPrimitives()
+                    .stream().map(primitive -> primitive.getSurface().getTexture()).filter(Objects::nonNull)
+                    .findFirst().orElseThrow())));
+
+            // as a coordinator does after losing a worker
+            for (int i = 0; i < 3; i++) {
+                try (RenderCoordinator coordinator = new RenderCoordinator(compiled, options, Arrays.asList(address))) {
+                    coordinator.render(40, 30);
+                }
+            }
+            assertEquals(3, textures.size());
+
+            // the sessions end as the worker notices each coordinator has gone
+            for (int i = 0; i < 200 && textures.stream().anyMatch(texture -> texture.get() != null); i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertTrue(textures.stream().allMatch(texture -> texture.get() == null),
+                    "nothing should keep the scenes of coordinators that have gone");
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void workerRejectsInvalidSceneLength() throws Exception {
+        final InetSocketAddress address = worker(1);
+
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(TileProtocol.MAGIC);
+            out.writeInt(TileProtocol.VERSION);
+            TileProtocol.writeOptions(out, options);
+            out.writeInt(-1);
+            out.flush();
+
+            assertEquals(-1, socket.getInputStream().read(), "the connection is dropped without allocating anything");
+        }
+    }
+
+    private void assertFrame(final FrameBuffer frame, final int width, final int height) throws Exception {
+        final FrameBuffer expected = RayTracer.create(new SceneParser(SCENE).parse()).render(width, height);
+        assertEquals(width, frame.getWidth());
+        assertEquals(height, frame.getHeight());
+        assertArrayEquals(expected.getData(), frame.getData());
+    }
+
+    private static CompiledScene compile() throws Exception {
+        return CompiledScene.compile(new SceneParser(SCENE).parse());
+    }
+
+    private InetSocketAddress worker(final int threads) throws IOException {
+        final RenderWorker worker = new RenderWorker(0, threads);
+        worker.start();
+        workers.add(worker);
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), worker.getPort());
+    }
+
+    // A worker that takes the scene then sends back a single pixel for the first tile it is given, counting down
+    // the latch once it has been dropped
+    private InetSocketAddress wrongSizeWorker(final CountDownLatch dropped) throws IOException {
+        final ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        fakes.add(server);
+
+        final Thread thread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                in.readInt();
+                in.readInt();
+                TileProtocol.readOptions(in);
+                in.readFully(new byte[in.readInt()]);
+                out.writeInt(TileProtocol.MAGIC);
+                out.writeInt(1);
+                out.flush();
+
+                boolean sent = false;
+                while (true) {
+                    final byte type = in.readByte();
+                    final int frame = in.readInt();
+                    if (type == TileProtocol.FRAME) {
+                        in.readInt();
+                        in.readInt();
+                    } else {
+                        final Tile tile = TileProtocol.readTile(in);
+                        if (!sent) {
+                            TileProtocol.writePixels(out, frame, tile.getIndex(), new FrameBuffer(1, 1));
+                            out.flush();
+                            sent = true;
+                        }
+                    }
+                }
+            } catch (final IOException e) {
+                // closed by the coordinator or the test
+            } finally {
+                dropped.countDown();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+    }
+
+    // Passes connections through to the worker once the latch has been counted down
+    private InetSocketAddress gate(final InetSocketAddress worker, final CountDownLatch open) throws IOException {
+        final ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        fakes.add(server);
+
+        final Thread thread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                open.await();
+                try (Socket target = new Socket(worker.getAddress(), worker.getPort())) {
+                    final Thread back = new Thread(() -> pipe(target, socket));
+                    back.setDaemon(true);
+                    back.start();
+                    pipe(socket, target);
+                    back.join();
+                }
+            } catch (final IOException | InterruptedException e) {
+                // closed by the coordinator or the test
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+    }
+
+    private static void pipe(final Socket from, final Socket to) {
+        try {
+            from.getInputStream().transferTo(to.getOutputStream());
+            to.shutdownOutput();
+        } catch (final IOException e) {
+            // either side closed
+        }
+    }
+
+    // A worker that takes the scene then drops the connection after the given number of tiles, or never answers
+    private InetSocketAddress fakeWorker(final int tilesBeforeDropping) throws IOException {
+        final ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        fakes.add(server);
+
+        final Thread thread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                in.readInt();
+                in.readInt();
+                TileProtocol.readOptions(in);
+                in.readFully(new byte[in.readInt()]);
+                out.writeInt(TileProtocol.MAGIC);
+                out.writeInt(1);
+                out.flush();
+
+                int tiles = 0;
+                while (tilesBeforeDropping < 0 || tiles < tilesBeforeDropping) {
+                    final byte type = in.readByte();
+                    in.readInt();
+                    if (type == TileProtocol.FRAME) {
+                        in.readInt();
+                        in.readInt();
+                    } else {
+                        TileProtocol.readTile(in);
+                        tiles++;
+                    }
+                }
+            } catch (final IOException e) {
+                // closed by the coordinator or the test
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+    }
+}
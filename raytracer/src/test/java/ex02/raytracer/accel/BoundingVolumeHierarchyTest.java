@@ -0,0 +1,189 @@
+package ex02.raytracer.accel;
+
+import ex02.entities.Intersection;
+import ex02.entities.Ray;
+import ex02.entities.primitives.Primitive;
+import ex02.entities.primitives.Sphere;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundingVolumeHierarchyTest {
+
+    private static final double EPSILON = 0.00000001F;
+
+    private final Random random = new Random(42);
+    private List<Primitive> primitives;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        this.primitives = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+            final Sphere sphere = new Sphere();
+            sphere.setParameter("center", new String[] { coordinate(), coordinate(), coordinate() });
+            sphere.setParameter("radius", new String[] { String.valueOf(0.1 + random.nextDouble()) });
+            sphere.postInit(null);
+            primitives.add(sphere);
+        }
+    }
+
+    @Test
+    void testEmptyHierarchyMissesEverything() {
+        final BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(Collections.emptyList());
+
+        final Intersection intersection = bvh.findIntersection(randomRay(), null, EPSILON);
+
+        assertEquals(0, bvh.getDepth());
+        assertNull(intersection.getPrimitive());
+        assertEquals(Double.POSITIVE_INFINITY, intersection.getDistance());
+    }
+
+    @Test
+    void testClosestHitMatchesLinearScan() {
+        final BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(primitives);
+
+        assertTrue(bvh.getDepth() > 1, "500 spheres should not fit in a single leaf");
+
+        for (int i = 0; i < 10_000; i++) {
+            final Ray ray = randomRay();
+
+            final Intersection expected = linearScan(ray);
+            final Intersection actual = bvh.findIntersection(ray, null, EPSILON);
+
+            assertSame(expected.getPrimitive(), actual.getPrimitive(), "wrong primitive for " + ray);
+            assertEquals(expected.getDistance(), actual.getDistance(), "wrong distance for " + ray);
+        }
+    }
+
+    @Test
+    void testOcclusionMatchesClosestHit() {
+        final BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(primitives);
+
+        for (int i = 0; i < 10_000; i++) {
+            final Ray ray = randomRay();
+            final double maxDistance = 40 * random.nextDouble();
+
+            final boolean expected = linearScan(ray).getDistance() < maxDistance;
+
+            assertEquals(expected, bvh.isOccluded(ray, maxDistance, EPSILON), "wrong occlusion for " + ray);
+
+            final Primitive occluder = bvh.findOccluder(ray, maxDistance, EPSILON);
+            assertEquals(expected, occluder != null, "wrong occluder for " + ray);
+            if (occluder != null) {
+                final double t = occluder.intersect(ray);
+                assertTrue(t > EPSILON && t < maxDistance, "occluder doesn't block " + ray);
+            }
+        }
+    }
+
+    @Test
+    void testScalarPacketsMatchSingleRays() {
+        assertPacketsMatchSingleRays(new BoundingVolumeHierarchy(primitives, ScalarPacketKernel.INSTANCE));
+    }
+
+    @Test
+    void testDefaultPacketsMatchSingleRays() {
+        // the build runs the tests with --add-modules jdk.incubator.vector, so this is the Vector API kernel
+        final BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(primitives);
+        if (ModuleLayer.boot().findModule(Kernels.VECTOR_MODULE).isPresent()) {
+            assertNotEquals("scalar", bvh.getPacketKernelName(), "the vector kernel should be used when the module is present");
+        }
+        assertPacketsMatchSingleRays(bvh);
+    }
+
+    @Test
+    void testIgnoredPrimitiveIsSkipped() {
+        final BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(primitives.subList(0, 1));
+        final Sphere sphere = (Sphere) primitives.get(0);
+
+        final double[] center = sphere.getCenter();
+        final Ray ray = new Ray(new double[] { center[0], center[1], center[2] - 50 }, new double[] { 0, 0, 1 }, 1);
+
+        assertSame(sphere, bvh.findIntersection(ray, null, EPSILON).getPrimitive());
+        assertNull(bvh.findIntersection(ray, sphere, EPSILON).getPrimitive());
+    }
+
+    private void assertPacketsMatchSingleRays(BoundingVolumeHierarchy bvh) {
+        final RayPacket packet = new RayPacket();
+        final Intersection[] intersections = new Intersection[RayPacket.WIDTH];
+        final Primitive[] occluders = new Primitive[RayPacket.WIDTH];
+
+        for (int i = 0; i < 2_000; i++) {
+            // rays from nearby points in nearby directions, which split up as they get further apart, and sometimes
+            // a packet that isn't full
+            final Ray first = randomRay();
+            final int size = 1 + random.nextInt(RayPacket.WIDTH);
+            final double spread = random.nextDouble();
+
+            packet.clear();
+            for (int lane = 0; lane < size; lane++) {
+                packet.add(nearbyRay(first, spread), 40 * random.nextDouble());
+            }
+
+            bvh.findIntersections(packet, null, EPSILON, intersections);
+            final int occluded = bvh.findOccluded(packet, EPSILON, occluders);
+
+            for (int lane = 0; lane < size; lane++) {
+                final Ray ray = packet.getRay(lane);
+                final Intersection expected = bvh.findIntersection(ray, null, EPSILON);
+
+                assertSame(expected.getPrimitive(), intersections[lane].getPrimitive(), "wrong primitive for " + ray);
+                assertEquals(expected.getDistance(), intersections[lane].getDistance(), "wrong distance for " + ray);
+                assertEquals(bvh.isOccluded(ray, packet.maxDistance[lane], EPSILON), (occluded & (1 << lane)) != 0,
+                        "wrong occlusion for " + ray);
+                assertEquals((occluded & (1 << lane)) != 0, occluders[lane] != null, "occluder doesn't match for " + ray);
+                if (occluders[lane] != null) {
+                    final double t = occluders[lane].intersect(ray);
+                    assertTrue(t > EPSILON && t < packet.maxDistance[lane], "occluder doesn't block " + ray);
+                }
+            }
+        }
+    }
+
+    private Ray nearbyRay(Ray ray, double spread) {
+        final double[] position = ray.getPosition();
+        final double[] direction = ray.getDirection();
+
+        final Ray nearby = new Ray(
+                new double[] { position[0] + spread * random.nextGaussian(), position[1] + spread * random.nextGaussian(), position[2] + spread * random.nextGaussian() },
+                new double[] { direction[0] + 0.1 * spread * random.nextGaussian(), direction[1] + 0.1 * spread * random.nextGaussian(), direction[2] + 0.1 * spread * random.nextGaussian() },
+                1);
+        nearby.normalize();
+        return nearby;
+    }
+
+    private Intersection linearScan(Ray ray) {
+        double minDistance = Double.POSITIVE_INFINITY;
+        Primitive minPrimitive = null;
+
+        for (final Primitive primitive : primitives) {
+            final double t = primitive.intersect(ray);
+
+            if (t < minDistance && t > EPSILON) {
+                minPrimitive = primitive;
+                minDistance = t;
+            }
+        }
+        return new Intersection(minDistance, minPrimitive);
+    }
+
+    private Ray randomRay() {
+        final Ray ray = new Ray(
+                new double[] { 30 * random.nextGaussian(), 30 * random.nextGaussian(), 30 * random.nextGaussian() },
+                new double[] { random.nextGaussian(), random.nextGaussian(), random.nextGaussian() },
+                1);
+        ray.normalize();
+        return ray;
+    }
+
+    private String coordinate() {
+        return String.valueOf(20 * (random.nextDouble() - 0.5));
+    }
+}
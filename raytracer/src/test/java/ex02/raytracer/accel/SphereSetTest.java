@@ -0,0 +1,97 @@
+package ex02.raytracer.accel;
+
+import ex02.entities.Ray;
+import ex02.entities.primitives.Primitive;
+import ex02.entities.primitives.Rectangle;
+import ex02.entities.primitives.Sphere;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SphereSetTest {
+
+    private final Random random = new Random(7);
+    private Primitive[] primitives;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // 37 slots so the vector kernel has a partly filled last batch whatever the lane count
+        this.primitives = new Primitive[37];
+
+        for (int i = 0; i < primitives.length; i++) {
+            if (i % 5 == 3) {
+                final Rectangle rectangle = new Rectangle();
+                rectangle.setParameter("p0", new String[] { "0", "0", "0" });
+                rectangle.setParameter("p1", new String[] { "1", "0", "0" });
+                rectangle.setParameter("p2", new String[] { "0", "1", "0" });
+                rectangle.postInit(null);
+                primitives[i] = rectangle;
+            } else {
+                final Sphere sphere = new Sphere();
+                sphere.setParameter("center", new String[] { coordinate(), coordinate(), coordinate() });
+                sphere.setParameter("radius", new String[] { String.valueOf(0.5 + random.nextDouble()) });
+                sphere.postInit(null);
+                primitives[i] = sphere;
+            }
+        }
+    }
+
+    @Test
+    void testSlotsMapBackToSpheres() {
+        final SphereSet set = new SphereSet(primitives);
+
+        assertEquals(primitives.length, set.size());
+        assertSame(primitives[0], set.getSphere(0));
+        assertNull(set.getSphere(3));
+        assertFalse(set.isSphere(8));
+        assertEquals(3, set.countSpheres(0, 4));
+    }
+
+    @Test
+    void testScalarKernelMatchesSphere() {
+        assertMatchesSphere(new SphereSet(primitives, ScalarSphereKernel.INSTANCE));
+    }
+
+    @Test
+    void testDefaultKernelMatchesSphere() {
+        // the build runs the tests with --add-modules jdk.incubator.vector, so this is the Vector API kernel
+        final SphereSet set = new SphereSet(primitives);
+        if (ModuleLayer.boot().findModule(Kernels.VECTOR_MODULE).isPresent()) {
+            assertNotEquals("scalar", set.getKernelName(), "the vector kernel should be used when the module is present");
+        }
+        assertMatchesSphere(set);
+    }
+
+    private void assertMatchesSphere(SphereSet set) {
+        final double[] distances = new double[primitives.length];
+
+        for (int r = 0; r < 2_000; r++) {
+            final Ray ray = randomRay();
+            final int from = random.nextInt(primitives.length);
+            final int to = from + random.nextInt(primitives.length - from + 1);
+
+            set.intersect(ray, from, to, distances);
+
+            for (int i = from; i < to; i++) {
+                final double expected = set.isSphere(i) ? primitives[i].intersect(ray) : Double.POSITIVE_INFINITY;
+                assertEquals(expected, distances[i - from], "slot " + i + " with the " + set.getKernelName() + " kernel");
+            }
+        }
+    }
+
+    private Ray randomRay() {
+        final Ray ray = new Ray(
+                new double[] { 10 * random.nextGaussian(), 10 * random.nextGaussian(), 10 * random.nextGaussian() },
+                new double[] { random.nextGaussian(), random.nextGaussian(), random.nextGaussian() },
+                1);
+        ray.normalize();
+        return ray;
+    }
+
+    private String coordinate() {
+        return String.valueOf(8 * (random.nextDouble() - 0.5));
+    }
+}
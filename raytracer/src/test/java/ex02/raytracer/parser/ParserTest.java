@@ -1,12 +1,17 @@
 package ex02.raytracer.parser;
 
 import ex02.entities.Scene;
+import ex02.entities.lights.LightArea;
+import ex02.entities.primitives.Sphere;
+import ex02.raytracer.FrameBuffer;
+import ex02.raytracer.RayTracer;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -31,6 +36,106 @@ class ParserTest {
         assertEquals(3, scene.getPrimitives().size(), "There should be x3 primitives in the scene");
     }
 
+    @Test
+    void testStreamingGivesTheSameScene() throws Exception {
+        final SceneParser lines = new SceneParser(loadTestResource("scenes/spheres.txt"));
+        final SceneParser streaming = new SceneParser(loadTestResource("scenes/spheres.txt"));
+        streaming.setMode(ParseMode.STREAMING);
+
+        assertSameScene(lines.parse(), streaming.parse());
+    }
+
+    @Test
+    void testStreamingReadsLinesTheSameWay() throws Exception {
+        // mixed line breaks, upper case names, tabs, comments, values that aren't numbers and no final line break
+        final String sceneData = "# a comment\r\n" +
+                "Scene:\r\n" +
+                "\tbackground-col = 0.5 0.5 1\r" +
+                "  ambient-light=1e0 1E0 +1\n" +
+                "\n" +
+                "camera:\n" +
+                "eye\t=\t-1   1.7 1\n" +
+                "LOOK-AT = 0 0 0\n" +
+                "screen-dist = 1.\n" +
+                "up-direction = 0 1 0\n" +
+                "sphere:\n" +
+                "center = 0 .5 0\n" +
+                "radius = 0.5\n" +
+                "mtl-type = Checkers\n" +
+                "checkers-size = 0.05\n" +
+                "no equals sign\n" +
+                "radius = a few\n" +
+                "light-point:\n" +
+                "pos= 0 4 -2\n" +
+                "color = 0.1 0.1 0.4";
+
+        final SceneParser lines = new SceneParser(null, new StringReader(sceneData));
+        final SceneParser streaming = new SceneParser(null, new StringReader(sceneData));
+        streaming.setMode(ParseMode.STREAMING);
+
+        final Scene scene = streaming.parse();
+        assertEquals("checkers", scene.getPrimitives().get(0).getSurface().getType());
+        assertSameScene(lines.parse(), scene);
+    }
+
+    @Test
+    void testParametersThatCannotBeSetAreSkipped() throws Exception {
+        final String sceneData = "scene:\n" +
+                "background-tex=sky.png\n" +
+                "super-samp-width=2.5\n" +
+                "camera:\n" +
+                "eye=0 1 5\n" +
+                "look-at=0 0 0\n" +
+                "screen-dist=1\n" +
+                "up-direction=0 1 0\n" +
+                "light-area:\n" +
+                "p0=-1 4 -1\n" +
+                "p1=1 4 -1\n" +
+                "p2=-1 4 1\n" +
+                "grid-width=4.5\n" +
+                "color=1 1 1\n";
+
+        for (final ParseMode mode : ParseMode.values()) {
+            final SceneParser parser = new SceneParser(null, new StringReader(sceneData));
+            parser.setMode(mode);
+            final Scene scene = parser.parse();
+
+            // a fraction is rejected rather than truncated, leaving the default
+            assertEquals(1, scene.getSuperSampleWidth(), mode.name());
+            assertEquals(1, ((LightArea) scene.getLights().get(0)).getGridWidth(), mode.name());
+        }
+    }
+
+    @Test
+    void testEntitiesTellWhichParametersTheyHave() throws Exception {
+        final Scene scene = new Scene();
+        assertTrue(scene.setParameter("background-tex", new String[] {"sky.png"}), "accepted though not drawn yet");
+        assertTrue(scene.setParameter("ambient-light", new String[] {"1", "1", "1"}));
+        assertFalse(scene.setParameter("ambient-lite", new String[] {"1", "1", "1"}));
+
+        final Sphere sphere = new Sphere();
+        assertTrue(sphere.setParameter("mtl-type", new String[] {"flat"}));
+        assertTrue(sphere.setParameter("radius", new double[] {1.5}));
+        assertFalse(sphere.setParameter("radios", new double[] {1.5}));
+
+        // a known parameter with a bad value isn't mistaken for one the entity doesn't have
+        assertThrows(NumberFormatException.class, () -> sphere.setParameter("radius", new String[] {"1,5"}));
+    }
+
+    @Test
+    void testModeCannotBeNull() {
+        assertThrows(IllegalArgumentException.class, () -> new SceneParser(null, "").setMode(null));
+    }
+
+    private static void assertSameScene(final Scene expected, final Scene actual) throws Exception {
+        assertEquals(expected.getLights().size(), actual.getLights().size());
+        assertEquals(expected.getPrimitives().size(), actual.getPrimitives().size());
+
+        final FrameBuffer expectedPixels = RayTracer.create(expected).render(40, 30);
+        final FrameBuffer actualPixels = RayTracer.create(actual).render(40, 30);
+        assertArrayEquals(expectedPixels.getData(), actualPixels.getData());
+    }
+
 /*    @Test(expected = ParserException.class)
     void testParserThrowsExceptionForNullReader() throws Exception {
         Parser parser = new SceneParser(null);
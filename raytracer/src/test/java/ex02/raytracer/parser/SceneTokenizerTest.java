@@ -0,0 +1,116 @@
+package ex02.raytracer.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SceneTokenizerTest {
+
+    @Test
+    void linesAndNames() throws IOException {
+        final SceneTokenizer tokenizer = new SceneTokenizer(new StringReader(
+                "Sphere:\r\n  Center = 1 2\t3 \r# comment\r\n\n\tRadius=0.5"));
+
+        assertTrue(tokenizer.nextLine());
+        assertTrue(tokenizer.isObject());
+        assertEquals("sphere", tokenizer.getName());
+        assertEquals(1, tokenizer.getLineNumber());
+
+        assertTrue(tokenizer.nextLine());
+        assertTrue(tokenizer.isParameter());
+        assertEquals("center", tokenizer.getName());
+        assertArrayEquals(new double[]{1, 2, 3}, tokenizer.getNumbers());
+        assertEquals(2, tokenizer.getLineNumber());
+
+        // the line without a line break at the end of the file
+        assertTrue(tokenizer.nextLine());
+        assertEquals("radius", tokenizer.getName());
+        assertArrayEquals(new double[]{0.5}, tokenizer.getNumbers());
+        assertEquals(5, tokenizer.getLineNumber());
+
+        assertFalse(tokenizer.nextLine());
+    }
+
+    @Test
+    void valuesThatArentNumbers() throws IOException {
+        final SceneTokenizer tokenizer = new SceneTokenizer(new StringReader(
+                "mtl-type = Flat\ntexture=1.JPG\nempty=\nno equals sign"));
+
+        tokenizer.nextLine();
+        assertNull(tokenizer.getNumbers());
+        assertArrayEquals(new String[]{"flat"}, tokenizer.getValues());
+
+        tokenizer.nextLine();
+        assertNull(tokenizer.getNumbers());
+        assertArrayEquals(new String[]{"1.jpg"}, tokenizer.getValues());
+
+        tokenizer.nextLine();
+        assertNull(tokenizer.getNumbers());
+        assertArrayEquals(new String[]{""}, tokenizer.getValues());
+
+        tokenizer.nextLine();
+        assertFalse(tokenizer.isObject());
+        assertFalse(tokenizer.isParameter());
+        assertEquals("no equals sign", tokenizer.getLine());
+    }
+
+    @Test
+    void numbersMatchParseDouble() throws IOException {
+        final String[] numbers = {
+                "0", "-0", "1.", ".5", "-.5", "+3", "007", "1e5", "1E-5", "2.5e+3", "0.1", "0.3", "-1.7",
+                "123456789012345678901234", "9007199254740993", "0.000000000000000000000000001",
+                "1.7976931348623157e308", "4.9e-324", "2.2250738585072014E-308", "1e400", "1e-400", "1f", "2.5D"
+        };
+        for (final String number : numbers) {
+            assertEquals(Double.parseDouble(number), parse(number), number);
+        }
+
+        final Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            final double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+            final String number = i % 2 == 0 ? Double.toString(value) : String.format(Locale.ROOT, "%.4f", value);
+
+            assertEquals(Double.parseDouble(number), parse(number), number);
+        }
+    }
+
+    @Test
+    void notNumbers() throws IOException {
+        for (final String value : new String[]{"-", ".", "1e", "--1", "1.2.3", "nan", "infinity", "0x10", "1 2 x"}) {
+            final SceneTokenizer tokenizer = new SceneTokenizer(new StringReader("value=" + value));
+            tokenizer.nextLine();
+
+            assertNull(tokenizer.getNumbers(), value);
+        }
+    }
+
+    @Test
+    void lineLongerThanTheBuffer() throws IOException {
+        final StringBuilder line = new StringBuilder("values=");
+        for (int i = 0; i < 5000; i++) {
+            line.append(i).append(' ');
+        }
+
+        final SceneTokenizer tokenizer = new SceneTokenizer(new StringReader("a:\n" + line + "\nb:\n"));
+        tokenizer.nextLine();
+        tokenizer.nextLine();
+
+        final double[] values = tokenizer.getNumbers();
+        assertEquals(5000, values.length);
+        assertEquals(4999, values[4999]);
+
+        assertTrue(tokenizer.nextLine());
+        assertEquals("b", tokenizer.getName());
+    }
+
+    private static double parse(final String number) throws IOException {
+        final SceneTokenizer tokenizer = new SceneTokenizer(new StringReader("value=" + number));
+        tokenizer.nextLine();
+        return tokenizer.getNumbers()[0];
+    }
+}
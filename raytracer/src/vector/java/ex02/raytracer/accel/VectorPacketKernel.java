@@ -0,0 +1,84 @@
+package ex02.raytracer.accel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Packet kernel using the incubating Vector API with one ray in each lane.
+ * Only loaded by {@link PacketKernel#create()} when the jdk.incubator.vector module is present.
+ * Operations are done in the same order as the scalar kernel so the results are identical.
+ */
+final class VectorPacketKernel implements PacketKernel {
+
+    // One lane for each ray of a full packet
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_256;
+
+    private static final double SLAB_TOLERANCE = BoundingVolumeHierarchy.SLAB_TOLERANCE;
+
+    VectorPacketKernel() {
+        if (SPECIES.length() != RayPacket.WIDTH) {
+            throw new IllegalStateException("Packets of " + RayPacket.WIDTH + " rays need as many lanes, not " + SPECIES.length());
+        }
+    }
+
+    @Override
+    public int intersectBox(double[] bounds, int offset, RayPacket packet, double[] maxDistance, int active) {
+        DoubleVector tNear = DoubleVector.zero(SPECIES);
+        DoubleVector tFar = DoubleVector.fromArray(SPECIES, maxDistance, 0);
+
+        // each axis narrows the interval as in BoundingVolumeHierarchy.intersectsBox, with blends for the branches
+        for (int axis = 0; axis < 3; axis++) {
+            final DoubleVector origin = DoubleVector.fromArray(SPECIES, origin(packet, axis), 0);
+            final DoubleVector inverse = DoubleVector.fromArray(SPECIES, inverse(packet, axis), 0);
+
+            final DoubleVector t0 = DoubleVector.broadcast(SPECIES, bounds[offset + axis]).sub(origin).mul(inverse);
+            final DoubleVector t1 = DoubleVector.broadcast(SPECIES, bounds[offset + axis + 3]).sub(origin).mul(inverse);
+
+            final VectorMask<Double> swap = t0.compare(VectorOperators.GT, t1);
+            final DoubleVector near = t0.blend(t1, swap);
+            final DoubleVector far = t1.blend(t0, swap).mul(SLAB_TOLERANCE);
+
+            tNear = tNear.blend(near, near.compare(VectorOperators.GT, tNear));
+            tFar = tFar.blend(far, far.compare(VectorOperators.LT, tFar));
+        }
+
+        return (int) tNear.compare(VectorOperators.LE, tFar).toLong() & active;
+    }
+
+    @Override
+    public void intersectSphere(double centerX, double centerY, double centerZ, double radiusSquared,
+                                RayPacket packet, double[] distances) {
+        final DoubleVector lx = DoubleVector.broadcast(SPECIES, centerX).sub(DoubleVector.fromArray(SPECIES, packet.originX, 0));
+        final DoubleVector ly = DoubleVector.broadcast(SPECIES, centerY).sub(DoubleVector.fromArray(SPECIES, packet.originY, 0));
+        final DoubleVector lz = DoubleVector.broadcast(SPECIES, centerZ).sub(DoubleVector.fromArray(SPECIES, packet.originZ, 0));
+        final DoubleVector dx = DoubleVector.fromArray(SPECIES, packet.directionX, 0);
+        final DoubleVector dy = DoubleVector.fromArray(SPECIES, packet.directionY, 0);
+        final DoubleVector dz = DoubleVector.fromArray(SPECIES, packet.directionZ, 0);
+        final DoubleVector r2 = DoubleVector.broadcast(SPECIES, radiusSquared);
+
+        final DoubleVector tCA = lx.mul(dx).add(ly.mul(dy)).add(lz.mul(dz));
+        final DoubleVector dSquare = lx.mul(lx).add(ly.mul(ly)).add(lz.mul(lz)).sub(tCA.mul(tCA));
+
+        final VectorMask<Double> miss = tCA.compare(VectorOperators.LT, 0)
+                .or(dSquare.compare(VectorOperators.GT, r2));
+
+        tCA.sub(r2.sub(dSquare).sqrt())
+                .blend(Double.POSITIVE_INFINITY, miss)
+                .intoArray(distances, 0);
+    }
+
+    private static double[] origin(RayPacket packet, int axis) {
+        return axis == 0 ? packet.originX : axis == 1 ? packet.originY : packet.originZ;
+    }
+
+    private static double[] inverse(RayPacket packet, int axis) {
+        return axis == 0 ? packet.inverseX : axis == 1 ? packet.inverseY : packet.inverseZ;
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + SPECIES.length() + "x" + SPECIES.elementSize();
+    }
+}
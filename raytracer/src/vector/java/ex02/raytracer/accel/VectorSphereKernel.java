@@ -0,0 +1,54 @@
+package ex02.raytracer.accel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Sphere kernel using the incubating Vector API to test four spheres at once.
+ * Only loaded by {@link SphereKernel#create()} when the jdk.incubator.vector module is present.
+ * Operations are done in the same order as the scalar kernel so the results are identical.
+ */
+final class VectorSphereKernel implements SphereKernel {
+
+    // Four lanes rather than the preferred species, as the hierarchy puts at most four primitives in most leaves
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_256;
+
+    @Override
+    public void intersect(double[] centerX, double[] centerY, double[] centerZ, double[] radiusSquared,
+                          int from, int to,
+                          double ox, double oy, double oz, double dx, double dy, double dz,
+                          double[] distances) {
+        final int vectorEnd = from + SPECIES.loopBound(to - from);
+        int i = from;
+
+        for (; i < vectorEnd; i += SPECIES.length()) {
+            final DoubleVector lx = DoubleVector.fromArray(SPECIES, centerX, i).sub(ox);
+            final DoubleVector ly = DoubleVector.fromArray(SPECIES, centerY, i).sub(oy);
+            final DoubleVector lz = DoubleVector.fromArray(SPECIES, centerZ, i).sub(oz);
+            final DoubleVector r2 = DoubleVector.fromArray(SPECIES, radiusSquared, i);
+
+            final DoubleVector tCA = lx.mul(dx).add(ly.mul(dy)).add(lz.mul(dz));
+            final DoubleVector dSquare = lx.mul(lx).add(ly.mul(ly)).add(lz.mul(lz)).sub(tCA.mul(tCA));
+
+            final VectorMask<Double> miss = tCA.compare(VectorOperators.LT, 0)
+                    .or(dSquare.compare(VectorOperators.GT, r2));
+
+            tCA.sub(r2.sub(dSquare).sqrt())
+                    .blend(Double.POSITIVE_INFINITY, miss)
+                    .intoArray(distances, i - from);
+        }
+
+        // masked loads and stores are slow on some CPUs, so the spheres that don't fill a vector are done one by one
+        if (i < to) {
+            ScalarSphereKernel.INSTANCE.intersect(centerX, centerY, centerZ, radiusSquared, i, to,
+                    ox, oy, oz, dx, dy, dz, distances, i - from);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + SPECIES.length() + "x" + SPECIES.elementSize();
+    }
+}
@@ -1,6 +1,7 @@
 package ex02;
 
 import ex02.components.SceneEditor;
+import ex02.raytracer.FrameBuffer;
 import ex02.raytracer.RayTracer;
 import ex02.raytracer.parser.ParserException;
 import ex02.raytracer.parser.SceneParser;
@@ -12,6 +13,7 @@ import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.*;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.HBox;
@@ -138,7 +140,7 @@ public class RayTracerFX extends Application {
         try {
             final GraphicsContext gc = canvas.getGraphicsContext2D();
 
-            final double[][][] pixels = rayTracer.render(WIDTH, HEIGHT);
+            final FrameBuffer pixels = rayTracer.render(WIDTH, HEIGHT);
             setPixelsOnImage(pixels, gc.getPixelWriter());
         } catch (Exception e) {
             log.error(e.getMessage(), e);
@@ -163,16 +165,12 @@ public class RayTracerFX extends Application {
         }
     }
 
-    private void setPixelsOnImage(@NotNull final double[][][] pixels, @NotNull final PixelWriter pixelWriter) {
-        for (int x = 0; x < pixels.length; x++) {
-            for (int y = 0; y < pixels[x].length; y++) {
-                pixelWriter.setColor(x, y, Color.color(
-                        pixels[x][y][0],
-                        pixels[x][y][1],
-                        pixels[x][y][2]
-                        )
-                );
-            }
-        }
+    private void setPixelsOnImage(@NotNull final FrameBuffer pixels, @NotNull final PixelWriter pixelWriter) {
+        pixelWriter.setPixels(
+                0, 0,
+                pixels.getWidth(), pixels.getHeight(),
+                PixelFormat.getIntArgbInstance(),
+                pixels.toArgb(), 0, pixels.getWidth()
+        );
     }
 }
@@ -1,6 +1,7 @@
 package ex02;
 
 import ex02.entities.Scene;
+import ex02.raytracer.FrameBuffer;
 import ex02.raytracer.RayTracer;
 import ex02.raytracer.parser.ParserException;
 import ex02.raytracer.parser.SceneParser;
@@ -103,7 +104,7 @@ public class RayTracerSWT {
                     try {
                         m_imgdat = new ImageData(m_rect.width, m_rect.height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
                         final RayTracer rayTracer = RayTracer.create(currentScene);
-                        final double[][][] pixels = rayTracer.render(m_rect.width, m_rect.height);
+                        final FrameBuffer pixels = rayTracer.render(m_rect.width, m_rect.height);
                         setPixelsOnImage(pixels);
                         canvas.redraw();
 
@@ -220,7 +221,7 @@ public class RayTracerSWT {
             openFile(img);
             m_imgdat = new ImageData(m_rect.width, m_rect.height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
             final RayTracer rayTracer = RayTracer.create(currentScene);
-            final double[][][] pixels = rayTracer.render(m_rect.width, m_rect.height);
+            final FrameBuffer pixels = rayTracer.render(m_rect.width, m_rect.height);
             setPixelsOnImage(pixels);
             canvas.redraw();
 
@@ -233,11 +234,12 @@ public class RayTracerSWT {
         }
     }
 
-    private void setPixelsOnImage(double[][][] pixels) {
-        for (int x = 0; x < pixels.length; x++) {
-            for (int y = 0; y < pixels[x].length; y++) {
-                m_imgdat.setPixel(x, y, Utils.floatArrayToColorInt(pixels[x][y]));
-            }
+    private void setPixelsOnImage(FrameBuffer pixels) {
+        final int[] argb = pixels.toArgb();
+
+        // the image is 24 bit RGB so the alpha byte of each value is ignored
+        for (int y = 0; y < pixels.getHeight(); y++) {
+            m_imgdat.setPixels(0, y, pixels.getWidth(), argb, y * pixels.getWidth());
         }
     }
 